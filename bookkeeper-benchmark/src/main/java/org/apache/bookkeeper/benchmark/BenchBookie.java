@@ -31,6 +31,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.BookKeeperClientStats;
 import org.apache.bookkeeper.client.LedgerHandle;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -41,7 +42,9 @@ import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookieClientImpl;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
-import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.codahale.CodahaleMetricsProvider;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -139,6 +142,9 @@ public class BenchBookie {
         options.addOption("warmupCount", true, "Number of messages in warmup phase (default 999)");
         options.addOption("latencyCount", true, "Number of messages in latency phase (default 5000)");
         options.addOption("throughputCount", true, "Number of messages in throughput phase (default 50000)");
+        options.addOption("coalesceWrites", false, "Coalesce the flushes of the requests written to the bookie");
+        options.addOption("coalesceMaxBytes", true,
+                "Size of the requests above which they are flushed, with coalesceWrites (default 65536)");
         options.addOption("help", false, "This message");
 
         CommandLineParser parser = new PosixParser();
@@ -178,8 +184,12 @@ public class BenchBookie {
                 new DefaultThreadFactory("BookKeeperClientScheduler"));
 
         ClientConfiguration conf = new ClientConfiguration();
+        conf.setClientWriteCoalescingEnabled(cmd.hasOption("coalesceWrites"));
+        conf.setClientWriteCoalescingMaxBytes(Integer.parseInt(cmd.getOptionValue("coalesceMaxBytes", "65536")));
+        StatsLogger statsLogger = new CodahaleMetricsProvider().getStatsLogger("");
+        Counter writeFlushCounter = statsLogger.getCounter(BookKeeperClientStats.CHANNEL_WRITE_FLUSHES);
         BookieClient bc = new BookieClientImpl(conf, eventLoop, PooledByteBufAllocator.DEFAULT, executor, scheduler,
-                NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+                statsLogger, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
         LatencyCallback lc = new LatencyCallback();
 
         ThroughputCallback tc = new ThroughputCallback();
@@ -221,6 +231,7 @@ public class BenchBookie {
         ledger = getValidLedgerId(servers);
         LOG.info("Benchmarking throughput");
         startTime = System.currentTimeMillis();
+        long startFlushes = writeFlushCounter.get();
         tc = new ThroughputCallback();
         for (long entry = 0; entry < throughputCount; entry++) {
             ByteBuf toSend = Unpooled.buffer(size);
@@ -236,6 +247,12 @@ public class BenchBookie {
         tc.waitFor(throughputCount);
         endTime = System.currentTimeMillis();
         LOG.info("Throughput: " + ((long) throughputCount) * 1000 / (endTime - startTime));
+        if (conf.getClientWriteCoalescingEnabled()) {
+            // the bookie client only sent the adds of the benchmark in the meantime
+            long flushes = writeFlushCounter.get() - startFlushes;
+            LOG.info("Write flushes: " + flushes + ", average write batch size: "
+                    + (flushes > 0 ? (double) throughputCount / flushes : 0));
+        }
 
         bc.close();
         scheduler.shutdown();
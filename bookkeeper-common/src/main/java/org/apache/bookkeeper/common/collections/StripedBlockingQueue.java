@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.common.collections;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.util.UnsafeRefArrayAccess;
+
+/**
+ * Blocking queue for multiple producers and a single consumer, striped to reduce the contention
+ * between the producers.
+ *
+ * <p>The items are queued to one of several bounded rings, chosen by the producing thread: with no
+ * more producer threads than rings, each ring has a single producer. The consumer drains the rings
+ * round-robin, a batch of items at a time. The items queued by a thread are consumed in order, there
+ * is no order between the items of different threads: the queue is not FIFO across threads. An item
+ * queued after the consumer took an item of another thread is still consumed after it, so a producer
+ * which waits for its items to be processed (e.g. a force ledger request sent after the adds it covers
+ * were acknowledged) sees them ordered.
+ *
+ * <p>While the queue is empty, the consumer either busy-spins or parks until an item is queued.
+ * The iterators are weakly consistent: they return the items queued when they were created that are
+ * not consumed yet, in the order of the consumer, and do not support removing items.
+ */
+public class StripedBlockingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+
+    private static final int MAX_BATCH_SIZE = 128;
+    // Park time of the producers while their ring is full
+    private static final long FULL_RING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+    private final Ring<T>[] rings;
+    private final boolean busyWait;
+
+    private static final AtomicReferenceFieldUpdater<StripedBlockingQueue, Thread> WAITING_CONSUMER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(StripedBlockingQueue.class, Thread.class, "waitingConsumer");
+    // Consumer thread parked waiting for an item, cleared by the producer waking it up
+    private volatile Thread waitingConsumer;
+
+    // The batch drained from a ring, only accessed by the consumer
+    private final T[] batch;
+    private final MessagePassingQueue.Consumer<T> batchAppender;
+    private int batchHead = 0;
+    private int batchTail = 0;
+    private int nextRing = 0;
+
+    @SuppressWarnings("unchecked")
+    public StripedBlockingQueue(int capacity, int numRings, boolean busyWait) {
+        this.rings = new Ring[numRings];
+        int ringCapacity = Math.max(2, capacity / numRings);
+        for (int i = 0; i < numRings; i++) {
+            rings[i] = new Ring<>(ringCapacity);
+        }
+        this.busyWait = busyWait;
+        this.batch = (T[]) new Object[Math.min(MAX_BATCH_SIZE, ringCapacity)];
+        this.batchAppender = item -> batch[batchTail++] = item;
+    }
+
+    private Ring<T> ringForCurrentThread() {
+        return rings[(int) (Thread.currentThread().getId() % rings.length)];
+    }
+
+    private void signalConsumer() {
+        Thread consumer = waitingConsumer;
+        // only one of the producers wakes up the consumer
+        if (consumer != null && WAITING_CONSUMER_UPDATER.compareAndSet(this, consumer, null)) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    @Override
+    public boolean offer(T e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (!ringForCurrentThread().offer(e)) {
+            return false;
+        }
+        signalConsumer();
+        return true;
+    }
+
+    @Override
+    public void put(T e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        MpscArrayQueue<T> ring = ringForCurrentThread();
+        while (!ring.offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitForSpace();
+        }
+        signalConsumer();
+    }
+
+    @Override
+    public boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long absoluteEndTime = System.nanoTime() + unit.toNanos(timeout);
+        MpscArrayQueue<T> ring = ringForCurrentThread();
+        while (!ring.offer(e)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (System.nanoTime() > absoluteEndTime) {
+                return false;
+            }
+            waitForSpace();
+        }
+        signalConsumer();
+        return true;
+    }
+
+    private void waitForSpace() {
+        if (busyWait) {
+            BusyWait.onSpinWait();
+        } else {
+            LockSupport.parkNanos(this, FULL_RING_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Drain the next non empty ring into the batch.
+     *
+     * @return false if all the rings are empty
+     */
+    private boolean fillBatch() {
+        batchHead = 0;
+        batchTail = 0;
+        for (int i = 0; i < rings.length; i++) {
+            MpscArrayQueue<T> ring = rings[nextRing];
+            if (++nextRing == rings.length) {
+                nextRing = 0;
+            }
+            ring.drain(batchAppender, batch.length);
+            if (batchTail > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public T poll() {
+        if (batchHead == batchTail && !fillBatch()) {
+            return null;
+        }
+        T item = batch[batchHead];
+        batch[batchHead++] = null;
+        return item;
+    }
+
+    @Override
+    public T peek() {
+        if (batchHead == batchTail && !fillBatch()) {
+            return null;
+        }
+        return batch[batchHead];
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitForItem(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long absoluteEndTime = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            T item = poll();
+            if (item != null) {
+                return item;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remainingNanos = absoluteEndTime - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return null;
+            }
+            waitForItem(remainingNanos);
+        }
+    }
+
+    private void waitForItem(long timeoutNanos) {
+        if (busyWait) {
+            BusyWait.onSpinWait();
+            return;
+        }
+        waitingConsumer = Thread.currentThread();
+        // a producer either sees the waiting consumer or queued its item before the rings are checked
+        if (ringsAreEmpty()) {
+            if (timeoutNanos == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+        }
+        waitingConsumer = null;
+    }
+
+    private boolean ringsAreEmpty() {
+        for (MpscArrayQueue<T> ring : rings) {
+            if (!ring.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of items in the queue, an estimate when called from another thread than the consumer.
+     */
+    @Override
+    public int size() {
+        int size = batchTail - batchHead;
+        for (MpscArrayQueue<T> ring : rings) {
+            size += ring.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        int remainingCapacity = 0;
+        for (MpscArrayQueue<T> ring : rings) {
+            remainingCapacity += ring.capacity() - ring.size();
+        }
+        return remainingCapacity;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> c, int maxElements) {
+        int drained = 0;
+        T item;
+        while (drained < maxElements && (item = poll()) != null) {
+            c.add(item);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Get a weakly consistent iterator over the items of the queue. The items already drained from the
+     * rings by the consumer are an estimate when called from another thread than the consumer.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        List<T> items = new ArrayList<>();
+        for (int i = batchHead; i < batchTail; i++) {
+            T item = batch[i];
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        int ring = nextRing;
+        for (int i = 0; i < rings.length; i++) {
+            rings[ring].collectItems(items);
+            if (++ring == rings.length) {
+                ring = 0;
+            }
+        }
+        return Collections.unmodifiableList(items).iterator();
+    }
+
+    /**
+     * Ring of the queue, whose items can be collected while it is used.
+     */
+    private static final class Ring<T> extends MpscArrayQueue<T> {
+
+        Ring(int capacity) {
+            super(capacity);
+        }
+
+        /**
+         * Add the items of the ring that are not consumed yet, and no item queued after the call.
+         */
+        void collectItems(List<T> items) {
+            long producerIndex = currentProducerIndex();
+            for (long index = currentConsumerIndex(); index < producerIndex; index++) {
+                T item = UnsafeRefArrayAccess.lvElement(buffer, calcElementOffset(index));
+                // a null item is being queued or was consumed, and a consumed slot may hold a later item
+                if (item != null && currentConsumerIndex() <= index) {
+                    items.add(item);
+                }
+            }
+        }
+    }
+}
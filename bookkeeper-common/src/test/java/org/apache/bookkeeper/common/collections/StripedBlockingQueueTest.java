@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.common.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+/**
+ * Test the {@link StripedBlockingQueue}.
+ */
+public class StripedBlockingQueueTest {
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void putAndTake() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(16, 4, false);
+        for (int i = 0; i < 4; i++) {
+            queue.put(i);
+        }
+        assertEquals(4, queue.size());
+        assertEquals(Integer.valueOf(0), queue.peek());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Integer.valueOf(i), queue.take());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void offerToFullRing() throws Exception {
+        // the items of a thread are all queued to the same ring
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(8, 2, false);
+        assertTrue(queue.offer(0));
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertFalse(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+        assertEquals(4, queue.remainingCapacity());
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollWithTimeout() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(16, 4, false);
+        long startTime = System.nanoTime();
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        queue.put(1);
+        assertEquals(Integer.valueOf(1), queue.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void drainTo() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(64, 4, false);
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+        List<Integer> items = new ArrayList<>();
+        assertEquals(3, queue.drainTo(items, 3));
+        assertEquals(range(0, 3), items);
+        assertEquals(7, queue.drainTo(items));
+        assertEquals(range(0, 10), items);
+        assertEquals(0, queue.drainTo(items));
+    }
+
+    @Test
+    public void itemsOfEachThreadAreTakenInOrder() throws Exception {
+        int numThreads = 8;
+        int itemsPerThread = 10_000;
+        StripedBlockingQueue<int[]> queue = new StripedBlockingQueue<>(1024, 4, false);
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            int thread = t;
+            producers.add(CompletableFuture.runAsync(() -> {
+                try {
+                    for (int i = 0; i < itemsPerThread; i++) {
+                        queue.put(new int[] { thread, i });
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }, r -> new Thread(r).start()));
+        }
+
+        int[] nextItems = new int[numThreads];
+        for (int i = 0; i < numThreads * itemsPerThread; i++) {
+            int[] item = queue.poll(10, TimeUnit.SECONDS);
+            assertEquals(nextItems[item[0]]++, item[1]);
+        }
+        for (CompletableFuture<Void> producer : producers) {
+            producer.get();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    private void checkWakeUpParkedConsumer(boolean timed) throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(16, 4, false);
+        CountDownLatch consumerStarted = new CountDownLatch(1);
+        CompletableFuture<Integer> taken = new CompletableFuture<>();
+        Thread consumer = new Thread(() -> {
+            consumerStarted.countDown();
+            try {
+                taken.complete(timed ? queue.poll(1, TimeUnit.MINUTES) : queue.take());
+            } catch (Throwable t) {
+                taken.completeExceptionally(t);
+            }
+        });
+        consumer.start();
+        consumerStarted.await();
+        // wait for the consumer to park
+        while (consumer.getState() != Thread.State.WAITING && consumer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        queue.put(1);
+        assertEquals(Integer.valueOf(1), taken.get(10, TimeUnit.SECONDS));
+        consumer.join();
+    }
+
+    @Test(timeout = 60000)
+    public void putWakesUpConsumerParkedInTake() throws Exception {
+        checkWakeUpParkedConsumer(false);
+    }
+
+    @Test(timeout = 60000)
+    public void putWakesUpConsumerParkedInPoll() throws Exception {
+        checkWakeUpParkedConsumer(true);
+    }
+
+    @Test(timeout = 60000)
+    public void interruptParkedConsumer() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(16, 4, false);
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.take();
+            } catch (Throwable t) {
+                error.complete(t);
+            }
+        });
+        consumer.start();
+        while (consumer.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        consumer.interrupt();
+        assertTrue(error.get(10, TimeUnit.SECONDS) instanceof InterruptedException);
+    }
+
+    @Test(timeout = 60000)
+    public void busyWaitConsumer() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(16, 4, true);
+        CompletableFuture<Integer> taken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, r -> new Thread(r).start());
+        Thread.sleep(10);
+        queue.put(1);
+        assertEquals(Integer.valueOf(1), taken.get(10, TimeUnit.SECONDS));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void iterator() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(64, 4, false);
+        assertFalse(queue.iterator().hasNext());
+        for (int i = 0; i < 10; i++) {
+            queue.put(i);
+        }
+        assertEquals(range(0, 10), Lists.newArrayList(queue.iterator()));
+
+        // items drained from a ring into the batch of the consumer
+        assertEquals(Integer.valueOf(0), queue.take());
+        assertEquals(range(1, 10), Lists.newArrayList(queue.iterator()));
+        assertTrue(queue.contains(5));
+        assertEquals(range(1, 10).toString(), queue.toString());
+
+        // the iterator does not see the items queued after it is created
+        Iterator<Integer> iterator = queue.iterator();
+        queue.put(10);
+        assertEquals(range(1, 10), Lists.newArrayList(iterator));
+        assertEquals(range(1, 11), Lists.newArrayList(queue.iterator()));
+
+        queue.clear();
+        assertFalse(queue.iterator().hasNext());
+    }
+
+    @Test
+    public void iteratorOverRingsOfSeveralThreads() throws Exception {
+        StripedBlockingQueue<Integer> queue = new StripedBlockingQueue<>(64, 4, false);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 5; i++) {
+                    queue.offer(thread * 5 + i);
+                }
+            });
+            producer.start();
+            producer.join();
+        }
+        List<Integer> iterated = Lists.newArrayList(queue.iterator());
+        assertEquals(20, iterated.size());
+        List<Integer> taken = new ArrayList<>();
+        queue.drainTo(taken);
+        assertEquals(taken, iterated);
+    }
+}
@@ -60,6 +60,10 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String RANGE_READ_ENTRY_REQUEST = "RANGE_READ_ENTRY_REQUEST";
+    String RANGE_READ_ENTRY = "RANGE_READ_ENTRY";
+    String RANGE_ADD_ENTRY_REQUEST = "RANGE_ADD_ENTRY_REQUEST";
+    String RANGE_ADD_ENTRY = "RANGE_ADD_ENTRY";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -103,6 +107,8 @@ public interface BookKeeperServerStats {
 
     String JOURNAL_SCOPE = "journal";
     String JOURNAL_DIRS = "JOURNAL_DIRS";
+    String JOURNAL_REPLAY_ENTRIES = "JOURNAL_REPLAY_ENTRIES";
+    String JOURNAL_REPLAY_BYTES = "JOURNAL_REPLAY_BYTES";
     String JOURNAL_ADD_ENTRY = "JOURNAL_ADD_ENTRY";
     String JOURNAL_FORCE_LEDGER = "JOURNAL_FORCE_LEDGER";
     String JOURNAL_SYNC = "JOURNAL_SYNC";
@@ -120,6 +126,8 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_COMPRESSION_LATENCY = "JOURNAL_COMPRESSION_LATENCY";
+    String JOURNAL_COMPRESSION_RATIO = "JOURNAL_COMPRESSION_RATIO";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -138,6 +146,7 @@ public interface BookKeeperServerStats {
 
     // Counters
     String JOURNAL_WRITE_BYTES = "JOURNAL_WRITE_BYTES";
+    String JOURNAL_COMPRESSED_WRITE_BYTES = "JOURNAL_COMPRESSED_WRITE_BYTES";
     String JOURNAL_QUEUE_SIZE = "JOURNAL_QUEUE_SIZE";
     String READ_BYTES = "READ_BYTES";
     String WRITE_BYTES = "WRITE_BYTES";
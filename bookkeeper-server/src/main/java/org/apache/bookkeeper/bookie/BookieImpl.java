@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -41,6 +42,7 @@ import java.nio.ByteBuffer;
 import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,8 +50,13 @@ import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.bookie.BookieException.DiskPartitionDuplicationException;
@@ -59,6 +66,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.BookieStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
@@ -66,6 +74,7 @@ import org.apache.bookkeeper.discover.RegistrationManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.net.DNS;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -95,6 +104,9 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    final List<JournalForceWriteCoordinator> forceWriteCoordinators;
+    // null when the ledgers are assigned to the journals by hash
+    private final JournalSelector journalSelector;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -191,6 +203,33 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         checkIfDirsOnSameDiskPartition(journalDirectories);
     }
 
+    /**
+     * Create a force write coordinator for each device storing multiple journals, so that the journals of
+     * the device are synced together.
+     */
+    private List<JournalForceWriteCoordinator> createForceWriteCoordinators(List<Journal> journals) {
+        Map<FileStore, List<Journal>> fileStoreJournalsMap = new HashMap<>();
+        for (Journal journal : journals) {
+            try {
+                FileStore fileStore = Files.getFileStore(journal.getJournalDirectory().toPath());
+                fileStoreJournalsMap.computeIfAbsent(fileStore, fs -> new ArrayList<>()).add(journal);
+            } catch (IOException e) {
+                LOG.warn("Unable to get the FileStore of journal directory {}, it is synced on its own",
+                        journal.getJournalDirectory(), e);
+            }
+        }
+        List<JournalForceWriteCoordinator> coordinators = new ArrayList<>();
+        fileStoreJournalsMap.forEach((fileStore, journalsList) -> {
+            if (journalsList.size() > 1) {
+                LOG.info("Journals {} are in same FileSystem: {}, they are synced together",
+                        journalsList.stream().map(Journal::getJournalDirectory).collect(Collectors.toList()),
+                        fileStore);
+                coordinators.add(new JournalForceWriteCoordinator(fileStore.name(), journalsList, conf));
+            }
+        });
+        return coordinators;
+    }
+
     /**
      * Checks if multiple directories are in same diskpartition/filesystem/device.
      * If ALLOW_MULTIPLEDIRS_UNDER_SAME_DISKPARTITION config parameter is not enabled, and
@@ -431,6 +470,13 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             journals.add(new Journal(i, journalDirectories.get(i),
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator));
         }
+        forceWriteCoordinators = conf.isJournalForceWriteCoalescingEnabled()
+                ? createForceWriteCoordinators(journals) : Collections.emptyList();
+        if (conf.isJournalLoadAwareSelectionEnabled() && journals.size() > 1) {
+            journalSelector = new JournalSelector(journals, conf.getJournalSelectorIdleTimeoutMs());
+        } else {
+            journalSelector = null;
+        }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
@@ -497,97 +543,279 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
 
         long startTs = System.currentTimeMillis();
-        JournalScanner scanner = new JournalScanner() {
-            @Override
-            public void process(int journalVersion, long offset, ByteBuffer recBuff) throws IOException {
-                long ledgerId = recBuff.getLong();
-                long entryId = recBuff.getLong();
-                try {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Replay journal - ledger id : {}, entry id : {}.", ledgerId, entryId);
-                    }
-                    if (entryId == METAENTRY_ID_LEDGER_KEY) {
-                        if (journalVersion >= JournalChannel.V3) {
-                            int masterKeyLen = recBuff.getInt();
-                            byte[] masterKey = new byte[masterKeyLen];
-
-                            recBuff.get(masterKey);
-                            masterKeyCache.put(ledgerId, masterKey);
-
-                            // Force to re-insert the master key in ledger storage
-                            handles.getHandle(ledgerId, masterKey);
-                        } else {
-                            throw new IOException("Invalid journal. Contains journalKey "
-                                    + " but layout version (" + journalVersion
-                                    + ") is too old to hold this");
-                        }
-                    } else if (entryId == METAENTRY_ID_FENCE_KEY) {
-                        if (journalVersion >= JournalChannel.V4) {
-                            byte[] key = masterKeyCache.get(ledgerId);
-                            if (key == null) {
-                                key = ledgerStorage.readMasterKey(ledgerId);
-                            }
-                            LedgerDescriptor handle = handles.getHandle(ledgerId, key);
-                            handle.setFenced();
-                        } else {
-                            throw new IOException("Invalid journal. Contains fenceKey "
-                                    + " but layout version (" + journalVersion
-                                    + ") is too old to hold this");
-                        }
-                    } else if (entryId == METAENTRY_ID_LEDGER_EXPLICITLAC) {
-                        if (journalVersion >= JournalChannel.V6) {
-                            int explicitLacBufLength = recBuff.getInt();
-                            ByteBuf explicitLacBuf = Unpooled.buffer(explicitLacBufLength);
-                            byte[] explicitLacBufArray = new byte[explicitLacBufLength];
-                            recBuff.get(explicitLacBufArray);
-                            explicitLacBuf.writeBytes(explicitLacBufArray);
-                            byte[] key = masterKeyCache.get(ledgerId);
-                            if (key == null) {
-                                key = ledgerStorage.readMasterKey(ledgerId);
-                            }
-                            LedgerDescriptor handle = handles.getHandle(ledgerId, key);
-                            handle.setExplicitLac(explicitLacBuf);
-                        } else {
-                            throw new IOException("Invalid journal. Contains explicitLAC " + " but layout version ("
-                                    + journalVersion + ") is too old to hold this");
-                        }
-                    } else if (entryId < 0) {
-                        /*
-                         * this is possible if bookie code binary is rolledback
-                         * to older version but when it is trying to read
-                         * Journal which was created previously using newer
-                         * code/journalversion, which introduced new special
-                         * entry. So in anycase, if we see unrecognizable
-                         * special entry while replaying journal we should skip
-                         * (ignore) it.
-                         */
-                        LOG.warn("Read unrecognizable entryId: {} for ledger: {} while replaying Journal. Skipping it",
-                                entryId, ledgerId);
-                    } else {
-                        byte[] key = masterKeyCache.get(ledgerId);
-                        if (key == null) {
-                            key = ledgerStorage.readMasterKey(ledgerId);
+        int replayThreads = conf.getJournalReplayThreads();
+        JournalReplayScanner[] scanners = new JournalReplayScanner[journals.size()];
+        if (replayThreads > 1) {
+            OrderedExecutor replayExecutor = OrderedExecutor.newBuilder().numThreads(replayThreads)
+                    .name("JournalReplay").build();
+            ExecutorService scanExecutor = Executors.newFixedThreadPool(journals.size(),
+                    new DefaultThreadFactory("JournalScan"));
+            try {
+                List<Future<?>> scans = new ArrayList<>(journals.size());
+                for (int i = 0; i < journals.size(); i++) {
+                    Journal journal = journals.get(i);
+                    JournalReplayScanner scanner = new ParallelJournalReplayScanner(this::replayJournalRecord,
+                            bookieStats, replayExecutor);
+                    scanners[i] = scanner;
+                    scans.add(scanExecutor.submit(() -> {
+                        replay(journal, scanner);
+                        return null;
+                    }));
+                }
+                for (Future<?> scan : scans) {
+                    try {
+                        scan.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while replaying journals", e);
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) {
+                            throw (IOException) e.getCause();
                         }
-                        LedgerDescriptor handle = handles.getHandle(ledgerId, key);
+                        throw new IOException("Failed to replay journal", e.getCause());
+                    }
+                }
+            } finally {
+                scanExecutor.shutdownNow();
+                replayExecutor.shutdown();
+            }
+        } else {
+            for (int i = 0; i < journals.size(); i++) {
+                scanners[i] = new JournalReplayScanner(this::replayJournalRecord, bookieStats);
+                replay(journals.get(i), scanners[i]);
+            }
+        }
+        long elapsedTs = System.currentTimeMillis() - startTs;
+        long replayedEntries = 0;
+        long replayedBytes = 0;
+        for (JournalReplayScanner scanner : scanners) {
+            replayedEntries += scanner.replayedEntries;
+            replayedBytes += scanner.replayedBytes;
+        }
+        LOG.info("Finished replaying journal in {} ms: {} entries, {} bytes ({} MB/s).", elapsedTs,
+                replayedEntries, replayedBytes, String.format("%.2f", throughputMBps(replayedBytes, elapsedTs)));
+    }
 
-                        recBuff.rewind();
-                        handle.addEntry(Unpooled.wrappedBuffer(recBuff));
+    private static double throughputMBps(long bytes, long elapsedMs) {
+        return bytes / (1024.0 * 1024.0) / Math.max(elapsedMs, 1) * 1000;
+    }
+
+    /**
+     * Add a record scanned from a journal to the ledger storage.
+     */
+    private void replayJournalRecord(int journalVersion, ByteBuffer recBuff) throws IOException {
+        long ledgerId = recBuff.getLong();
+        long entryId = recBuff.getLong();
+        try {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Replay journal - ledger id : {}, entry id : {}.", ledgerId, entryId);
+            }
+            if (entryId == METAENTRY_ID_LEDGER_KEY) {
+                if (journalVersion >= JournalChannel.V3) {
+                    int masterKeyLen = recBuff.getInt();
+                    byte[] masterKey = new byte[masterKeyLen];
+
+                    recBuff.get(masterKey);
+                    masterKeyCache.put(ledgerId, masterKey);
+
+                    // Force to re-insert the master key in ledger storage
+                    handles.getHandle(ledgerId, masterKey);
+                } else {
+                    throw new IOException("Invalid journal. Contains journalKey "
+                            + " but layout version (" + journalVersion
+                            + ") is too old to hold this");
+                }
+            } else if (entryId == METAENTRY_ID_FENCE_KEY) {
+                if (journalVersion >= JournalChannel.V4) {
+                    byte[] key = masterKeyCache.get(ledgerId);
+                    if (key == null) {
+                        key = ledgerStorage.readMasterKey(ledgerId);
                     }
-                } catch (NoLedgerException nsle) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Skip replaying entries of ledger {} since it was deleted.", ledgerId);
+                    LedgerDescriptor handle = handles.getHandle(ledgerId, key);
+                    handle.setFenced();
+                } else {
+                    throw new IOException("Invalid journal. Contains fenceKey "
+                            + " but layout version (" + journalVersion
+                            + ") is too old to hold this");
+                }
+            } else if (entryId == METAENTRY_ID_LEDGER_EXPLICITLAC) {
+                if (journalVersion >= JournalChannel.V6) {
+                    int explicitLacBufLength = recBuff.getInt();
+                    ByteBuf explicitLacBuf = Unpooled.buffer(explicitLacBufLength);
+                    byte[] explicitLacBufArray = new byte[explicitLacBufLength];
+                    recBuff.get(explicitLacBufArray);
+                    explicitLacBuf.writeBytes(explicitLacBufArray);
+                    byte[] key = masterKeyCache.get(ledgerId);
+                    if (key == null) {
+                        key = ledgerStorage.readMasterKey(ledgerId);
+                    }
+                    LedgerDescriptor handle = handles.getHandle(ledgerId, key);
+                    // a ledger moved to another journal has its explicit LACs in both, and the journals are
+                    // replayed independently, so keep the highest LAC rather than the last one replayed
+                    if (!isStaleExplicitLac(handle.getExplicitLac(), explicitLacBuf)) {
+                        handle.setExplicitLac(explicitLacBuf);
                     }
-                } catch (BookieException be) {
-                    throw new IOException(be);
+                } else {
+                    throw new IOException("Invalid journal. Contains explicitLAC " + " but layout version ("
+                            + journalVersion + ") is too old to hold this");
                 }
+            } else if (entryId < 0) {
+                /*
+                 * this is possible if bookie code binary is rolledback
+                 * to older version but when it is trying to read
+                 * Journal which was created previously using newer
+                 * code/journalversion, which introduced new special
+                 * entry. So in anycase, if we see unrecognizable
+                 * special entry while replaying journal we should skip
+                 * (ignore) it.
+                 */
+                LOG.warn("Read unrecognizable entryId: {} for ledger: {} while replaying Journal. Skipping it",
+                        entryId, ledgerId);
+            } else {
+                byte[] key = masterKeyCache.get(ledgerId);
+                if (key == null) {
+                    key = ledgerStorage.readMasterKey(ledgerId);
+                }
+                LedgerDescriptor handle = handles.getHandle(ledgerId, key);
+
+                recBuff.rewind();
+                handle.addEntry(Unpooled.wrappedBuffer(recBuff));
             }
-        };
+        } catch (NoLedgerException nsle) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Skip replaying entries of ledger {} since it was deleted.", ledgerId);
+            }
+        } catch (BookieException be) {
+            throw new IOException(be);
+        }
+    }
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+    /**
+     * Whether a replayed explicit LAC is older than the one the ledger already has. The explicit LAC buffer
+     * starts with the ledger id followed by the LAC.
+     */
+    @VisibleForTesting
+    static boolean isStaleExplicitLac(ByteBuf current, ByteBuf replayed) {
+        return current != null && current.readableBytes() >= 16
+                && current.getLong(current.readerIndex() + 8) > replayed.getLong(replayed.readerIndex() + 8);
+    }
+
+    /**
+     * Adds a record scanned from a journal to the ledger storage.
+     */
+    @FunctionalInterface
+    interface JournalRecordReplayer {
+        void replay(int journalVersion, ByteBuffer recBuff) throws IOException;
+    }
+
+    /**
+     * Scanner replaying the records of a journal in the scanning thread.
+     */
+    @VisibleForTesting
+    static class JournalReplayScanner implements JournalScanner {
+        final JournalRecordReplayer replayer;
+        private final BookieStats bookieStats;
+        // Only updated by the thread scanning the journal
+        long replayedEntries = 0;
+        long replayedBytes = 0;
+
+        JournalReplayScanner(JournalRecordReplayer replayer, BookieStats bookieStats) {
+            this.replayer = replayer;
+            this.bookieStats = bookieStats;
+        }
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer recBuff) throws IOException {
+            replayedEntries++;
+            replayedBytes += recBuff.remaining();
+            bookieStats.getJournalReplayEntries().inc();
+            bookieStats.getJournalReplayBytes().add(recBuff.remaining());
+            dispatch(journalVersion, recBuff);
+        }
+
+        void dispatch(int journalVersion, ByteBuffer recBuff) throws IOException {
+            replayer.replay(journalVersion, recBuff);
+        }
+
+        /**
+         * Wait until all the records scanned so far are added to the ledger storage.
+         */
+        void awaitReplayed() throws IOException {
+        }
+    }
+
+    /**
+     * Scanner handing the records of a journal to the replay executor, ordered by ledger, so that the records of
+     * the different ledgers are added to the ledger storage in parallel.
+     *
+     * <p>The executor is shared by the scanners of all the journals, so the records of a ledger are never replayed
+     * concurrently, and keep their order within a journal. A ledger moved to another journal has records in both,
+     * whose relative order is lost, as with the sequential replay, which replays a journal after the other. They
+     * commute: entries are keyed by entry id, the master key of a ledger does not change, fencing is sticky, and
+     * the highest explicit LAC is kept.
+     */
+    @VisibleForTesting
+    static class ParallelJournalReplayScanner extends JournalReplayScanner {
+        // Bound on the size of the records scanned and not yet replayed
+        static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+
+        private final OrderedExecutor replayExecutor;
+        private final int maxPendingBytes;
+        private final Semaphore pendingBytes;
+        private final AtomicReference<IOException> replayFailure = new AtomicReference<>();
+
+        ParallelJournalReplayScanner(JournalRecordReplayer replayer, BookieStats bookieStats,
+                                     OrderedExecutor replayExecutor) {
+            this(replayer, bookieStats, replayExecutor, MAX_PENDING_BYTES);
+        }
+
+        @VisibleForTesting
+        ParallelJournalReplayScanner(JournalRecordReplayer replayer, BookieStats bookieStats,
+                                     OrderedExecutor replayExecutor, int maxPendingBytes) {
+            super(replayer, bookieStats);
+            this.replayExecutor = replayExecutor;
+            this.maxPendingBytes = maxPendingBytes;
+            this.pendingBytes = new Semaphore(maxPendingBytes);
+        }
+
+        @Override
+        void dispatch(int journalVersion, ByteBuffer recBuff) throws IOException {
+            checkReplayFailure();
+            // the scanner reuses its buffer for the next record
+            ByteBuffer record = ByteBuffer.allocate(recBuff.remaining());
+            record.put(recBuff);
+            record.flip();
+
+            int permits = Math.min(record.capacity(), maxPendingBytes);
+            pendingBytes.acquireUninterruptibly(permits);
+            replayExecutor.executeOrdered(record.getLong(0), () -> {
+                try {
+                    if (replayFailure.get() == null) {
+                        replayer.replay(journalVersion, record);
+                    }
+                } catch (IOException e) {
+                    replayFailure.compareAndSet(null, e);
+                } catch (RuntimeException e) {
+                    replayFailure.compareAndSet(null, new IOException("Failed to replay journal record", e));
+                } finally {
+                    pendingBytes.release(permits);
+                }
+            });
+        }
+
+        @Override
+        void awaitReplayed() throws IOException {
+            pendingBytes.acquireUninterruptibly(maxPendingBytes);
+            pendingBytes.release(maxPendingBytes);
+            checkReplayFailure();
+        }
+
+        private void checkReplayFailure() throws IOException {
+            IOException e = replayFailure.get();
+            if (e != null) {
+                throw e;
+            }
         }
-        long elapsedTs = System.currentTimeMillis() - startTs;
-        LOG.info("Finished replaying journal in {} ms.", elapsedTs);
     }
 
     /**
@@ -597,7 +825,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
      * @param scanner Scanner to process replayed entries.
      * @throws IOException
      */
-    private void replay(Journal journal, JournalScanner scanner) throws IOException {
+    private void replay(Journal journal, JournalReplayScanner scanner) throws IOException {
         final LogMark markedLog = journal.getLastLogMark().getCurMark();
         List<Long> logs = Journal.listJournalIds(journal.getJournalDirectory(), journalId ->
             journalId >= markedLog.getLogFileId());
@@ -612,13 +840,24 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         // TODO: When reading in the journal logs that need to be synced, we
         // should use BufferedChannels instead to minimize the amount of
         // system calls done.
-        for (Long id : logs) {
+        for (int i = 0; i < logs.size(); i++) {
+            long id = logs.get(i);
             long logPosition = 0L;
             if (id == markedLog.getLogFileId()) {
                 logPosition = markedLog.getLogFileOffset();
             }
-            LOG.info("Replaying journal {} from position {}", id, logPosition);
+            LOG.info("Replaying journal {} ({}/{} in {}) from position {}", id, i + 1, logs.size(),
+                    journal.getJournalDirectory(), logPosition);
+            long startTs = System.currentTimeMillis();
+            long startEntries = scanner.replayedEntries;
+            long startBytes = scanner.replayedBytes;
             long scanOffset = journal.scanJournal(id, logPosition, scanner);
+            // the entries must be in the ledger storage before the mark moves past them
+            scanner.awaitReplayed();
+            long elapsedTs = System.currentTimeMillis() - startTs;
+            LOG.info("Replayed journal {} in {} ms: {} entries, {} bytes ({} MB/s)", id, elapsedTs,
+                    scanner.replayedEntries - startEntries, scanner.replayedBytes - startBytes,
+                    String.format("%.2f", throughputMBps(scanner.replayedBytes - startBytes, elapsedTs)));
             // Update LastLogMark after completely replaying journal
             // scanOffset will point to EOF position
             // After LedgerStorage flush, SyncThread should persist this to disk
@@ -780,6 +1019,9 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         // bookie thread wait for journal thread
         try {
             // start journals
+            for (JournalForceWriteCoordinator coordinator : forceWriteCoordinators) {
+                coordinator.start();
+            }
             for (Journal journal: journals) {
                 journal.start();
             }
@@ -823,6 +1065,21 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         th.start();
     }
 
+    /**
+     * Shutdown the journals, after their force write coordinators which acknowledge the entries through the
+     * callback executors of the journals.
+     */
+    @VisibleForTesting
+    static void shutdownJournals(List<Journal> journals, List<JournalForceWriteCoordinator> forceWriteCoordinators)
+            throws InterruptedException {
+        for (JournalForceWriteCoordinator coordinator : forceWriteCoordinators) {
+            coordinator.shutdown();
+        }
+        for (Journal journal : journals) {
+            journal.shutdown();
+        }
+    }
+
     // provided a public shutdown method for other caller
     // to shut down bookie gracefully
     public int shutdown() {
@@ -851,9 +1108,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                 syncThread.shutdown();
 
                 // Shutdown journals
-                for (Journal journal : journals) {
-                    journal.shutdown();
-                }
+                shutdownJournals(journals, forceWriteCoordinators);
                 this.join();
 
                 // Shutdown the EntryLogger which has the GarbageCollector Thread running
@@ -893,10 +1148,49 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         return handles.getHandle(ledgerId, masterKey);
     }
 
-    private Journal getJournal(long ledgerId) {
+    /**
+     * Get the journal to record a new entry of a ledger. When the ledger is assigned to a new journal, the master
+     * key of the ledger is recorded in that journal first, so that replaying the journal does not depend on the
+     * journal holding the previous entries of the ledger.
+     */
+    private Journal getJournal(long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (journalSelector != null) {
+            return journalSelector.select(ledgerId, journal -> onJournalAssigned(journal, ledgerId, masterKey));
+        }
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
+    /**
+     * Get the journal holding the previous entries of a ledger, for the requests which must be recorded
+     * after them, such as force ledger.
+     */
+    private Journal getCurrentJournal(long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (journalSelector != null) {
+            return journalSelector.current(ledgerId, journal -> onJournalAssigned(journal, ledgerId, masterKey));
+        }
+        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+    }
+
+    private void onJournalAssigned(Journal journal, long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (masterKey == null) {
+            // The key is not known yet, it is recorded with the next entry added to the ledger
+            return;
+        }
+        masterKeyCache.putIfAbsent(ledgerId, masterKey);
+        logLedgerKey(journal, ledgerId, masterKey);
+    }
+
+    private void logLedgerKey(Journal journal, long ledgerId, byte[] masterKey) throws InterruptedException {
+        ByteBuffer bb = ByteBuffer.allocate(8 + 8 + 4 + masterKey.length);
+        bb.putLong(ledgerId);
+        bb.putLong(METAENTRY_ID_LEDGER_KEY);
+        bb.putInt(masterKey.length);
+        bb.put(masterKey);
+        bb.flip();
+
+        journal.logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
+    }
+
     /**
      * Add an entry to a ledger as specified by handle.
      */
@@ -910,19 +1204,13 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+        Journal journal = getJournal(ledgerId, masterKey);
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
             if (oldValue == null) {
                 // new handle, we should add the key to journal ensure we can rebuild
-                ByteBuffer bb = ByteBuffer.allocate(8 + 8 + 4 + masterKey.length);
-                bb.putLong(ledgerId);
-                bb.putLong(METAENTRY_ID_LEDGER_KEY);
-                bb.putInt(masterKey.length);
-                bb.put(masterKey);
-                bb.flip();
-
-                getJournal(ledgerId).logAddEntry(bb, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                logLedgerKey(journal, ledgerId, masterKey);
             }
         }
 
@@ -934,7 +1222,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Adding {}@{}", entryId, ledgerId);
         }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+        journal.logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
     /**
@@ -991,7 +1279,8 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                 handle.setExplicitLac(entry);
                 entry.resetReaderIndex();
                 ByteBuf explicitLACEntry = createExplicitLACEntry(ledgerId, entry);
-                getJournal(ledgerId).logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+                getCurrentJournal(ledgerId, masterKey)
+                        .logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
             }
         } catch (NoWritableLedgerDirException e) {
             stateManager.transitionToReadOnlyMode();
@@ -1018,7 +1307,14 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Forcing ledger {}", ledgerId);
         }
-        Journal journal = getJournal(ledgerId);
+        Journal journal;
+        try {
+            journal = getCurrentJournal(ledgerId, masterKeyCache.get(ledgerId));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cb.writeComplete(BookieProtocol.EIO, ledgerId, METAENTRY_ID_FORCE_LEDGER, null, ctx);
+            return;
+        }
         journal.forceLedger(ledgerId, cb, ctx);
         bookieStats.getForceLedgerOps().inc();
     }
@@ -1059,6 +1355,76 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    /**
+     * Add a batch of consecutive entries to a ledger.
+     *
+     * <p>All the entries must belong to the same ledger. The ledger handle is locked once for
+     * the whole batch, so the entries are queued to the journal back to back and are usually
+     * persisted by the same journal flush. The callback is triggered, and the add is recorded in
+     * the add entry stats, once per entry.
+     *
+     * <p>An exception is only thrown if the first entry of the batch could not be added. If a
+     * later entry fails, the entries before it are kept and the callback of every remaining
+     * entry is triggered with an error.
+     */
+    public void addEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                           byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        int added = 0;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries.get(0), masterKey);
+            synchronized (handle) {
+                if (handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                for (int i = 0; i < entries.size(); i++) {
+                    ByteBuf entry = entries.get(i);
+                    int entrySize = entry.readableBytes();
+                    try {
+                        addEntryInternal(handle, entry, ackBeforeSync, cb, ctx, masterKey);
+                    } catch (IOException | BookieException | InterruptedException e) {
+                        bookieStats.getAddBytesStats().registerFailedValue(entrySize);
+                        if (i == 0) {
+                            throw e;
+                        }
+                        LOG.error("Error adding entry {}@{}, failing the remaining {} entries of the batch",
+                                entry.getLong(entry.readerIndex() + 8), handle.getLedgerId(), entries.size() - i, e);
+                        if (e instanceof NoWritableLedgerDirException) {
+                            stateManager.transitionToReadOnlyMode();
+                        } else if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        for (int j = i; j < entries.size(); j++) {
+                            ByteBuf failed = entries.get(j);
+                            cb.writeComplete(BookieProtocol.EIO, handle.getLedgerId(),
+                                    failed.getLong(failed.readerIndex() + 8), null, ctx);
+                        }
+                        break;
+                    }
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+                    added++;
+                }
+            }
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            // one event per entry, as for the single entry adds, with the latency of the batch
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (int i = 0; i < entries.size(); i++) {
+                if (i < added) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+
+            entries.forEach(ByteBuf::release);
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -1070,7 +1436,12 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     public CompletableFuture<Boolean> fenceLedger(long ledgerId, byte[] masterKey)
             throws IOException, BookieException {
         LedgerDescriptor handle = handles.getHandle(ledgerId, masterKey);
-        return handle.fenceAndLogInJournal(getJournal(ledgerId));
+        try {
+            return handle.fenceAndLogInJournal(getCurrentJournal(ledgerId, masterKey));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while selecting the journal of ledger " + ledgerId, e);
+        }
     }
 
     public ByteBuf readEntry(long ledgerId, long entryId)
@@ -86,6 +86,17 @@ public class BufferedReadChannel extends BufferedChannelBase  {
             } else if (currentPosition >= eof) {
                 // here we reached eof.
                 break;
+            } else if (length >= readCapacity && dest.writableBytes() >= length && dest.nioBufferCount() == 1) {
+                // Large reads go straight to the destination, bypassing the read buffer
+                int bytesToRead = (int) Math.min(length, eof - currentPosition);
+                int readBytes = validateAndGetFileChannel().read(
+                        dest.nioBuffer(dest.writerIndex(), bytesToRead), currentPosition);
+                if (readBytes <= 0) {
+                    throw new IOException("Reading from filechannel returned a non-positive value. Short read.");
+                }
+                dest.writerIndex(dest.writerIndex() + readBytes);
+                currentPosition += readBytes;
+                length -= readBytes;
             } else {
                 // We don't have it in the buffer, so put necessary data in the buffer
                 readBufferStartPosition = currentPosition;
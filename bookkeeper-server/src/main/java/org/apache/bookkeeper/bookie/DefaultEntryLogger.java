@@ -223,6 +223,8 @@ public class DefaultEntryLogger implements EntryLogger {
 
     final EntryLoggerAllocator entryLoggerAllocator;
     private final EntryLogManager entryLogManager;
+    // Mappings of the sealed entry logs, null if the entries are read through the file channels
+    private final MappedEntryLogs mappedEntryLogs;
 
     private final CopyOnWriteArrayList<EntryLogListener> listeners = new CopyOnWriteArrayList<EntryLogListener>();
 
@@ -283,6 +285,9 @@ public class DefaultEntryLogger implements EntryLogger {
     static final long LEDGERS_MAP_ENTRY_ID = -2L;
 
     static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+
+    // Max number of bytes read at once when reading consecutive entries
+    private static final int READ_ENTRIES_CHUNK_SIZE = 1024 * 1024;
     static final long MB = 1024 * 1024;
 
     private final int maxSaneEntrySize;
@@ -359,6 +364,16 @@ public class DefaultEntryLogger implements EntryLogger {
             this.entryLogManager = new EntryLogManagerForSingleEntryLog(conf, ledgerDirsManager, entryLoggerAllocator,
                     listeners, recentlyCreatedEntryLogsStatus);
         }
+        if (conf.isEntryLogMmapReadEnabled()) {
+            this.mappedEntryLogs = new MappedEntryLogs(allocator, conf.getEntryLogMaxMappedLogs());
+        } else {
+            this.mappedEntryLogs = null;
+        }
+    }
+
+    @VisibleForTesting
+    MappedEntryLogs getMappedEntryLogs() {
+        return mappedEntryLogs;
     }
 
     EntryLogManager getEntryLogManager() {
@@ -531,6 +546,9 @@ public class DefaultEntryLogger implements EntryLogger {
         if (!entryLogFile.delete()) {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
         }
+        if (mappedEntryLogs != null) {
+            mappedEntryLogs.remove(entryLogId);
+        }
         return true;
     }
 
@@ -818,15 +836,165 @@ public class DefaultEntryLogger implements EntryLogger {
 
     @Override
     public ByteBuf readEntry(long location) throws IOException, Bookie.NoEntryException {
-        return internalReadEntry(location, -1L, -1L, false /* validateEntry */);
+        return internalReadEntry(-1L, -1L, location, false /* validateEntry */);
     }
 
 
+    @Override
+    public void readEntries(long entryLocation, long maxSize, EntryConsumer consumer) throws IOException {
+        long entryLogId = logIdForOffset(entryLocation);
+        if (entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            // The end of the current entry log may still be in its write buffer
+            EntryLogger.super.readEntries(entryLocation, maxSize, consumer);
+            return;
+        }
+
+        ByteBuf mappedLog = getMappedLog(entryLogId);
+        if (mappedLog != null) {
+            try {
+                readMappedEntries(mappedLog, posForOffset(entryLocation) - 4, maxSize, consumer);
+            } finally {
+                mappedLog.release();
+            }
+            return;
+        }
+
+        BufferedReadChannel fc = getChannelForLogId(entryLogId);
+        // Start with the size of the first entry
+        long pos = posForOffset(entryLocation) - 4;
+        long endPos = endPosForMaxSize(pos, maxSize);
+        ByteBuf chunk = allocator.directBuffer((int) Math.min(maxSize, READ_ENTRIES_CHUNK_SIZE));
+        try {
+            while (pos < endPos) {
+                chunk.clear();
+                if (fc.read(chunk, pos) <= 0) {
+                    return;
+                }
+
+                while (chunk.readableBytes() >= 4) {
+                    int entrySize = chunk.getInt(chunk.readerIndex());
+                    if (entrySize < MIN_SANE_ENTRY_SIZE) {
+                        // Not an entry, we reached the end of the entries
+                        return;
+                    } else if (chunk.readableBytes() < 4 + entrySize) {
+                        break;
+                    }
+
+                    chunk.skipBytes(4);
+                    if (!consumer.accept(chunk.readSlice(entrySize))) {
+                        return;
+                    }
+                    pos += 4 + entrySize;
+                    if (pos >= endPos) {
+                        return;
+                    }
+                }
+
+                if (chunk.readerIndex() == 0) {
+                    // The entry does not fit in the chunk, read it on its own
+                    ByteBuf entry = internalReadEntry(-1L, -1L, (entryLogId << 32L) | (pos + 4), false);
+                    try {
+                        if (!consumer.accept(entry)) {
+                            return;
+                        }
+                        pos += 4 + entry.readableBytes();
+                    } finally {
+                        entry.release();
+                    }
+                }
+            }
+        } catch (Bookie.NoEntryException e) {
+            // The last entry was truncated, we reached the end of the entry log
+        } catch (BufferedChannelBase.BufferedChannelClosedException | AsynchronousCloseException e) {
+            throw new IOException("Entry log " + entryLogId + " closed while reading entries", e);
+        } finally {
+            chunk.release();
+        }
+    }
+
+    private static long endPosForMaxSize(long pos, long maxSize) {
+        // no limit rather than overflowing
+        return maxSize > Long.MAX_VALUE - pos ? Long.MAX_VALUE : pos + maxSize;
+    }
+
+    private void readMappedEntries(ByteBuf mappedLog, long pos, long maxSize, EntryConsumer consumer)
+            throws IOException {
+        long endPos = Math.min(endPosForMaxSize(pos, maxSize), mappedLog.capacity());
+        while (pos + 4 <= endPos) {
+            int entrySize = mappedLog.getInt((int) pos);
+            if (entrySize < MIN_SANE_ENTRY_SIZE || pos + 4 + entrySize > mappedLog.capacity()) {
+                // Not an entry, we reached the end of the entries
+                return;
+            }
+            if (!consumer.accept(mappedLog.slice((int) pos + 4, entrySize))) {
+                return;
+            }
+            pos += 4 + entrySize;
+        }
+    }
+
+    /**
+     * Get the mapping of the given entry log, the log is mapped on its first read once it is sealed: rotated
+     * and flushed.
+     *
+     * @return the retained buffer over the log, or null if the log is read through its file channel
+     */
+    private ByteBuf getMappedLog(long entryLogId) {
+        if (mappedEntryLogs == null) {
+            return null;
+        }
+        ByteBuf mappedLog = mappedEntryLogs.get(entryLogId);
+        if (mappedLog != null
+                || !recentlyCreatedEntryLogsStatus.isFlushedLogId(entryLogId)
+                || entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            return mappedLog;
+        }
+        try {
+            return mappedEntryLogs.map(entryLogId, findFile(entryLogId));
+        } catch (FileNotFoundException e) {
+            // let the read through the file channel report the missing log
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Failed to map entry log {}, reading it through its file channel", entryLogId, e);
+            return null;
+        }
+    }
+
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, ByteBuf mappedLog,
+                                    boolean validateEntry) throws IOException, Bookie.NoEntryException {
+        if (pos < 4 || pos + (validateEntry ? 16 : 0) > mappedLog.capacity()) {
+            throw new Bookie.NoEntryException("Short read from entrylog " + entryLogId, ledgerId, entryId);
+        }
+        int entrySize = mappedLog.getInt((int) pos - 4);
+        if (validateEntry) {
+            try {
+                validateEntry(ledgerId, entryId, entryLogId, pos, mappedLog.slice((int) pos - 4, 4 + 8 + 8));
+            } catch (EntryLookupException e) {
+                throw new IOException(e.toString());
+            }
+        }
+        if (entrySize < 0 || pos + entrySize > mappedLog.capacity()) {
+            throw new Bookie.NoEntryException("Short read for " + ledgerId + "@"
+                                              + entryId + " in " + entryLogId + "@"
+                                              + pos + "(" + (mappedLog.capacity() - pos) + "!=" + entrySize + ")",
+                                              ledgerId, entryId);
+        }
+        return mappedLog.retainedSlice((int) pos, entrySize);
+    }
+
     private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
             throws IOException, Bookie.NoEntryException {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        ByteBuf mappedLog = getMappedLog(entryLogId);
+        if (mappedLog != null) {
+            try {
+                return readMappedEntry(ledgerId, entryId, entryLogId, pos, mappedLog, validateEntry);
+            } finally {
+                mappedLog.release();
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -1179,6 +1347,9 @@ public class DefaultEntryLogger implements EntryLogger {
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            if (mappedEntryLogs != null) {
+                mappedEntryLogs.close();
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -120,12 +120,21 @@ public class EntryMemTable implements AutoCloseable{
     */
     public EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
                          final StatsLogger statsLogger) {
+        this(conf, source, statsLogger, true);
+    }
+
+    /**
+     * Constructor for the memtables holding their entries elsewhere than in the skip lists.
+     * @param useSkipLists whether the entries are held in the skip lists, which are not allocated otherwise
+     */
+    protected EntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                            final StatsLogger statsLogger, boolean useSkipLists) {
         this.checkpointSource = source;
-        this.kvmap = newSkipList();
+        this.kvmap = useSkipLists ? newSkipList() : EntrySkipList.EMPTY_VALUE;
         this.snapshot = EntrySkipList.EMPTY_VALUE;
         this.conf = conf;
         this.size = new AtomicLong(0);
-        this.allocator = new SkipListArena(conf);
+        this.allocator = useSkipLists ? new SkipListArena(conf) : null;
         this.previousFlushSucceeded = new AtomicBoolean(true);
         // skip list size limit
         this.skipListSizeLimit = conf.getSkipListSizeLimit();
@@ -318,8 +327,7 @@ public class EntryMemTable implements AutoCloseable{
 
             this.lock.readLock().lock();
             try {
-                EntryKeyValue toAdd = cloneWithAllocator(ledgerId, entryId, entry);
-                size = internalAdd(toAdd);
+                size = putEntry(ledgerId, entryId, entry);
                 if (size == 0) {
                     skipListSemaphore.release(len);
                 }
@@ -339,6 +347,17 @@ public class EntryMemTable implements AutoCloseable{
         }
     }
 
+    /**
+     * Add the entry to the current skip list, unless it already holds it.
+     * Callers should ensure they already have the read lock taken.
+     *
+     * @return the size of the added entry, 0 if it was already present
+     */
+    long putEntry(long ledgerId, long entryId, final ByteBuffer entry) throws IOException {
+        EntryKeyValue toAdd = cloneWithAllocator(ledgerId, entryId, entry);
+        return internalAdd(toAdd);
+    }
+
     /**
     * Internal version of add() that doesn't clone KVs with the
     * allocator, and doesn't take the lock.
@@ -384,16 +403,12 @@ public class EntryMemTable implements AutoCloseable{
      * @return the entry kv or null if none found.
      */
     public EntryKeyValue getEntry(long ledgerId, long entryId) throws IOException {
-        EntryKey key = new EntryKey(ledgerId, entryId);
         EntryKeyValue value = null;
         long startTimeNanos = MathUtils.nowInNano();
         boolean success = false;
         this.lock.readLock().lock();
         try {
-            value = this.kvmap.get(key);
-            if (value == null) {
-                value = this.snapshot.get(key);
-            }
+            value = findEntry(ledgerId, entryId);
             success = true;
         } finally {
             this.lock.readLock().unlock();
@@ -415,16 +430,12 @@ public class EntryMemTable implements AutoCloseable{
      * @return the entry kv or null if none found.
      */
     public EntryKeyValue getLastEntry(long ledgerId) throws IOException {
-        EntryKey result = null;
-        EntryKey key = new EntryKey(ledgerId, Long.MAX_VALUE);
+        EntryKeyValue result = null;
         long startTimeNanos = MathUtils.nowInNano();
         boolean success = false;
         this.lock.readLock().lock();
         try {
-            result = this.kvmap.floorKey(key);
-            if (result == null || result.getLedgerId() != ledgerId) {
-                result = this.snapshot.floorKey(key);
-            }
+            result = findLastEntry(ledgerId);
             success = true;
         } finally {
             this.lock.readLock().unlock();
@@ -437,6 +448,32 @@ public class EntryMemTable implements AutoCloseable{
             }
         }
 
+        return result;
+    }
+
+    /**
+     * Find the entry with given key in the skip list and its snapshot.
+     * Callers should ensure they already have the read lock taken.
+     */
+    EntryKeyValue findEntry(long ledgerId, long entryId) {
+        EntryKey key = new EntryKey(ledgerId, entryId);
+        EntryKeyValue value = this.kvmap.get(key);
+        if (value == null) {
+            value = this.snapshot.get(key);
+        }
+        return value;
+    }
+
+    /**
+     * Find the last entry of the given ledger in the skip list and its snapshot.
+     * Callers should ensure they already have the read lock taken.
+     */
+    EntryKeyValue findLastEntry(long ledgerId) {
+        EntryKey key = new EntryKey(ledgerId, Long.MAX_VALUE);
+        EntryKey result = this.kvmap.floorKey(key);
+        if (result == null || result.getLedgerId() != ledgerId) {
+            result = this.snapshot.floorKey(key);
+        }
         if (result == null || result.getLedgerId() != ledgerId) {
             return null;
         }
@@ -48,10 +48,15 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
 import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
 import org.apache.bookkeeper.common.collections.RecyclableArrayList;
+import org.apache.bookkeeper.common.collections.StripedBlockingQueue;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -383,8 +388,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             try {
                 if (shouldForceWrite) {
                     this.logFile.forceWrite(false);
-                    journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    journalStats.recordJournalSync(MathUtils.elapsedNanos(startTime));
                 }
                 lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
 
@@ -406,6 +410,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             }
         }
 
+        JournalChannel getLogFile() {
+            return logFile;
+        }
+
+        Journal getJournal() {
+            return Journal.this;
+        }
+
         public void closeFileIfNecessary() {
             // Close if shouldClose is set
             if (shouldClose) {
@@ -427,7 +439,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             this.recyclerHandle = recyclerHandle;
         }
 
-        private void recycle() {
+        void recycle() {
             logFile = null;
             if (forceWriteWaiters != null) {
                 forceWriteWaiters.recycle();
@@ -601,6 +613,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     static final int PADDING_MASK = -0x100;
+    // a record holding the compressed records of a group write
+    static final int COMPRESSED_GROUP_MASK = -0x200;
+    // mask, codec, raw length and compressed length
+    static final int COMPRESSED_GROUP_HEADER_SIZE = 16;
+    static final int COMPRESSION_CODEC_LZ4 = 1;
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
 
     static void writePaddingBytes(JournalChannel jc, ByteBuf paddingBuffer, int journalAlignSize)
             throws IOException {
@@ -626,6 +644,47 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * Write the records of a group write to the journal file. They are written as a single compressed
+     * record, unless compressing them does not save space.
+     */
+    private void writeCompressedGroup(JournalChannel jc, ByteBuf groupBuffer, ByteBuf compressedBuffer)
+            throws IOException {
+        int rawSize = groupBuffer.readableBytes();
+        if (rawSize == 0) {
+            return;
+        }
+        long startTime = MathUtils.nowInNano();
+        LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+        int maxCompressedSize = compressor.maxCompressedLength(rawSize);
+        compressedBuffer.clear();
+        compressedBuffer.ensureWritable(COMPRESSED_GROUP_HEADER_SIZE + maxCompressedSize);
+        // both buffers are heap buffers
+        int compressedSize = compressor.compress(
+                groupBuffer.array(), groupBuffer.arrayOffset() + groupBuffer.readerIndex(), rawSize,
+                compressedBuffer.array(), compressedBuffer.arrayOffset() + COMPRESSED_GROUP_HEADER_SIZE,
+                maxCompressedSize);
+        journalStats.getJournalCompressionStats()
+            .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        journalStats.getJournalCompressionRatioStats().registerSuccessfulValue(compressedSize * 100L / rawSize);
+
+        ByteBuf toWrite;
+        if (COMPRESSED_GROUP_HEADER_SIZE + compressedSize < rawSize) {
+            compressedBuffer.writeInt(COMPRESSED_GROUP_MASK);
+            compressedBuffer.writeInt(COMPRESSION_CODEC_LZ4);
+            compressedBuffer.writeInt(rawSize);
+            compressedBuffer.writeInt(compressedSize);
+            compressedBuffer.writerIndex(COMPRESSED_GROUP_HEADER_SIZE + compressedSize);
+            toWrite = compressedBuffer;
+        } else {
+            toWrite = groupBuffer;
+        }
+        jc.preAllocIfNeeded(toWrite.readableBytes());
+        jc.getBufferedChannel().write(toWrite);
+        journalStats.getJournalCompressedWriteBytes().add(toWrite.readableBytes());
+        groupBuffer.clear();
+    }
+
     static final long MB = 1024 * 1024L;
     static final int KB = 1024;
     // max journal file size
@@ -640,6 +699,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     final File journalDirectory;
     final ServerConfiguration conf;
     final ForceWriteThread forceWriteThread;
+    // when set, the force writes are issued by the coordinator shared by the journals of the device
+    private JournalForceWriteCoordinator forceWriteCoordinator;
     final FileChannelProvider fileChannelProvider;
 
     // Time after which we will stop grouping and issue the flush
@@ -653,6 +714,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
+    // whether the records of each group write are compressed together
+    private final boolean compressGroupWrites;
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
     private final long journalPageCacheFlushIntervalMSec;
@@ -700,12 +763,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
 
+        if (conf.getJournalQueueStripes() > 1) {
+            // Queue the entries of the different write threads to separate rings
+            queue = new StripedBlockingQueue<>(conf.getJournalQueueSize(), conf.getJournalQueueStripes(),
+                    conf.isBusyWaitEnabled());
+        } else if (conf.isBusyWaitEnabled()) {
+            queue = new BlockingMpscQueue<>(conf.getJournalQueueSize());
+        } else {
+            queue = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
+        }
         if (conf.isBusyWaitEnabled()) {
             // To achieve lower latency, use busy-wait blocking queue implementation
-            queue = new BlockingMpscQueue<>(conf.getJournalQueueSize());
             forceWriteRequests = new BlockingMpscQueue<>(conf.getJournalQueueSize());
         } else {
-            queue = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
             forceWriteRequests = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
         }
 
@@ -726,6 +796,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
+        this.compressGroupWrites = journalFormatVersionToWrite >= JournalChannel.V7;
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
         if (conf.getNumJournalCallbackThreads() > 0) {
@@ -771,6 +842,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         return this.journalStats;
     }
 
+    /**
+     * Hand the force writes of this journal to a coordinator shared with the other journals of
+     * the same device. Must be called before the journal is started.
+     */
+    void setForceWriteCoordinator(JournalForceWriteCoordinator forceWriteCoordinator) {
+        this.forceWriteCoordinator = forceWriteCoordinator;
+    }
+
     public File getJournalDirectory() {
         return journalDirectory;
     }
@@ -886,6 +965,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             continue;
                         }
                         isPaddingRecord = true;
+                    } else if (len == COMPRESSED_GROUP_MASK && journalVersion >= JournalChannel.V7) {
+                        if (!scanCompressedGroup(recLog, journalVersion, offset, scanner)) {
+                            break;
+                        }
+                        continue;
                     } else {
                         LOG.error("Invalid record found with negative length: {}", len);
                         throw new IOException("Invalid record found with negative length " + len);
@@ -912,6 +996,76 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * Scan the records of a compressed group write, whose mask was just read.
+     *
+     * <p>A group whose body does not decompress into whole records is a group torn by a crash while it
+     * was written: none of its entries were acknowledged, so it ends the journal like a short record does.
+     *
+     * @return false if the compressed group was not fully written to the journal file
+     */
+    private static boolean scanCompressedGroup(JournalChannel recLog, int journalVersion, long offset,
+                                               JournalScanner scanner) throws IOException {
+        ByteBuffer headerBuff = ByteBuffer.allocate(COMPRESSED_GROUP_HEADER_SIZE - 4);
+        if (fullRead(recLog, headerBuff) != headerBuff.capacity()) {
+            return false;
+        }
+        headerBuff.flip();
+        int codec = headerBuff.getInt();
+        int rawSize = headerBuff.getInt();
+        int compressedSize = headerBuff.getInt();
+        if (codec == 0 && rawSize == 0 && compressedSize == 0) {
+            // only the mask reached the preallocated file
+            return false;
+        }
+        if (codec != COMPRESSION_CODEC_LZ4 || rawSize < 0 || compressedSize < 0) {
+            LOG.error("Invalid compressed group found at offset {}: codec {}, raw size {}, compressed size {}",
+                    offset, codec, rawSize, compressedSize);
+            throw new IOException("Invalid compressed group found at offset " + offset);
+        }
+        ByteBuffer compressed = ByteBuffer.allocate(compressedSize);
+        if (fullRead(recLog, compressed) != compressedSize) {
+            // This is where we left off writing
+            return false;
+        }
+        compressed.flip();
+        ByteBuffer records = ByteBuffer.allocate(rawSize);
+        LZ4SafeDecompressor decompressor = LZ4_FACTORY.safeDecompressor();
+        try {
+            int decompressedSize = decompressor.decompress(compressed.array(), 0, compressedSize,
+                    records.array(), 0, rawSize);
+            if (decompressedSize != rawSize) {
+                LOG.warn("Torn compressed group found at offset {}: decompressed {} bytes out of {}",
+                        offset, decompressedSize, rawSize);
+                return false;
+            }
+        } catch (LZ4Exception e) {
+            LOG.warn("Torn compressed group found at offset {}: {}", offset, e.getMessage());
+            return false;
+        }
+
+        // check that the group holds whole records before replaying any of them
+        int position = 0;
+        while (position < rawSize) {
+            int len = rawSize - position >= 4 ? records.getInt(position) : -1;
+            if (len < 0 || len > rawSize - position - 4) {
+                LOG.warn("Torn compressed group found at offset {}: invalid record of length {}", offset, len);
+                return false;
+            }
+            position += 4 + len;
+        }
+
+        // the group holds the records of its entries, all located at the offset of the group
+        while (records.hasRemaining()) {
+            int len = records.getInt();
+            ByteBuffer recBuff = records.slice();
+            recBuff.limit(len);
+            records.position(records.position() + len);
+            scanner.process(journalVersion, offset, recBuff);
+        }
+        return true;
+    }
+
     public void logAddEntry(ByteBuffer entry, boolean ackBeforeSync, WriteCallback cb, Object ctx)
             throws InterruptedException {
         logAddEntry(Unpooled.wrappedBuffer(entry), ackBeforeSync, cb, ctx);
@@ -1000,10 +1154,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         ByteBuf lenBuff = Unpooled.buffer(4);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
+        // records of the current group write, staged to be compressed when it is flushed
+        ByteBuf groupBuff = compressGroupWrites ? Unpooled.buffer(journalWriteBufferSize) : null;
+        ByteBuf compressedBuff = compressGroupWrites ? Unpooled.buffer(journalWriteBufferSize) : null;
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
-        forceWriteThread.start();
+        if (forceWriteCoordinator == null) {
+            forceWriteThread.start();
+        }
         Stopwatch journalCreationWatcher = Stopwatch.createUnstarted();
         Stopwatch journalFlushWatcher = Stopwatch.createUnstarted();
         long batchSize = 0;
@@ -1090,7 +1249,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getFlushMaxWaitCounter().inc();
                         } else if (qe != null
                                 && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                                || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                                || (bc.position() + (compressGroupWrites ? groupBuff.readableBytes() : 0)
+                                    > lastFlushPosition + bufferedWritesThreshold))) {
                             // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                             groupWhenTimeout = false;
                             shouldFlush = true;
@@ -1107,6 +1267,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                         // toFlush is non null and not empty so should be safe to access getFirst
                         if (shouldFlush) {
+                            if (compressGroupWrites) {
+                                writeCompressedGroup(logFile, groupBuff, compressedBuff);
+                            }
                             if (journalFormatVersionToWrite >= JournalChannel.V5) {
                                 writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                             }
@@ -1155,8 +1318,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                                     || shouldRolloverJournal
                                     || (System.currentTimeMillis() - lastFlushTimeMs
                                     >= journalPageCacheFlushIntervalMSec)) {
-                                forceWriteRequests.put(createForceWriteRequest(logFile, logId, lastFlushPosition,
-                                        toFlush, shouldRolloverJournal, false));
+                                ForceWriteRequest forceWriteRequest = createForceWriteRequest(logFile, logId,
+                                        lastFlushPosition, toFlush, shouldRolloverJournal, false);
+                                if (forceWriteCoordinator != null) {
+                                    forceWriteCoordinator.forceWrite(forceWriteRequest);
+                                } else {
+                                    forceWriteRequests.put(forceWriteRequest);
+                                }
                                 lastFlushTimeMs = System.currentTimeMillis();
                             }
                             toFlush = entryListRecycler.newInstance();
@@ -1199,14 +1367,20 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     batchSize += (4 + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
+                    if (compressGroupWrites) {
+                        // the group is written to the journal file when it is flushed
+                        groupBuff.writeInt(entrySize);
+                        groupBuff.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                    } else {
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
 
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                    }
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     qe.entry.release();
                 }
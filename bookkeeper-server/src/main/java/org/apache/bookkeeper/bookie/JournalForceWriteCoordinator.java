@@ -0,0 +1,172 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Journal.ForceWriteRequest;
+import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
+import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Issues the force writes of the journals which are stored on the same device.
+ *
+ * <p>Instead of each journal syncing its own file from its force write thread, the journals of a device
+ * hand their force write requests to a single coordinator. The coordinator drains all the pending
+ * requests, syncs each journal file they refer to once, in a single round, and then acknowledges all the
+ * waiting entries together. This bounds the flush commands sent to the device to one per journal for
+ * each round, whatever the number of journals waiting to be synced.
+ *
+ * <p>The coordinator acknowledges the entries through the callback executors of the journals, so it must be
+ * shut down before the journals, as a journal shuts down its own force write thread before its callbacks.
+ */
+class JournalForceWriteCoordinator extends BookieCriticalThread {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalForceWriteCoordinator.class);
+
+    private final String device;
+    private final List<Journal> journals;
+    private final boolean busyWaitEnabled;
+    private final BlockingQueue<ForceWriteRequest> forceWriteRequests;
+    private volatile boolean running = true;
+
+    JournalForceWriteCoordinator(String device, List<Journal> journals, ServerConfiguration conf) {
+        super("ForceWriteCoordinator-" + device);
+        this.device = device;
+        this.journals = journals;
+        this.busyWaitEnabled = conf.isBusyWaitEnabled();
+        int queueSize = conf.getJournalQueueSize() * journals.size();
+        if (conf.isBusyWaitEnabled()) {
+            this.forceWriteRequests = new BlockingMpscQueue<>(queueSize);
+        } else {
+            this.forceWriteRequests = new ArrayBlockingQueue<>(queueSize);
+        }
+        for (Journal journal : journals) {
+            journal.setForceWriteCoordinator(this);
+        }
+    }
+
+    /**
+     * Queue a force write request of one of the journals of the device.
+     */
+    void forceWrite(ForceWriteRequest request) throws InterruptedException {
+        forceWriteRequests.put(request);
+    }
+
+    @Override
+    public void run() {
+        LOG.info("ForceWrite coordinator started for the {} journals on {}", journals.size(), device);
+        ThreadRegistry.register(super.getName(), 0);
+
+        if (busyWaitEnabled) {
+            try {
+                CpuAffinity.acquireCore();
+            } catch (Exception e) {
+                LOG.warn("Unable to acquire CPU core for Journal ForceWrite coordinator: {}", e.getMessage(), e);
+            }
+        }
+
+        List<ForceWriteRequest> requests = new ArrayList<>();
+        // the files to sync in the current round, with the first request referring to each of them
+        Map<JournalChannel, ForceWriteRequest> filesToSync = new IdentityHashMap<>();
+        while (running) {
+            try {
+                requests.add(forceWriteRequests.take());
+                forceWriteRequests.drainTo(requests);
+
+                for (ForceWriteRequest request : requests) {
+                    filesToSync.putIfAbsent(request.getLogFile(), request);
+                }
+                for (Map.Entry<JournalChannel, ForceWriteRequest> file : filesToSync.entrySet()) {
+                    syncFile(file.getKey(), file.getValue().getJournal());
+                }
+
+                // all the files are synced, acknowledge the waiting entries in the order of the requests
+                for (ForceWriteRequest request : requests) {
+                    int numWaiters = request.process(false);
+                    request.getJournal().getJournalStats().getForceWriteGroupingCountStats()
+                        .registerSuccessfulValue(numWaiters);
+                }
+            } catch (IOException ioe) {
+                LOG.error("I/O exception in ForceWrite coordinator", ioe);
+                closeFiles(requests);
+                running = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.info("ForceWrite coordinator interrupted");
+                closeFiles(requests);
+                running = false;
+            } finally {
+                requests.forEach(ForceWriteRequest::recycle);
+                requests.clear();
+                filesToSync.clear();
+            }
+        }
+        // the requests left are not acknowledged, as the ones left in the queue of a force write thread
+        forceWriteRequests.drainTo(requests);
+        closeFiles(requests);
+        requests.forEach(ForceWriteRequest::recycle);
+        requests.clear();
+
+        // the journals of the device can no longer be synced, let them exit
+        for (Journal journal : journals) {
+            journal.interrupt();
+        }
+    }
+
+    @VisibleForTesting
+    void syncFile(JournalChannel logFile, Journal journal) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            logFile.forceWrite(false);
+            journal.getJournalStats().recordJournalSync(MathUtils.elapsedNanos(startTime));
+        } catch (IOException e) {
+            journal.getJournalStats().getJournalSyncStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private static void closeFiles(List<ForceWriteRequest> requests) {
+        // close is idempotent
+        for (ForceWriteRequest request : requests) {
+            request.closeFileIfNecessary();
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        this.interrupt();
+        this.join();
+    }
+}
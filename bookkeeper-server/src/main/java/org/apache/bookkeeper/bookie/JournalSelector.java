@@ -0,0 +1,192 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Selects the journal which records the entries of a ledger in a bookie with multiple journals.
+ *
+ * <p>A ledger sticks to the journal it was assigned to as long as it is written, so that the entries
+ * and the force ledger requests of the ledger are ordered by a single journal. A new ledger, or a ledger
+ * which was not written for the idle timeout, is assigned to the least loaded journal. The load of a
+ * journal is the depth of its queue weighted by the moving average of its sync latency.
+ *
+ * <p>Whenever a ledger is assigned to a journal, the selector notifies an {@link AssignmentListener} before any
+ * record of the ledger can be queued to that journal, so that the master key of the ledger can be recorded first.
+ * Otherwise, the entries recorded in the new journal could be replayed before the key recorded in the previous one.
+ */
+class JournalSelector {
+
+    /**
+     * Listener notified when a ledger is assigned to a journal.
+     */
+    interface AssignmentListener {
+        void onAssigned(Journal journal) throws InterruptedException;
+    }
+
+    // sync latency assumed for a journal which was never synced
+    private static final long MIN_SYNC_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static class Assignment {
+        // -1 until the listener of the first assignment returned
+        volatile int journalIndex;
+        volatile long lastAccessNanos;
+        // set by the sweep before removing the assignment, a selection seeing it looks the ledger up again
+        volatile boolean removed;
+
+        Assignment(int journalIndex, long lastAccessNanos) {
+            this.journalIndex = journalIndex;
+            this.lastAccessNanos = lastAccessNanos;
+        }
+    }
+
+    private final List<Journal> journals;
+    private final long idleTimeoutNanos;
+    private final ConcurrentLongHashMap<Assignment> assignments =
+            ConcurrentLongHashMap.<Assignment>newBuilder().autoShrink(true).build();
+    // journal the least loaded lookup starts from, so that equally loaded journals get ledgers in turn
+    private final AtomicInteger nextJournal = new AtomicInteger();
+    private volatile long lastSweepNanos;
+
+    JournalSelector(List<Journal> journals, long idleTimeoutMs) {
+        this.journals = journals;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.lastSweepNanos = MathUtils.nowInNano();
+    }
+
+    /**
+     * Select the journal to record a new entry of the given ledger, moving the ledger to the least loaded
+     * journal if it is new or was idle.
+     *
+     * @param listener notified of the journal the ledger is assigned to, if it is new or was idle
+     */
+    Journal select(long ledgerId, AssignmentListener listener) throws InterruptedException {
+        while (true) {
+            long now = MathUtils.nowInNano();
+            Assignment assignment = assignments.get(ledgerId);
+            if (assignment == null) {
+                sweepIdleAssignments(now);
+                assignment = assignments.computeIfAbsent(ledgerId, id -> new Assignment(-1, now));
+            }
+            if (assignment.journalIndex < 0 || now - assignment.lastAccessNanos > idleTimeoutNanos) {
+                synchronized (assignment) {
+                    if (!assignment.removed && (assignment.journalIndex < 0
+                            || now - assignment.lastAccessNanos > idleTimeoutNanos)) {
+                        int journalIndex = leastLoadedJournal();
+                        // The other threads use the new journal once the listener returned
+                        listener.onAssigned(journals.get(journalIndex));
+                        assignment.lastAccessNanos = now;
+                        assignment.journalIndex = journalIndex;
+                    }
+                }
+            }
+            if (touch(assignment, now)) {
+                return journals.get(assignment.journalIndex);
+            }
+        }
+    }
+
+    /**
+     * Get the journal the given ledger is currently assigned to, without moving it. Used for the requests
+     * that must be recorded by the journal holding the previous entries of the ledger.
+     *
+     * @param listener notified of the journal the ledger is assigned to, if it was not assigned yet
+     */
+    Journal current(long ledgerId, AssignmentListener listener) throws InterruptedException {
+        Assignment assignment = assignments.get(ledgerId);
+        if (assignment == null || assignment.journalIndex < 0 || !touch(assignment, MathUtils.nowInNano())) {
+            return select(ledgerId, listener);
+        }
+        return journals.get(assignment.journalIndex);
+    }
+
+    /**
+     * Record an access to the assignment, unless it was removed by the sweep in the meantime.
+     *
+     * <p>The access is written before checking the removed flag, and the sweep sets the flag before checking the
+     * access again, so either the selection sees the flag and looks the ledger up again, or the sweep sees the
+     * access and keeps the assignment.
+     *
+     * @return false if the assignment was removed
+     */
+    private static boolean touch(Assignment assignment, long now) {
+        assignment.lastAccessNanos = now;
+        return !assignment.removed;
+    }
+
+    long getNumAssignments() {
+        return assignments.size();
+    }
+
+    private int leastLoadedJournal() {
+        int numJournals = journals.size();
+        int start = MathUtils.signSafeMod(nextJournal.getAndIncrement(), numJournals);
+        int selected = start;
+        long minLoad = Long.MAX_VALUE;
+        for (int i = 0; i < numJournals; i++) {
+            int index = (start + i) % numJournals;
+            long load = load(journals.get(index));
+            if (load < minLoad) {
+                minLoad = load;
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    private static long load(Journal journal) {
+        long syncLatency = Math.max(journal.getJournalStats().getJournalSyncLatencyAvgNanos(),
+                MIN_SYNC_LATENCY_NANOS);
+        return (journal.getJournalQueueLength() + 1L) * syncLatency;
+    }
+
+    private void sweepIdleAssignments(long now) {
+        long lastSweep = lastSweepNanos;
+        if (now - lastSweep < idleTimeoutNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (lastSweepNanos != lastSweep) {
+                return;
+            }
+            lastSweepNanos = now;
+        }
+        assignments.removeIf((ledgerId, assignment) -> {
+            long lastAccessNanos = assignment.lastAccessNanos;
+            if (now - lastAccessNanos <= idleTimeoutNanos) {
+                return false;
+            }
+            // only remove the assignment if it was not accessed since it was found idle
+            assignment.removed = true;
+            if (assignment.lastAccessNanos == lastAccessNanos) {
+                return true;
+            }
+            assignment.removed = false;
+            return false;
+        });
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledDirectByteBuf;
+import io.netty.util.IllegalReferenceCountException;
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.util.internal.PlatformDependent;
+// CHECKSTYLE.ON: IllegalImport
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory mappings of the sealed entry logs, used to read the entries without copying them
+ * out of the page cache.
+ *
+ * <p>A mapped log is a buffer over the whole file, the readers return retained slices of it.
+ * At most <i>maxMappedLogs</i> logs are mapped at once, the least recently read log is dropped
+ * to map a new one. A dropped log, as well as a log removed once compacted, is unmapped when
+ * the last slice read from it is released.
+ *
+ * <p>The logs are mapped copy-on-write, so that the mapping can never modify the files.
+ */
+class MappedEntryLogs {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLogs.class);
+
+    private final ByteBufAllocator allocator;
+    private final int maxMappedLogs;
+    private final Map<Long, MappedLog> mappedLogs = new ConcurrentHashMap<>();
+
+    MappedEntryLogs(ByteBufAllocator allocator, int maxMappedLogs) {
+        checkArgument(maxMappedLogs > 0, "The max number of mapped entry logs must be positive: %s", maxMappedLogs);
+        this.allocator = allocator;
+        this.maxMappedLogs = maxMappedLogs;
+    }
+
+    /**
+     * Get the mapped log with the given id, if it is mapped.
+     *
+     * @return the retained buffer over the log, to be released by the caller, or null if the log is not mapped
+     */
+    ByteBuf get(long logId) {
+        MappedLog log = mappedLogs.get(logId);
+        if (log == null) {
+            return null;
+        }
+        log.lastAccess = System.nanoTime();
+        try {
+            return log.retain();
+        } catch (IllegalReferenceCountException e) {
+            // dropped and unmapped concurrently
+            return null;
+        }
+    }
+
+    /**
+     * Map the given sealed log, unless it is already mapped.
+     *
+     * @return the retained buffer over the log, to be released by the caller, or null if the log is too large
+     *         to be mapped
+     */
+    synchronized ByteBuf map(long logId, File file) throws IOException {
+        MappedLog log = mappedLogs.get(logId);
+        if (log != null) {
+            log.lastAccess = System.nanoTime();
+            return log.retain();
+        }
+
+        MappedByteBuffer mapping;
+        // the channel can be closed once mapped, the mapping stays valid until unmapped
+        try (FileChannel fc = new RandomAccessFile(file, "rw").getChannel()) {
+            long size = fc.size();
+            if (size > Integer.MAX_VALUE) {
+                return null;
+            }
+            mapping = fc.map(FileChannel.MapMode.PRIVATE, 0, size);
+        }
+
+        while (mappedLogs.size() >= maxMappedLogs) {
+            dropLeastRecentlyRead();
+        }
+        log = new MappedLog(allocator, logId, mapping);
+        mappedLogs.put(logId, log);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Mapped entry log {} of {} bytes", logId, mapping.capacity());
+        }
+        return log.retain();
+    }
+
+    /**
+     * Drop the mapping of the given log, it is unmapped once the slices read from it are released.
+     */
+    synchronized void remove(long logId) {
+        MappedLog log = mappedLogs.remove(logId);
+        if (log != null) {
+            log.release();
+        }
+    }
+
+    synchronized void close() {
+        mappedLogs.values().forEach(MappedLog::release);
+        mappedLogs.clear();
+    }
+
+    int size() {
+        return mappedLogs.size();
+    }
+
+    boolean isMapped(long logId) {
+        return mappedLogs.containsKey(logId);
+    }
+
+    private void dropLeastRecentlyRead() {
+        MappedLog lru = null;
+        for (MappedLog log : mappedLogs.values()) {
+            if (lru == null || log.lastAccess - lru.lastAccess < 0) {
+                lru = log;
+            }
+        }
+        remove(lru.logId);
+    }
+
+    private static class MappedLog extends UnpooledDirectByteBuf {
+        private final long logId;
+        private final MappedByteBuffer mapping;
+        private volatile long lastAccess = System.nanoTime();
+
+        MappedLog(ByteBufAllocator allocator, long logId, MappedByteBuffer mapping) {
+            super(allocator, mapping, mapping.capacity());
+            this.logId = logId;
+            this.mapping = mapping;
+            writerIndex(mapping.capacity());
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            PlatformDependent.freeDirectBuffer(mapping);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Unmapped entry log {}", logId);
+            }
+        }
+    }
+}
@@ -0,0 +1,461 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.IteratorUtility;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EntryMemTable} which keeps the entries off-heap.
+ *
+ * <p>The entries are copied into direct memory chunks handed out by an {@link OffHeapArena}, and indexed
+ * by primitive sorted arrays: for each ledger, the ids of its entries and their locations in the arena.
+ * The entries of a ledger are usually added in order, so adding an entry is mostly an append to the
+ * arrays of its ledger. This avoids the objects allocated for each entry of the skip list, and the memory
+ * of a snapshot is released at once when it has been flushed.
+ *
+ * <p>The snapshot and flush contract is the same as {@link EntryMemTable}: the entries are flushed in
+ * the order of the ledger ids, then of the entry ids.
+ */
+class OffHeapEntryMemTable extends EntryMemTable {
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapEntryMemTable.class);
+
+    /**
+     * Bump-the-pointer allocator of direct memory chunks, the off-heap counterpart of {@link SkipListArena}.
+     * Each allocation holds the length of an entry followed by its content. Entries larger than the max
+     * allocation size get a chunk of their own.
+     */
+    static class OffHeapArena {
+        private static final int LENGTH_SIZE = 4;
+
+        private final ByteBufAllocator allocator;
+        private final int chunkSize;
+        private final int maxAlloc;
+        private volatile ByteBuf[] chunks = new ByteBuf[16];
+        private int numChunks = 0;
+        // chunk the allocations are sliced from, -1 if there is none yet
+        private int curChunk = -1;
+        // offset of the next allocation in the current chunk
+        private int nextFreeOffset;
+
+        OffHeapArena(ByteBufAllocator allocator, int chunkSize, int maxAlloc) {
+            this.allocator = allocator;
+            this.chunkSize = chunkSize;
+            this.maxAlloc = maxAlloc;
+        }
+
+        /**
+         * Copy the entry into the arena.
+         *
+         * @return the location of the entry in the arena
+         */
+        long add(ByteBuffer entry) {
+            int length = entry.remaining();
+            long location = allocate(LENGTH_SIZE + length);
+            ByteBuf chunk = chunks[chunkIndex(location)];
+            int offset = chunkOffset(location);
+            chunk.setInt(offset, length);
+            chunk.setBytes(offset + LENGTH_SIZE, entry);
+            return location;
+        }
+
+        private synchronized long allocate(int size) {
+            if (size > maxAlloc) {
+                // do not waste the remaining of the current chunk for a large entry
+                return ((long) addChunk(size)) << 32;
+            }
+            if (curChunk < 0 || nextFreeOffset + size > chunkSize) {
+                curChunk = addChunk(chunkSize);
+                nextFreeOffset = 0;
+            }
+            long location = (((long) curChunk) << 32) | nextFreeOffset;
+            nextFreeOffset += size;
+            return location;
+        }
+
+        private int addChunk(int size) {
+            ByteBuf[] current = chunks;
+            if (numChunks == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[numChunks] = allocator.directBuffer(size, size);
+            // publish the chunk before handing out allocations from it
+            chunks = current;
+            return numChunks++;
+        }
+
+        int length(long location) {
+            return chunks[chunkIndex(location)].getInt(chunkOffset(location));
+        }
+
+        /**
+         * Get a slice of the content of the entry at the given location. It is valid until the arena
+         * is released.
+         */
+        ByteBuf slice(long location) {
+            ByteBuf chunk = chunks[chunkIndex(location)];
+            int offset = chunkOffset(location);
+            return chunk.slice(offset + LENGTH_SIZE, chunk.getInt(offset));
+        }
+
+        byte[] copy(long location) {
+            ByteBuf chunk = chunks[chunkIndex(location)];
+            int offset = chunkOffset(location);
+            byte[] data = new byte[chunk.getInt(offset)];
+            chunk.getBytes(offset + LENGTH_SIZE, data);
+            return data;
+        }
+
+        synchronized void release() {
+            for (int i = 0; i < numChunks; i++) {
+                chunks[i].release();
+                chunks[i] = null;
+            }
+            numChunks = 0;
+            curChunk = -1;
+        }
+
+        private static int chunkIndex(long location) {
+            return (int) (location >>> 32);
+        }
+
+        private static int chunkOffset(long location) {
+            return (int) location;
+        }
+    }
+
+    /**
+     * The entries of a ledger: their ids, sorted, and their locations in the arena.
+     */
+    private static class LedgerEntries {
+        private long[] entryIds = new long[16];
+        private long[] locations = new long[16];
+        private int size = 0;
+
+        synchronized boolean contains(long entryId) {
+            return indexOf(entryId) >= 0;
+        }
+
+        synchronized boolean add(long entryId, long location) {
+            int index;
+            if (size == 0 || entryIds[size - 1] < entryId) {
+                // common case, the entries of a ledger are added in order
+                index = size;
+            } else {
+                index = Arrays.binarySearch(entryIds, 0, size, entryId);
+                if (index >= 0) {
+                    return false;
+                }
+                index = -(index + 1);
+            }
+            if (size == entryIds.length) {
+                entryIds = Arrays.copyOf(entryIds, size * 2);
+                locations = Arrays.copyOf(locations, size * 2);
+            }
+            System.arraycopy(entryIds, index, entryIds, index + 1, size - index);
+            System.arraycopy(locations, index, locations, index + 1, size - index);
+            entryIds[index] = entryId;
+            locations[index] = location;
+            size++;
+            return true;
+        }
+
+        // returns -1 if the entry is not present
+        synchronized long location(long entryId) {
+            int index = indexOf(entryId);
+            return index >= 0 ? locations[index] : -1L;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long lastEntryId() {
+            return entryIds[size - 1];
+        }
+
+        synchronized long lastLocation() {
+            return locations[size - 1];
+        }
+
+        synchronized long[] entryIds() {
+            return Arrays.copyOf(entryIds, size);
+        }
+
+        private int indexOf(long entryId) {
+            if (size > 0 && entryIds[size - 1] == entryId) {
+                return size - 1;
+            }
+            return Arrays.binarySearch(entryIds, 0, size, entryId);
+        }
+    }
+
+    /**
+     * The entries added to the memtable between two snapshots.
+     */
+    private static class EntryTable {
+        static final EntryTable EMPTY_VALUE = new EntryTable(Checkpoint.MAX, null);
+
+        final Checkpoint cp;
+        final OffHeapArena arena;
+        final ConcurrentLongHashMap<LedgerEntries> ledgers =
+                ConcurrentLongHashMap.<LedgerEntries>newBuilder().build();
+
+        EntryTable(Checkpoint cp, OffHeapArena arena) {
+            this.cp = cp;
+            this.arena = arena;
+        }
+
+        int compareTo(final Checkpoint cp) {
+            return this.cp.compareTo(cp);
+        }
+
+        boolean isEmpty() {
+            return ledgers.isEmpty();
+        }
+    }
+
+    private final ByteBufAllocator byteBufAllocator;
+
+    private volatile EntryTable table;
+
+    // Snapshot of the memtable. Made for flusher.
+    private volatile EntryTable snapshotTable;
+
+    public OffHeapEntryMemTable(final ServerConfiguration conf, final CheckpointSource source,
+                                final StatsLogger statsLogger, final ByteBufAllocator byteBufAllocator) {
+        super(conf, source, statsLogger, false);
+        this.byteBufAllocator = byteBufAllocator;
+        this.table = newTable();
+        this.snapshotTable = EntryTable.EMPTY_VALUE;
+    }
+
+    private EntryTable newTable() {
+        return new EntryTable(checkpointSource.newCheckpoint(),
+                new OffHeapArena(byteBufAllocator, conf.getSkipListArenaChunkSize(),
+                        conf.getSkipListArenaMaxAllocSize()));
+    }
+
+    @Override
+    void dump() {
+        for (EntryTable t : new EntryTable[] { table, snapshotTable }) {
+            t.ledgers.forEach((ledgerId, entries) -> {
+                for (long entryId : entries.entryIds()) {
+                    LOG.info("{}:{}", ledgerId, entryId);
+                }
+            });
+        }
+    }
+
+    @Override
+    Checkpoint snapshot(Checkpoint oldCp) throws IOException {
+        Checkpoint cp = null;
+        // No-op if snapshot currently has entries
+        if (this.snapshotTable.isEmpty() && this.table.compareTo(oldCp) < 0) {
+            final long startTimeNanos = MathUtils.nowInNano();
+            this.lock.writeLock().lock();
+            try {
+                if (this.snapshotTable.isEmpty() && !this.table.isEmpty()
+                        && this.table.compareTo(oldCp) < 0) {
+                    this.snapshotTable = this.table;
+                    this.table = newTable();
+                    // get the checkpoint of the memtable.
+                    cp = this.table.cp;
+                    this.size.set(0);
+                }
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+
+            if (null != cp) {
+                memTableStats.getSnapshotStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                memTableStats.getSnapshotStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+        return cp;
+    }
+
+    @Override
+    long flushSnapshot(final SkipListFlusher flusher, Checkpoint checkpoint) throws IOException {
+        long size = 0;
+        if (this.snapshotTable.compareTo(checkpoint) < 0) {
+            synchronized (this) {
+                EntryTable keyValues = this.snapshotTable;
+                if (keyValues.compareTo(checkpoint) < 0 && !keyValues.isEmpty()) {
+                    List<Long> ledgerIds = keyValues.ledgers.keys();
+                    Collections.sort(ledgerIds);
+                    for (long ledgerId : ledgerIds) {
+                        LedgerEntries entries = keyValues.ledgers.get(ledgerId);
+                        boolean ledgerDeleted = false;
+                        // the snapshot is no longer modified, the lock is never contended
+                        synchronized (entries) {
+                            for (int i = 0; i < entries.size; i++) {
+                                long location = entries.locations[i];
+                                size += keyValues.arena.length(location);
+                                if (!ledgerDeleted) {
+                                    try {
+                                        flusher.process(ledgerId, entries.entryIds[i],
+                                                keyValues.arena.slice(location));
+                                    } catch (NoLedgerException exception) {
+                                        ledgerDeleted = true;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    memTableStats.getFlushBytesCounter().add(size);
+                    clearSnapshot(keyValues);
+                }
+            }
+        }
+
+        skipListSemaphore.release((int) size);
+        return size;
+    }
+
+    private void clearSnapshot(final EntryTable keyValues) {
+        this.lock.writeLock().lock();
+        try {
+            assert this.snapshotTable == keyValues;
+            this.snapshotTable = EntryTable.EMPTY_VALUE;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        // no reader can access the snapshot anymore
+        keyValues.arena.release();
+    }
+
+    @Override
+    long putEntry(long ledgerId, long entryId, final ByteBuffer entry) throws IOException {
+        EntryTable t = this.table;
+        LedgerEntries entries = t.ledgers.computeIfAbsent(ledgerId, id -> new LedgerEntries());
+        if (entries.contains(entryId)) {
+            return 0;
+        }
+        int length = entry.remaining();
+        long location = t.arena.add(entry);
+        if (!entries.add(entryId, location)) {
+            // lost a race with a concurrent add of the same entry, its copy in the arena is wasted
+            return 0;
+        }
+        size.addAndGet(length);
+        return length;
+    }
+
+    @Override
+    EntryKeyValue findEntry(long ledgerId, long entryId) {
+        EntryKeyValue value = findEntry(this.table, ledgerId, entryId);
+        if (value == null) {
+            value = findEntry(this.snapshotTable, ledgerId, entryId);
+        }
+        return value;
+    }
+
+    private static EntryKeyValue findEntry(EntryTable t, long ledgerId, long entryId) {
+        LedgerEntries entries = t.ledgers.get(ledgerId);
+        if (entries == null) {
+            return null;
+        }
+        long location = entries.location(entryId);
+        if (location < 0) {
+            return null;
+        }
+        return new EntryKeyValue(ledgerId, entryId, t.arena.copy(location));
+    }
+
+    @Override
+    EntryKeyValue findLastEntry(long ledgerId) {
+        EntryKeyValue value = findLastEntry(this.table, ledgerId);
+        if (value == null) {
+            value = findLastEntry(this.snapshotTable, ledgerId);
+        }
+        return value;
+    }
+
+    private static EntryKeyValue findLastEntry(EntryTable t, long ledgerId) {
+        LedgerEntries entries = t.ledgers.get(ledgerId);
+        if (entries == null) {
+            return null;
+        }
+        synchronized (entries) {
+            if (entries.size() == 0) {
+                return null;
+            }
+            return new EntryKeyValue(ledgerId, entries.lastEntryId(), t.arena.copy(entries.lastLocation()));
+        }
+    }
+
+    @Override
+    boolean isEmpty() {
+        return size.get() == 0 && snapshotTable.isEmpty();
+    }
+
+    @Override
+    PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) {
+        long[] entriesInTable;
+        long[] entriesInSnapshot;
+        this.lock.readLock().lock();
+        try {
+            entriesInTable = entryIds(this.table, ledgerId);
+            entriesInSnapshot = entryIds(this.snapshotTable, ledgerId);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+        return IteratorUtility.mergePrimitiveLongIterator(Arrays.stream(entriesInTable).iterator(),
+                Arrays.stream(entriesInSnapshot).iterator());
+    }
+
+    private static long[] entryIds(EntryTable t, long ledgerId) {
+        LedgerEntries entries = t.ledgers.get(ledgerId);
+        return entries != null ? entries.entryIds() : new long[0];
+    }
+
+    @Override
+    public void close() throws Exception {
+        this.lock.writeLock().lock();
+        try {
+            this.table.arena.release();
+            if (this.snapshotTable.arena != null) {
+                this.snapshotTable.arena.release();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+}
@@ -32,6 +32,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DIRS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_MAX_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_BYTES;
@@ -92,6 +94,10 @@ public class BookieStats {
     private final Gauge<Integer> journalDirsGauge;
     @StatsDoc(name = JOURNAL_QUEUE_MAX_SIZE, help = "maximum length of a journal queue")
     private final Gauge<Integer> journalQueueMaxQueueSizeGauge;
+    @StatsDoc(name = JOURNAL_REPLAY_ENTRIES, help = "total journal records replayed on startup")
+    private final Counter journalReplayEntries;
+    @StatsDoc(name = JOURNAL_REPLAY_BYTES, help = "total bytes of journal records replayed on startup")
+    private final Counter journalReplayBytes;
 
     public BookieStats(StatsLogger statsLogger, int numJournalDirs, int maxJournalQueueSize) {
         this.statsLogger = statsLogger;
@@ -104,6 +110,8 @@ public class BookieStats {
         getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER);
         addBytesStats = statsLogger.getOpStatsLogger(BOOKIE_ADD_ENTRY_BYTES);
         readBytesStats = statsLogger.getOpStatsLogger(BOOKIE_READ_ENTRY_BYTES);
+        journalReplayEntries = statsLogger.getCounter(JOURNAL_REPLAY_ENTRIES);
+        journalReplayBytes = statsLogger.getCounter(JOURNAL_REPLAY_BYTES);
         journalDirsGauge = new Gauge<Integer>() {
             @Override
             public Integer getDefaultValue() {
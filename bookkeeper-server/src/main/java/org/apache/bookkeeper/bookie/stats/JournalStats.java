@@ -24,6 +24,9 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSED_WRITE_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_RATIO;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
@@ -45,6 +48,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import lombok.Getter;
@@ -173,6 +177,21 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSED_WRITE_BYTES,
+        help = "The number of bytes appended to the journal after compressing the group writes"
+    )
+    private final Counter journalCompressedWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_LATENCY,
+        help = "operation stats of compressing the group writes of the journal"
+    )
+    private final OpStatsLogger journalCompressionStats;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_RATIO,
+        help = "The size of the compressed group writes of the journal, in percent of their raw size"
+    )
+    private final OpStatsLogger journalCompressionRatioStats;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -184,6 +203,10 @@ public class JournalStats {
     )
     private final Gauge<Long> journalMemoryUsedStats;
 
+    // moving average of the latency of syncing data to the journal disk, used to balance ledgers
+    // across the journals
+    private volatile long journalSyncLatencyAvgNanos = 0;
+
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
                         Supplier<Long> currentJournalMemoryBytes) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
@@ -208,6 +231,9 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalCompressedWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_COMPRESSED_WRITE_BYTES);
+        journalCompressionStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_COMPRESSION_LATENCY);
+        journalCompressionRatioStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_COMPRESSION_RATIO);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
@@ -236,4 +262,14 @@ public class JournalStats {
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
     }
 
+    /**
+     * Record a successful sync of the journal, updating the sync latency moving average.
+     * Only called by the force write thread of the journal.
+     */
+    public void recordJournalSync(long elapsedNanos) {
+        journalSyncStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        long avg = journalSyncLatencyAvgNanos;
+        journalSyncLatencyAvgNanos = avg == 0 ? elapsedNanos : avg + (elapsedNanos - avg) / 8;
+    }
+
 }
@@ -67,6 +67,53 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Read the entries stored consecutively in an entrylog, starting at an entrylog location.
+     * The entries are passed in order to the consumer, until it returns false, <i>maxSize</i>
+     * bytes of the entrylog are read or the end of the entrylog is reached.
+     *
+     * <p>The entries are only valid during the call to the consumer, which does not own them.
+     * The default implementation reads the entries one at a time.
+     *
+     * @param entryLocation the location of the first entry to read
+     * @param maxSize the max number of bytes of the entrylog to read
+     * @param consumer the consumer of the entries read
+     */
+    default void readEntries(long entryLocation, long maxSize, EntryConsumer consumer) throws IOException {
+        long location = entryLocation;
+        long size = 0;
+        while (size < maxSize && (location >> 32) == (entryLocation >> 32)) {
+            ByteBuf entry;
+            try {
+                entry = readEntry(location);
+            } catch (NoEntryException e) {
+                // Reached the end of the entrylog
+                return;
+            }
+
+            try {
+                if (!consumer.accept(entry)) {
+                    return;
+                }
+                size += 4 + entry.readableBytes();
+                location += 4 + entry.readableBytes();
+            } finally {
+                entry.release();
+            }
+        }
+    }
+
+    /**
+     * Consumer of the entries read by {@link #readEntries(long, long, EntryConsumer)}.
+     */
+    interface EntryConsumer {
+        /**
+         * @param entry the entry read
+         * @return true to keep reading the following entries
+         */
+        boolean accept(ByteBuf entry) throws IOException;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
@@ -233,6 +233,21 @@ class Buffer {
         return nextAlignment;
     }
 
+    /**
+     * Move length bytes, starting at offset, to the start of the buffer, and set the position
+     * of the buffer right after them. This keeps the bytes of a partially written block once the
+     * blocks preceding it have been written out.
+     */
+    void moveToStart(int offset, int length) {
+        checkArgument(length <= offset || offset == 0,
+                      "Overlapping move of %d bytes from offset %d", length, offset);
+        if (offset > 0) {
+            buffer.setBytes(0, buffer, offset, length);
+        }
+        byteBuffer.clear();
+        byteBuffer.position(length);
+    }
+
     /**
      * Clear the bytes written. This doesn't actually destroy the data, but moves the position back to the start of
      * the buffer.
@@ -0,0 +1,804 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.MoreObjects;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.HardLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry logger writing and reading the entry logs with O_DIRECT, so that the entry logs don't go through
+ * the OS page cache.
+ *
+ * <p>The entry logs have the same format as the ones of the DefaultEntryLogger, and are named and allocated
+ * the same way, so that the entry logs written by one of them can be read, scanned and compacted by the other.
+ *
+ * <p>Writes are buffered in an aligned buffer, written out when it is full or when the entry logger is flushed.
+ * An entry log is finalized, with its ledgers map, as soon as it is rotated. Reads go through the small cache
+ * of aligned buffers of each reader thread (see {@link DirectReader}).
+ */
+public class DirectEntryLogger implements EntryLogger {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectEntryLogger.class);
+
+    static final int LOGFILE_HEADER_SIZE = 1024;
+    static final int HEADER_VERSION = 1;
+    static final int LEDGERS_MAP_OFFSET_POSITION = 8;
+    static final int LEDGERS_MAP_HEADER_SIZE = 4 + 8 + 8 + 4;
+    static final int LEDGERS_MAP_ENTRY_SIZE = 8 + 8;
+    static final int LEDGERS_MAP_MAX_BATCH_SIZE = 10000;
+    static final long INVALID_LID = -1L;
+    static final long LEDGERS_MAP_ENTRY_ID = -2L;
+    static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+
+    // Max number of entry logs for which a reader thread keeps a read buffer
+    private static final int MAX_READ_BUFFERS_PER_THREAD = 8;
+    // One write buffer for the current entry log and one for the compaction log
+    private static final int WRITE_BUFFERS = 2;
+    private static final String LAST_LOG_ID_FILE = "lastId";
+
+    private final LedgerDirsManager ledgerDirsManager;
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final long logSizeLimit;
+    private final int maxSaneEntrySize;
+    private final BufferPool writeBuffers;
+    private final ByteBuf logfileHeader = Unpooled.buffer(LOGFILE_HEADER_SIZE);
+
+    private final Object writeLock = new Object();
+    private DirectWriter currentWriter;
+    private long lastLogId;
+
+    // Writers of the entry logs that are not finalized yet, by log id
+    private final ConcurrentMap<Long, DirectWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, LogFile> logFiles = new ConcurrentHashMap<>();
+    private final Set<DirectReader> readers = ConcurrentHashMap.newKeySet();
+    private final FastThreadLocal<DirectReader> threadReader;
+    private final FastThreadLocal<ByteBuf> headerBuffer = new FastThreadLocal<ByteBuf>() {
+        @Override
+        protected ByteBuf initialValue() {
+            // Max usage is size (4 bytes) + ledgerId (8 bytes) + entryid (8 bytes)
+            return Unpooled.buffer(4 + 8 + 8);
+        }
+    };
+
+    public DirectEntryLogger(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager, NativeIO nativeIO,
+                             ByteBufAllocator allocator) throws IOException {
+        int writeBufferSize = conf.getDirectIOEntryLoggerWriteBufferSize();
+        int readBufferSize = conf.getDirectIOEntryLoggerReadBufferSize();
+        checkArgument(Buffer.isAligned(writeBufferSize) && writeBufferSize > 0,
+                      "Write buffer size must be a multiple of %s: %s", Buffer.ALIGNMENT, writeBufferSize);
+        checkArgument(Buffer.isAligned(readBufferSize) && readBufferSize > 0,
+                      "Read buffer size must be a multiple of %s: %s", Buffer.ALIGNMENT, readBufferSize);
+
+        this.ledgerDirsManager = ledgerDirsManager;
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.logSizeLimit = conf.getEntryLogSizeLimit();
+        //We reserve 500 bytes as overhead for the protocol, as the DefaultEntryLogger does
+        this.maxSaneEntrySize = conf.getNettyMaxFrameSizeBytes() - 500;
+
+        logfileHeader.writeBytes("BKLO".getBytes(UTF_8));
+        logfileHeader.writeInt(HEADER_VERSION);
+        logfileHeader.writerIndex(LOGFILE_HEADER_SIZE);
+
+        long logId = INVALID_LID;
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            if (!dir.exists()) {
+                throw new FileNotFoundException("Entry log directory '" + dir + "' does not exist");
+            }
+            checkDirectIOSupport(dir);
+            logId = Math.max(logId, getLastLogId(dir));
+        }
+        this.lastLogId = logId;
+
+        this.writeBuffers = new BufferPool(nativeIO, writeBufferSize, WRITE_BUFFERS);
+        this.threadReader = new FastThreadLocal<DirectReader>() {
+            @Override
+            protected DirectReader initialValue() {
+                DirectReader reader = new DirectReader(nativeIO, readBufferSize, MAX_READ_BUFFERS_PER_THREAD);
+                readers.add(reader);
+                return reader;
+            }
+
+            @Override
+            protected void onRemoval(DirectReader reader) {
+                readers.remove(reader);
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * Fail early if the native library cannot be loaded or the filesystem doesn't support O_DIRECT.
+     */
+    private void checkDirectIOSupport(File dir) throws IOException {
+        File probe = new File(dir, "directio.probe");
+        int fd = nativeIO.open(probe.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+        nativeIO.close(fd);
+        Files.deleteIfExists(probe.toPath());
+    }
+
+    /**
+     * File descriptor of an entry log opened for reads, closed once the entry log is removed and the
+     * reads in progress are done.
+     */
+    private class LogFile extends AbstractReferenceCounted {
+        final int fd;
+
+        LogFile(int fd) {
+            this.fd = fd;
+        }
+
+        @Override
+        protected void deallocate() {
+            try {
+                nativeIO.close(fd);
+            } catch (IOException e) {
+                LOG.warn("Failed to close entry log file descriptor {}", fd, e);
+            }
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+    }
+
+    private LogFile acquireLogFile(long logId) throws IOException {
+        while (true) {
+            LogFile logFile = logFiles.get(logId);
+            if (logFile == null) {
+                File file = findFile(logId);
+                LogFile newLogFile = new LogFile(
+                        nativeIO.open(file.getPath(), NativeIO.O_RDONLY | NativeIO.O_DIRECT, 0));
+                logFile = logFiles.putIfAbsent(logId, newLogFile);
+                if (logFile == null) {
+                    logFile = newLogFile;
+                } else {
+                    newLogFile.release();
+                }
+            }
+
+            try {
+                logFile.retain();
+                return logFile;
+            } catch (IllegalReferenceCountException e) {
+                // The entry log was removed concurrently
+                logFiles.remove(logId, logFile);
+            }
+        }
+    }
+
+    /**
+     * @return the position up to which the entry log can be read back from its file
+     */
+    private long readLimit(long logId) {
+        DirectWriter writer = writers.get(logId);
+        return writer == null ? Long.MAX_VALUE : writer.readablePosition();
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+        synchronized (writeLock) {
+            if (currentWriter != null
+                    && currentWriter.position() + Integer.BYTES + buf.readableBytes() > logSizeLimit) {
+                DirectWriter writer = currentWriter;
+                currentWriter = null;
+                finalizeLog(writer);
+            }
+            if (currentWriter == null) {
+                currentWriter = createWriter();
+            }
+            return (currentWriter.getLogId() << 32L) | currentWriter.addEntry(ledgerId, buf);
+        }
+    }
+
+    private DirectWriter createWriter() throws IOException {
+        long logId = allocateLogId();
+        File file = new File(selectDirForNextEntryLog(), Long.toHexString(logId) + LOG_FILE_SUFFIX);
+        DirectWriter writer = new DirectWriter(logId, file, nativeIO, writeBuffers, logfileHeader);
+        writers.put(logId, writer);
+        LOG.info("Created new entry log file {} for logId {}.", file, logId);
+        return writer;
+    }
+
+    private void finalizeLog(DirectWriter writer) throws IOException {
+        try {
+            writer.finalizeAndClose();
+            LOG.info("Finalized entry log file {} for logId {}.", writer.getFile(), writer.getLogId());
+        } finally {
+            writers.remove(writer.getLogId());
+        }
+    }
+
+    private File selectDirForNextEntryLog() throws IOException {
+        List<File> dirs = ledgerDirsManager.getWritableLedgerDirsForNewLog();
+        return dirs.get(ThreadLocalRandom.current().nextInt(dirs.size()));
+    }
+
+    /**
+     * Allocate the id of a new entry log, skipping the ids of the existing entry logs, and record it in
+     * the "lastId" file of the ledger directories, as the EntryLoggerAllocator does.
+     */
+    private synchronized long allocateLogId() {
+        do {
+            lastLogId = lastLogId >= Integer.MAX_VALUE ? 0 : lastLogId + 1;
+        } while (logFileExists(lastLogId));
+
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            try {
+                Files.write(new File(dir, LAST_LOG_ID_FILE).toPath(),
+                            (Long.toHexString(lastLogId) + "\n").getBytes(UTF_8));
+            } catch (IOException e) {
+                LOG.warn("Failed write lastId file in {}", dir, e);
+            }
+        }
+        return lastLogId;
+    }
+
+    private boolean logFileExists(long logId) {
+        String name = Long.toHexString(logId);
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            if (new File(dir, name + LOG_FILE_SUFFIX).exists()
+                    || new File(dir, name + TransactionalEntryLogCompactor.COMPACTING_SUFFIX).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getLastLogId(File dir) {
+        try {
+            String lastId = new String(Files.readAllBytes(new File(dir, LAST_LOG_ID_FILE).toPath()), UTF_8);
+            return Long.parseLong(lastId.trim(), 16);
+        } catch (IOException | NumberFormatException e) {
+            // Fall back to the biggest log id in the directory
+            long logId = INVALID_LID;
+            File[] logFiles = dir.listFiles(file -> file.getName().endsWith(LOG_FILE_SUFFIX));
+            if (logFiles != null) {
+                for (File f : logFiles) {
+                    logId = Math.max(logId, fileName2LogId(f.getName()));
+                }
+            }
+            return logId;
+        }
+    }
+
+    private static long fileName2LogId(String fileName) {
+        try {
+            return Long.parseLong(fileName.split("\\.")[0], 16);
+        } catch (NumberFormatException e) {
+            LOG.error("Invalid log file name {} found when trying to convert to logId.", fileName, e);
+            return INVALID_LID;
+        }
+    }
+
+    private File findFile(long logId) throws FileNotFoundException {
+        for (File d : ledgerDirsManager.getAllLedgerDirs()) {
+            File f = new File(d, Long.toHexString(logId) + LOG_FILE_SUFFIX);
+            if (f.exists()) {
+                return f;
+            }
+        }
+        throw new FileNotFoundException("No file for log " + Long.toHexString(logId));
+    }
+
+    @Override
+    public ByteBuf readEntry(long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(-1L, -1L, entryLocation, false);
+    }
+
+    @Override
+    public ByteBuf readEntry(long ledgerId, long entryId, long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(ledgerId, entryId, entryLocation, true);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
+            throws IOException, NoEntryException {
+        long logId = location >> 32L;
+        long pos = location & 0xffffffffL;
+        DirectReader reader = threadReader.get();
+        LogFile logFile = acquireLogFile(logId);
+        try {
+            long readLimit = readLimit(logId);
+            ByteBuf header = headerBuffer.get();
+            header.clear();
+            if (reader.read(logId, logFile.fd, pos - 4, header, header.capacity(), readLimit) != header.capacity()) {
+                throw new NoEntryException("Short read from entrylog " + logId, ledgerId, entryId);
+            }
+
+            int entrySize = header.getInt(0);
+            if (entrySize > maxSaneEntrySize) {
+                LOG.warn("Sanity check failed for entry size of {} at location {} in {}", entrySize, pos, logId);
+            }
+            if (entrySize < MIN_SANE_ENTRY_SIZE) {
+                if (!validateEntry) {
+                    // Padding after the last entry of an entry log that was not finalized
+                    throw new NoEntryException("No entry at " + pos + " in entrylog " + logId, ledgerId, entryId);
+                }
+                LOG.error("Read invalid entry length {}", entrySize);
+                throw new IOException("Invalid entry length " + entrySize + " for " + ledgerId + "@" + entryId
+                                      + " in " + logId + "@" + pos);
+            }
+            if (validateEntry && (header.getLong(4) != ledgerId || header.getLong(12) != entryId)) {
+                throw new IOException("Found " + header.getLong(4) + "@" + header.getLong(12) + " instead of "
+                                      + ledgerId + "@" + entryId + " in " + logId + "@" + pos);
+            }
+
+            ByteBuf data = allocator.buffer(entrySize, entrySize);
+            int rc = reader.read(logId, logFile.fd, pos, data, entrySize, readLimit);
+            if (rc != entrySize) {
+                data.release();
+                throw new NoEntryException("Short read for " + ledgerId + "@" + entryId + " in " + logId + "@"
+                                           + pos + "(" + rc + "!=" + entrySize + ")", ledgerId, entryId);
+            }
+            return data;
+        } finally {
+            logFile.release();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (currentWriter != null) {
+                currentWriter.flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOG.info("Stopping DirectEntryLogger");
+        synchronized (writeLock) {
+            try {
+                if (currentWriter != null) {
+                    finalizeLog(currentWriter);
+                }
+            } catch (IOException e) {
+                LOG.error("Error finalizing entry log {} during shutting down", currentWriter.getLogId(), e);
+            } finally {
+                currentWriter = null;
+            }
+        }
+
+        logFiles.values().forEach(LogFile::release);
+        logFiles.clear();
+        readers.forEach(DirectReader::close);
+        readers.clear();
+        writeBuffers.close();
+    }
+
+    @Override
+    public Collection<Long> getFlushedLogIds() {
+        Set<Long> logIds = new HashSet<>();
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            File[] files = dir.listFiles(file -> file.getName().endsWith(LOG_FILE_SUFFIX));
+            if (files != null) {
+                for (File f : files) {
+                    logIds.add(fileName2LogId(f.getName()));
+                }
+            }
+        }
+        // Exclude the entry logs still written to, a new entry log is registered while holding the lock
+        synchronized (writeLock) {
+            logIds.removeAll(writers.keySet());
+        }
+        logIds.remove(INVALID_LID);
+        return logIds;
+    }
+
+    @Override
+    public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        DirectReader reader = threadReader.get();
+        LogFile logFile;
+        try {
+            logFile = acquireLogFile(entryLogId);
+        } catch (IOException e) {
+            LOG.warn("Failed to open entry log {} to scan it", entryLogId);
+            throw e;
+        }
+
+        ByteBuf header = Unpooled.buffer(4 + 8);
+        ByteBuf data = allocator.directBuffer(1024 * 1024);
+        try {
+            long readLimit = readLimit(entryLogId);
+            long pos = LOGFILE_HEADER_SIZE;
+            while (true) {
+                header.clear();
+                if (reader.read(entryLogId, logFile.fd, pos, header, header.capacity(), readLimit)
+                        != header.capacity()) {
+                    // Reached the end of the entry log
+                    return;
+                }
+                long offset = pos;
+                pos += 4;
+                int entrySize = header.readInt();
+                long ledgerId = header.readLong();
+                if (entrySize <= 0) {
+                    // Padding after the last entry of an entry log that was not finalized
+                    return;
+                }
+                if (ledgerId == INVALID_LID || !scanner.accept(ledgerId)) {
+                    // skip this entry
+                    pos += entrySize;
+                    continue;
+                }
+
+                data.clear();
+                data.capacity(entrySize);
+                int rc = reader.read(entryLogId, logFile.fd, pos, data, entrySize, readLimit);
+                if (rc != entrySize) {
+                    LOG.warn("Short read for ledger entry from entryLog {}@{} ({} != {})",
+                             entryLogId, pos, rc, entrySize);
+                    return;
+                }
+                scanner.process(ledgerId, offset, data);
+                pos += entrySize;
+            }
+        } finally {
+            data.release();
+            header.release();
+            logFile.release();
+        }
+    }
+
+    @Override
+    public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        // First try to extract the EntryLogMetadata from the index, if there's no index then fallback to scanning the
+        // entry log
+        try {
+            return extractEntryLogMetadataFromIndex(entryLogId);
+        } catch (Exception e) {
+            LOG.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+            return extractEntryLogMetadataByScanning(entryLogId, throttler);
+        }
+    }
+
+    private EntryLogMetadata extractEntryLogMetadataFromIndex(long entryLogId) throws IOException {
+        DirectReader reader = threadReader.get();
+        LogFile logFile = acquireLogFile(entryLogId);
+        ByteBuf buf = Unpooled.buffer(LEDGERS_MAP_HEADER_SIZE + LEDGERS_MAP_ENTRY_SIZE * LEDGERS_MAP_MAX_BATCH_SIZE);
+        try {
+            // The header is updated when the entry log is finalized, don't read it from the cached buffer
+            reader.invalidate(entryLogId);
+            long readLimit = readLimit(entryLogId);
+            if (reader.read(entryLogId, logFile.fd, 0, buf, 4 + 4 + 8 + 4, readLimit) != 4 + 4 + 8 + 4) {
+                throw new IOException("Short read of the header of entryLogId " + entryLogId);
+            }
+            buf.skipBytes(4);
+            int version = buf.readInt();
+            long ledgersMapOffset = buf.readLong();
+            int ledgersCount = buf.readInt();
+            if (version < HEADER_VERSION) {
+                throw new IOException("Old log file header without ledgers map on entryLogId " + entryLogId);
+            }
+            if (ledgersMapOffset == 0L) {
+                throw new IOException("No ledgers map index found on entryLogId " + entryLogId);
+            }
+
+            EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+            long offset = ledgersMapOffset;
+            while (true) {
+                buf.clear();
+                if (reader.read(entryLogId, logFile.fd, offset, buf, 4, readLimit) != 4) {
+                    break;
+                }
+                int ledgersMapSize = buf.readInt();
+                if (ledgersMapSize < LEDGERS_MAP_HEADER_SIZE - 4 || ledgersMapSize > buf.capacity()) {
+                    throw new IOException("Invalid ledgers map size " + ledgersMapSize + " on entryLogId "
+                                          + entryLogId);
+                }
+                buf.clear();
+                if (reader.read(entryLogId, logFile.fd, offset + 4, buf, ledgersMapSize, readLimit)
+                        != ledgersMapSize) {
+                    throw new IOException("Short read of ledgers map on entryLogId " + entryLogId);
+                }
+                if (buf.readLong() != INVALID_LID || buf.readLong() != LEDGERS_MAP_ENTRY_ID) {
+                    throw new IOException("Cannot deserialize ledgers map on entryLogId " + entryLogId);
+                }
+                int count = buf.readInt();
+                for (int i = 0; i < count; i++) {
+                    meta.addLedgerSize(buf.readLong(), buf.readLong());
+                }
+                if (buf.isReadable()) {
+                    throw new IOException("Invalid entry size when reading ledgers map");
+                }
+                offset += ledgersMapSize + 4;
+            }
+
+            if (meta.getLedgersMap().size() != ledgersCount) {
+                throw new IOException("Not all ledgers were found in ledgers map index. expected: " + ledgersCount
+                        + " -- found: " + meta.getLedgersMap().size() + " -- entryLogId: " + entryLogId);
+            }
+            return meta;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(e);
+        } finally {
+            buf.release();
+            logFile.release();
+        }
+    }
+
+    private EntryLogMetadata extractEntryLogMetadataByScanning(long entryLogId,
+                                                               AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        scanEntryLog(entryLogId, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                if (throttler != null) {
+                    throttler.acquire(entry.readableBytes());
+                }
+                meta.addLedgerSize(ledgerId, entry.readableBytes() + 4);
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId >= 0;
+            }
+        });
+        return meta;
+    }
+
+    @Override
+    public boolean logExists(long logId) {
+        try {
+            findFile(logId);
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean removeEntryLog(long entryLogId) {
+        LogFile logFile = logFiles.remove(entryLogId);
+        if (logFile != null) {
+            logFile.release();
+        }
+
+        File entryLogFile;
+        try {
+            entryLogFile = findFile(entryLogId);
+        } catch (FileNotFoundException e) {
+            LOG.error("Trying to delete an entryLog file that could not be found: {}.log", entryLogId);
+            return false;
+        }
+        if (!entryLogFile.delete()) {
+            LOG.warn("Could not delete entry log file {}", entryLogFile);
+        }
+        return true;
+    }
+
+    @Override
+    public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        long logId = allocateLogId();
+        File dir = selectDirForNextEntryLog();
+        String name = Long.toHexString(logId);
+        File compactingLogFile = new File(dir, name + TransactionalEntryLogCompactor.COMPACTING_SUFFIX);
+        File compactedLogFile = new File(dir, name + LOG_FILE_SUFFIX + "." + Long.toHexString(logToCompact)
+                                         + TransactionalEntryLogCompactor.COMPACTED_SUFFIX);
+        File finalLogFile = new File(dir, name + LOG_FILE_SUFFIX);
+        DirectWriter writer = new DirectWriter(logId, compactingLogFile, nativeIO, writeBuffers, logfileHeader);
+        LOG.info("Created new compaction log file {} for logId {}.", compactingLogFile, logId);
+        return new DirectCompactionEntryLog(logId, logToCompact, compactingLogFile, compactedLogFile,
+                                            finalLogFile, writer);
+    }
+
+    @Override
+    public Collection<CompactionEntryLog> incompleteCompactionLogs() {
+        List<CompactionEntryLog> compactionLogs = new ArrayList<>();
+        for (File dir : ledgerDirsManager.getAllLedgerDirs()) {
+            File[] compactingPhaseFiles = dir.listFiles(
+                    file -> file.getName().endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+            if (compactingPhaseFiles != null) {
+                for (File file : compactingPhaseFiles) {
+                    if (file.delete()) {
+                        LOG.info("Deleted failed compaction file {}", file);
+                    }
+                }
+            }
+            File[] compactedPhaseFiles = dir.listFiles(
+                    file -> file.getName().endsWith(TransactionalEntryLogCompactor.COMPACTED_SUFFIX));
+            if (compactedPhaseFiles == null) {
+                continue;
+            }
+            for (File compactedFile : compactedPhaseFiles) {
+                LOG.info("Found compacted log file {} has partially flushed index, recovering index.",
+                         compactedFile);
+                // <compactionLogId>.log.<compactedLogId>.compacted
+                String[] parts = compactedFile.getName().split(Pattern.quote("."));
+                long compactionLogId;
+                long compactedLogId;
+                try {
+                    if (parts.length != 4) {
+                        throw new NumberFormatException(compactedFile.getName());
+                    }
+                    compactionLogId = Long.parseLong(parts[0], 16);
+                    compactedLogId = Long.parseLong(parts[2], 16);
+                } catch (NumberFormatException nfe) {
+                    LOG.info("Invalid compacted file found ({}), deleting", compactedFile);
+                    if (!compactedFile.delete()) {
+                        LOG.warn("Couldn't delete invalid compacted file ({})", compactedFile);
+                    }
+                    continue;
+                }
+                File compactingLogFile = new File(dir, parts[0] + TransactionalEntryLogCompactor.COMPACTING_SUFFIX);
+                File finalLogFile = new File(dir, parts[0] + LOG_FILE_SUFFIX);
+                compactionLogs.add(new DirectCompactionEntryLog(compactionLogId, compactedLogId, compactingLogFile,
+                                                                compactedFile, finalLogFile, null));
+            }
+        }
+        return compactionLogs;
+    }
+
+    private class DirectCompactionEntryLog implements CompactionEntryLog {
+        private final long compactionLogId;
+        private final long logIdToCompact;
+        private final File compactingLogFile;
+        private final File compactedLogFile;
+        private final File finalLogFile;
+        private DirectWriter writer;
+
+        DirectCompactionEntryLog(long compactionLogId, long logIdToCompact, File compactingLogFile,
+                                 File compactedLogFile, File finalLogFile, DirectWriter writer) {
+            this.compactionLogId = compactionLogId;
+            this.logIdToCompact = logIdToCompact;
+            this.compactingLogFile = compactingLogFile;
+            this.compactedLogFile = compactedLogFile;
+            this.finalLogFile = finalLogFile;
+            this.writer = writer;
+        }
+
+        @Override
+        public synchronized long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+            if (writer == null) {
+                throw new IOException("Compaction log " + compactionLogId + " is already flushed");
+            }
+            return (compactionLogId << 32L) | writer.addEntry(ledgerId, entry);
+        }
+
+        @Override
+        public void scan(EntryLogScanner scanner) throws IOException {
+            scanEntryLog(compactionLogId, scanner);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (writer == null) {
+                throw new IOException("Failed to flush compaction log which has already been removed.");
+            }
+            try {
+                writer.finalizeAndClose();
+                LOG.info("Flushed compaction log file {} with logId {}.", compactingLogFile, compactionLogId);
+            } finally {
+                writer = null;
+            }
+        }
+
+        @Override
+        public synchronized void abort() {
+            closeWriter();
+            deleteFile(compactingLogFile);
+            deleteFile(compactedLogFile);
+        }
+
+        @Override
+        public synchronized void markCompacted() throws IOException {
+            if (compactingLogFile.exists()) {
+                if (!compactedLogFile.exists()) {
+                    HardLink.createHardLink(compactingLogFile, compactedLogFile);
+                }
+            } else {
+                throw new IOException("Compaction log doesn't exist any more after flush: " + compactingLogFile);
+            }
+            closeWriter();
+            deleteFile(compactingLogFile);
+        }
+
+        @Override
+        public void makeAvailable() throws IOException {
+            if (!finalLogFile.exists()) {
+                HardLink.createHardLink(compactedLogFile, finalLogFile);
+            }
+        }
+
+        @Override
+        public void finalizeAndCleanup() {
+            deleteFile(compactedLogFile);
+            deleteFile(compactingLogFile);
+        }
+
+        @Override
+        public long getDstLogId() {
+            return compactionLogId;
+        }
+
+        @Override
+        public long getSrcLogId() {
+            return logIdToCompact;
+        }
+
+        private void closeWriter() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOG.error("Failed to close compaction log {}", compactionLogId, e);
+                }
+                writer = null;
+            }
+        }
+
+        private void deleteFile(File file) {
+            if (file.exists() && !file.delete()) {
+                LOG.warn("Could not delete file: {}", file);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                .add("logId", compactionLogId)
+                .add("compactedLogId", logIdToCompact)
+                .add("compactingLogFile", compactingLogFile)
+                .add("compactedLogFile", compactedLogFile)
+                .add("finalLogFile", finalLogFile)
+                .toString();
+        }
+    }
+}
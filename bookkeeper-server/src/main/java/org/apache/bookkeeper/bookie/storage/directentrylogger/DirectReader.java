@@ -0,0 +1,130 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+
+/**
+ * Reader of the entry logs, using O_DIRECT reads into aligned buffers.
+ *
+ * <p>A reader is used by a single thread. It keeps an aligned buffer for each of the last entry logs it read,
+ * so that consecutive reads of small entries, or of the headers of the entries, only hit the disk once per buffer.
+ * Only the bytes that were readable from the file when the buffer was filled are served from it, as the
+ * end of an entry log that is still written to is rewritten when more entries are flushed.
+ */
+class DirectReader implements AutoCloseable {
+    private final NativeIO nativeIO;
+    private final int bufferSize;
+    private final Map<Long, CachedBuffer> buffers;
+
+    DirectReader(NativeIO nativeIO, int bufferSize, int maxBuffers) {
+        this.nativeIO = nativeIO;
+        this.bufferSize = bufferSize;
+        this.buffers = new LinkedHashMap<Long, CachedBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedBuffer> eldest) {
+                if (size() > maxBuffers) {
+                    eldest.getValue().buffer.free();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static class CachedBuffer {
+        final Buffer buffer;
+        long offset = -1;
+        int length = 0;
+
+        CachedBuffer(Buffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean contains(long position) {
+            return position >= offset && position < offset + length;
+        }
+    }
+
+    /**
+     * Read size bytes of an entry log, starting at position, into dest.
+     *
+     * @param logId the id of the entry log
+     * @param fd the file descriptor of the entry log, opened with O_DIRECT
+     * @param position the position of the first byte to read
+     * @param dest the buffer the bytes are written to
+     * @param size the number of bytes to read
+     * @param readLimit the position up to which the bytes of the entry log are readable from the file
+     * @return the number of bytes read, less than size if the end of the readable bytes was reached
+     */
+    int read(long logId, int fd, long position, ByteBuf dest, int size, long readLimit) throws IOException {
+        CachedBuffer cached = buffers.get(logId);
+        if (cached == null) {
+            cached = new CachedBuffer(new Buffer(nativeIO, bufferSize));
+            buffers.put(logId, cached);
+        }
+
+        int read = 0;
+        while (read < size) {
+            long pos = position + read;
+            if (!cached.contains(pos) && !fill(cached, fd, pos, readLimit)) {
+                break;
+            }
+
+            int length = (int) Math.min(size - read, cached.offset + cached.length - pos);
+            read += cached.buffer.readByteBuf(dest, (int) (pos - cached.offset), length);
+        }
+        return read;
+    }
+
+    private boolean fill(CachedBuffer cached, int fd, long position, long readLimit) throws IOException {
+        long offset = position & ~(Buffer.ALIGNMENT - 1);
+        cached.offset = offset;
+        cached.length = 0;
+        if (offset >= readLimit) {
+            return false;
+        }
+
+        long read = nativeIO.pread(fd, cached.buffer.pointer(), cached.buffer.size(), offset);
+        cached.length = (int) Math.max(0, Math.min(read, readLimit - offset));
+        return cached.contains(position);
+    }
+
+    /**
+     * Drop the cached bytes of an entry log, so that the next read of it hits the disk.
+     */
+    void invalidate(long logId) {
+        CachedBuffer cached = buffers.get(logId);
+        if (cached != null) {
+            cached.length = 0;
+        }
+    }
+
+    @Override
+    public void close() {
+        buffers.values().forEach(cached -> cached.buffer.free());
+        buffers.clear();
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.common.util.nativeio.IoRing;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Writer of a single entry log file, using O_DIRECT writes of aligned buffers.
+ *
+ * <p>The file has the same layout as the entry logs of the DefaultEntryLogger: a header of
+ * {@link DirectEntryLogger#LOGFILE_HEADER_SIZE} bytes, the entries prefixed by their size and, once the log is
+ * finalized, the ledgers map. The header is updated with the offset of the ledgers map when the log is finalized.
+ *
+ * <p>When flushed, the partially written block at the end of the buffer is padded and written out, then kept at the
+ * start of the buffer so that the next write out rewrites it with the following entries. The padding at the end
+ * of the file is truncated when the log is finalized.
+ *
+ * <p>A writer is not thread safe, the callers synchronize the access to it.
+ */
+class DirectWriter {
+    private static final long OP_WRITE = 1L;
+    private static final long OP_SYNC = 2L;
+
+    private final long logId;
+    private final File file;
+    private final NativeIO nativeIO;
+    private final BufferPool bufferPool;
+    private final int fd;
+    // Submits the write out of the buffer along with the sync of the file
+    private IoRing ring;
+    private long writeResult;
+    private long syncResult;
+    private final ConcurrentLongLongHashMap ledgersMap = ConcurrentLongLongHashMap.newBuilder().build();
+    private final ByteBuf sizeBuffer = Unpooled.buffer(Integer.BYTES);
+
+    // Copy of the first block of the file, as last written out, used to update the header
+    private final byte[] firstBlock = new byte[Buffer.ALIGNMENT];
+
+    private Buffer buffer;
+    // Offset in the file of the start of the buffer, always aligned
+    private long bufferOffset = 0;
+    // Position up to which the file has been written out and can be read back
+    private volatile long readablePosition = 0;
+    private long flushedPosition = 0;
+    private boolean finalized = false;
+    private boolean closed = false;
+
+    DirectWriter(long logId, File file, NativeIO nativeIO, BufferPool bufferPool, ByteBuf header)
+            throws IOException {
+        this.logId = logId;
+        this.file = file;
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.fd = nativeIO.open(file.getPath(),
+                                NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_TRUNC | NativeIO.O_DIRECT,
+                                00644);
+        try {
+            this.ring = nativeIO.ioRing(2);
+            this.buffer = bufferPool.acquire();
+            write(header);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    long getLogId() {
+        return logId;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    ConcurrentLongLongHashMap getLedgersMap() {
+        return ledgersMap;
+    }
+
+    /**
+     * @return the position of the next byte written to the log
+     */
+    long position() {
+        return bufferOffset + buffer.position();
+    }
+
+    /**
+     * @return the position up to which the log can be read back from the file
+     */
+    long readablePosition() {
+        return readablePosition;
+    }
+
+    /**
+     * Append an entry to the log.
+     * @return the position of the entry in the log, after its size
+     */
+    long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        int entrySize = entry.readableBytes();
+        sizeBuffer.clear();
+        sizeBuffer.writeInt(entrySize);
+        write(sizeBuffer);
+
+        long pos = position();
+        write(entry);
+        ledgersMap.addAndGet(ledgerId, entrySize + Integer.BYTES);
+        return pos;
+    }
+
+    /**
+     * Write the bytes of data to the log, without changing its reader index.
+     */
+    void write(ByteBuf data) throws IOException {
+        checkState(!finalized, "Log %s is finalized", logId);
+        int index = data.readerIndex();
+        int remaining = data.readableBytes();
+        while (remaining > 0) {
+            int space = buffer.size() - buffer.position();
+            if (space == 0) {
+                writeOut(buffer.size(), false);
+                readablePosition = bufferOffset + buffer.size();
+                bufferOffset += buffer.size();
+                buffer.reset();
+                continue;
+            }
+
+            int length = Math.min(space, remaining);
+            buffer.writeByteBuf(data.slice(index, length));
+            index += length;
+            remaining -= length;
+        }
+    }
+
+    /**
+     * Write out the buffered bytes and sync them to the disk.
+     */
+    void flush() throws IOException {
+        long position = position();
+        if (position == flushedPosition) {
+            return;
+        }
+
+        int length = buffer.position();
+        writeOut(buffer.padToAlignment(), true);
+        readablePosition = position;
+        flushedPosition = position;
+
+        // Keep the last partial block, it is written out again with the following bytes
+        int lastBlock = length & ~(Buffer.ALIGNMENT - 1);
+        buffer.moveToStart(lastBlock, length - lastBlock);
+        bufferOffset += lastBlock;
+    }
+
+    /**
+     * Write out the first length bytes of the buffer and, if sync is set, sync the file, with a single submission
+     * to the ring.
+     */
+    private void writeOut(int length, boolean sync) throws IOException {
+        ring.prepareWrite(fd, buffer.pointer(), length, bufferOffset, OP_WRITE);
+        if (sync) {
+            ring.prepareFsync(fd, true, OP_SYNC);
+        }
+        int ops = sync ? 2 : 1;
+        syncResult = 0;
+        ring.submit(ops);
+        ring.complete(ops, (op, result) -> {
+            if (op == OP_WRITE) {
+                writeResult = result;
+            } else {
+                syncResult = result;
+            }
+        });
+
+        if (writeResult != length) {
+            throw new IOException(exMsg(writeResult < 0 ? "Failed write to entry log" : "Short write to entry log")
+                                  .kv("logId", logId).kv("offset", bufferOffset).kv("expected", length)
+                                  .kv("result", writeResult).toString());
+        }
+        if (syncResult < 0) {
+            throw new IOException(exMsg("Failed to sync entry log").kv("logId", logId)
+                                  .kv("errno", -syncResult).toString());
+        }
+        if (bufferOffset == 0) {
+            buffer.buffer.getBytes(0, firstBlock, 0, Math.min(length, firstBlock.length));
+        }
+    }
+
+    /**
+     * Append the ledgers map to the log, update the header with its offset and close the log.
+     * Once finalized, the log has the same content as a log written by the DefaultEntryLogger.
+     */
+    void finalizeAndClose() throws IOException {
+        try {
+            long ledgersMapOffset = position();
+            writeLedgersMap();
+            long logSize = position();
+            flush();
+
+            // The ledgers map must be on the disk before the header points to it
+            ByteBuf header = Unpooled.wrappedBuffer(firstBlock);
+            header.setLong(DirectEntryLogger.LEDGERS_MAP_OFFSET_POSITION, ledgersMapOffset);
+            header.setInt(DirectEntryLogger.LEDGERS_MAP_OFFSET_POSITION + Long.BYTES, (int) ledgersMap.size());
+            buffer.reset();
+            bufferOffset = 0;
+            buffer.writeByteBuf(header);
+            writeOut(Buffer.ALIGNMENT, true);
+            finalized = true;
+
+            // Remove the padding after the ledgers map
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                fc.truncate(logSize);
+                fc.force(true);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Write the ledgers map in batches of at most {@link DirectEntryLogger#LEDGERS_MAP_MAX_BATCH_SIZE} ledgers,
+     * each of them having the layout of an entry of the ledger {@link DirectEntryLogger#INVALID_LID}.
+     */
+    private void writeLedgersMap() throws IOException {
+        int numberOfLedgers = (int) ledgersMap.size();
+        int maxBatchSize = Math.min(numberOfLedgers, DirectEntryLogger.LEDGERS_MAP_MAX_BATCH_SIZE);
+        ByteBuf serializedMap = Unpooled.buffer(DirectEntryLogger.LEDGERS_MAP_HEADER_SIZE
+                + DirectEntryLogger.LEDGERS_MAP_ENTRY_SIZE * maxBatchSize);
+        try {
+            List<Long> ledgers = new ArrayList<>(numberOfLedgers);
+            ledgersMap.forEach((ledgerId, size) -> ledgers.add(ledgerId));
+            for (int start = 0; start < ledgers.size(); start += maxBatchSize) {
+                int batchSize = Math.min(ledgers.size() - start, maxBatchSize);
+                serializedMap.clear();
+                serializedMap.writeInt(DirectEntryLogger.LEDGERS_MAP_HEADER_SIZE
+                        + DirectEntryLogger.LEDGERS_MAP_ENTRY_SIZE * batchSize - Integer.BYTES);
+                serializedMap.writeLong(DirectEntryLogger.INVALID_LID);
+                serializedMap.writeLong(DirectEntryLogger.LEDGERS_MAP_ENTRY_ID);
+                serializedMap.writeInt(batchSize);
+                for (int i = start; i < start + batchSize; i++) {
+                    long ledgerId = ledgers.get(i);
+                    serializedMap.writeLong(ledgerId);
+                    serializedMap.writeLong(ledgersMap.get(ledgerId));
+                }
+                write(serializedMap);
+            }
+        } finally {
+            serializedMap.release();
+        }
+    }
+
+    /**
+     * Close the log, without flushing the buffered bytes.
+     */
+    void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        finalized = true;
+        sizeBuffer.release();
+        if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+        if (ring != null) {
+            ring.close();
+        }
+        nativeIO.close(fd);
+    }
+}
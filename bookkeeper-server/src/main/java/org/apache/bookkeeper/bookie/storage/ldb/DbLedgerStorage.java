@@ -81,6 +81,8 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
 
+    static final String READ_CACHE_ADMISSION_POLICY = "dbStorage_readCacheAdmissionPolicy";
+
     private static final int MB = 1024 * 1024;
 
     private static final long DEFAULT_WRITE_CACHE_MAX_SIZE_MB = (long) (0.25 * PlatformDependent.maxDirectMemory())
@@ -91,6 +93,25 @@ public class DbLedgerStorage implements LedgerStorage {
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    // Max number of entries to read ahead for the ledgers read sequentially
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+
+    // Number of threads reading ahead in the background, 0 to read ahead on the read threads
+    static final String READ_AHEAD_THREADS = "dbStorage_readAheadThreads";
+
+    // Number of entry locations prefetched from the locations index with a single scan when a ledger is read
+    // sequentially, 0 to look up the location of each entry
+    static final String LOCATION_PREFETCH_SIZE = "dbStorage_locationPrefetchSize";
+
+    // Number of write caches sharing the write cache memory, the full ones being flushed while the next one is filled
+    static final String WRITE_CACHE_COUNT = "dbStorage_writeCacheCount";
+
+    // Number of stripes of consecutive ledgers the write cache is flushed in parallel
+    static final String FLUSH_STRIPES = "dbStorage_flushStripes";
+
+    // Key-value storage of the entry locations index: rocksdb or btree
+    static final String ENTRY_LOCATION_INDEX_STORAGE = "dbStorage_entryLocationIndexStorage";
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -51,9 +51,13 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String READ_CACHE_ADMITTED = "read-cache-admitted";
+    private static final String READ_CACHE_REJECTED = "read-cache-rejected";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_WINDOW = "readahead-window";
+    private static final String LOCATION_WINDOW_HITS = "location-window-hits";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -118,6 +122,16 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = READ_CACHE_ADMITTED,
+        help = "number of entries admitted in the read cache by its admission policy"
+    )
+    private final Counter readCacheAdmittedCounter;
+    @StatsDoc(
+        name = READ_CACHE_REJECTED,
+        help = "number of entries rejected from the read cache by its admission policy"
+    )
+    private final Counter readCacheRejectedCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -133,6 +147,17 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_WINDOW,
+        help = "the distribution of the num of entries chosen to read ahead on read cache misses"
+    )
+    private final OpStatsLogger readAheadWindowStats;
+    @StatsDoc(
+        name = LOCATION_WINDOW_HITS,
+        help = "number of entry locations found in the location windows prefetched from the locations index",
+        parent = READ_ENTRY
+    )
+    private final Counter locationWindowHitCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -206,11 +231,15 @@ class DbLedgerStorageStats {
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        readCacheAdmittedCounter = stats.getCounter(READ_CACHE_ADMITTED);
+        readCacheRejectedCounter = stats.getCounter(READ_CACHE_REJECTED);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadWindowStats = stats.getOpStatsLogger(READAHEAD_WINDOW);
+        locationWindowHitCounter = stats.getCounter(LOCATION_WINDOW_HITS);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
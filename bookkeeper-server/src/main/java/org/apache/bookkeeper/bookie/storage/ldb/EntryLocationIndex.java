@@ -31,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -66,6 +67,21 @@ public class EntryLocationIndex implements Closeable {
             });
     }
 
+    /**
+     * Get the factory of the key-value storage configured for the entry locations index.
+     */
+    static KeyValueStorageFactory getStorageFactory(ServerConfiguration conf) {
+        String storage = conf.getString(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, "rocksdb");
+        switch (storage.toLowerCase()) {
+        case "rocksdb":
+            return KeyValueStorageRocksDB.factory;
+        case "btree":
+            return KeyValueStorageBTree.factory;
+        default:
+            throw new IllegalArgumentException("Unknown entry location index storage: " + storage);
+        }
+    }
+
     @Override
     public void close() throws IOException {
         locationsDb.close();
@@ -90,6 +106,39 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Get the locations of the consecutive entries of a ledger starting at <i>firstEntryId</i>, with a single scan of
+     * the index instead of a lookup per entry.
+     *
+     * @param locations the array where to store the locations, its length is the max number of entries to look up
+     * @return the number of consecutive entries found, 0 if <i>firstEntryId</i> is not in the index
+     */
+    public int getLocations(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, firstEntryId);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, firstEntryId + locations.length);
+
+        int count = 0;
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = locationsDb.iterator(firstKey.array,
+                lastKey.array)) {
+            while (count < locations.length && iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                if (ArrayUtil.getLong(entry.getKey(), 8) != firstEntryId + count) {
+                    // Stop at the first missing entry
+                    break;
+                }
+                locations[count++] = ArrayUtil.getLong(entry.getValue(), 0);
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Found {} locations from {}@{} in db index", count, ledgerId, firstEntryId);
+        }
+        return count;
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
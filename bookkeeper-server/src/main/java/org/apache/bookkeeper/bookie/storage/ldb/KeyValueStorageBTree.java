@@ -0,0 +1,1107 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.VisibleForTesting;
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.util.internal.PlatformDependent;
+// CHECKSTYLE.ON: IllegalImport
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copy-on-write B+tree implementation of the KeyValueStorage, for keys of 16 bytes and values of 8 bytes such as
+ * the ones of the entry location index.
+ *
+ * <p>The tree is stored in a single file of fixed size pages, which is memory mapped for the reads. A page of the
+ * committed tree is never modified in place: it is copied to a new page the first time it is modified, and the
+ * modified pages are kept in memory until the next commit. A commit writes the modified pages, and then switches
+ * to the new tree by writing its root in one of the two meta pages at the beginning of the file. There is no log
+ * and no background compaction, so the writes never stall behind them.
+ *
+ * <p>The pages released by a commit are only reused once the next commit is durable, so that the tree of the last
+ * commit stays intact until then. The free pages are not persisted, they are found by walking the tree when the
+ * storage is opened. Pages are not merged when keys are deleted, a page is released once it is empty, which suits
+ * the location index whose keys are deleted by ledger ranges.
+ *
+ * <p>The accesses to the tree are serialized by a read-write lock. The I/O of a commit is done outside of the lock,
+ * the tree can be read and modified while it is being committed.
+ */
+public class KeyValueStorageBTree implements KeyValueStorage {
+
+    static KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            new KeyValueStorageBTree(defaultBasePath, subPath, dbConfigType, conf);
+
+    static final int KEY_SIZE = 16;
+    static final int VALUE_SIZE = 8;
+
+    static final String FILE_NAME = "btree.db";
+    static final int PAGE_SIZE = 4096;
+    // The file is mapped in segments, it grows by a segment at a time
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    // Page header: type (1 byte), unused (1 byte), number of items (2 bytes), unused (4 bytes)
+    private static final int HEADER_SIZE = 8;
+    private static final byte LEAF = 1;
+    private static final byte BRANCH = 2;
+    // A leaf item is a key and its value, a branch item is the lowest key of a child and the child page. The key of
+    // the first item of a branch is not used for the lookups.
+    private static final int ITEM_SIZE = KEY_SIZE + 8;
+    static final int MAX_ITEMS = (PAGE_SIZE - HEADER_SIZE) / ITEM_SIZE;
+
+    // Meta page: magic, format version, commit id, root page, number of pages, number of keys, checksum
+    private static final long MAGIC = 0x424b2d4254524545L; // BK-BTREE
+    private static final long FORMAT_VERSION = 1;
+    private static final int META_SIZE = 7 * Long.BYTES;
+    private static final int META_PAGES = 2;
+    // The meta pages are never part of the tree
+    private static final long NO_PAGE = 0;
+
+    private static final int ITERATOR_BATCH_SIZE = MAX_ITEMS;
+
+    private final Path path;
+    private final FileChannel fileChannel;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Serializes the commits
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    // The tree is guarded by the lock
+    private ConcurrentLongHashMap<Page> dirtyPages = newPagesMap();
+    // Pages being written by a commit, they are read from memory until they are written
+    private ConcurrentLongHashMap<Page> committingPages = newPagesMap();
+    private final ArrayDeque<Long> freePages = new ArrayDeque<>();
+    // Pages of the committed tree released since the last commit
+    private List<Long> releasedPages = new ArrayList<>();
+    private long rootPage;
+    private long pageCount;
+    private long keyCount;
+    private boolean closed = false;
+
+    // Id of the last durable commit, guarded by the commit lock
+    private long commitId;
+
+    public KeyValueStorageBTree(String basePath, String subPath, DbConfigType dbConfigType, ServerConfiguration conf)
+            throws IOException {
+        Path dir = FileSystems.getDefault().getPath(basePath, subPath);
+        if (Files.exists(dir.resolve("CURRENT"))) {
+            throw new IOException("Directory " + dir + " holds a RocksDB database, rebuild it to use a B+tree");
+        }
+        Files.createDirectories(dir);
+        this.path = dir.resolve(FILE_NAME);
+        this.fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        try {
+            mapPages(Math.max(META_PAGES, fileChannel.size() / PAGE_SIZE));
+            if (!readMeta()) {
+                commitId = 0;
+                rootPage = NO_PAGE;
+                pageCount = META_PAGES;
+                keyCount = 0;
+            }
+            findFreePages();
+        } catch (IOException | RuntimeException e) {
+            unmapPages();
+            fileChannel.close();
+            throw e;
+        }
+
+        log.info("Opened B+tree {} with {} keys in {} pages, {} free pages", path, keyCount, pageCount,
+                freePages.size());
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        checkArgument(value.length == VALUE_SIZE, "Invalid value size");
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            doPut(key1(key), key2(key), ArrayUtil.getLong(value, 0));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        byte[] value = new byte[VALUE_SIZE];
+        return get(key, value) < 0 ? null : value;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        long k1 = key1(key);
+        long k2 = key2(key);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            long pageId = rootPage;
+            while (pageId != NO_PAGE) {
+                Page page = getPage(pageId);
+                if (page.type() == BRANCH) {
+                    pageId = page.value(page.childIndex(k1, k2));
+                    continue;
+                }
+
+                int i = page.lowerBound(k1, k2);
+                if (i == page.count() || page.compare(i, k1, k2) != 0) {
+                    break;
+                }
+                if (value.length < VALUE_SIZE) {
+                    throw new IOException("Value array is too small to fit the result");
+                }
+                ArrayUtil.setLong(value, 0, page.value(i));
+                return VALUE_SIZE;
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        long[] found = new long[3];
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            if (rootPage == NO_PAGE || !floor(getPage(rootPage), key1(key), key2(key), found)) {
+                return null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return newEntry(found[0], found[1], found[2]);
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        long[] found = new long[3];
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            if (rootPage == NO_PAGE || collect(getPage(rootPage), key1(key), key2(key), 0, 0, false, found, 0) == 0) {
+                return null;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return newEntry(found[0], found[1], found[2]);
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        long k1 = key1(key);
+        long k2 = key2(key);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            doDelete(k1, k2);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Commit the modifications of the tree. The modified pages are written and made durable before the meta page
+     * pointing to the new tree.
+     */
+    @Override
+    public void sync() throws IOException {
+        commitLock.lock();
+        try {
+            ConcurrentLongHashMap<Page> pages;
+            List<Long> released;
+            long root;
+            long numPages;
+            long keys;
+            lock.writeLock().lock();
+            try {
+                checkOpen();
+                if (dirtyPages.isEmpty() && releasedPages.isEmpty()) {
+                    return;
+                }
+                if (committingPages.isEmpty()) {
+                    ConcurrentLongHashMap<Page> tmp = committingPages;
+                    committingPages = dirtyPages;
+                    dirtyPages = tmp;
+                } else {
+                    // The pages of a failed commit are written again
+                    dirtyPages.forEach(committingPages::put);
+                    dirtyPages.clear();
+                }
+                pages = committingPages;
+                released = releasedPages;
+                releasedPages = new ArrayList<>();
+                root = rootPage;
+                numPages = pageCount;
+                keys = keyCount;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            try {
+                writePages(pages, numPages);
+                force();
+                writeMeta(commitId + 1, root, numPages, keys);
+                force();
+            } catch (IOException e) {
+                lock.writeLock().lock();
+                try {
+                    releasedPages.addAll(released);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+            commitId++;
+
+            lock.writeLock().lock();
+            try {
+                committingPages.clear();
+                // The released pages are no longer part of the durable tree
+                freePages.addAll(released);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    @Override
+    public long count() throws IOException {
+        lock.readLock().lock();
+        try {
+            return keyCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @VisibleForTesting
+    long getPageCount() {
+        lock.readLock().lock();
+        try {
+            return pageCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(null, null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        RangeIterator iterator = new RangeIterator(firstKey, lastKey);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() throws IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() throws IOException {
+                checkState(iterator.hasNext());
+                byte[] key = iterator.key();
+                iterator.advance();
+                return key;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        return iterator(null, null);
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        RangeIterator iterator = new RangeIterator(firstKey, lastKey);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() throws IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                checkState(iterator.hasNext());
+                Entry<byte[], byte[]> entry = new SimpleImmutableEntry<>(iterator.key(), iterator.value());
+                iterator.advance();
+                return entry;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new BTreeBatch();
+    }
+
+    @Override
+    public void close() throws IOException {
+        commitLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            sync();
+
+            lock.writeLock().lock();
+            try {
+                closed = true;
+                unmapPages();
+                fileChannel.close();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Scans a range of the tree, a batch of entries at a time. The lock is only held while a batch is read, the
+     * iterator sees the modifications of the tree made after the batch it is reading.
+     */
+    private class RangeIterator {
+        private final boolean bounded;
+        private final long last1;
+        private final long last2;
+        private long next1;
+        private long next2;
+        private boolean done = false;
+        private final long[] batch = new long[3 * ITERATOR_BATCH_SIZE];
+        private int batchSize = 0;
+        private int position = 0;
+
+        RangeIterator(byte[] firstKey, byte[] lastKey) {
+            this.next1 = firstKey != null ? key1(firstKey) : 0;
+            this.next2 = firstKey != null ? key2(firstKey) : 0;
+            this.bounded = lastKey != null;
+            this.last1 = bounded ? key1(lastKey) : 0;
+            this.last2 = bounded ? key2(lastKey) : 0;
+        }
+
+        boolean hasNext() throws IOException {
+            if (position < batchSize) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+
+            lock.readLock().lock();
+            try {
+                checkOpen();
+                batchSize = rootPage == NO_PAGE ? 0
+                        : collect(getPage(rootPage), next1, next2, last1, last2, bounded, batch, 0);
+            } finally {
+                lock.readLock().unlock();
+            }
+            position = 0;
+            if (batchSize < ITERATOR_BATCH_SIZE) {
+                done = true;
+            } else {
+                // Resume after the last key of the batch
+                long lastKey1 = batch[3 * (batchSize - 1)];
+                long lastKey2 = batch[3 * (batchSize - 1) + 1];
+                if (lastKey1 == -1L && lastKey2 == -1L) {
+                    done = true;
+                }
+                next1 = lastKey2 == -1L ? lastKey1 + 1 : lastKey1;
+                next2 = lastKey2 + 1;
+            }
+            return batchSize > 0;
+        }
+
+        byte[] key() {
+            byte[] key = new byte[KEY_SIZE];
+            ArrayUtil.setLong(key, 0, batch[3 * position]);
+            ArrayUtil.setLong(key, 8, batch[3 * position + 1]);
+            return key;
+        }
+
+        byte[] value() {
+            byte[] value = new byte[VALUE_SIZE];
+            ArrayUtil.setLong(value, 0, batch[3 * position + 2]);
+            return value;
+        }
+
+        void advance() {
+            position++;
+        }
+    }
+
+    /**
+     * The operations of a batch are applied together when it is flushed, and committed.
+     */
+    private class BTreeBatch implements Batch {
+        private static final int PUT = 0;
+        private static final int REMOVE = 1;
+        private static final int DELETE_RANGE = 2;
+
+        // Operation, first key, value or last key of the range
+        private long[] ops = new long[5 * 64];
+        private int size = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            checkArgument(value.length == VALUE_SIZE, "Invalid value size");
+            add(PUT, key1(key), key2(key), ArrayUtil.getLong(value, 0), 0);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            add(REMOVE, key1(key), key2(key), 0, 0);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            add(DELETE_RANGE, key1(beginKey), key2(beginKey), key1(endKey), key2(endKey));
+        }
+
+        private void add(long op, long k1, long k2, long v1, long v2) {
+            if (size + 5 > ops.length) {
+                ops = Arrays.copyOf(ops, ops.length * 2);
+            }
+            ops[size++] = op;
+            ops[size++] = k1;
+            ops[size++] = k2;
+            ops[size++] = v1;
+            ops[size++] = v2;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            lock.writeLock().lock();
+            try {
+                checkOpen();
+                for (int i = 0; i < size; i += 5) {
+                    long k1 = ops[i + 1];
+                    long k2 = ops[i + 2];
+                    switch ((int) ops[i]) {
+                    case PUT:
+                        doPut(k1, k2, ops[i + 3]);
+                        break;
+                    case REMOVE:
+                        doDelete(k1, k2);
+                        break;
+                    default:
+                        doDeleteRange(k1, k2, ops[i + 3], ops[i + 4], true);
+                        break;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            sync();
+        }
+
+        @Override
+        public void close() {
+            size = 0;
+        }
+    }
+
+    private void doPut(long k1, long k2, long value) {
+        if (rootPage == NO_PAGE) {
+            Page root = newPage(LEAF);
+            root.insert(0, k1, k2, value);
+            rootPage = root.id;
+            keyCount++;
+            return;
+        }
+
+        Page root = writablePage(rootPage);
+        rootPage = root.id;
+        Page split = insert(root, k1, k2, value);
+        if (split != null) {
+            Page newRoot = newPage(BRANCH);
+            newRoot.insert(0, root.key1(0), root.key2(0), root.id);
+            newRoot.insert(1, split.key1(0), split.key2(0), split.id);
+            rootPage = newRoot.id;
+        }
+    }
+
+    /**
+     * Insert a key in the subtree of a writable page.
+     *
+     * @return the new right sibling of the page if the page was split, or null
+     */
+    private Page insert(Page page, long k1, long k2, long value) {
+        if (page.type() == LEAF) {
+            int i = page.lowerBound(k1, k2);
+            if (i < page.count() && page.compare(i, k1, k2) == 0) {
+                page.setValue(i, value);
+                return null;
+            }
+            keyCount++;
+            return insertItem(page, i, k1, k2, value);
+        }
+
+        int i = page.childIndex(k1, k2);
+        Page child = writablePage(page.value(i));
+        page.setValue(i, child.id);
+        Page split = insert(child, k1, k2, value);
+        return split == null ? null : insertItem(page, i + 1, split.key1(0), split.key2(0), split.id);
+    }
+
+    private Page insertItem(Page page, int i, long k1, long k2, long value) {
+        int count = page.count();
+        if (count < MAX_ITEMS) {
+            page.insert(i, k1, k2, value);
+            return null;
+        }
+
+        // Split the page in halves, unless the item is appended: the keys are mostly added in order
+        int middle = i == count ? count : count / 2;
+        Page right = newPage(page.type());
+        right.copyItems(page, middle, count);
+        page.setCount(middle);
+        if (i <= middle && i < count) {
+            page.insert(i, k1, k2, value);
+        } else {
+            right.insert(i - middle, k1, k2, value);
+        }
+        return right;
+    }
+
+    private void doDelete(long k1, long k2) {
+        if (k1 == -1L && k2 == -1L) {
+            // The greatest key has no successor to bound the range
+            doDeleteRange(k1, k2, 0, 0, false);
+        } else {
+            doDeleteRange(k1, k2, k2 == -1L ? k1 + 1 : k1, k2 + 1, true);
+        }
+    }
+
+    /**
+     * Delete the keys from <i>first</i> (included) to <i>last</i> (excluded), or up to the greatest key if the range
+     * is not bounded.
+     */
+    private void doDeleteRange(long first1, long first2, long last1, long last2, boolean bounded) {
+        long[] found = new long[3];
+        if (rootPage == NO_PAGE || collect(getPage(rootPage), first1, first2, last1, last2, bounded, found, 0) == 0) {
+            // Avoid copying the pages on the path of keys that don't exist
+            return;
+        }
+
+        Page root = writablePage(rootPage);
+        rootPage = root.id;
+        if (deleteRange(root, first1, first2, last1, last2, bounded)) {
+            releasePage(root.id);
+            rootPage = NO_PAGE;
+            return;
+        }
+        while (root.type() == BRANCH && root.count() == 1) {
+            releasePage(root.id);
+            rootPage = root.value(0);
+            root = getPage(rootPage);
+        }
+    }
+
+    /**
+     * Delete a range of keys from the subtree of a writable page.
+     *
+     * @return true if the page is empty, it is then to be released by the caller
+     */
+    private boolean deleteRange(Page page, long first1, long first2, long last1, long last2, boolean bounded) {
+        if (page.type() == LEAF) {
+            int from = page.lowerBound(first1, first2);
+            int to = bounded ? page.lowerBound(last1, last2) : page.count();
+            if (from < to) {
+                page.remove(from, to);
+                keyCount -= to - from;
+            }
+            return page.count() == 0;
+        }
+
+        // The child i holds keys from the key of the item i to the key of the next item
+        int from = page.childIndex(first1, first2);
+        int to = Math.max(bounded ? page.lowerBound(last1, last2) : page.count(), from + 1);
+        int kept = from;
+        for (int i = from; i < to; i++) {
+            boolean empty;
+            if (i > from && i < to - 1) {
+                // All the keys of the child are in the range
+                releaseSubtree(page.value(i));
+                empty = true;
+            } else {
+                Page child = writablePage(page.value(i));
+                page.setValue(i, child.id);
+                empty = deleteRange(child, first1, first2, last1, last2, bounded);
+                if (empty) {
+                    releasePage(child.id);
+                }
+            }
+            if (!empty) {
+                page.copyItem(i, kept++);
+            }
+        }
+        page.remove(kept, to);
+        return page.count() == 0;
+    }
+
+    private void releaseSubtree(long pageId) {
+        Page page = getPage(pageId);
+        if (page.type() == LEAF) {
+            keyCount -= page.count();
+        } else {
+            for (int i = 0; i < page.count(); i++) {
+                releaseSubtree(page.value(i));
+            }
+        }
+        releasePage(pageId);
+    }
+
+    /**
+     * Collect the entries of a subtree, in order, from the key <i>first</i> (included) to the key <i>last</i>
+     * (excluded) if the range is bounded, until the output array is full.
+     *
+     * @return the number of entries collected in the output, key and value of each entry as 3 longs
+     */
+    private int collect(Page page, long first1, long first2, long last1, long last2, boolean bounded,
+                        long[] output, int collected) {
+        int capacity = output.length / 3;
+        if (page.type() == LEAF) {
+            for (int i = page.lowerBound(first1, first2); i < page.count() && collected < capacity; i++) {
+                if (bounded && page.compare(i, last1, last2) >= 0) {
+                    break;
+                }
+                output[3 * collected] = page.key1(i);
+                output[3 * collected + 1] = page.key2(i);
+                output[3 * collected + 2] = page.value(i);
+                collected++;
+            }
+            return collected;
+        }
+
+        int from = page.childIndex(first1, first2);
+        for (int i = from; i < page.count() && collected < capacity; i++) {
+            if (i > from && bounded && page.compare(i, last1, last2) >= 0) {
+                break;
+            }
+            collected = collect(getPage(page.value(i)), first1, first2, last1, last2, bounded, output, collected);
+        }
+        return collected;
+    }
+
+    /**
+     * Find the entry with the greatest key lower than the given key in a subtree.
+     */
+    private boolean floor(Page page, long k1, long k2, long[] output) {
+        if (page.type() == LEAF) {
+            int i = page.lowerBound(k1, k2) - 1;
+            if (i < 0) {
+                return false;
+            }
+            output[0] = page.key1(i);
+            output[1] = page.key2(i);
+            output[2] = page.value(i);
+            return true;
+        }
+
+        // The keys of a child can be greater than the key of its item, after the lowest ones were deleted
+        for (int i = page.childIndex(k1, k2); i >= 0; i--) {
+            if (floor(getPage(page.value(i)), k1, k2, output)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Page getPage(long pageId) {
+        Page page = dirtyPages.get(pageId);
+        if (page == null) {
+            page = committingPages.get(pageId);
+            if (page == null) {
+                long position = pageId * PAGE_SIZE;
+                page = new Page(pageId, segments[(int) (position / SEGMENT_SIZE)], (int) (position % SEGMENT_SIZE));
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Get a page that can be modified, copying the given page if it is part of the committed tree.
+     */
+    private Page writablePage(long pageId) {
+        Page page = dirtyPages.get(pageId);
+        if (page != null) {
+            return page;
+        }
+
+        Page copy = newPage(LEAF);
+        copy.copyPage(getPage(pageId));
+        releasedPages.add(pageId);
+        return copy;
+    }
+
+    private Page newPage(byte type) {
+        Long free = freePages.poll();
+        long pageId = free != null ? free : pageCount++;
+        Page page = new Page(pageId, ByteBuffer.allocate(PAGE_SIZE), 0);
+        page.buffer.put(0, type);
+        dirtyPages.put(pageId, page);
+        return page;
+    }
+
+    private void releasePage(long pageId) {
+        if (dirtyPages.remove(pageId) != null) {
+            // The page is not part of a committed tree
+            freePages.add(pageId);
+        } else {
+            releasedPages.add(pageId);
+        }
+    }
+
+    @VisibleForTesting
+    void force() throws IOException {
+        fileChannel.force(false);
+    }
+
+    private void writePages(ConcurrentLongHashMap<Page> pages, long numPages) throws IOException {
+        mapPages(numPages);
+        for (Page page : pages.values()) {
+            ByteBuffer buffer = page.buffer.duplicate();
+            long position = page.id * PAGE_SIZE;
+            while (buffer.hasRemaining()) {
+                position += fileChannel.write(buffer, position);
+            }
+        }
+    }
+
+    /**
+     * Map the file up to the given number of pages, the file is extended as needed.
+     */
+    private void mapPages(long numPages) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        int numSegments = (int) ((numPages * PAGE_SIZE + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        if (numSegments <= mapped.length) {
+            return;
+        }
+
+        MappedByteBuffer[] newSegments = Arrays.copyOf(mapped, numSegments);
+        for (int i = mapped.length; i < numSegments; i++) {
+            // The channel is writable, so the file is extended to the size of the mapping
+            newSegments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, (long) i * SEGMENT_SIZE, SEGMENT_SIZE);
+        }
+        segments = newSegments;
+    }
+
+    private void unmapPages() {
+        for (MappedByteBuffer segment : segments) {
+            PlatformDependent.freeDirectBuffer(segment);
+        }
+        segments = new MappedByteBuffer[0];
+    }
+
+    private void writeMeta(long id, long root, long pages, long keys) throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(META_SIZE);
+        meta.putLong(0, MAGIC);
+        meta.putLong(8, FORMAT_VERSION);
+        meta.putLong(16, id);
+        meta.putLong(24, root);
+        meta.putLong(32, pages);
+        meta.putLong(40, keys);
+        CRC32 crc = new CRC32();
+        crc.update(meta.array(), 0, META_SIZE - Long.BYTES);
+        meta.putLong(48, crc.getValue());
+
+        // The meta pages are written alternately, the meta page of the previous commit stays intact
+        long position = (id % META_PAGES) * PAGE_SIZE;
+        while (meta.hasRemaining()) {
+            position += fileChannel.write(meta, position);
+        }
+    }
+
+    /**
+     * Read the meta page of the last commit.
+     *
+     * @return false if the storage is empty
+     */
+    private boolean readMeta() throws IOException {
+        boolean found = false;
+        boolean empty = true;
+        for (int i = 0; i < META_PAGES; i++) {
+            byte[] meta = new byte[META_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(meta);
+            long position = (long) i * PAGE_SIZE;
+            while (buffer.hasRemaining() && fileChannel.read(buffer, position + buffer.position()) >= 0) {
+                // Read the whole meta
+            }
+            if (ArrayUtil.isArrayAllZeros(meta)) {
+                continue;
+            }
+            empty = false;
+
+            CRC32 crc = new CRC32();
+            crc.update(meta, 0, META_SIZE - Long.BYTES);
+            if (ArrayUtil.getLong(meta, 0) != MAGIC || ArrayUtil.getLong(meta, 48) != crc.getValue()) {
+                log.warn("Invalid meta page {} in {}", i, path);
+                continue;
+            }
+            if (ArrayUtil.getLong(meta, 8) != FORMAT_VERSION) {
+                throw new IOException("Unsupported format version " + ArrayUtil.getLong(meta, 8) + " of " + path);
+            }
+
+            long id = ArrayUtil.getLong(meta, 16);
+            if (!found || id > commitId) {
+                found = true;
+                commitId = id;
+                rootPage = ArrayUtil.getLong(meta, 24);
+                pageCount = ArrayUtil.getLong(meta, 32);
+                keyCount = ArrayUtil.getLong(meta, 40);
+            }
+        }
+
+        if (!found && !empty) {
+            throw new IOException("No valid meta page in " + path);
+        }
+        if (found) {
+            mapPages(pageCount);
+        }
+        return found;
+    }
+
+    private void findFreePages() {
+        BitSet used = new BitSet();
+        if (rootPage != NO_PAGE) {
+            markUsedPages(rootPage, used);
+        }
+        for (long pageId = META_PAGES; pageId < pageCount; pageId++) {
+            if (!used.get((int) pageId)) {
+                freePages.add(pageId);
+            }
+        }
+    }
+
+    private void markUsedPages(long pageId, BitSet used) {
+        used.set((int) pageId);
+        Page page = getPage(pageId);
+        if (page.type() == BRANCH) {
+            for (int i = 0; i < page.count(); i++) {
+                markUsedPages(page.value(i), used);
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("B+tree " + path + " is closed");
+        }
+    }
+
+    private static ConcurrentLongHashMap<Page> newPagesMap() {
+        return ConcurrentLongHashMap.<Page>newBuilder()
+                .expectedItems(1024)
+                .concurrencyLevel(1)
+                .build();
+    }
+
+    private static long key1(byte[] key) {
+        checkArgument(key.length == KEY_SIZE, "Invalid key size");
+        return ArrayUtil.getLong(key, 0);
+    }
+
+    private static long key2(byte[] key) {
+        return ArrayUtil.getLong(key, 8);
+    }
+
+    private static Entry<byte[], byte[]> newEntry(long k1, long k2, long value) {
+        byte[] key = new byte[KEY_SIZE];
+        ArrayUtil.setLong(key, 0, k1);
+        ArrayUtil.setLong(key, 8, k2);
+        byte[] valueArray = new byte[VALUE_SIZE];
+        ArrayUtil.setLong(valueArray, 0, value);
+        return new SimpleImmutableEntry<>(key, valueArray);
+    }
+
+    /**
+     * A page of the tree, either in memory or in a mapped segment of the file. The keys are compared as unsigned
+     * bytes, like 2 unsigned longs.
+     */
+    private static final class Page {
+        final long id;
+        final ByteBuffer buffer;
+        final int offset;
+
+        Page(long id, ByteBuffer buffer, int offset) {
+            this.id = id;
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        byte type() {
+            return buffer.get(offset);
+        }
+
+        int count() {
+            return buffer.getShort(offset + 2);
+        }
+
+        void setCount(int count) {
+            buffer.putShort(offset + 2, (short) count);
+        }
+
+        private int itemOffset(int i) {
+            return offset + HEADER_SIZE + i * ITEM_SIZE;
+        }
+
+        long key1(int i) {
+            return buffer.getLong(itemOffset(i));
+        }
+
+        long key2(int i) {
+            return buffer.getLong(itemOffset(i) + 8);
+        }
+
+        long value(int i) {
+            return buffer.getLong(itemOffset(i) + KEY_SIZE);
+        }
+
+        void setValue(int i, long value) {
+            buffer.putLong(itemOffset(i) + KEY_SIZE, value);
+        }
+
+        int compare(int i, long k1, long k2) {
+            int res = Long.compareUnsigned(key1(i), k1);
+            return res != 0 ? res : Long.compareUnsigned(key2(i), k2);
+        }
+
+        /**
+         * @return the index of the first item whose key is greater or equal to the given key, the first item of a
+         *         branch is lower than any key
+         */
+        int lowerBound(long k1, long k2) {
+            int low = type() == BRANCH ? 1 : 0;
+            int high = count();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(mid, k1, k2) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the child of a branch holding the given key
+         */
+        int childIndex(long k1, long k2) {
+            int i = lowerBound(k1, k2);
+            if (i < count() && compare(i, k1, k2) == 0) {
+                return i;
+            }
+            return i - 1;
+        }
+
+        // The methods below are only used on pages in memory
+
+        void insert(int i, long k1, long k2, long value) {
+            int count = count();
+            byte[] array = buffer.array();
+            System.arraycopy(array, itemOffset(i), array, itemOffset(i + 1), (count - i) * ITEM_SIZE);
+            buffer.putLong(itemOffset(i), k1);
+            buffer.putLong(itemOffset(i) + 8, k2);
+            buffer.putLong(itemOffset(i) + KEY_SIZE, value);
+            setCount(count + 1);
+        }
+
+        void remove(int from, int to) {
+            int count = count();
+            byte[] array = buffer.array();
+            System.arraycopy(array, itemOffset(to), array, itemOffset(from), (count - to) * ITEM_SIZE);
+            setCount(count - (to - from));
+        }
+
+        void copyItem(int from, int to) {
+            if (from != to) {
+                byte[] array = buffer.array();
+                System.arraycopy(array, itemOffset(from), array, itemOffset(to), ITEM_SIZE);
+            }
+        }
+
+        void copyItems(Page source, int from, int to) {
+            for (int i = from; i < to; i++) {
+                int j = i - from;
+                buffer.putLong(itemOffset(j), source.key1(i));
+                buffer.putLong(itemOffset(j) + 8, source.key2(i));
+                buffer.putLong(itemOffset(j) + KEY_SIZE, source.value(i));
+            }
+            setCount(to - from);
+        }
+
+        void copyPage(Page source) {
+            for (int i = 0; i < PAGE_SIZE; i += Long.BYTES) {
+                buffer.putLong(i, source.buffer.getLong(source.offset + i));
+            }
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageBTree.class);
+}
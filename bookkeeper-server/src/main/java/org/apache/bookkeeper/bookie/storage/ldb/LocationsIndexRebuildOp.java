@@ -76,8 +76,8 @@ public class LocationsIndexRebuildOp {
         Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, basePath);
         LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-        KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(basePath, "locations",
-                DbConfigType.Default, conf);
+        KeyValueStorage newIndex = EntryLocationIndex.getStorageFactory(conf).newKeyValueStorage(basePath,
+                "locations", DbConfigType.Default, conf);
 
         int totalEntryLogs = entryLogs.size();
         int completedEntryLogs = 0;
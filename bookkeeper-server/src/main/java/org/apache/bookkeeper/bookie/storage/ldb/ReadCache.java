@@ -22,6 +22,7 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
@@ -40,12 +41,30 @@ import org.slf4j.LoggerFactory;
 /**
  * Read cache implementation.
  *
- * <p>Uses the specified amount of memory and pairs it with a hashmap.
+ * <p>Uses the specified amount of memory and pairs it with a single hashmap
+ * that maps each entry to its location in the segments.
  *
  * <p>The memory is splitted in multiple segments that are used in a
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Cached entries are returned as retained read-only slices of the segments,
+ * without copying them. A segment still referenced by a reader when it is
+ * rotated is replaced by a new buffer instead of being overwritten, and is
+ * freed when the last reader releases its entry. To bound the memory held by
+ * slow readers, only a few segments can be replaced this way: past that, the
+ * rotation skips the segments still referenced and the entries are returned
+ * as copies until the replaced segments are freed.
+ *
+ * <p>Each use of a segment is identified by a generation, which is recorded
+ * with the location of the entries stored in it. When a segment is rotated,
+ * its generation changes: the index entries pointing to the previous
+ * generation become stale and are lazily dropped, either when looked up or
+ * by a sweep once they outnumber the live entries. The sweep is incremental:
+ * each following put drops the stale entries of one section of the index.
+ *
+ * <p>The entries stored in the cache are selected by a {@link ReadCacheAdmissionPolicy}.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
@@ -53,44 +72,87 @@ public class ReadCache implements Closeable {
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    // (ledgerId, entryId) -> (segment generation, offset << 32 | length)
+    private final ConcurrentLongLongPairHashMap cacheIndex;
+    private final long[] segmentGenerations;
+    private final AtomicInteger[] segmentEntries;
+    // Next section of the index to sweep, all of them are swept when there is no sweep in progress
+    private final AtomicInteger nextSweptSection;
 
     private int currentSegmentIdx;
     private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
 
     private final int segmentSize;
 
-    private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private final ReadCacheAdmissionPolicy admissionPolicy;
+
+    private final ByteBufAllocator allocator;
+    // Segments replaced while still referenced by readers, guarded by the write lock
+    private final List<ByteBuf> detachedSegments = new ArrayList<>();
+    private final int maxDetachedSegments;
+    // Whether entries are copied on get, set once the limit of replaced segments is reached
+    private volatile boolean copyOnGet = false;
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, new AdmitAllReadCacheAdmissionPolicy());
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, ReadCacheAdmissionPolicy admissionPolicy) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, admissionPolicy);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     ReadCacheAdmissionPolicy admissionPolicy) {
         this.allocator = allocator;
+        this.admissionPolicy = admissionPolicy;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
+        maxDetachedSegments = Math.max(1, segmentsCount / 4);
 
         cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
+        segmentGenerations = new long[segmentsCount];
+        segmentEntries = new AtomicInteger[segmentsCount];
 
         for (int i = 0; i < segmentsCount; i++) {
             cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            segmentGenerations[i] = i;
+            segmentEntries[i] = new AtomicInteger(0);
         }
+
+        cacheIndex = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096 * segmentsCount)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+        nextSweptSection = new AtomicInteger(cacheIndex.sectionsCount());
     }
 
     @Override
     public void close() {
         cacheSegments.forEach(ByteBuf::release);
+        detachedSegments.clear();
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
+        put(ledgerId, entryId, entry, false);
+    }
+
+    /**
+     * Store an entry in the cache, if the admission policy admits it.
+     *
+     * @param readAhead whether the entry was read ahead, rather than requested by a reader
+     * @return true if the entry was admitted in the cache
+     */
+    public boolean put(long ledgerId, long entryId, ByteBuf entry, boolean readAhead) {
+        if (!admissionPolicy.admit(ledgerId, entryId, readAhead)) {
+            return false;
+        }
+
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
@@ -99,7 +161,7 @@ public class ReadCache implements Closeable {
         try {
             if (entrySize > segmentSize) {
                 log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+                return false;
             }
             int offset = currentSegmentOffset.getAndAdd(alignedSize);
             if (offset + entrySize > segmentSize) {
@@ -108,8 +170,9 @@ public class ReadCache implements Closeable {
                 // Copy entry into read cache segment
                 cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
                         entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+                index(ledgerId, entryId, offset, entrySize);
+                sweepNextSection();
+                return true;
             }
         } finally {
             lock.readLock().unlock();
@@ -122,41 +185,130 @@ public class ReadCache implements Closeable {
         try {
             int offset = currentSegmentOffset.getAndAdd(entrySize);
             if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                // Rollover to next segment that can be overwritten
+                int nextSegmentIdx = nextSegmentToRecycle();
+                if (nextSegmentIdx < 0) {
+                    // All the other segments are still referenced by readers
+                    currentSegmentOffset.set(segmentSize);
+                    return false;
+                }
+                currentSegmentIdx = nextSegmentIdx;
                 currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
+                // Invalidate the entries of the previous use of the segment
+                segmentGenerations[currentSegmentIdx] += cacheSegments.size();
+                segmentEntries[currentSegmentIdx].set(0);
+                startSweepIfNeeded();
                 offset = 0;
             }
 
             // Copy entry into read cache segment
             cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+            index(ledgerId, entryId, offset, entrySize);
+            return true;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Check whether entries of a ledger read ahead would be admitted in the cache, so that they
+     * are not read at all when the admission policy would reject them.
+     */
+    public boolean admitsReadAhead(long ledgerId, long firstEntryId) {
+        return admissionPolicy.admit(ledgerId, firstEntryId, true);
+    }
+
+    /**
+     * Index an entry copied in the current segment, unless the entry is already cached: the segments
+     * only count the entries indexed in them.
+     */
+    private void index(long ledgerId, long entryId, int offset, int entrySize) {
+        long generation = segmentGenerations[currentSegmentIdx];
+        long location = ((long) offset << 32) | entrySize;
+        while (!cacheIndex.putIfAbsent(ledgerId, entryId, generation, location)) {
+            if (lookup(ledgerId, entryId) != null) {
+                // cached concurrently or before, the copy is left unused
+                return;
+            }
+            // the stale location was dropped by the lookup
+        }
+        segmentEntries[currentSegmentIdx].incrementAndGet();
+    }
+
+    /**
+     * Lookup the location of an entry, dropping it from the index if it points to a
+     * segment that was rotated since.
+     *
+     * @return the location of the entry or null if it is not cached
+     */
+    private LongPair lookup(long ledgerId, long entryId) {
+        LongPair res = cacheIndex.get(ledgerId, entryId);
+        if (res == null) {
+            return null;
+        }
+
+        long generation = res.first;
+        if (segmentGenerations[(int) (generation % cacheSegments.size())] != generation) {
+            cacheIndex.remove(ledgerId, entryId, res.first, res.second);
+            return null;
+        }
+        return res;
+    }
+
+    /**
+     * Start a sweep of the stale entries of the index once they outnumber the live ones, to keep
+     * the index from growing with entries that are never looked up again. Must be called with the
+     * write lock held.
+     */
+    private void startSweepIfNeeded() {
+        long liveEntries = 0;
+        for (AtomicInteger entries : segmentEntries) {
+            liveEntries += entries.get();
+        }
+
+        if (cacheIndex.size() > 2 * liveEntries) {
+            nextSweptSection.set(0);
+        }
+    }
+
+    /**
+     * Drop the stale entries of the next section of the index, if a sweep is in progress. Must be
+     * called with the read lock held, so that no segment is rotated during the sweep.
+     */
+    private void sweepNextSection() {
+        int sectionsCount = cacheIndex.sectionsCount();
+        if (nextSweptSection.get() >= sectionsCount) {
+            return;
+        }
+        int section = nextSweptSection.getAndIncrement();
+        if (section < sectionsCount) {
+            int segmentsCount = cacheSegments.size();
+            cacheIndex.removeIf(section, (ledgerId, entryId, generation, location) ->
+                    segmentGenerations[(int) (generation % segmentsCount)] != generation);
+        }
+    }
+
     public ByteBuf get(long ledgerId, long entryId) {
+        admissionPolicy.recordAccess(ledgerId, entryId);
+
         lock.readLock().lock();
 
         try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
+            LongPair res = lookup(ledgerId, entryId);
+            if (res != null) {
+                int segmentIdx = (int) (res.first % cacheSegments.size());
+                int entryOffset = (int) (res.second >>> 32);
+                int entryLen = (int) res.second;
+
+                ByteBuf segment = cacheSegments.get(segmentIdx);
+                if (copyOnGet) {
                     ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+                    entry.writeBytes(segment, entryOffset, entryLen);
                     return entry;
                 }
+
+                // The slice retains the segment, which is not overwritten until it gets released
+                return segment.retainedSlice(entryOffset, entryLen).asReadOnly();
             }
         } finally {
             lock.readLock().unlock();
@@ -166,18 +318,54 @@ public class ReadCache implements Closeable {
         return null;
     }
 
+    /**
+     * Find the next segment to overwrite, in ring order, and make it available to be
+     * overwritten. Must be called with the write lock held.
+     *
+     * @return the index of the segment, or -1 if every other segment is still referenced by
+     *         readers and no more segments can be replaced
+     */
+    private int nextSegmentToRecycle() {
+        int segmentsCount = cacheSegments.size();
+        for (int i = 1; i < segmentsCount; i++) {
+            int segmentIdx = (currentSegmentIdx + i) % segmentsCount;
+            if (recycleSegment(segmentIdx)) {
+                return segmentIdx;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Make the segment available to be overwritten. If readers still reference entries of
+     * the segment, it is replaced by a new buffer and freed once all the entries are released,
+     * unless too many segments were already replaced.
+     *
+     * @return true if the segment can be overwritten
+     */
+    private boolean recycleSegment(int segmentIdx) {
+        ByteBuf segment = cacheSegments.get(segmentIdx);
+        detachedSegments.removeIf(detached -> detached.refCnt() == 0);
+        copyOnGet = detachedSegments.size() >= maxDetachedSegments;
+        if (segment.refCnt() == 1) {
+            return true;
+        } else if (copyOnGet) {
+            return false;
+        }
+
+        cacheSegments.set(segmentIdx, Unpooled.directBuffer(segmentSize, segmentSize));
+        segment.release();
+        detachedSegments.add(segment);
+        copyOnGet = detachedSegments.size() >= maxDetachedSegments;
+        return true;
+    }
+
     public boolean hasEntry(long ledgerId, long entryId) {
         lock.readLock().lock();
 
         try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
-                }
+            if (lookup(ledgerId, entryId) != null) {
+                return true;
             }
         } finally {
             lock.readLock().unlock();
@@ -195,10 +383,10 @@ public class ReadCache implements Closeable {
 
         try {
             long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
+            for (int i = 0; i < cacheSegments.size(); i++) {
                 if (i == currentSegmentIdx) {
                     size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
+                } else if (segmentEntries[i].get() > 0) {
                     size += segmentSize;
                 } else {
                     // the segment is empty
@@ -211,6 +399,11 @@ public class ReadCache implements Closeable {
         }
     }
 
+    @VisibleForTesting
+    long indexSize() {
+        return cacheIndex.size();
+    }
+
     /**
      * @return the total number of cached entries
      */
@@ -219,8 +412,8 @@ public class ReadCache implements Closeable {
 
         try {
             long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
+            for (AtomicInteger entries : segmentEntries) {
+                count += entries.get();
             }
 
             return count;
@@ -0,0 +1,55 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Policy deciding which entries are stored in the {@link ReadCache}.
+ *
+ * <p>The read cache evicts its oldest segment whenever it needs space, whatever the
+ * entries it holds. A policy can reject entries that are unlikely to be read, such as
+ * entries read ahead for ledgers that are rarely read, so that they do not evict the
+ * entries that are actually being read.
+ *
+ * <p>Implementations must be thread-safe.
+ */
+public interface ReadCacheAdmissionPolicy {
+
+    /**
+     * Initialize the policy with the bookie configuration.
+     */
+    default void initialize(ServerConfiguration conf) {
+    }
+
+    /**
+     * Record a read of an entry from the read cache, whether the entry was found or not.
+     */
+    void recordAccess(long ledgerId, long entryId);
+
+    /**
+     * Decide whether an entry is to be stored in the read cache.
+     *
+     * @param readAhead whether the entry was read ahead, rather than requested by a reader
+     * @return true if the entry is to be stored in the read cache
+     */
+    boolean admit(long ledgerId, long entryId, boolean readAhead);
+}
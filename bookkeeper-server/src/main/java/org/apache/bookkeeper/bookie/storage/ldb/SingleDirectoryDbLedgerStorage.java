@@ -32,19 +32,27 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
@@ -69,9 +77,13 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerEntryPage;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.WriteCache.EntryConsumer;
+import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.proto.BookieProtocol;
@@ -104,8 +116,19 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     // Write cache where all new entries are inserted into
     protected volatile WriteCache writeCache;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Ring of write caches sharing the write cache memory, the full ones are flushed while the next one is filled
+    private final WriteCache[] writeCaches;
+
+    // Write caches that are full and waiting to be flushed, from the oldest to the newest. Guarded by the write
+    // lock of writeCacheRotationLock
+    private final List<WriteCache> fullWriteCaches = new ArrayList<>();
+
+    // Write caches that can replace the current write cache when it's full
+    private final Queue<WriteCache> freeWriteCaches = new ConcurrentLinkedQueue<>();
+
+    // Write caches holding entries not flushed yet, from the newest to the oldest, starting with the current write
+    // cache. Replaced as a whole when the caches are rotated, so that readers need a single volatile read
+    private volatile WriteCache[] unflushedWriteCaches;
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
@@ -115,7 +138,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     protected final ReentrantLock flushMutex = new ReentrantLock();
 
     protected final AtomicBoolean hasFlushBeenTriggered = new AtomicBoolean(false);
-    private final AtomicBoolean isFlushOngoing = new AtomicBoolean(false);
 
     private static String dbStoragerExecutorName = "db-storage";
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
@@ -125,6 +147,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
 
+    // Executor used to flush the write cache stripes in parallel, null when flushing in a single stripe
+    private final ExecutorService flushExecutor;
+    private final int flushStripes;
+
+    // Executor used to read ahead in the background, null when reading ahead on the read threads
+    private final ThreadPoolExecutor readAheadExecutor;
+    private volatile boolean readAheadStopped = false;
+
     private final CopyOnWriteArrayList<LedgerDeletionListener> ledgerDeletionListeners = Lists
             .newCopyOnWriteArrayList();
 
@@ -134,6 +164,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
     private final int readAheadCacheBatchSize;
+    private final int readAheadCacheMaxBatchSize;
+    private final int locationPrefetchSize;
 
     private final long maxThrottleTimeNanos;
 
@@ -141,6 +173,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int DEFAULT_READ_AHEAD_THREADS = 0;
+    private static final int DEFAULT_FLUSH_STRIPES = 1;
+    private static final int DEFAULT_WRITE_CACHE_COUNT = 2;
+    private static final int DEFAULT_LOCATION_PREFETCH_SIZE = 0;
+    private static final int MAX_PENDING_READ_AHEADS = 1024;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -159,11 +197,24 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        // The write caches share the write cache memory, which bounds the memory of the caches waiting to be flushed
+        int writeCacheCount = Math.max(2, conf.getInt(DbLedgerStorage.WRITE_CACHE_COUNT, DEFAULT_WRITE_CACHE_COUNT));
+        this.writeCaches = new WriteCache[writeCacheCount];
+        for (int i = 0; i < writeCacheCount; i++) {
+            writeCaches[i] = new WriteCache(allocator, writeCacheMaxSize / writeCacheCount);
+        }
+        this.writeCache = writeCaches[0];
+        for (int i = 1; i < writeCacheCount; i++) {
+            freeWriteCaches.add(writeCaches[i]);
+        }
+        this.unflushedWriteCaches = new WriteCache[] { writeCache };
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
+        this.readAheadCacheMaxBatchSize = Math.max(readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE, 8 * readAheadCacheBatchSize));
+
+        this.locationPrefetchSize = conf.getInt(DbLedgerStorage.LOCATION_PREFETCH_SIZE, DEFAULT_LOCATION_PREFETCH_SIZE);
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
@@ -172,11 +223,25 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        ReadCacheAdmissionPolicy readCacheAdmissionPolicy = ReflectionUtils.newInstance(
+                conf.getString(DbLedgerStorage.READ_CACHE_ADMISSION_POLICY,
+                        AdmitAllReadCacheAdmissionPolicy.class.getName()),
+                ReadCacheAdmissionPolicy.class);
+        readCacheAdmissionPolicy.initialize(conf);
+        readCache = new ReadCache(allocator, readCacheMaxSize, readCacheAdmissionPolicy);
+
+        int readAheadThreads = conf.getInt(DbLedgerStorage.READ_AHEAD_THREADS, DEFAULT_READ_AHEAD_THREADS);
+        if (readAheadThreads > 0) {
+            readAheadExecutor = new ThreadPoolExecutor(readAheadThreads, readAheadThreads,
+                    0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_PENDING_READ_AHEADS),
+                    new DefaultThreadFactory("db-storage-read-ahead"));
+        } else {
+            readAheadExecutor = null;
+        }
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
+                EntryLocationIndex.getStorageFactory(conf), baseDir, ledgerDirStatsLogger);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -186,13 +251,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
-        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+        entryLogger = createEntryLogger(conf, ledgerDirsManager, statsLogger, allocator);
         gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger);
 
+        int flushStripes = conf.getInt(DbLedgerStorage.FLUSH_STRIPES, DEFAULT_FLUSH_STRIPES);
+        if (flushStripes > 1 && !(entryLogger instanceof DefaultEntryLogger && conf.isEntryLogPerLedgerEnabled())) {
+            // With a single entry log the stripes would only contend on it
+            log.warn("Flushing the write cache in {} stripes requires an entry log per ledger, using a single stripe",
+                    flushStripes);
+            flushStripes = 1;
+        }
+        this.flushStripes = Math.max(flushStripes, 1);
+        if (this.flushStripes > 1) {
+            flushExecutor = Executors.newFixedThreadPool(this.flushStripes - 1,
+                    new DefaultThreadFactory("db-storage-flush"));
+        } else {
+            flushExecutor = null;
+        }
+
         dbLedgerStorageStats = new DbLedgerStorageStats(
                 ledgerDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> Arrays.stream(writeCaches).mapToLong(WriteCache::size).sum(),
+            () -> Arrays.stream(writeCaches).mapToLong(WriteCache::count).sum(),
             () -> readCache.size(),
             () -> readCache.count()
         );
@@ -209,6 +289,23 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
     }
 
+    private static EntryLogger createEntryLogger(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
+                                                 StatsLogger statsLogger, ByteBufAllocator allocator)
+            throws IOException {
+        if (conf.isDirectIOEntryLoggerEnabled()) {
+            if (conf.isEntryLogPerLedgerEnabled()) {
+                log.warn("The direct I/O entry logger doesn't support entry log per ledger, using a single entry log");
+            }
+            try {
+                return new DirectEntryLogger(conf, ledgerDirsManager, new NativeIOImpl(), allocator);
+            } catch (IOException | LinkageError e) {
+                log.warn("Direct I/O is not available in {}, falling back to the default entry logger",
+                        ledgerDirsManager.getAllLedgerDirs(), e);
+            }
+        }
+        return new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+    }
+
     @Override
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
             LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
@@ -266,6 +363,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             flush();
 
             gcThread.shutdown();
+            if (readAheadExecutor != null) {
+                // Do not interrupt the read-aheads in progress, it would close the entry log file channels. They
+                // stop at the next entry instead.
+                readAheadStopped = true;
+                readAheadExecutor.getQueue().clear();
+                readAheadExecutor.shutdown();
+                readAheadExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+            }
             entryLogger.close();
 
             cleanupExecutor.shutdown();
@@ -274,8 +382,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             ledgerIndex.close();
             entryLocationIndex.close();
 
-            writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache cache : writeCaches) {
+                cache.close();
+            }
             readCache.close();
             executor.shutdown();
 
@@ -304,25 +413,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+        boolean inCache = writeCachesHaveEntry(ledgerId, entryId)
              || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
@@ -433,28 +524,19 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
             throws IOException, BookieException {
+        // Write cache is full, move on to the next free write cache and flush the full one in background
+        if (rotateWriteCacheAndAddEntry(ledgerId, entryId, entry)) {
+            triggerFlush();
+            return;
+        }
+
+        // All the write caches are full, wait for the flushes to free one
         long throttledStartTime = MathUtils.nowInNano();
         dbLedgerStorageStats.getThrottledWriteRequests().inc();
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
-                        }
-                    });
-            }
+            triggerFlush();
 
             long stamp = writeCacheRotationLock.readLock();
             try {
@@ -467,6 +549,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 writeCacheRotationLock.unlockRead(stamp);
             }
 
+            if (rotateWriteCacheAndAddEntry(ledgerId, entryId, entry)) {
+                recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
+                return;
+            }
+
             // Wait some time and try again
             try {
                 Thread.sleep(1);
@@ -482,6 +569,69 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         throw new OperationRejectedException();
     }
 
+    /**
+     * Replace the full write cache with a free one and add the entry into it.
+     *
+     * @return false if there is no free write cache
+     */
+    private boolean rotateWriteCacheAndAddEntry(long ledgerId, long entryId, ByteBuf entry) {
+        if (freeWriteCaches.isEmpty()) {
+            return false;
+        }
+
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            // Another thread might have already rotated the full write cache
+            if (writeCache.put(ledgerId, entryId, entry)) {
+                return true;
+            }
+            if (writeCache.isEmpty()) {
+                // The entry doesn't fit in an empty write cache, rotating would not help
+                return false;
+            }
+
+            WriteCache nextWriteCache = freeWriteCaches.poll();
+            if (nextWriteCache == null) {
+                return false;
+            }
+            fullWriteCaches.add(writeCache);
+            writeCache = nextWriteCache;
+            updateUnflushedWriteCaches();
+            return writeCache.put(ledgerId, entryId, entry);
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+    }
+
+    private void triggerFlush() {
+        // If the flush has already been triggered, we don't need to trigger another flush
+        if (hasFlushBeenTriggered.compareAndSet(false, true)) {
+            // Trigger an early flush in background
+            log.info("Write cache is full, triggering flush");
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
+                    }
+                });
+        }
+    }
+
+    // Must be called holding the write lock of writeCacheRotationLock
+    private void updateUnflushedWriteCaches() {
+        int count = fullWriteCaches.size();
+        WriteCache[] caches = new WriteCache[count + 1];
+        caches[0] = writeCache;
+        for (int i = 0; i < count; i++) {
+            caches[i + 1] = fullWriteCaches.get(count - 1 - i);
+        }
+        unflushedWriteCaches = caches;
+    }
+
     @Override
     public ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException {
         long startTime = MathUtils.nowInNano();
@@ -504,32 +654,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        // First try to read from the write caches of recent entries
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getWriteCacheHitCounter().inc();
             return entry;
@@ -546,11 +672,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
 
-        // Read from main storage
+        // Read from main storage, the ledger info is only added once there is an entry to track the reads with
+        TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
         long entryLocation;
         long locationIndexStartNano = MathUtils.nowInNano();
         try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            entryLocation = getEntryLocation(ledgerInfo, ledgerId, entryId);
             if (entryLocation == 0) {
                 // Only a negative result while in limbo equates to unknown
                 throwIfLimbo(ledgerId);
@@ -568,100 +695,217 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             dbLedgerStorageStats.getReadFromEntryLogTime().add(MathUtils.elapsedNanos(readEntryStartNano));
         }
 
-        readCache.put(ledgerId, entryId, entry);
+        putInReadCache(ledgerId, entryId, entry, false);
 
-        // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (ledgerInfo == null) {
+            ledgerInfo = getOrAddLedgerInfo(ledgerId);
+        }
+        // Try to read more entries, the number depends on how the ledger is being read
+        int readAheadWindow = ledgerInfo.updateReadAheadWindow(entryId, readAheadCacheBatchSize,
+                readAheadCacheMaxBatchSize, readAheadExecutor != null);
+        dbLedgerStorageStats.getReadAheadWindowStats().registerSuccessfulValue(readAheadWindow);
+        // Skip reading the entries that the admission policy would not store in the cache
+        if (readAheadWindow > 0 && readCache.admitsReadAhead(ledgerId, entryId + 1)) {
+            // Assume the next entries have about the same size as this one
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            long readAheadSize = Math.min(maxReadAheadBytesSize,
+                    (long) readAheadWindow * (4 + entry.readableBytes()));
+            if (readAheadExecutor != null) {
+                scheduleReadAhead(ledgerInfo, ledgerId, entryId, nextEntryLocation, readAheadWindow, readAheadSize);
+            } else {
+                fillReadAheadCache(ledgerInfo, ledgerId, entryId + 1, nextEntryLocation, readAheadWindow,
+                        readAheadSize);
+            }
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Get the location of an entry from the locations index.
+     *
+     * <p>While the ledger is read sequentially, the locations of the next entries are prefetched with a single scan
+     * of the index into the location window of the ledger, so that the next reads don't need an index lookup.
+     *
+     * @param ledgerInfo the ledger info, or null if the ledger has none yet
+     * @return the location, or 0 if the entry is not in the index
+     */
+    private long getEntryLocation(TransientLedgerInfo ledgerInfo, long ledgerId, long entryId) throws IOException {
+        if (locationPrefetchSize <= 0 || ledgerInfo == null) {
+            return entryLocationIndex.getLocation(ledgerId, entryId);
+        }
+
+        long location = ledgerInfo.getLocationFromWindow(entryId);
+        if (location != 0) {
+            dbLedgerStorageStats.getLocationWindowHitCounter().inc();
+            return location;
+        }
+        if (!ledgerInfo.isReadSequentially()) {
+            return entryLocationIndex.getLocation(ledgerId, entryId);
+        }
+
+        long version = ledgerInfo.getLocationWindowVersion();
+        long[] locations = new long[locationPrefetchSize];
+        int count = entryLocationIndex.getLocations(ledgerId, entryId, locations);
+        if (count == 0) {
+            return 0;
+        }
+        ledgerInfo.setLocationWindow(version, entryId, locations, count);
+        return locations[0];
+    }
+
+    /**
+     * Look up an entry in all the write caches holding entries not flushed yet. The caches are looked up from the
+     * newest to the oldest, since an entry added again is more recent in the newer caches. The write caches are
+     * already thread safe on their own, a single volatile read gives a consistent view of the caches to check.
+     */
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        for (WriteCache cache : unflushedWriteCaches) {
+            ByteBuf entry = cache.get(ledgerId, entryId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean writeCachesHaveEntry(long ledgerId, long entryId) {
+        for (WriteCache cache : unflushedWriteCaches) {
+            if (cache.hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void scheduleReadAhead(TransientLedgerInfo ledgerInfo, long ledgerId, long entryId,
+                                   long firstEntryLocation, int readAheadWindow, long readAheadSize) {
+        long endEntryId = entryId + readAheadWindow;
+        try {
+            readAheadExecutor.execute(() -> {
+                try {
+                    fillReadAheadCache(ledgerInfo, ledgerId, entryId + 1, firstEntryLocation, readAheadWindow,
+                            readAheadSize);
+                } finally {
+                    ledgerInfo.readAheadCompleted(endEntryId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Too many pending read-aheads, skip this one
+            ledgerInfo.readAheadCompleted(endEntryId);
+        }
+    }
+
+    private void putInReadCache(long ledgerId, long entryId, ByteBuf entry, boolean readAhead) {
+        if (readCache.put(ledgerId, entryId, entry, readAhead)) {
+            dbLedgerStorageStats.getReadCacheAdmittedCounter().inc();
+        } else {
+            dbLedgerStorageStats.getReadCacheRejectedCounter().inc();
+        }
+    }
+
+    @VisibleForTesting
+    void fillReadAheadCache(TransientLedgerInfo ledgerInfo, long orginalLedgerId, long firstEntryId,
+                            long firstEntryLocation, int maxEntries, long readAheadSize) {
         long readAheadStartNano = MathUtils.nowInNano();
-        int count = 0;
-        long size = 0;
+        MutableLong count = new MutableLong(0);
+        MutableLong size = new MutableLong(0);
 
         try {
-            long firstEntryLogId = (firstEntryLocation >> 32);
-            long currentEntryLogId = firstEntryLogId;
-            long currentEntryLocation = firstEntryLocation;
+            if (isReadAheadCancelled(ledgerInfo)) {
+                return;
+            }
 
-            while (count < readAheadCacheBatchSize
-                    && size < maxReadAheadBytesSize
-                    && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
+            // Read the following entries of the entry log at once
+            entryLogger.readEntries(firstEntryLocation, readAheadSize, entry -> {
+                long currentEntryLedgerId = entry.getLong(entry.readerIndex());
+                long currentEntryId = entry.getLong(entry.readerIndex() + 8);
 
-                try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
+                if (currentEntryLedgerId != orginalLedgerId || currentEntryId != firstEntryId + count.longValue()) {
+                    // Found an entry belonging to a different ledger, stopping read-ahead
+                    return false;
+                }
+                if (isReadAheadCancelled(ledgerInfo)) {
+                    return false;
+                }
 
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
+                // Insert entry in read cache
+                putInReadCache(orginalLedgerId, currentEntryId, entry, true);
 
-                    // Insert entry in read cache
-                    readCache.put(orginalLedgerId, currentEntryId, entry);
+                count.increment();
+                size.add(entry.readableBytes());
+                return count.longValue() < maxEntries && size.longValue() < maxReadAheadBytesSize;
+            });
 
-                    count++;
-                    firstEntryId++;
-                    size += entry.readableBytes();
+            // When the entries of the ledger are interleaved with other ledgers in the entry log, keep reading
+            // the entries whose locations were prefetched in the location window
+            while (locationPrefetchSize > 0 && count.longValue() < maxEntries
+                    && size.longValue() < maxReadAheadBytesSize) {
+                long entryId = firstEntryId + count.longValue();
+                long location = ledgerInfo.getLocationFromWindow(entryId);
+                if (location == 0 || isReadAheadCancelled(ledgerInfo)) {
+                    break;
+                }
 
-                    currentEntryLocation += 4 + entry.readableBytes();
-                    currentEntryLogId = currentEntryLocation >> 32;
+                ByteBuf entry = entryLogger.readEntry(orginalLedgerId, entryId, location);
+                try {
+                    putInReadCache(orginalLedgerId, entryId, entry, true);
+                    size.add(entry.readableBytes());
                 } finally {
                     entry.release();
                 }
+                count.increment();
             }
         } catch (Exception e) {
             if (log.isDebugEnabled()) {
                 log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
             }
         } finally {
-            dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
-            dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
+            dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count.longValue());
+            dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size.longValue());
             dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
         }
     }
 
+    /**
+     * A background read-ahead is cancelled when the ledger is deleted, which closes its ledger info, or when the
+     * storage shuts down.
+     */
+    private boolean isReadAheadCancelled(TransientLedgerInfo ledgerInfo) {
+        return readAheadStopped || ledgerInfo.isClosed();
+    }
+
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
 
         long stamp = writeCacheRotationLock.readLock();
         try {
-            // First try to read from the write cache of recent entries
-            ByteBuf entry = writeCache.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    long foundLedgerId = entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache: {}@{}", ledgerId, foundLedgerId,
-                                entryId);
-                    }
+            // First try to read from the write caches of recent entries. The entries of a ledger can be spread across
+            // several write caches, so keep the highest entry found in any of them
+            ByteBuf lastEntry = null;
+            long lastEntryId = -1;
+            for (WriteCache cache : unflushedWriteCaches) {
+                ByteBuf entry = cache.getLastEntry(ledgerId);
+                if (entry == null) {
+                    continue;
+                }
+                long entryId = entry.getLong(entry.readerIndex() + 8);
+                if (lastEntry == null || entryId > lastEntryId) {
+                    ReferenceCountUtil.release(lastEntry);
+                    lastEntry = entry;
+                    lastEntryId = entryId;
+                } else {
+                    entry.release();
                 }
-
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
             }
 
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
+            if (lastEntry != null) {
                 if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
-                    }
+                    log.debug("Found last entry for ledger {} in write cache: {}", ledgerId, lastEntryId);
                 }
 
                 dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
+                return lastEntry;
             }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
@@ -687,12 +931,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     @VisibleForTesting
     boolean isFlushRequired() {
-        long stamp = writeCacheRotationLock.readLock();
-        try {
-            return !writeCache.isEmpty();
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
+        for (WriteCache cache : unflushedWriteCaches) {
+            if (!cache.isEmpty()) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
@@ -707,41 +951,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Only a single flush operation can happen at a time
         flushMutex.lock();
         try {
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
-
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
-            }
+            long sizeToFlush = 0;
+            boolean writeCacheSwapped;
+            do {
+                // Swap the write cache so that writes can continue to happen while the flush is
+                // ongoing. If there's no free write cache, the full ones are flushed first to free them
+                List<WriteCache> writeCachesToFlush = new ArrayList<>();
+                writeCacheSwapped = swapWriteCache(writeCachesToFlush);
+                sizeToFlush += flushWriteCaches(writeCachesToFlush);
+                releaseWriteCaches(writeCachesToFlush);
+            } while (!writeCacheSwapped);
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
             ledgerIndex.flush();
@@ -764,9 +983,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -785,35 +1001,116 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             // Wrap unchecked exceptions
             throw new IOException(e);
         } finally {
-            try {
-                isFlushOngoing.set(false);
-            } finally {
-                flushMutex.unlock();
-            }
+            flushMutex.unlock();
         }
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Swap the current write cache with a free write cache, and collect all the full write caches to flush.
+     *
+     * @return false if the current write cache could not be swapped because there is no free write cache
      */
-    private void swapWriteCache() {
+    private boolean swapWriteCache(List<WriteCache> writeCachesToFlush) {
         long stamp = writeCacheRotationLock.writeLock();
         try {
-            // First, swap the current write-cache map with an empty one so that writes will
+            // First, swap the current write-cache with an empty one so that writes will
             // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            boolean swapped = true;
+            if (!writeCache.isEmpty()) {
+                WriteCache nextWriteCache = freeWriteCaches.poll();
+                if (nextWriteCache != null) {
+                    fullWriteCaches.add(writeCache);
+                    writeCache = nextWriteCache;
+                    updateUnflushedWriteCaches();
+                } else {
+                    swapped = false;
+                }
+            }
+            writeCachesToFlush.addAll(fullWriteCaches);
 
             // since the cache is switched, we can allow flush to be triggered
             hasFlushBeenTriggered.set(false);
+            return swapped;
         } finally {
-            try {
-                isFlushOngoing.set(true);
-            } finally {
-                writeCacheRotationLock.unlockWrite(stamp);
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Write all the entries of the write caches into the entry logger, from the oldest to the newest cache, and
+     * update the location index once they are persisted.
+     *
+     * @return the size of the flushed entries
+     */
+    private long flushWriteCaches(List<WriteCache> writeCachesToFlush) throws IOException {
+        long sizeToFlush = 0;
+        for (WriteCache cache : writeCachesToFlush) {
+            sizeToFlush += cache.size();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries of {} write caches. size {} Mb", writeCachesToFlush.size(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry. Each stripe of ledgers collects its locations in its own batch,
+        // the batches are only committed once all the entries are persisted in the entry logs
+
+        Batch[] batches = new Batch[flushStripes];
+        EntryConsumer[] stripeConsumers = new EntryConsumer[flushStripes];
+        for (int i = 0; i < flushStripes; i++) {
+            Batch batch = entryLocationIndex.newBatch();
+            batches[i] = batch;
+            stripeConsumers[i] = (ledgerId, entryId, entry) -> {
+                try {
+                    long location = entryLogger.addEntry(ledgerId, entry);
+                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }
+        for (WriteCache cache : writeCachesToFlush) {
+            if (flushExecutor != null) {
+                cache.forEach(stripeConsumers, flushExecutor);
+            } else {
+                cache.forEach(stripeConsumers[0]);
             }
         }
+
+        long entryLoggerStart = MathUtils.nowInNano();
+        entryLogger.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+        long batchFlushStartTime = MathUtils.nowInNano();
+        for (Batch batch : batches) {
+            batch.flush();
+            batch.close();
+        }
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+        return sizeToFlush;
+    }
+
+    /**
+     * Discard all the entries of the flushed write caches, since they're now persisted, and make the caches
+     * available to replace the current write cache.
+     */
+    private void releaseWriteCaches(List<WriteCache> flushedWriteCaches) {
+        long stamp = writeCacheRotationLock.writeLock();
+        try {
+            fullWriteCaches.removeAll(flushedWriteCaches);
+            updateUnflushedWriteCaches();
+        } finally {
+            writeCacheRotationLock.unlockWrite(stamp);
+        }
+        for (WriteCache cache : flushedWriteCaches) {
+            cache.clear();
+            freeWriteCaches.add(cache);
+        }
     }
 
     @Override
@@ -829,10 +1126,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Deleting ledger {}", ledgerId);
         }
 
-        // Delete entries from this ledger that are still in the write cache
+        // Delete entries from this ledger that are still in the write caches, including the full ones waiting for
+        // or being flushed, so that their entries are not added to the entry log and the index after the deletion
         long stamp = writeCacheRotationLock.readLock();
         try {
-            writeCache.deleteLedger(ledgerId);
+            for (WriteCache cache : unflushedWriteCaches) {
+                cache.deleteLedger(ledgerId);
+            }
         } finally {
             writeCacheRotationLock.unlockRead(stamp);
         }
@@ -862,6 +1162,30 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         flush();
 
         entryLocationIndex.updateLocations(locations);
+
+        if (locationPrefetchSize > 0) {
+            // The prefetched locations of the moved entries are now stale
+            long lastLedgerId = -1;
+            for (EntryLocation location : locations) {
+                if (location.getLedger() != lastLedgerId) {
+                    lastLedgerId = location.getLedger();
+                    TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(lastLedgerId);
+                    if (ledgerInfo != null) {
+                        ledgerInfo.invalidateLocationWindow();
+                    }
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    ReadCache getReadCache() {
+        return readCache;
+    }
+
+    @VisibleForTesting
+    TransientLedgerInfo getLedgerInfo(long ledgerId) {
+        return transientLedgerInfoCache.get(ledgerId);
     }
 
     @VisibleForTesting
@@ -0,0 +1,135 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Admission policy that only stores read-ahead entries of the ledgers that are frequently read.
+ *
+ * <p>The reads of each ledger are counted in a TinyLFU sketch: a count-min sketch of 4 bits
+ * counters, which are all halved once the number of recorded reads reaches 10 times the number
+ * of counters, so that the counts reflect the recent reads. Entries requested by a reader are
+ * always admitted, while the entries read ahead are only admitted if their ledger was read at
+ * least {@value #DEFAULT_ADMISSION_FREQUENCY_THRESHOLD} times (by default) in the recent reads.
+ */
+public class TinyLfuReadCacheAdmissionPolicy implements ReadCacheAdmissionPolicy {
+
+    static final String ADMISSION_FREQUENCY_THRESHOLD = "dbStorage_readCacheAdmissionFrequencyThreshold";
+    private static final int DEFAULT_ADMISSION_FREQUENCY_THRESHOLD = 2;
+
+    static final String SKETCH_COUNTERS = "dbStorage_readCacheAdmissionSketchCounters";
+    private static final int DEFAULT_SKETCH_COUNTERS = 64 * 1024;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final int MAX_COUNT = 15;
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // Each long holds 16 counters of 4 bits
+    private AtomicLongArray table;
+    private int counterMask;
+    private int sampleSize;
+    private int admissionFrequencyThreshold;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    public TinyLfuReadCacheAdmissionPolicy() {
+        this(DEFAULT_SKETCH_COUNTERS, DEFAULT_ADMISSION_FREQUENCY_THRESHOLD);
+    }
+
+    public TinyLfuReadCacheAdmissionPolicy(int sketchCounters, int admissionFrequencyThreshold) {
+        init(sketchCounters, admissionFrequencyThreshold);
+    }
+
+    @Override
+    public void initialize(ServerConfiguration conf) {
+        init(conf.getInt(SKETCH_COUNTERS, DEFAULT_SKETCH_COUNTERS),
+             conf.getInt(ADMISSION_FREQUENCY_THRESHOLD, DEFAULT_ADMISSION_FREQUENCY_THRESHOLD));
+    }
+
+    private void init(int sketchCounters, int admissionFrequencyThreshold) {
+        int counters = Integer.highestOneBit(Math.max(16, sketchCounters));
+        this.table = new AtomicLongArray(counters / 16);
+        this.counterMask = counters - 1;
+        this.sampleSize = 10 * counters;
+        this.admissionFrequencyThreshold = Math.min(MAX_COUNT, admissionFrequencyThreshold);
+        this.additions.set(0);
+    }
+
+    @Override
+    public void recordAccess(long ledgerId, long entryId) {
+        for (long seed : SEEDS) {
+            increment(counterIndex(ledgerId, seed));
+        }
+
+        // Count the saturated reads too, so that the hot ledgers do not prevent the counters from aging
+        if (additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    @Override
+    public boolean admit(long ledgerId, long entryId, boolean readAhead) {
+        return !readAhead || frequency(ledgerId) >= admissionFrequencyThreshold;
+    }
+
+    /**
+     * @return the estimated number of recent reads of the ledger
+     */
+    int frequency(long ledgerId) {
+        int frequency = MAX_COUNT;
+        for (long seed : SEEDS) {
+            int index = counterIndex(ledgerId, seed);
+            int count = (int) ((table.get(index >>> 4) >>> ((index & 15) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private int counterIndex(long ledgerId, long seed) {
+        long hash = (ledgerId + seed) * seed;
+        hash ^= hash >>> 32;
+        return (int) hash & counterMask;
+    }
+
+    private void increment(int index) {
+        int slot = index >>> 4;
+        int shift = (index & 15) << 2;
+        while (true) {
+            long value = table.get(slot);
+            if (((value >>> shift) & 0xfL) == MAX_COUNT
+                    || table.compareAndSet(slot, value, value + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    // Halve all the counters so that old reads weight less than recent ones
+    private void reset() {
+        additions.set(0);
+        for (int i = 0; i < table.length(); i++) {
+            table.updateAndGet(i, value -> (value >>> 1) & RESET_MASK);
+        }
+    }
+}
@@ -57,6 +57,18 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     private long lastAccessed;
 
+    // read-ahead state, see updateReadAheadWindow()
+    private int readAheadWindow = -1;
+    private long readAheadLastMissEntryId = -1L;
+    private long readAheadEndEntryId = -1L;
+    private boolean readAheadInProgress = false;
+
+    // locations of a window of consecutive entries prefetched from the locations index, see setLocationWindow()
+    private long[] locationWindow = null;
+    private long locationWindowFirstEntryId = -1L;
+    private int locationWindowSize = 0;
+    private long locationWindowVersion = 0L;
+
     /**
      * Construct an Watchable with zero watchers.
      */
@@ -139,6 +151,103 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
         setLastAddConfirmed(explicitLacValue);
     }
 
+    /**
+     * Update the read-ahead window of the ledger after a read cache miss.
+     *
+     * <p>Like the readahead of the kernel, the window starts at <i>initialWindow</i> entries,
+     * doubles on each miss while the ledger is read sequentially, up to <i>maxWindow</i>
+     * entries, and halves on each random read, down to no read-ahead at all.
+     *
+     * @param entryId the entry that was missed
+     * @param async whether the read-ahead runs in the background, in which case misses on the
+     *              entries being read ahead do not trigger another read-ahead
+     * @return the number of entries to read ahead after the entry, 0 to not read ahead
+     */
+    synchronized int updateReadAheadWindow(long entryId, int initialWindow, int maxWindow, boolean async) {
+        lastAccessed = System.currentTimeMillis();
+
+        boolean sequential = readAheadWindow >= 0
+                && entryId > readAheadLastMissEntryId && entryId <= readAheadEndEntryId + 1;
+        if (sequential && readAheadInProgress && entryId <= readAheadEndEntryId) {
+            // The entry is being read ahead
+            return 0;
+        }
+
+        int window;
+        if (readAheadWindow < 0) {
+            window = initialWindow;
+        } else if (sequential) {
+            window = readAheadWindow == 0 ? initialWindow : (int) Math.min(2L * readAheadWindow, maxWindow);
+        } else {
+            window = readAheadWindow / 2;
+        }
+
+        readAheadWindow = window;
+        readAheadLastMissEntryId = entryId;
+        readAheadEndEntryId = entryId + window;
+        readAheadInProgress = async && window > 0;
+        return window;
+    }
+
+    /**
+     * Mark the background read-ahead of the window ending at <i>endEntryId</i> as completed.
+     */
+    synchronized void readAheadCompleted(long endEntryId) {
+        if (endEntryId == readAheadEndEntryId) {
+            readAheadInProgress = false;
+        }
+    }
+
+    /**
+     * Whether the ledger is being read sequentially, according to the read-ahead window.
+     */
+    synchronized boolean isReadSequentially() {
+        return readAheadWindow > 0;
+    }
+
+    /**
+     * Get the location of the entry from the prefetched location window.
+     *
+     * @return the location, or 0 if the entry is not in the window
+     */
+    synchronized long getLocationFromWindow(long entryId) {
+        long index = entryId - locationWindowFirstEntryId;
+        if (locationWindowSize == 0 || index < 0 || index >= locationWindowSize) {
+            return 0L;
+        }
+        return locationWindow[(int) index];
+    }
+
+    /**
+     * Get the version of the location window, to be passed to {@link #setLocationWindow} once the locations are
+     * looked up.
+     */
+    synchronized long getLocationWindowVersion() {
+        return locationWindowVersion;
+    }
+
+    /**
+     * Replace the location window with the locations of the entries starting at <i>firstEntryId</i>. The window is
+     * not replaced if it was invalidated since <i>version</i> was obtained, since the locations might be stale.
+     */
+    synchronized void setLocationWindow(long version, long firstEntryId, long[] locations, int size) {
+        if (version != locationWindowVersion) {
+            return;
+        }
+        locationWindow = locations;
+        locationWindowFirstEntryId = firstEntryId;
+        locationWindowSize = size;
+    }
+
+    /**
+     * Discard the location window, after the locations of the entries of the ledger were updated.
+     */
+    synchronized void invalidateLocationWindow() {
+        locationWindowVersion++;
+        locationWindow = null;
+        locationWindowSize = 0;
+    }
+
     boolean isStale() {
         return (lastAccessed + TimeUnit.MINUTES.toMillis(LEDGER_INFO_CACHING_TIME_MINUTES)) < System
                 .currentTimeMillis();
@@ -148,6 +257,10 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
         notifyWatchers(LastAddConfirmedUpdateNotification.FUNC, lastAddConfirmed);
     }
 
+    synchronized boolean isClosed() {
+        return isClosed;
+    }
+
     @Override
     public void close() {
         synchronized (this) {
@@ -27,6 +27,11 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -163,6 +168,9 @@ public class WriteCache implements Closeable {
 
         cacheSegments[segmentIdx].setBytes(localOffset, entry, entry.readerIndex(), entry.readableBytes());
 
+        // Index the entry before publishing it as the last entry of the ledger, so that getLastEntry() finds it
+        index.put(ledgerId, entryId, offset, size);
+
         // Update last entryId for ledger. This logic is to handle writes for the same
         // ledger coming out of order and from different thread, though in practice it
         // should not happen and the compareAndSet should be always uncontended.
@@ -178,7 +186,6 @@ public class WriteCache implements Closeable {
             }
         }
 
-        index.put(ledgerId, entryId, offset, size);
         cacheCount.increment();
         cacheSize.addAndGet(size);
         return true;
@@ -224,66 +231,155 @@ public class WriteCache implements Closeable {
         sortedEntriesLock.lock();
 
         try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
-            }
+            sortEntries();
 
             long startTime = MathUtils.nowInNano();
+            forEachSortedEntry(0, sortedEntriesIdx, consumer);
+            if (log.isDebugEnabled()) {
+                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+            }
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
 
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
-                }
+    /**
+     * Iterate through the stored entries split in stripes of consecutive ledgers, one stripe per consumer.
+     *
+     * <p>The entries of a ledger all belong to the same stripe and every stripe is iterated in (ledgerId, entryId)
+     * order. The first stripe is consumed by the calling thread and the others on the given executor, the method
+     * returns once all the stripes are consumed, rethrowing the first exception thrown by a consumer.
+     */
+    public void forEach(EntryConsumer[] stripeConsumers, Executor executor) {
+        sortedEntriesLock.lock();
 
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+        try {
+            sortEntries();
 
-            if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+            long startTime = MathUtils.nowInNano();
+            int[] stripeBounds = splitSortedEntries(stripeConsumers.length);
+            List<CompletableFuture<Void>> stripes = new ArrayList<>(stripeConsumers.length - 1);
+            for (int i = 1; i < stripeConsumers.length; i++) {
+                int from = stripeBounds[i];
+                int to = stripeBounds[i + 1];
+                if (from < to) {
+                    EntryConsumer stripeConsumer = stripeConsumers[i];
+                    stripes.add(CompletableFuture.runAsync(() -> forEachSortedEntry(from, to, stripeConsumer),
+                            executor));
+                }
             }
-            startTime = MathUtils.nowInNano();
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+            RuntimeException error = null;
+            try {
+                forEachSortedEntry(stripeBounds[0], stripeBounds[1], stripeConsumers[0]);
+            } catch (RuntimeException e) {
+                error = e;
             }
-            startTime = MathUtils.nowInNano();
-
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            // Wait for all the stripes, the sorted entries must not be reused while they are being consumed
+            for (CompletableFuture<Void> stripe : stripes) {
+                try {
+                    stripe.join();
+                } catch (CompletionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : e;
+                    }
+                }
             }
-
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
+            if (error != null) {
+                throw error;
             }
 
             if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding in {} stripes {} ms", stripes.size() + 1,
+                        MathUtils.elapsedNanos(startTime) / 1e6);
             }
         } finally {
             sortedEntriesLock.unlock();
         }
     }
 
+    private void sortEntries() {
+        int entriesToSort = (int) index.size();
+        int arrayLen = entriesToSort * 4;
+        if (sortedEntries == null || sortedEntries.length < arrayLen) {
+            sortedEntries = new long[(int) (arrayLen * 2)];
+        }
+
+        long startTime = MathUtils.nowInNano();
+
+        sortedEntriesIdx = 0;
+        index.forEach((ledgerId, entryId, offset, length) -> {
+            if (deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                return;
+            }
+
+            sortedEntries[sortedEntriesIdx] = ledgerId;
+            sortedEntries[sortedEntriesIdx + 1] = entryId;
+            sortedEntries[sortedEntriesIdx + 2] = offset;
+            sortedEntries[sortedEntriesIdx + 3] = length;
+            sortedEntriesIdx += 4;
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        startTime = MathUtils.nowInNano();
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        }
+    }
+
+    /**
+     * Split the sorted entries in stripes holding about the same number of bytes, without splitting a ledger
+     * across stripes. Stripe <i>i</i> spans the sorted entries from bounds[i] to bounds[i + 1], and may be empty.
+     */
+    private int[] splitSortedEntries(int numStripes) {
+        long totalSize = 0;
+        for (int i = 0; i < sortedEntriesIdx; i += 4) {
+            totalSize += sortedEntries[i + 3];
+        }
+
+        int[] bounds = new int[numStripes + 1];
+        int stripe = 1;
+        long size = 0;
+        for (int i = 0; i < sortedEntriesIdx && stripe < numStripes; i += 4) {
+            if (i > 0 && size >= totalSize * stripe / numStripes && sortedEntries[i] != sortedEntries[i - 4]) {
+                bounds[stripe++] = i;
+            }
+            size += sortedEntries[i + 3];
+        }
+        while (stripe <= numStripes) {
+            bounds[stripe++] = sortedEntriesIdx;
+        }
+        return bounds;
+    }
+
+    private void forEachSortedEntry(int from, int to, EntryConsumer consumer) {
+        // Each stripe uses its own slices of the segments since iterating moves their indexes
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+
+        for (int i = from; i < to; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long offset = sortedEntries[i + 2];
+            long length = sortedEntries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(ledgerId, entryId, entry);
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -0,0 +1,195 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An implementation of {@link SpeculativeRequestExecutionPolicy} adapting the speculative timeout to the
+ * observed latencies.
+ *
+ * <p>The first speculative request is issued once the request took longer than a percentile of the latencies
+ * recently observed for the same kind of requests, as given by
+ * {@link SpeculativeRequestExecutor#getLatencyPercentileNanos(double)}. When the latencies are unknown,
+ * {@code defaultSpeculativeRequestTimeout} is used instead. The following speculative requests are issued
+ * in a backoff way, the time between two of them is at most {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>The speculative requests are limited by a budget: each request earns {@code budgetRatio} speculative
+ * request, up to {@link #MAX_BUDGET}, and each speculative request spends one. So at most a ratio of
+ * {@code budgetRatio} of the requests are duplicated over time, even when all the bookies are slow.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // The budget is counted in thousandths of speculative requests
+    private static final long BUDGET_UNIT = 1000;
+    static final long MAX_BUDGET = 100;
+
+    final double percentile;
+    final int defaultSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final float backoffMultiplier;
+    final double budgetRatio;
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET * BUDGET_UNIT);
+    @StatsDoc(
+        name = BookKeeperClientStats.SPECULATIVE_READ_BUDGET_EXHAUSTED,
+        help = "The number of speculative requests not issued because the budget was exhausted"
+    )
+    private final Counter budgetExhaustedCounter;
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(double percentile, int defaultSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, double budgetRatio) {
+        this(percentile, defaultSpeculativeRequestTimeout, maxSpeculativeRequestTimeout, backoffMultiplier,
+                budgetRatio, NullStatsLogger.INSTANCE);
+    }
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(double percentile, int defaultSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, double budgetRatio,
+            StatsLogger statsLogger) {
+        this.percentile = percentile;
+        this.defaultSpeculativeRequestTimeout = defaultSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+        this.backoffMultiplier = backoffMultiplier;
+        this.budgetRatio = budgetRatio;
+        this.budgetExhaustedCounter = statsLogger.getCounter(BookKeeperClientStats.SPECULATIVE_READ_BUDGET_EXHAUSTED);
+
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile");
+        }
+        if (backoffMultiplier <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
+        }
+        if (budgetRatio < 0) {
+            throw new IllegalArgumentException("Invalid value provided for budgetRatio");
+        }
+
+        // Prevent potential over flow
+        if (Math.round((double) maxSpeculativeRequestTimeout * (double) backoffMultiplier) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid values for maxSpeculativeRequestTimeout and backoffMultiplier");
+        }
+    }
+
+    /**
+     * Initialize the speculative request execution policy.
+     *
+     * @param scheduler The scheduler service to issue the speculative request
+     * @param requestExecutor The executor is used to issue the actual speculative requests
+     * @return ScheduledFuture, in case caller needs to cancel it.
+     */
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        depositBudget(Math.round(budgetRatio * BUDGET_UNIT));
+        return scheduleSpeculativeRead(scheduler, requestExecutor, firstSpeculativeRequestTimeout(requestExecutor));
+    }
+
+    int firstSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor) {
+        long latencyNanos = requestExecutor.getLatencyPercentileNanos(percentile);
+        if (latencyNanos < 0) {
+            return defaultSpeculativeRequestTimeout;
+        }
+        long timeoutMs = TimeUnit.NANOSECONDS.toMillis(latencyNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        return (int) Math.max(1, Math.min(maxSpeculativeRequestTimeout, timeoutMs));
+    }
+
+    private void depositBudget(long amount) {
+        if (budget.get() < MAX_BUDGET * BUDGET_UNIT) {
+            budget.updateAndGet(current -> Math.min(MAX_BUDGET * BUDGET_UNIT, current + amount));
+        }
+    }
+
+    private boolean withdrawBudget() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < BUDGET_UNIT) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - BUDGET_UNIT));
+        return true;
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                         final SpeculativeRequestExecutor requestExecutor,
+                                         final int speculativeRequestTimeout) {
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!withdrawBudget()) {
+                        budgetExhaustedCounter.inc();
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("No budget left to issue speculative requests for {}", requestExecutor);
+                        }
+                        return;
+                    }
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                scheduleSpeculativeRead(scheduler, requestExecutor,
+                                        Math.min(maxSpeculativeRequestTimeout,
+                                        Math.round((float) speculativeRequestTimeout * backoffMultiplier)));
+                            } else {
+                                // no speculative request was sent
+                                depositBudget(BUDGET_UNIT);
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeReadTimeout = {}", requestExecutor, speculativeRequestTimeout);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            depositBudget(BUDGET_UNIT);
+                            LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {} : ",
+                                    requestExecutor, speculativeRequestTimeout, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, speculativeRequestTimeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {} : ",
+                        requestExecutor, speculativeRequestTimeout, re);
+            }
+        }
+        return null;
+    }
+}
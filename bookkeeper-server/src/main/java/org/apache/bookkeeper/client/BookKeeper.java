@@ -424,7 +424,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             this.featureProvider = featureProvider;
         }
 
-        this.internalConf = ClientInternalConf.fromConfigAndFeatureProvider(conf, this.featureProvider);
+        this.internalConf = ClientInternalConf.fromConfigAndFeatureProvider(conf, this.featureProvider,
+                rootStatsLogger.scope(BookKeeperClientStats.CLIENT_SCOPE));
 
         // initialize resources
         this.scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("BookKeeperClientScheduler").build();
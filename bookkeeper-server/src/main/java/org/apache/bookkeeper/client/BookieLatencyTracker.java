@@ -0,0 +1,205 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * Tracks the latencies of the responses of a bookie, as seen by the client.
+ *
+ * <p>It keeps a peak exponentially weighted moving average of the latency: a latency higher than the
+ * average replaces it at once, so a bookie starting to stall is noticed on its first slow response,
+ * and the average then decays over time as faster responses come back. When the bookie gets no
+ * traffic the average decays towards zero, so a bookie that was avoided because it was slow is
+ * tried again after a while.
+ *
+ * <p>It also keeps a histogram of the latencies of the last {@link #WINDOW_NANOS} to
+ * {@code 2 * WINDOW_NANOS}, to get percentiles with a relative error of at most 25%.
+ */
+public class BookieLatencyTracker {
+
+    // Time constant of the decay of the moving average
+    static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // Percentiles are asked for every read, they are recomputed at most once per period
+    static final long PERCENTILE_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // The latencies are recorded in microseconds, in 4 buckets per power of 2
+    private static final int SUB_BUCKETS_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKETS_BITS;
+    private static final int NUM_BUCKETS = 64 * SUB_BUCKETS;
+
+    private volatile double ewmaNanos = 0;
+    private volatile long lastUpdateNanos;
+
+    private volatile AtomicLongArray currentWindow = new AtomicLongArray(NUM_BUCKETS);
+    private volatile AtomicLongArray previousWindow = new AtomicLongArray(NUM_BUCKETS);
+    private volatile long windowStartNanos;
+
+    private volatile CachedPercentile cachedPercentile = null;
+
+    private static class CachedPercentile {
+        final double percentile;
+        final long latencyNanos;
+        final long computedAtNanos;
+
+        CachedPercentile(double percentile, long latencyNanos, long computedAtNanos) {
+            this.percentile = percentile;
+            this.latencyNanos = latencyNanos;
+            this.computedAtNanos = computedAtNanos;
+        }
+    }
+
+    public BookieLatencyTracker() {
+        this(MathUtils.nowInNano());
+    }
+
+    BookieLatencyTracker(long nowNanos) {
+        this.lastUpdateNanos = nowNanos;
+        this.windowStartNanos = nowNanos;
+    }
+
+    /**
+     * Record the latency of a response of the bookie.
+     *
+     * @param latencyNanos the latency in nanoseconds
+     */
+    public void recordLatency(long latencyNanos) {
+        recordLatency(latencyNanos, MathUtils.nowInNano());
+    }
+
+    void recordLatency(long latencyNanos, long nowNanos) {
+        synchronized (this) {
+            double decayed = decayedEwma(nowNanos);
+            if (latencyNanos > decayed) {
+                ewmaNanos = latencyNanos;
+            } else {
+                double weight = Math.exp(-(double) Math.max(0, nowNanos - lastUpdateNanos) / DECAY_NANOS);
+                ewmaNanos = decayed + latencyNanos * (1 - weight);
+            }
+            lastUpdateNanos = Math.max(lastUpdateNanos, nowNanos);
+        }
+
+        maybeRotateWindows(nowNanos);
+        currentWindow.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    /**
+     * Get the moving average of the latency of the bookie.
+     *
+     * @return the average latency in nanoseconds, 0 if no latency was recorded recently
+     */
+    public long getLatencyEwmaNanos() {
+        return getLatencyEwmaNanos(MathUtils.nowInNano());
+    }
+
+    long getLatencyEwmaNanos(long nowNanos) {
+        return (long) decayedEwma(nowNanos);
+    }
+
+    private double decayedEwma(long nowNanos) {
+        long idleNanos = nowNanos - lastUpdateNanos;
+        if (idleNanos <= 0) {
+            return ewmaNanos;
+        }
+        return ewmaNanos * Math.exp(-(double) idleNanos / DECAY_NANOS);
+    }
+
+    /**
+     * Get a percentile of the latencies of the bookie over the last window.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, -1 if no latency was recorded recently
+     */
+    public long getLatencyPercentileNanos(double percentile) {
+        return getLatencyPercentileNanos(percentile, MathUtils.nowInNano());
+    }
+
+    long getLatencyPercentileNanos(double percentile, long nowNanos) {
+        CachedPercentile cached = cachedPercentile;
+        if (cached != null && cached.percentile == percentile
+            && nowNanos - cached.computedAtNanos < PERCENTILE_REFRESH_NANOS) {
+            return cached.latencyNanos;
+        }
+        long latencyNanos = computePercentileNanos(percentile, nowNanos);
+        cachedPercentile = new CachedPercentile(percentile, latencyNanos, nowNanos);
+        return latencyNanos;
+    }
+
+    private long computePercentileNanos(double percentile, long nowNanos) {
+        maybeRotateWindows(nowNanos);
+        AtomicLongArray current = currentWindow;
+        AtomicLongArray previous = previousWindow;
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += current.get(i) + previous.get(i);
+        }
+        if (total == 0) {
+            return -1;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += current.get(i) + previous.get(i);
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(bucketUpperBound(NUM_BUCKETS - 1));
+    }
+
+    private void maybeRotateWindows(long nowNanos) {
+        if (nowNanos - windowStartNanos < WINDOW_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            long elapsed = nowNanos - windowStartNanos;
+            if (elapsed < WINDOW_NANOS) {
+                return;
+            }
+            // the latencies of the current window are dropped as well if it ended more than a window ago
+            previousWindow = elapsed < 2 * WINDOW_NANOS ? currentWindow : new AtomicLongArray(NUM_BUCKETS);
+            currentWindow = new AtomicLongArray(NUM_BUCKETS);
+            windowStartNanos = nowNanos;
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (msb - SUB_BUCKETS_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BUCKETS_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
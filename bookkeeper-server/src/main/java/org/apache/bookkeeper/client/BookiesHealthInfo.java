@@ -44,4 +44,25 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the moving average of the latency of the reads from a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return average read latency in nanoseconds, 0 if unknown
+     */
+    default long getBookieReadLatencyEwma(BookieId bookieSocketAddress) {
+        return 0L;
+    }
+
+    /**
+     * Returns a percentile of the latencies of the recent reads from a bookie.
+     *
+     * @param bookieSocketAddress
+     * @param percentile the percentile, between 0 and 100
+     * @return read latency in nanoseconds, -1 if unknown
+     */
+    default long getBookieReadLatencyPercentile(BookieId bookieSocketAddress, double percentile) {
+        return -1L;
+    }
+
 }
@@ -27,6 +27,8 @@ import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.feature.Feature;
 import org.apache.bookkeeper.feature.FeatureProvider;
 import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
 
 class ClientInternalConf {
     final Feature disableEnsembleChangeFeature;
@@ -41,6 +43,11 @@ class ClientInternalConf {
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
     final boolean enableStickyReads;
+    final boolean enableRangeRead;
+    final long rangeReadMaxSize;
+    final boolean enableAddBatching;
+    final int addBatchMaxEntries;
+    final long addBatchMaxSize;
     final int recoveryReadBatchSize;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
@@ -60,11 +67,18 @@ class ClientInternalConf {
 
     static ClientInternalConf fromConfigAndFeatureProvider(ClientConfiguration conf,
                                                            FeatureProvider featureProvider) {
-        return new ClientInternalConf(conf, featureProvider);
+        return fromConfigAndFeatureProvider(conf, featureProvider, NullStatsLogger.INSTANCE);
+    }
+
+    static ClientInternalConf fromConfigAndFeatureProvider(ClientConfiguration conf,
+                                                           FeatureProvider featureProvider,
+                                                           StatsLogger clientStatsLogger) {
+        return new ClientInternalConf(conf, featureProvider, clientStatsLogger);
     }
 
     private ClientInternalConf(ClientConfiguration conf,
-                               FeatureProvider featureProvider) {
+                               FeatureProvider featureProvider,
+                               StatsLogger clientStatsLogger) {
         this.explicitLacInterval = conf.getExplictLacInterval();
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
@@ -82,9 +96,23 @@ class ClientInternalConf {
         this.enableBookieFailureTracking = conf.getEnableBookieFailureTracking();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
         this.enableStickyReads = conf.isStickyReadsEnabled();
+        this.enableRangeRead = conf.isRangeReadEnabled();
+        this.rangeReadMaxSize = conf.getRangeReadMaxSize();
+        this.enableAddBatching = conf.isAddEntryBatchingEnabled();
+        this.addBatchMaxEntries = conf.getAddEntryBatchMaxEntries();
+        this.addBatchMaxSize = conf.getAddEntryBatchMaxSize();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
+        if (conf.getFirstSpeculativeReadTimeout() > 0 && conf.getSpeculativeReadTimeoutPercentile() > 0) {
+            this.readSpeculativeRequestPolicy =
+                    Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                                        conf.getSpeculativeReadTimeoutPercentile(),
+                                        conf.getFirstSpeculativeReadTimeout(),
+                                        conf.getMaxSpeculativeReadTimeout(),
+                                        conf.getSpeculativeReadTimeoutBackoffMultiplier(),
+                                        conf.getSpeculativeReadBudget(),
+                                        clientStatsLogger));
+        } else if (conf.getFirstSpeculativeReadTimeout() > 0) {
             this.readSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
                                         conf.getFirstSpeculativeReadTimeout(),
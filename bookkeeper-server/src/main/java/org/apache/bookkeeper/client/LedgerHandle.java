@@ -33,6 +33,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
@@ -52,6 +53,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -102,14 +104,19 @@ public class LedgerHandle implements WriteHandle {
     final byte[] ledgerKey;
     private Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
-    long lastAddPushed;
+
+    /**
+     * Last entryId which has been pushed and the length of the ledger including it. Entry ids are assigned
+     * to the adds by swapping it, without locking, until it is sealed when the handle is closed.
+     */
+    private final AtomicReference<PushedEntries> pushedEntries = new AtomicReference<>();
 
     private enum HandleState {
         OPEN,
         CLOSED
     }
 
-    private HandleState handleState = HandleState.OPEN;
+    private volatile HandleState handleState = HandleState.OPEN;
     private final CompletableFuture<Void> closePromise = new CompletableFuture<>();
 
     /**
@@ -136,7 +143,6 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
@@ -168,6 +174,31 @@ public class LedgerHandle implements WriteHandle {
     Queue<PendingAddOp> pendingAddOps;
     ExplicitLacFlushPolicy explicitLacFlushPolicy;
 
+    // pending adds waiting to be initiated together when add batching is enabled
+    final Queue<PendingAddOp> pendingAddsToInitiate = new ConcurrentLinkedQueue<PendingAddOp>();
+    final AtomicBoolean pendingAddsInitiatorScheduled = new AtomicBoolean(false);
+    private final SafeRunnable pendingAddsInitiator = new SafeRunnable() {
+        @Override
+        public void safeRun() {
+            pendingAddsInitiatorScheduled.set(false);
+            PendingAddBatcher batcher = new PendingAddBatcher(LedgerHandle.this, clientCtx,
+                    getLedgerMetadata().getEnsembleSize());
+            try {
+                PendingAddOp op;
+                while ((op = pendingAddsToInitiate.poll()) != null) {
+                    op.initiate(batcher);
+                }
+            } finally {
+                batcher.flush();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("InitiatePendingAdds(lid=%d)", ledgerId);
+        }
+    };
+
     final Counter ensembleChangeCounter;
     final Counter lacUpdateHitsCounter;
     final Counter lacUpdateMissesCounter;
@@ -181,17 +212,17 @@ public class LedgerHandle implements WriteHandle {
         this.clientCtx = clientCtx;
 
         this.versionedMetadata = versionedMetadata;
-        this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
         this.writeFlags = writeFlags;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
         if (metadata.isClosed()) {
-            lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-            length = metadata.getLength();
+            lastAddConfirmed = metadata.getLastEntryId();
+            pushedEntries.set(new PushedEntries(lastAddConfirmed, metadata.getLength(), false));
         } else {
-            lastAddConfirmed = lastAddPushed = INVALID_ENTRY_ID;
-            length = 0;
+            lastAddConfirmed = INVALID_ENTRY_ID;
+            pushedEntries.set(new PushedEntries(lastAddConfirmed, 0, false));
         }
+        this.pendingAddOps = new PendingAddRing(lastAddConfirmed + 1);
 
         this.pendingAddsSequenceHead = lastAddConfirmed;
 
@@ -239,6 +270,18 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyEwma(BookieId bookieSocketAddress) {
+                BookieLatencyTracker tracker = clientCtx.getBookieClient().getReadLatencyTracker(bookieSocketAddress);
+                return tracker == null ? 0L : tracker.getLatencyEwmaNanos();
+            }
+
+            @Override
+            public long getBookieReadLatencyPercentile(BookieId bookieSocketAddress, double percentile) {
+                BookieLatencyTracker tracker = clientCtx.getBookieClient().getReadLatencyTracker(bookieSocketAddress);
+                return tracker == null ? -1L : tracker.getLatencyPercentileNanos(percentile);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -320,6 +363,15 @@ public class LedgerHandle implements WriteHandle {
         return writeFlags;
     }
 
+    /**
+     * Get the allocator of the client this handle was opened with.
+     *
+     * @return the allocator of the buffers of the client
+     */
+    public ByteBufAllocator getAllocator() {
+        return clientCtx.getByteBufAllocator();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -336,8 +388,21 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
-        return lastAddPushed;
+    public long getLastAddPushed() {
+        return pushedEntries.get().lastAddPushed;
+    }
+
+    /**
+     * Reset the last entryId pushed and the length of the ledger. There must not be any pending add.
+     *
+     * @param lastAddPushed the last entryId pushed
+     * @param length the length of the ledger in bytes
+     */
+    void resetLastAddPushed(long lastAddPushed, long length) {
+        pushedEntries.set(new PushedEntries(lastAddPushed, length, pushedEntries.get().sealed));
+        if (pendingAddOps instanceof PendingAddRing) {
+            ((PendingAddRing) pendingAddOps).reset(lastAddPushed + 1);
+        }
     }
 
     /**
@@ -368,8 +433,8 @@ public class LedgerHandle implements WriteHandle {
                 versionedMetadata = newMetadata;
                 LedgerMetadata metadata = versionedMetadata.getValue();
                 if (metadata.isClosed()) {
-                    lastAddConfirmed = lastAddPushed = metadata.getLastEntryId();
-                    length = metadata.getLength();
+                    lastAddConfirmed = metadata.getLastEntryId();
+                    pushedEntries.set(new PushedEntries(lastAddConfirmed, metadata.getLength(), true));
                 }
                 return true;
             } else {
@@ -426,9 +491,29 @@ public class LedgerHandle implements WriteHandle {
      * @param delta
      * @return the length of the ledger after the addition
      */
-    synchronized long addToLength(long delta) {
-        this.length += delta;
-        return this.length;
+    long addToLength(long delta) {
+        while (true) {
+            PushedEntries pushed = pushedEntries.get();
+            PushedEntries updated = new PushedEntries(pushed.lastAddPushed, pushed.length + delta, pushed.sealed);
+            if (pushedEntries.compareAndSet(pushed, updated)) {
+                return updated.length;
+            }
+        }
+    }
+
+    /**
+     * Set the length of the ledger in bytes, keeping the last entryId pushed.
+     *
+     * @param length the length of the ledger in bytes
+     */
+    void setLength(long length) {
+        while (true) {
+            PushedEntries pushed = pushedEntries.get();
+            if (pushedEntries.compareAndSet(pushed,
+                    new PushedEntries(pushed.lastAddPushed, length, pushed.sealed))) {
+                return;
+            }
+        }
     }
 
     /**
@@ -437,8 +522,8 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
-        return this.length;
+    public long getLength() {
+        return pushedEntries.get().length;
     }
 
     /**
@@ -557,6 +642,11 @@ public class LedgerHandle implements WriteHandle {
                         }
                     });
 
+                // no entry id can be assigned anymore once sealed, wait for the adds which have
+                // been assigned one to be queued, without holding the lock of the handle
+                sealPushedEntries();
+                awaitPendingAddsPublished();
+
                 synchronized (LedgerHandle.this) {
                     prevHandleState = handleState;
 
@@ -564,8 +654,9 @@ public class LedgerHandle implements WriteHandle {
                     pendingAdds = drainPendingAddsAndAdjustLength();
 
                     // taking the length must occur after draining, as draining changes the length
-                    lastEntry = lastAddPushed = LedgerHandle.this.lastAddConfirmed;
-                    finalLength = LedgerHandle.this.length;
+                    lastEntry = LedgerHandle.this.lastAddConfirmed;
+                    finalLength = getLength();
+                    pushedEntries.set(new PushedEntries(lastEntry, finalLength, true));
                     handleState = HandleState.CLOSED;
                 }
 
@@ -1301,21 +1392,9 @@ public class LedgerHandle implements WriteHandle {
             throttler.acquire();
         }
 
-        boolean wasClosed = false;
-        synchronized (this) {
-            // synchronized on this to ensure that
-            // the ledger isn't closed between checking and
-            // updating lastAddPushed
-            if (isHandleWritable()) {
-                long entryId = ++lastAddPushed;
-                long currentLedgerLength = addToLength(op.payload.readableBytes());
-                op.setEntryId(entryId);
-                op.setLedgerLength(currentLedgerLength);
-                pendingAddOps.add(op);
-            } else {
-                wasClosed = true;
-            }
-        }
+        // the entries pushed are sealed when closing, so the ledger can't be
+        // closed between checking and updating lastAddPushed
+        boolean wasClosed = !isHandleWritable() || !pushEntry(op);
 
         if (wasClosed) {
             // make sure the callback is triggered in main worker pool
@@ -1351,7 +1430,7 @@ public class LedgerHandle implements WriteHandle {
         }
 
         try {
-            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+            submitPendingAdd(op);
         } catch (RejectedExecutionException e) {
             op.cb.addCompleteWithLatency(
                     BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException),
@@ -1359,6 +1438,79 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Assign the next entry id to a pending add and queue it, unless the entries pushed are sealed.
+     *
+     * @return false if the entries pushed are sealed
+     */
+    private boolean pushEntry(PendingAddOp op) {
+        long entryLength = op.payload.readableBytes();
+        while (true) {
+            PushedEntries pushed = pushedEntries.get();
+            if (pushed.sealed) {
+                return false;
+            }
+            PushedEntries updated = new PushedEntries(pushed.lastAddPushed + 1, pushed.length + entryLength, false);
+            if (pushedEntries.compareAndSet(pushed, updated)) {
+                op.setEntryId(updated.lastAddPushed);
+                op.setLedgerLength(updated.length);
+                pendingAddOps.add(op);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Seal the entries pushed, so that no more entry id is assigned.
+     */
+    void sealPushedEntries() {
+        while (true) {
+            PushedEntries pushed = pushedEntries.get();
+            if (pushed.sealed
+                    || pushedEntries.compareAndSet(pushed,
+                            new PushedEntries(pushed.lastAddPushed, pushed.length, true))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Submit a pending add to the ordered executor of the ledger.
+     *
+     * <p>When add batching is enabled, the pending adds submitted while the executor is busy
+     * are initiated together, so that their write requests to the same bookie are coalesced
+     * into batched add requests.
+     *
+     * @throws RejectedExecutionException if the pending add could not be submitted
+     */
+    void submitPendingAdd(PendingAddOp op) {
+        if (!clientCtx.getConf().enableAddBatching || clientCtx.getConf().useV2WireProtocol) {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+            return;
+        }
+
+        pendingAddsToInitiate.add(op);
+        if (!pendingAddsInitiatorScheduled.compareAndSet(false, true)) {
+            // the scheduled initiator will pick it up
+            return;
+        }
+        try {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, pendingAddsInitiator);
+        } catch (RejectedExecutionException e) {
+            pendingAddsInitiatorScheduled.set(false);
+            // fail the other pending adds queued meanwhile, the caller fails the given one
+            PendingAddOp pendingAddOp;
+            while ((pendingAddOp = pendingAddsToInitiate.poll()) != null) {
+                if (pendingAddOp != op) {
+                    pendingAddOp.cb.addCompleteWithLatency(
+                            BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException),
+                            LedgerHandle.this, INVALID_ENTRY_ID, 0, pendingAddOp.ctx);
+                }
+            }
+            throw e;
+        }
+    }
+
     synchronized void updateLastConfirmed(long lac, long len) {
         if (lac > lastAddConfirmed) {
             lastAddConfirmed = lac;
@@ -1366,8 +1518,16 @@ public class LedgerHandle implements WriteHandle {
         } else {
             lacUpdateMissesCounter.inc();
         }
-        lastAddPushed = Math.max(lastAddPushed, lac);
-        length = Math.max(length, len);
+        while (true) {
+            PushedEntries pushed = pushedEntries.get();
+            if (pushed.lastAddPushed >= lac && pushed.length >= len) {
+                return;
+            }
+            if (pushedEntries.compareAndSet(pushed, new PushedEntries(Math.max(pushed.lastAddPushed, lac),
+                    Math.max(pushed.length, len), pushed.sealed))) {
+                return;
+            }
+        }
     }
 
     /**
@@ -1703,7 +1863,7 @@ public class LedgerHandle implements WriteHandle {
             isClosed = metadata.isClosed();
             if (isClosed) {
                 lastAddConfirmed = metadata.getLastEntryId();
-                length = metadata.getLength();
+                setLength(metadata.getLength());
             }
         }
         if (isClosed) {
@@ -1784,9 +1944,20 @@ public class LedgerHandle implements WriteHandle {
     }
 
     void errorOutPendingAdds(int rc) {
+        awaitPendingAddsPublished();
         errorOutPendingAdds(rc, drainPendingAddsAndAdjustLength());
     }
 
+    /**
+     * Wait for the adds which have been assigned an entry id to be queued, so that they can be drained.
+     * This must not be called holding the lock of the handle.
+     */
+    private void awaitPendingAddsPublished() {
+        if (pendingAddOps instanceof PendingAddRing) {
+            ((PendingAddRing) pendingAddOps).awaitPublished(getLastAddPushed());
+        }
+    }
+
     synchronized List<PendingAddOp> drainPendingAddsAndAdjustLength() {
         PendingAddOp pendingAddOp;
         List<PendingAddOp> opsDrained = new ArrayList<PendingAddOp>(pendingAddOps.size());
@@ -2013,6 +2184,21 @@ public class LedgerHandle implements WriteHandle {
         }
     }
 
+    /**
+     * Immutable state of the entries pushed to the ledger.
+     */
+    private static final class PushedEntries {
+        final long lastAddPushed;
+        final long length;
+        final boolean sealed;
+
+        PushedEntries(long lastAddPushed, long length, boolean sealed) {
+            this.lastAddPushed = lastAddPushed;
+            this.length = length;
+            this.sealed = sealed;
+        }
+    }
+
     static class NoopCloseCallback implements CloseCallback {
         static NoopCloseCallback instance = new NoopCloseCallback();
 
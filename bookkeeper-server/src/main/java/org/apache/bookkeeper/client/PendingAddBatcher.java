@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.proto.BookieProtocol.FLAG_NONE;
+
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteEntriesCallback;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Coalesces the write requests of consecutive pending adds to the same bookie into
+ * batched add requests.
+ *
+ * <p>A batcher is only used by the ordered executor thread of its ledger: the write
+ * requests are queued while the pending adds are initiated, and are sent when the batch
+ * is full, when the next entry for the bookie is not consecutive, or by {@link #flush()}.
+ */
+class PendingAddBatcher {
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final Batch[] batches;
+
+    PendingAddBatcher(LedgerHandle lh, ClientContext clientCtx, int ensembleSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.batches = new Batch[ensembleSize];
+    }
+
+    /**
+     * Queue the write request of the given pending add to the bookie at <i>bookieIndex</i>
+     * of its ensemble.
+     */
+    void add(PendingAddOp op, int bookieIndex) {
+        BookieId bookie = op.ensemble.get(bookieIndex);
+        Batch batch = batches[bookieIndex];
+        if (batch != null && !batch.canAppend(op, bookie)) {
+            batch.send();
+            batch = null;
+        }
+        if (batch == null) {
+            batch = new Batch(bookie, bookieIndex);
+            batches[bookieIndex] = batch;
+        }
+        batch.append(op);
+        if (batch.isFull()) {
+            batch.send();
+            batches[bookieIndex] = null;
+        }
+    }
+
+    /**
+     * Send all the queued write requests.
+     */
+    void flush() {
+        for (int i = 0; i < batches.length; i++) {
+            if (batches[i] != null) {
+                batches[i].send();
+                batches[i] = null;
+            }
+        }
+    }
+
+    private class Batch implements WriteEntriesCallback {
+        final BookieId bookie;
+        final int bookieIndex;
+        final List<PendingAddOp> ops = new ArrayList<>();
+        final List<ByteBufList> toSend = new ArrayList<>();
+        long size = 0;
+        boolean allowFailFast = true;
+
+        Batch(BookieId bookie, int bookieIndex) {
+            this.bookie = bookie;
+            this.bookieIndex = bookieIndex;
+        }
+
+        boolean canAppend(PendingAddOp op, BookieId bookie) {
+            PendingAddOp last = ops.get(ops.size() - 1);
+            return this.bookie.equals(bookie)
+                && op.entryId == last.entryId + 1
+                && size + op.toSend.readableBytes() <= clientCtx.getConf().addBatchMaxSize;
+        }
+
+        boolean isFull() {
+            return ops.size() >= clientCtx.getConf().addBatchMaxEntries
+                || size >= clientCtx.getConf().addBatchMaxSize;
+        }
+
+        void append(PendingAddOp op) {
+            ops.add(op);
+            // the pending add may complete and release its buffer before the batch is sent
+            toSend.add(op.toSend.retain());
+            size += op.toSend.readableBytes();
+            allowFailFast &= op.allowFailFast;
+        }
+
+        void send() {
+            try {
+                if (ops.size() == 1) {
+                    PendingAddOp op = ops.get(0);
+                    clientCtx.getBookieClient().addEntry(bookie, lh.ledgerId, lh.ledgerKey, op.entryId,
+                                                         toSend.get(0), op, bookieIndex, FLAG_NONE,
+                                                         allowFailFast, lh.writeFlags);
+                } else {
+                    clientCtx.getBookieClient().addEntries(bookie, lh.ledgerId, lh.ledgerKey,
+                                                           ops.get(0).entryId, toSend, this, null,
+                                                           allowFailFast, lh.writeFlags);
+                }
+            } finally {
+                toSend.forEach(ReferenceCountUtil::release);
+            }
+        }
+
+        @Override
+        public void writeEntriesComplete(int rc, long ledgerId, long firstEntryId, int numEntries,
+                                         BookieId addr, Object ctx) {
+            for (int i = 0; i < ops.size(); i++) {
+                ops.get(i).writeComplete(rc, ledgerId, firstEntryId + i, addr, bookieIndex);
+            }
+            ops.clear();
+        }
+    }
+}
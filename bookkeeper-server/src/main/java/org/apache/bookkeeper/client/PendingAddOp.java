@@ -155,6 +155,11 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         ++pendingWriteRequests;
     }
 
+    void queueWriteRequest(PendingAddBatcher batcher, int bookieIndex) {
+        batcher.add(this, bookieIndex);
+        ++pendingWriteRequests;
+    }
+
     boolean maybeTimeout() {
         if (MathUtils.elapsedNanos(requestTimeNanos) >= clientCtx.getConf().addEntryQuorumTimeoutNanos) {
             timeoutQuorumWait();
@@ -247,6 +252,14 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
      */
     @Override
     public void safeRun() {
+        initiate(null);
+    }
+
+    /**
+     * Initiate the add operation, queueing its write requests to the given batcher
+     * if it is not null.
+     */
+    void initiate(PendingAddBatcher batcher) {
         hasRun = true;
         if (callbackTriggered) {
             // this should only be true if the request was failed due
@@ -275,7 +288,11 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
 
         try {
             for (int i = 0; i < writeSet.size(); i++) {
-                sendWriteRequest(ensemble, writeSet.get(i));
+                if (batcher != null && !isRecoveryAdd) {
+                    queueWriteRequest(batcher, writeSet.get(i));
+                } else {
+                    sendWriteRequest(ensemble, writeSet.get(i));
+                }
             }
         } finally {
             writeSet.recycle();
@@ -0,0 +1,159 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Queue of the pending adds of a ledger handle, indexed by entry id.
+ *
+ * <p>The pending adds are published in a ring of slots by the threads adding entries, without locking,
+ * once their entry ids have been assigned. They are consumed in the order of the entry ids by a single
+ * thread, the ordered thread of the ledger, which completes them in sequence: {@link #peek()} and
+ * {@link #poll()} only return the pending add of the next expected entry id, so a pending add that is
+ * not published yet holds back the ones after it. A pending add whose slot is still taken by a pending
+ * add one lap behind is kept in an overflow map until it is consumed.
+ */
+class PendingAddRing extends AbstractQueue<PendingAddOp> {
+
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final AtomicReferenceArray<PendingAddOp> slots;
+    private final int mask;
+    private final ConcurrentHashMap<Long, PendingAddOp> overflow = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    // entry id of the next pending add to consume, only updated by the consumer thread
+    private volatile long head;
+
+    PendingAddRing(long nextEntryId) {
+        this(DEFAULT_CAPACITY, nextEntryId);
+    }
+
+    PendingAddRing(int capacity, long nextEntryId) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.head = nextEntryId;
+    }
+
+    /**
+     * Reset the entry id of the next pending add to consume. There must not be any pending add.
+     */
+    void reset(long nextEntryId) {
+        this.head = nextEntryId;
+    }
+
+    @Override
+    public boolean offer(PendingAddOp op) {
+        long entryId = op.getEntryId();
+        if (!slots.compareAndSet(index(entryId), null, op)) {
+            overflow.put(entryId, op);
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public PendingAddOp peek() {
+        return find(head);
+    }
+
+    @Override
+    public PendingAddOp poll() {
+        long entryId = head;
+        int index = index(entryId);
+        PendingAddOp op = slots.get(index);
+        if (op != null && op.getEntryId() == entryId) {
+            slots.set(index, null);
+        } else {
+            op = overflow.remove(entryId);
+            if (op == null) {
+                return null;
+            }
+        }
+        head = entryId + 1;
+        size.decrementAndGet();
+        return op;
+    }
+
+    /**
+     * Wait until the pending adds of all the entry ids up to the given one have been published.
+     *
+     * <p>The entry ids are assigned right before publishing the pending adds, so this only waits for
+     * the threads in between, once no more entry id can be assigned.
+     */
+    void awaitPublished(long lastEntryId) {
+        for (long entryId = head; entryId <= lastEntryId; entryId++) {
+            while (find(entryId) == null) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private PendingAddOp find(long entryId) {
+        PendingAddOp op = slots.get(index(entryId));
+        if (op != null && op.getEntryId() == entryId) {
+            return op;
+        }
+        return overflow.get(entryId);
+    }
+
+    private int index(long entryId) {
+        return (int) entryId & mask;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the pending adds, in the order of their entry ids.
+     */
+    @Override
+    public Iterator<PendingAddOp> iterator() {
+        long first = head;
+        List<PendingAddOp> ops = new ArrayList<>(size());
+        for (int i = 0; i < slots.length(); i++) {
+            PendingAddOp op = slots.get(i);
+            if (op != null && op.getEntryId() >= first) {
+                ops.add(op);
+            }
+        }
+        for (PendingAddOp op : overflow.values()) {
+            if (op.getEntryId() >= first) {
+                ops.add(op);
+            }
+        }
+        ops.sort(Comparator.comparingLong(PendingAddOp::getEntryId));
+        return ops.iterator();
+    }
+}
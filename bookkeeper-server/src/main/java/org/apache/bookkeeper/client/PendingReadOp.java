@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.buffer.ByteBuf;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -41,6 +42,7 @@ import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.util.SafeRunnable;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -278,6 +280,23 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
                 }
             });
         }
+
+        /**
+         * Returns the lowest percentile of the read latencies of the bookies of the ensemble, that is how long
+         * a read takes when answered by a healthy replica, even if the bookie read first is stalled.
+         */
+        @Override
+        public long getLatencyPercentileNanos(double percentile) {
+            BookiesHealthInfo bookiesHealthInfo = lh.getBookiesHealthInfo();
+            long latencyNanos = -1L;
+            for (BookieId bookie : ensemble) {
+                long bookieLatencyNanos = bookiesHealthInfo.getBookieReadLatencyPercentile(bookie, percentile);
+                if (bookieLatencyNanos >= 0 && (latencyNanos < 0 || bookieLatencyNanos < latencyNanos)) {
+                    latencyNanos = bookieLatencyNanos;
+                }
+            }
+            return latencyNanos;
+        }
     }
 
     class ParallelReadRequest extends LedgerEntryRequest {
@@ -333,12 +352,15 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         final BitSet sentReplicas;
         final BitSet erroredReplicas;
+        final BitSet speculativeReplicas;
+        boolean readByRangeRequest = false;
 
         SequenceReadRequest(List<BookieId> ensemble, long lId, long eId) {
             super(ensemble, lId, eId);
 
             this.sentReplicas = new BitSet(lh.getLedgerMetadata().getWriteQuorumSize());
             this.erroredReplicas = new BitSet(lh.getLedgerMetadata().getWriteQuorumSize());
+            this.speculativeReplicas = new BitSet(lh.getLedgerMetadata().getWriteQuorumSize());
         }
 
         private synchronized int getNextReplicaIndexToReadFrom() {
@@ -356,6 +378,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             return b;
         }
 
+        private synchronized boolean isSpeculativeReplica(int bookieIndex) {
+            if (speculativeReplicas.isEmpty() || isComplete()) {
+                return false;
+            }
+            int replica = writeSet.indexOf(bookieIndex);
+            return replica != NOT_FOUND && speculativeReplicas.get(replica);
+        }
+
         private boolean readsOutstanding() {
             return (sentReplicas.cardinality() - erroredReplicas.cardinality()) > 0;
         }
@@ -379,7 +409,11 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             // request to
             if (sentTo.cardinality() == 0) {
                 clientCtx.getClientStats().getSpeculativeReadCounter().inc();
-                return sendNextRead();
+                BookieId to = sendNextRead();
+                if (null != to) {
+                    speculativeReplicas.set(nextReplicaIndexToReadFrom - 1);
+                }
+                return to;
             } else {
                 return null;
             }
@@ -390,6 +424,25 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             sendNextRead();
         }
 
+        /**
+         * Mark this entry as read from <i>bookieIndex</i> by a range read request,
+         * so the following reads of this entry are sent to the other replicas.
+         *
+         * @return false if the bookie doesn't store this entry
+         */
+        synchronized boolean readByRangeRequest(int bookieIndex, BookieId to) {
+            int replica = writeSet.indexOf(bookieIndex);
+            if (replica == NOT_FOUND || nextReplicaIndexToReadFrom > 0) {
+                return false;
+            }
+            writeSet.moveAndShift(replica, 0);
+            readByRangeRequest = true;
+            nextReplicaIndexToReadFrom = 1;
+            sentToHosts.add(to);
+            sentReplicas.set(0);
+            return true;
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -443,8 +496,13 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         @Override
         boolean complete(int bookieIndex, BookieId host, ByteBuf buffer) {
+            // the write set is recycled once completed
+            boolean speculative = isSpeculativeReplica(bookieIndex);
             boolean completed = super.complete(bookieIndex, host, buffer);
             if (completed) {
+                if (speculative) {
+                    clientCtx.getClientStats().getSpeculativeReadHitsCounter().inc();
+                }
                 int numReplicasTried = getNextReplicaIndexToReadFrom();
                 // Check if any speculative reads were issued and mark any slow bookies before
                 // the first successful speculative read as "slow"
@@ -458,6 +516,95 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    /**
+     * Reads a run of consecutive entries from a single bookie using range read requests.
+     *
+     * <p>The bookie may return only a prefix of the requested range, in that case a new
+     * request is sent for the remaining entries. The entries the bookie fails to return
+     * fall back to the per-entry read path, which moves on to the other replicas.
+     */
+    class RangeReadRequest implements ReadEntriesCallback, ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        final List<SequenceReadRequest> entries;
+        int next = 0;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        RangeReadRequest(int bookieIndex, BookieId to, List<SequenceReadRequest> entries) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+            this.entries = entries;
+        }
+
+        void read() {
+            // skip the entries completed in the meantime (e.g. by speculative reads)
+            while (next < entries.size() && entries.get(next).isComplete()) {
+                next++;
+            }
+            if (next >= entries.size()) {
+                return;
+            }
+            if (lh.throttler != null) {
+                lh.throttler.acquire();
+            }
+            clientCtx.getBookieClient().readEntries(to, lh.ledgerId,
+                    entries.get(next).eId, entries.get(entries.size() - 1).eId,
+                    clientCtx.getConf().rangeReadMaxSize, this, this, BookieProtocol.FLAG_NONE);
+        }
+
+        @Override
+        public void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> buffers,
+                                        Object ctx) {
+            if (rc == BKException.Code.OK && (buffers == null || buffers.isEmpty())) {
+                rc = BKException.Code.ReadException;
+            }
+            if (rc != BKException.Code.OK) {
+                // fall back to the per-entry reads for the remaining entries
+                for (int i = next; i < entries.size(); i++) {
+                    if (!entries.get(i).isComplete()) {
+                        entries.get(i).logErrorAndReattemptRead(bookieIndex, to,
+                                "Error: " + BKException.getMessage(rc), rc);
+                    }
+                }
+                next = entries.size();
+                return;
+            }
+
+            heardFromHosts.add(to);
+            heardFromHostsBitSet.set(bookieIndex, true);
+            if (!isRecoveryRead) {
+                lh.updateLastConfirmed(lac, 0L);
+            }
+
+            for (ByteBuf buffer : buffers) {
+                if (next >= entries.size() || entries.get(next).eId != firstEntryId) {
+                    break;
+                }
+                buffer.retain();
+                if (entries.get(next).complete(bookieIndex, to, buffer)) {
+                    submitCallback(BKException.Code.OK);
+                } else {
+                    buffer.release();
+                }
+                next++;
+                firstEntryId++;
+            }
+
+            // the bookie returned a prefix of the range, request the remaining entries
+            read();
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+
     PendingReadOp(LedgerHandle lh,
                   ClientContext clientCtx,
                   long startEntryId,
@@ -529,9 +676,15 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             seq.add(entry);
             i++;
         } while (i <= endEntryId);
+        List<RangeReadRequest> rangeReads = useRangeReads() ? prepareRangeReads() : Collections.emptyList();
         // read the entries.
+        for (RangeReadRequest rangeRead : rangeReads) {
+            rangeRead.read();
+        }
         for (LedgerEntryRequest entry : seq) {
-            entry.read();
+            if (rangeReads.isEmpty() || !((SequenceReadRequest) entry).readByRangeRequest) {
+                entry.read();
+            }
             if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
                 speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
                     .initiateSpeculativeRequest(clientCtx.getScheduler(), entry);
@@ -539,6 +692,68 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         }
     }
 
+    private boolean useRangeReads() {
+        return clientCtx.getConf().enableRangeRead
+            && !clientCtx.getConf().useV2WireProtocol
+            && !parallelRead
+            && !isRecoveryRead
+            && endEntryId > startEntryId;
+    }
+
+    /**
+     * Split the entries into range read requests, one per bookie per stripe.
+     *
+     * <p>Only the ensembles where every bookie stores every entry (ensemble size equal to
+     * write quorum size) are read with range reads, the other entries are read one by one.
+     * The entries of such an ensemble are split into contiguous stripes, one per bookie of
+     * the ensemble, or a single stripe when sticky reads are enabled.
+     */
+    private List<RangeReadRequest> prepareRangeReads() {
+        List<RangeReadRequest> rangeReads = new ArrayList<>();
+        int writeQuorumSize = getLedgerMetadata().getWriteQuorumSize();
+        int runStart = 0;
+        while (runStart < seq.size()) {
+            List<BookieId> ensemble = seq.get(runStart).ensemble;
+            int runEnd = runStart + 1;
+            while (runEnd < seq.size() && seq.get(runEnd).ensemble == ensemble) {
+                runEnd++;
+            }
+            int runLength = runEnd - runStart;
+            if (ensemble.size() == writeQuorumSize && runLength > 1) {
+                // the read sequence of the first entry gives the preferred order of the bookies
+                DistributionSchedule.WriteSet writeSet = seq.get(runStart).writeSet;
+                int numStripes = clientCtx.getConf().enableStickyReads ? 1 : Math.min(writeSet.size(), runLength);
+                int[] stripeBookies = new int[numStripes];
+                for (int stripe = 0; stripe < numStripes; stripe++) {
+                    stripeBookies[stripe] = writeSet.get(stripe);
+                }
+                int stripeSize = (runLength + numStripes - 1) / numStripes;
+                for (int stripe = 0; stripe < numStripes; stripe++) {
+                    int stripeStart = runStart + stripe * stripeSize;
+                    int stripeEnd = Math.min(stripeStart + stripeSize, runEnd);
+                    if (stripeStart >= stripeEnd) {
+                        break;
+                    }
+                    int bookieIndex = stripeBookies[stripe];
+                    BookieId to = ensemble.get(bookieIndex);
+                    List<SequenceReadRequest> entries = new ArrayList<>(stripeEnd - stripeStart);
+                    for (int i = stripeStart; i < stripeEnd; i++) {
+                        SequenceReadRequest entry = (SequenceReadRequest) seq.get(i);
+                        if (!entry.readByRangeRequest(bookieIndex, to)) {
+                            break;
+                        }
+                        entries.add(entry);
+                    }
+                    if (!entries.isEmpty()) {
+                        rangeReads.add(new RangeReadRequest(bookieIndex, to, entries));
+                    }
+                }
+            }
+            runStart = runEnd;
+        }
+        return rangeReads;
+    }
+
     @Override
     public void safeRun() {
         initiate();
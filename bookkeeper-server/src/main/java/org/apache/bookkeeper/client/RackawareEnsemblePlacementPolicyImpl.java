@@ -63,6 +63,7 @@ import org.apache.bookkeeper.net.NodeBase;
 import org.apache.bookkeeper.net.ScriptBasedMapping;
 import org.apache.bookkeeper.net.StabilizeNetworkTopology;
 import org.apache.bookkeeper.proto.BookieAddressResolver;
+import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -112,6 +113,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderByPredictedLatency = false;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -291,6 +293,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        reorderByPredictedLatency = conf.isReorderByPredictedLatencyEnabled();
         return initialize(
                 dnsResolver,
                 timer,
@@ -802,6 +805,53 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             ensemble, writeSet, writeSetWithRegion, bookiesHealthInfo, false, "", writeSet.size());
     }
 
+    /**
+     * Rank the bookies of the write set by their predicted latency: the moving average of their read
+     * latency, multiplied by the number of requests queued before the read plus one. Bookies without
+     * known latency come first, so that they get probed. The sort is stable, bookies with the same
+     * predicted latency keep their order.
+     *
+     * @return true if the write set was reordered
+     */
+    private boolean reorderByPredictedLatency(List<BookieId> ensemble,
+                                              DistributionSchedule.WriteSet writeSet,
+                                              BookiesHealthInfo bookiesHealthInfo) {
+        int size = writeSet.size();
+        double[] predictedLatency = new double[size];
+        for (int i = 0; i < size; i++) {
+            BookieId address = ensemble.get(writeSet.get(i));
+            long pendingReqs = bookiesHealthInfo.getBookiePendingRequests(address);
+            if ((pendingReqs & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+                // the channel is backed up, the read would wait behind the whole queue
+                predictedLatency[i] = Double.MAX_VALUE;
+            } else {
+                predictedLatency[i] = (double) bookiesHealthInfo.getBookieReadLatencyEwma(address)
+                        * (pendingReqs + 1);
+            }
+        }
+
+        boolean reordered = false;
+        // insertion sort, write sets are small
+        for (int i = 1; i < size; i++) {
+            double latency = predictedLatency[i];
+            int j = i;
+            while (j > 0 && predictedLatency[j - 1] > latency) {
+                predictedLatency[j] = predictedLatency[j - 1];
+                j--;
+            }
+            if (j != i) {
+                predictedLatency[j] = latency;
+                writeSet.moveAndShift(i, j);
+                reordered = true;
+            }
+        }
+        if (reordered && LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered by predicted latency to {} ({} ns)",
+                    ensemble.get(writeSet.get(0)), predictedLatency[0]);
+        }
+        return reordered;
+    }
+
     /**
      * This function orders the read sequence with a given region. For region-unaware policies (e.g.
      * RackAware), we pass in false for regionAware and an empty myRegion. When this happens, any
@@ -861,7 +911,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderByPredictedLatency) {
+            reordered = reorderByPredictedLatency(ensemble, writeSet, bookiesHealthInfo);
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
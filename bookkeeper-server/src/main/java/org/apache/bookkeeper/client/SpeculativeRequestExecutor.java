@@ -39,4 +39,15 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns a percentile of the latency the request is expected to have, based on the latencies
+     * recently observed for the same kind of requests.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds, -1 if unknown
+     */
+    default long getLatencyPercentileNanos(double percentile) {
+        return -1L;
+    }
 }
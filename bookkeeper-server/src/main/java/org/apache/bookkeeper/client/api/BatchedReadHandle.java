@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.BatchedReadHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read handle exposing the records of the entries written by a {@link BatchingWriteHandle}.
+ *
+ * <p>The entries are not self-describing enough to tell a batch from any other entry, so the
+ * ledger must only hold entries written by a batching handle: an entry added to it by another
+ * handle is either rejected or, if it happens to look like a batch, read as records.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchedReadHandle extends ReadHandle {
+
+    /**
+     * View a read handle as a handle of batched records.
+     *
+     * @param handle the handle to read the entries from, it is closed along with the view
+     * @return a view of the given handle reading records
+     */
+    static BatchedReadHandle of(ReadHandle handle) {
+        return new BatchedReadHandleImpl(handle);
+    }
+
+    /**
+     * Read the records of a range of entries asynchronously.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return an handle to the result of the operation
+     */
+    CompletableFuture<LedgerRecords> readRecordsAsync(long firstEntry, long lastEntry);
+
+    /**
+     * Read the records of a range of entries synchronously.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return the records of the entries
+     * @throws BKException
+     * @throws InterruptedException
+     */
+    default LedgerRecords readRecords(long firstEntry, long lastEntry) throws BKException, InterruptedException {
+        return FutureUtils.<LedgerRecords, BKException>result(readRecordsAsync(firstEntry, lastEntry),
+                BKException.HANDLER);
+    }
+}
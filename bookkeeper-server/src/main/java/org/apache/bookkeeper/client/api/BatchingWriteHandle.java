@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Write handle which batches small records into ledger entries.
+ *
+ * <p>The records appended are accumulated until the batch reaches a size or a delay bound,
+ * then written together as a single entry of the underlying handle, so that they share the
+ * per entry overhead. The records of an entry are framed with their lengths, use a
+ * {@link BatchedReadHandle} to read them back.
+ *
+ * <p>{@link #appendAsync(ByteBuf)} appends a record and completes with the id of the entry
+ * containing it. Closing or forcing the handle first writes the pending batch.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchingWriteHandle extends WriteHandle {
+
+    /**
+     * Wrap a write handle to batch the records appended to it. The batches are allocated with the
+     * allocator of the client of the handle, or the default allocator if it is not known.
+     *
+     * @param handle the handle to write the entries to, it is closed along with the batching handle
+     * @param maxBatchSize the size in bytes of the records of a batch above which it is written
+     * @param maxBatchDelayMs the delay after the first record of a batch after which it is written,
+     *                        0 to only write it when it is full or flushed
+     * @param scheduler the scheduler of the delayed writes, may be null if there is no delay bound
+     * @return a handle batching the records appended to the given handle
+     */
+    static BatchingWriteHandle of(WriteHandle handle, int maxBatchSize, long maxBatchDelayMs,
+                                  ScheduledExecutorService scheduler) {
+        ByteBufAllocator allocator = handle instanceof LedgerHandle
+                ? ((LedgerHandle) handle).getAllocator() : ByteBufAllocator.DEFAULT;
+        return of(handle, maxBatchSize, maxBatchDelayMs, scheduler, allocator);
+    }
+
+    /**
+     * Wrap a write handle to batch the records appended to it.
+     *
+     * @param handle the handle to write the entries to, it is closed along with the batching handle
+     * @param maxBatchSize the size in bytes of the records of a batch above which it is written
+     * @param maxBatchDelayMs the delay after the first record of a batch after which it is written,
+     *                        0 to only write it when it is full or flushed
+     * @param scheduler the scheduler of the delayed writes, may be null if there is no delay bound
+     * @param allocator the allocator of the batches
+     * @return a handle batching the records appended to the given handle
+     */
+    static BatchingWriteHandle of(WriteHandle handle, int maxBatchSize, long maxBatchDelayMs,
+                                  ScheduledExecutorService scheduler, ByteBufAllocator allocator) {
+        return new BatchingWriteHandleImpl(handle, maxBatchSize, maxBatchDelayMs, scheduler, allocator);
+    }
+
+    /**
+     * Append a record asynchronously to the current batch.
+     *
+     * @param record a bytebuf to be appended. The bytebuf's reference count will be decremented by 1 after the
+     *             completable future is returned
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    CompletableFuture<RecordPosition> appendRecordAsync(ByteBuf record);
+
+    /**
+     * Append a record synchronously to the current batch and wait for its entry to be written.
+     *
+     * @param record a bytebuf to be appended
+     * @return the position of the record
+     * @throws BKException
+     * @throws InterruptedException
+     */
+    default RecordPosition appendRecord(ByteBuf record) throws BKException, InterruptedException {
+        return FutureUtils.<RecordPosition, BKException>result(appendRecordAsync(record), BKException.HANDLER);
+    }
+
+    /**
+     * Write the current batch, if any.
+     *
+     * @return an handle to the result, completed once the records appended so far are written
+     */
+    CompletableFuture<Void> flushAsync();
+}
@@ -0,0 +1,63 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * A record read from an entry written by a {@link BatchingWriteHandle}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface LedgerRecord {
+
+    /**
+     * Returns the position of the record in the ledger.
+     *
+     * @return the position of the record
+     */
+    RecordPosition getPosition();
+
+    /**
+     * Returns the length of the record in bytes.
+     *
+     * @return the length of the record
+     */
+    int getLength();
+
+    /**
+     * Returns a copy of the content of the record.
+     *
+     * @return the content of the record
+     */
+    byte[] getRecordBytes();
+
+    /**
+     * Returns the content of the record, as a slice of the buffer of its entry.
+     *
+     * <p>The reference count of the buffer is not modified, it is released when the
+     * containing {@link LedgerRecords} is closed.
+     *
+     * @return the content of the record
+     */
+    ByteBuf getRecordBuffer();
+}
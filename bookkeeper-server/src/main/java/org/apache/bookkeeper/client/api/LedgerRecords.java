@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.Iterator;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Interface to wrap the sequence of records of a range of entries written by a {@link BatchingWriteHandle}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface LedgerRecords
+    extends AutoCloseable, Iterable<LedgerRecord> {
+
+    /**
+     * Get an iterator over all the records, in the order of their positions.
+     *
+     * <p>The buffers of the records are released when the containing LedgerRecords object
+     * is closed via {@link #close()}.
+     *
+     * @return an iterator of LedgerRecord objects
+     */
+    @Override
+    Iterator<LedgerRecord> iterator();
+
+    /**
+     * Close to release the resources held by this instance.
+     */
+    @Override
+    void close();
+}
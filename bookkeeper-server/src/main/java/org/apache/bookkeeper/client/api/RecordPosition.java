@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Position of a record batched into a ledger entry by a {@link BatchingWriteHandle}: the id of
+ * the entry and the index of the record in the entry.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public final class RecordPosition implements Comparable<RecordPosition> {
+
+    private final long entryId;
+    private final int slotId;
+
+    public RecordPosition(long entryId, int slotId) {
+        this.entryId = entryId;
+        this.slotId = slotId;
+    }
+
+    /**
+     * Returns the id of the entry containing the record.
+     *
+     * @return the id of the entry
+     */
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * Returns the index of the record in the entry, starting at 0.
+     *
+     * @return the index of the record in the entry
+     */
+    public int getSlotId() {
+        return slotId;
+    }
+
+    @Override
+    public int compareTo(RecordPosition other) {
+        int result = Long.compare(entryId, other.entryId);
+        return result != 0 ? result : Integer.compare(slotId, other.slotId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RecordPosition)) {
+            return false;
+        }
+        RecordPosition other = (RecordPosition) o;
+        return entryId == other.entryId && slotId == other.slotId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(entryId) + slotId;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordPosition(eid=" + entryId + ", sid=" + slotId + ")";
+    }
+}
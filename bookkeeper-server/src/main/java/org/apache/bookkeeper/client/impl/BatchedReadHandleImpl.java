@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.BatchedReadHandle;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.LedgerRecords;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * View of a read handle reading the records batched into its entries.
+ */
+public class BatchedReadHandleImpl implements BatchedReadHandle {
+
+    private final ReadHandle handle;
+
+    public BatchedReadHandleImpl(ReadHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public CompletableFuture<LedgerRecords> readRecordsAsync(long firstEntry, long lastEntry) {
+        return handle.readAsync(firstEntry, lastEntry).thenCompose(BatchedReadHandleImpl::toRecords);
+    }
+
+    static CompletableFuture<LedgerRecords> toRecords(LedgerEntries entries) {
+        try {
+            return FutureUtils.value(LedgerRecordsImpl.create(entries));
+        } catch (IOException e) {
+            return FutureUtils.exception(new BKException(BKException.Code.UnexpectedConditionException, e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readAsync(long firstEntry, long lastEntry) {
+        return handle.readAsync(firstEntry, lastEntry);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return handle.readUnconfirmedAsync(firstEntry, lastEntry);
+    }
+
+    @Override
+    public CompletableFuture<Long> readLastAddConfirmedAsync() {
+        return handle.readLastAddConfirmedAsync();
+    }
+
+    @Override
+    public CompletableFuture<Long> tryReadLastAddConfirmedAsync() {
+        return handle.tryReadLastAddConfirmedAsync();
+    }
+
+    @Override
+    public long getLastAddConfirmed() {
+        return handle.getLastAddConfirmed();
+    }
+
+    @Override
+    public long getLength() {
+        return handle.getLength();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return handle.isClosed();
+    }
+
+    @Override
+    public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
+                                                                                      long timeOutInMillis,
+                                                                                      boolean parallel) {
+        return handle.readLastAddConfirmedAndEntryAsync(entryId, timeOutInMillis, parallel);
+    }
+
+    @Override
+    public long getId() {
+        return handle.getId();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        return handle.closeAsync();
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return handle.getLedgerMetadata();
+    }
+}
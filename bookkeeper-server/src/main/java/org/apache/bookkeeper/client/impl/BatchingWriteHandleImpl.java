@@ -0,0 +1,251 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKLedgerClosedException;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.LastConfirmedAndEntry;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write handle batching the records appended to it into the entries of the underlying handle.
+ *
+ * <p>The batches are written to the underlying handle under the lock of this handle, so that
+ * the entries are added in the order of the records.
+ */
+public class BatchingWriteHandleImpl implements BatchingWriteHandle {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingWriteHandleImpl.class);
+
+    private static final int MAX_INITIAL_BATCH_CAPACITY = 64 * 1024;
+
+    private final WriteHandle handle;
+    private final int maxBatchSize;
+    private final long maxBatchDelayMs;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+
+    // guarded by this
+    private Batch currentBatch = null;
+    private CompletableFuture<Long> lastWrite = FutureUtils.value(null);
+    private boolean closed = false;
+
+    public BatchingWriteHandleImpl(WriteHandle handle, int maxBatchSize, long maxBatchDelayMs,
+                                   ScheduledExecutorService scheduler, ByteBufAllocator allocator) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(maxBatchDelayMs <= 0 || scheduler != null, "a scheduler is required to delay batches");
+        this.handle = handle;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMs = maxBatchDelayMs;
+        this.scheduler = scheduler;
+        this.allocator = allocator;
+    }
+
+    /**
+     * Records of a batch not written yet.
+     */
+    private static final class Batch {
+        final ByteBuf buffer;
+        final List<CompletableFuture<RecordPosition>> records = new ArrayList<>();
+        ScheduledFuture<?> delayedWrite;
+
+        Batch(ByteBuf buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendRecordAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    future.completeExceptionally(new BKLedgerClosedException());
+                    return future;
+                }
+                int recordSize = RecordBatchFormat.recordSize(record.readableBytes());
+                if (currentBatch != null && currentBatch.buffer.readableBytes() + recordSize > maxBatchSize) {
+                    writeBatch();
+                }
+                if (currentBatch == null) {
+                    currentBatch = newBatch(recordSize);
+                }
+                RecordBatchFormat.writeRecord(currentBatch.buffer, record);
+                currentBatch.records.add(future);
+                if (currentBatch.buffer.readableBytes() >= maxBatchSize) {
+                    writeBatch();
+                }
+            }
+        } finally {
+            record.release();
+        }
+        return future;
+    }
+
+    private Batch newBatch(int recordSize) {
+        int capacity = Math.min(MAX_INITIAL_BATCH_CAPACITY,
+                Math.max(maxBatchSize, recordSize) + RecordBatchFormat.HEADER_SIZE);
+        Batch batch = new Batch(allocator.buffer(capacity));
+        RecordBatchFormat.writeHeader(batch.buffer);
+        if (maxBatchDelayMs > 0) {
+            batch.delayedWrite = scheduler.schedule(() -> writeBatchIfCurrent(batch),
+                    maxBatchDelayMs, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    private synchronized void writeBatchIfCurrent(Batch batch) {
+        if (currentBatch == batch) {
+            writeBatch();
+        }
+    }
+
+    // must be called under the lock of this handle
+    private void writeBatch() {
+        final Batch batch = currentBatch;
+        currentBatch = null;
+        if (batch.delayedWrite != null) {
+            batch.delayedWrite.cancel(false);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Writing a batch of {} records of {} bytes to ledger {}",
+                    batch.records.size(), batch.buffer.readableBytes(), handle.getId());
+        }
+        lastWrite = handle.appendAsync(batch.buffer);
+        lastWrite.whenComplete((entryId, cause) -> {
+            for (int i = 0; i < batch.records.size(); i++) {
+                if (cause != null) {
+                    batch.records.get(i).completeExceptionally(cause);
+                } else {
+                    batch.records.get(i).complete(new RecordPosition(entryId, i));
+                }
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Long> write;
+        synchronized (this) {
+            if (currentBatch != null) {
+                writeBatch();
+            }
+            write = lastWrite;
+        }
+        return write.thenApply(entryId -> null);
+    }
+
+    @Override
+    public CompletableFuture<Long> appendAsync(ByteBuf data) {
+        return appendRecordAsync(data).thenApply(RecordPosition::getEntryId);
+    }
+
+    @Override
+    public CompletableFuture<Void> force() {
+        return flushAsync().thenCompose(ignore -> handle.force());
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Long> write;
+        synchronized (this) {
+            closed = true;
+            if (currentBatch != null) {
+                writeBatch();
+            }
+            write = lastWrite;
+        }
+        // closing the underlying handle fails the adds still pending, wait for the last batch first
+        return write.handle((entryId, cause) -> null).thenCompose(ignore -> handle.closeAsync());
+    }
+
+    @Override
+    public long getLastAddPushed() {
+        return handle.getLastAddPushed();
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readAsync(long firstEntry, long lastEntry) {
+        return handle.readAsync(firstEntry, lastEntry);
+    }
+
+    @Override
+    public CompletableFuture<LedgerEntries> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return handle.readUnconfirmedAsync(firstEntry, lastEntry);
+    }
+
+    @Override
+    public CompletableFuture<Long> readLastAddConfirmedAsync() {
+        return handle.readLastAddConfirmedAsync();
+    }
+
+    @Override
+    public CompletableFuture<Long> tryReadLastAddConfirmedAsync() {
+        return handle.tryReadLastAddConfirmedAsync();
+    }
+
+    @Override
+    public long getLastAddConfirmed() {
+        return handle.getLastAddConfirmed();
+    }
+
+    @Override
+    public long getLength() {
+        return handle.getLength();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return handle.isClosed();
+    }
+
+    @Override
+    public CompletableFuture<LastConfirmedAndEntry> readLastAddConfirmedAndEntryAsync(long entryId,
+                                                                                      long timeOutInMillis,
+                                                                                      boolean parallel) {
+        return handle.readLastAddConfirmedAndEntryAsync(entryId, timeOutInMillis, parallel);
+    }
+
+    @Override
+    public long getId() {
+        return handle.getId();
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return handle.getLedgerMetadata();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerRecord;
+import org.apache.bookkeeper.client.api.LedgerRecords;
+
+/**
+ * Ledger records implementation. The records are slices of the entries they were read from,
+ * which are released when it is closed.
+ */
+public class LedgerRecordsImpl implements LedgerRecords {
+
+    private final LedgerEntries entries;
+    private final List<LedgerRecord> records;
+
+    private LedgerRecordsImpl(LedgerEntries entries, List<LedgerRecord> records) {
+        this.entries = entries;
+        this.records = records;
+    }
+
+    /**
+     * Create the records of entries written by a batching write handle. It takes the ownership
+     * of the entries, which are closed if they are not batches of records.
+     *
+     * @param entries the entries to read the records from
+     * @return the records of the entries
+     * @throws IOException if an entry is not a batch of records
+     */
+    public static LedgerRecordsImpl create(LedgerEntries entries) throws IOException {
+        List<LedgerRecord> records = new ArrayList<>();
+        try {
+            for (LedgerEntry entry : entries) {
+                RecordBatchFormat.readRecords(entry.getEntryId(), entry.getEntryBuffer(), records);
+            }
+        } catch (IOException e) {
+            entries.close();
+            throw e;
+        }
+        return new LedgerRecordsImpl(entries, Collections.unmodifiableList(records));
+    }
+
+    @Override
+    public Iterator<LedgerRecord> iterator() {
+        return records.iterator();
+    }
+
+    @Override
+    public void close() {
+        entries.close();
+    }
+}
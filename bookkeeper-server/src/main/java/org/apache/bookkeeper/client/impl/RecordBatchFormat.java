@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import java.io.IOException;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerRecord;
+import org.apache.bookkeeper.client.api.RecordPosition;
+
+/**
+ * Framing of the records batched into an entry.
+ *
+ * <p>An entry starts with the version of the format on one byte, followed by the records,
+ * each of them prefixed by its length as a varint.
+ *
+ * <p>The entries carry no magic number nor record count: an entry which was not written as a
+ * batch but happens to start with the version byte and to hold well formed lengths is read as
+ * records. The ledgers read as batches must only hold entries written as batches.
+ */
+final class RecordBatchFormat {
+
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 1;
+
+    private RecordBatchFormat() {
+    }
+
+    static void writeHeader(ByteBuf batch) {
+        batch.writeByte(VERSION);
+    }
+
+    /**
+     * Returns the size of a record in a batch, including its length prefix.
+     */
+    static int recordSize(int length) {
+        return varIntSize(length) + length;
+    }
+
+    static void writeRecord(ByteBuf batch, ByteBuf record) {
+        int length = record.readableBytes();
+        while ((length & ~0x7F) != 0) {
+            batch.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        batch.writeByte(length);
+        batch.writeBytes(record, record.readerIndex(), record.readableBytes());
+    }
+
+    /**
+     * Read the records of an entry, as slices of its buffer.
+     *
+     * @throws IOException if the entry is not a batch of records
+     */
+    static void readRecords(long entryId, ByteBuf entry, List<LedgerRecord> records) throws IOException {
+        int index = entry.readerIndex();
+        int end = entry.writerIndex();
+        if (index >= end || entry.getByte(index) != VERSION) {
+            throw new IOException("Entry " + entryId + " is not a batch of records");
+        }
+        index += HEADER_SIZE;
+        int slotId = 0;
+        while (index < end) {
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (index >= end || shift > 28) {
+                    throw new IOException("Malformed length of record " + slotId + " of entry " + entryId);
+                }
+                b = entry.getByte(index++);
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (length < 0 || length > end - index) {
+                throw new IOException("Truncated record " + slotId + " of entry " + entryId);
+            }
+            records.add(new LedgerRecordImpl(new RecordPosition(entryId, slotId++), entry.slice(index, length)));
+            index += length;
+        }
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
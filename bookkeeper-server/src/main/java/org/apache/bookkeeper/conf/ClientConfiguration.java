@@ -96,6 +96,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_RECEIVEBUFFER_SIZE = "clientReceiveBufferSize";
     protected static final String CLIENT_WRITEBUFFER_LOW_WATER_MARK = "clientWriteBufferLowWaterMark";
     protected static final String CLIENT_WRITEBUFFER_HIGH_WATER_MARK = "clientWriteBufferHighWaterMark";
+    protected static final String CLIENT_WRITE_COALESCING_ENABLED = "clientWriteCoalescingEnabled";
+    protected static final String CLIENT_WRITE_COALESCING_MAX_BYTES = "clientWriteCoalescingMaxBytes";
     protected static final String CLIENT_CONNECT_TIMEOUT_MILLIS = "clientConnectTimeoutMillis";
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
@@ -109,6 +111,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_TIMEOUT_PERCENTILE = "speculativeReadTimeoutPercentile";
+    protected static final String SPECULATIVE_READ_BUDGET = "speculativeReadBudget";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -117,10 +121,15 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String RANGE_READ_ENABLED = "rangeReadEnabled";
+    protected static final String RANGE_READ_MAX_SIZE = "rangeReadMaxSize";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ADD_ENTRY_BATCHING_ENABLED = "addEntryBatchingEnabled";
+    protected static final String ADD_ENTRY_BATCH_MAX_ENTRIES = "addEntryBatchMaxEntries";
+    protected static final String ADD_ENTRY_BATCH_MAX_SIZE = "addEntryBatchMaxSize";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -160,6 +169,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_PREDICTED_LATENCY = "readReorderByPredictedLatency";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -468,6 +478,54 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the flushes of the requests written to a bookie channel are coalesced.
+     *
+     * @return true if the flushes are coalesced.
+     * @see #setClientWriteCoalescingEnabled(boolean)
+     */
+    public boolean getClientWriteCoalescingEnabled() {
+        return getBoolean(CLIENT_WRITE_COALESCING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the coalescing of the flushes of the requests written to a bookie channel.
+     *
+     * <p>If enabled, the requests written to a channel within a tick of its event loop are flushed
+     * together, with a single write on the socket, instead of flushing each of them.
+     *
+     * @param enabled
+     *          whether to coalesce the flushes.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientWriteCoalescingEnabled(boolean enabled) {
+        setProperty(CLIENT_WRITE_COALESCING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the size in bytes of the requests written to a bookie channel above which they are flushed
+     * right away, when write coalescing is enabled.
+     *
+     * @return the size in bytes of the requests above which they are flushed.
+     */
+    public int getClientWriteCoalescingMaxBytes() {
+        return getInt(CLIENT_WRITE_COALESCING_MAX_BYTES, 64 * 1024);
+    }
+
+    /**
+     * Set the size in bytes of the requests written to a bookie channel above which they are flushed
+     * right away, when write coalescing is enabled.
+     *
+     * @param maxBytes
+     *          the size in bytes of the requests above which they are flushed.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientWriteCoalescingMaxBytes(int maxBytes) {
+        setProperty(CLIENT_WRITE_COALESCING_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Get the tick duration in milliseconds that used for timeout timer.
      *
@@ -1038,6 +1096,59 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the observed read latencies after which a speculative read is sent.
+     *
+     * @return speculative read timeout percentile, 0 if the speculative read timeouts are not adaptive.
+     * @see #setSpeculativeReadTimeoutPercentile(double)
+     */
+    public double getSpeculativeReadTimeoutPercentile() {
+        return getDouble(SPECULATIVE_READ_TIMEOUT_PERCENTILE, 0.0);
+    }
+
+    /**
+     * Set the percentile of the observed read latencies after which a speculative read is sent.
+     *
+     * <p>If set (e.g. to 95 or 99), the first speculative read of an entry is sent once the read took longer
+     * than this percentile of the recent read latencies of the bookies of the ledger, bounded by
+     * {@link #getMaxSpeculativeReadTimeout()}. {@link #getFirstSpeculativeReadTimeout()} is used while the
+     * latencies are unknown, and speculative reads are only enabled if it is positive.
+     *
+     * @param percentile
+     *          speculative read timeout percentile, between 0 and 100.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadTimeoutPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_TIMEOUT_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the budget of speculative reads, as a ratio of the reads.
+     *
+     * @return speculative read budget.
+     * @see #setSpeculativeReadBudget(double)
+     */
+    public double getSpeculativeReadBudget() {
+        return getDouble(SPECULATIVE_READ_BUDGET, 0.1);
+    }
+
+    /**
+     * Set the budget of speculative reads, as a ratio of the reads.
+     *
+     * <p>With adaptive speculative read timeouts (see {@link #setSpeculativeReadTimeoutPercentile(double)}),
+     * each read earns this ratio of a speculative read and each speculative read spends one, which caps the
+     * amplification of the reads when all the bookies are slow.
+     *
+     * @param budget
+     *          ratio of the reads which may be duplicated by speculative reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadBudget(double budget) {
+        setProperty(SPECULATIVE_READ_BUDGET, budget);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1198,6 +1309,54 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If reads of multiple entries should use range read requests or not.
+     *
+     * @return true if range reads are enabled, otherwise false.
+     */
+    public boolean isRangeReadEnabled() {
+        return getBoolean(RANGE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable reading multiple entries with range read requests.
+     *
+     * <p>If this flag is enabled, the client reads a range of entries with one
+     * request per bookie, instead of one request per entry. It only applies to the
+     * ensembles where every bookie stores every entry (ensemble size equal to write
+     * quorum size) and requires the v3 wire protocol.
+     *
+     * @param enabled the flag to enable/disable range reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadEnabled(boolean enabled) {
+        setProperty(RANGE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes of entry data requested in a single range read.
+     *
+     * @return max size of a range read response.
+     */
+    public long getRangeReadMaxSize() {
+        return getLong(RANGE_READ_MAX_SIZE, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Set the max number of bytes of entry data requested in a single range read.
+     *
+     * <p>It should be lower than {@link #getNettyMaxFrameSizeBytes()}, to leave room
+     * for the response headers.
+     *
+     * @param maxSize max size of a range read response.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadMaxSize(long maxSize) {
+        setProperty(RANGE_READ_MAX_SIZE, maxSize);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1246,6 +1405,32 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether to reorder reads by the predicted latency of the bookies.
+     *
+     * @return true if the reads are reordered by predicted latency, otherwise false.
+     */
+    public boolean isReorderByPredictedLatencyEnabled() {
+        return getBoolean(READ_REORDER_BY_PREDICTED_LATENCY, false);
+    }
+
+    /**
+     * Enable/disable reordering the reads by the predicted latency of the bookies.
+     *
+     * <p>If enabled, the bookies of the read set are ranked by their moving average of read latency
+     * multiplied by their number of pending requests plus one, so reads go first to the bookie expected
+     * to answer the fastest. It takes precedence over {@link #getReorderThresholdPendingRequests()},
+     * and only applies when {@link #isReorderReadSequenceEnabled()} is true.
+     *
+     * @param enabled
+     *            flag to enable/disable reordering the reads by predicted latency.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReorderByPredictedLatencyEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_PREDICTED_LATENCY, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -1822,6 +2007,76 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether queued adds are coalesced into batched add requests or not.
+     *
+     * @return true if add batching is enabled, otherwise false.
+     */
+    public boolean isAddEntryBatchingEnabled() {
+        return getBoolean(ADD_ENTRY_BATCHING_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable coalescing queued adds into batched add requests.
+     *
+     * <p>If this flag is enabled, the consecutive entries of a ledger which are waiting
+     * to be sent to the same bookie are sent with a single range add request, which the
+     * bookie acknowledges with a single response. It requires the v3 wire protocol.
+     *
+     * @param enabled
+     *          flag to enable/disable add batching.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchingEnabled(boolean enabled) {
+        setProperty(ADD_ENTRY_BATCHING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries sent in a single batched add request.
+     *
+     * @return max number of entries of an add batch.
+     */
+    public int getAddEntryBatchMaxEntries() {
+        return getInt(ADD_ENTRY_BATCH_MAX_ENTRIES, 64);
+    }
+
+    /**
+     * Set the max number of entries sent in a single batched add request.
+     *
+     * @param maxEntries
+     *          max number of entries of an add batch.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxEntries(int maxEntries) {
+        setProperty(ADD_ENTRY_BATCH_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes sent in a single batched add request.
+     *
+     * @return max size of an add batch.
+     */
+    public long getAddEntryBatchMaxSize() {
+        return getLong(ADD_ENTRY_BATCH_MAX_SIZE, 1024 * 1024);
+    }
+
+    /**
+     * Set the max number of bytes sent in a single batched add request.
+     *
+     * <p>It should be lower than {@link #getNettyMaxFrameSizeBytes()}, to leave room
+     * for the request headers.
+     *
+     * @param maxSize
+     *          max size of an add batch.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryBatchMaxSize(long maxSize) {
+        setProperty(ADD_ENTRY_BATCH_MAX_SIZE, maxSize);
+        return this;
+    }
+
     /**
      * Whether to enable bookie address changes tracking.
      *
@@ -93,6 +93,11 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         .build();
 
     protected static final String ENTRY_LOG_FILE_PREALLOCATION_ENABLED = "entryLogFilePreallocationEnabled";
+    protected static final String DIRECT_IO_ENTRY_LOGGER_ENABLED = "directIOEntryLoggerEnabled";
+    protected static final String DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE = "directIOEntryLoggerWriteBufferSize";
+    protected static final String DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE = "directIOEntryLoggerReadBufferSize";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MAX_MAPPED_LOGS = "entryLogMaxMappedLogs";
 
 
     protected static final String FORCE_ALLOW_COMPACTION = "forceAllowCompaction";
@@ -150,12 +155,18 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
+    protected static final String JOURNAL_QUEUE_STRIPES = "journalQueueStripes";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
+    protected static final String JOURNAL_REPLAY_THREADS = "journalReplayThreads";
+    protected static final String JOURNAL_FORCE_WRITE_COALESCING_ENABLED = "journalForceWriteCoalescingEnabled";
+    protected static final String JOURNAL_LOAD_AWARE_SELECTION_ENABLED = "journalLoadAwareSelectionEnabled";
+    protected static final String JOURNAL_SELECTOR_IDLE_TIMEOUT_MS = "journalSelectorIdleTimeoutMs";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_RANGE_READ_SIZE = "maxRangeReadSize";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -242,6 +253,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SKIP_LIST_SIZE_LIMIT = "skipListSizeLimit";
     protected static final String SKIP_LIST_CHUNK_SIZE_ENTRY = "skipListArenaChunkSize";
     protected static final String SKIP_LIST_MAX_ALLOC_ENTRY = "skipListArenaMaxAllocSize";
+    protected static final String MEMTABLE_OFF_HEAP_ENABLED = "memtableOffHeapEnabled";
 
     // Statistics Parameters
     protected static final String ENABLE_STATISTICS = "enableStatistics";
@@ -392,6 +404,116 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Is the direct I/O entry logger enabled. When enabled, DbLedgerStorage writes and reads
+     * the entry logs with O_DIRECT, bypassing the OS page cache.
+     *
+     * @return whether the direct I/O entry logger is enabled or not.
+     */
+    public boolean isDirectIOEntryLoggerEnabled() {
+        return this.getBoolean(DIRECT_IO_ENTRY_LOGGER_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable the direct I/O entry logger.
+     *
+     * @param enabled
+     *          enable/disable the direct I/O entry logger.
+     * @return server configuration object.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerEnabled(boolean enabled) {
+        this.setProperty(DIRECT_IO_ENTRY_LOGGER_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the size of the aligned buffer used by the direct I/O entry logger to write an entry log.
+     * Default is 4MB.
+     *
+     * @return write buffer size, a multiple of 4096 bytes
+     */
+    public int getDirectIOEntryLoggerWriteBufferSize() {
+        return this.getInt(DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Set the size of the aligned buffer used by the direct I/O entry logger to write an entry log.
+     *
+     * @param bufferSize
+     *          write buffer size, a multiple of 4096 bytes
+     * @return server configuration object.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerWriteBufferSize(int bufferSize) {
+        this.setProperty(DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE, bufferSize);
+        return this;
+    }
+
+    /**
+     * Get the size of each aligned buffer cached by the reader threads of the direct I/O entry logger.
+     * Default is 64KB.
+     *
+     * @return read buffer size, a multiple of 4096 bytes
+     */
+    public int getDirectIOEntryLoggerReadBufferSize() {
+        return this.getInt(DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE, 64 * 1024);
+    }
+
+    /**
+     * Set the size of each aligned buffer cached by the reader threads of the direct I/O entry logger.
+     *
+     * @param bufferSize
+     *          read buffer size, a multiple of 4096 bytes
+     * @return server configuration object.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerReadBufferSize(int bufferSize) {
+        this.setProperty(DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE, bufferSize);
+        return this;
+    }
+
+    /**
+     * Whether the default entry logger reads the entries of the sealed entry logs from memory mappings of the
+     * files, rather than copying them out with reads of the file channels.
+     *
+     * @return true if the sealed entry logs are memory mapped for reads
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return this.getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable reading the entries of the sealed entry logs from memory mappings of the files.
+     *
+     * @param enabled
+     *          whether to memory map the sealed entry logs for reads
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of sealed entry logs mapped at once when the mmap read path is enabled. The least
+     * recently read log is unmapped to map a new one. Default is 128.
+     *
+     * @return max number of mapped entry logs
+     */
+    public int getEntryLogMaxMappedLogs() {
+        return this.getInt(ENTRY_LOG_MAX_MAPPED_LOGS, 128);
+    }
+
+    /**
+     * Set the max number of sealed entry logs mapped at once when the mmap read path is enabled.
+     *
+     * @param maxMappedLogs
+     *          max number of mapped entry logs, must be positive
+     * @return server configuration object.
+     */
+    public ServerConfiguration setEntryLogMaxMappedLogs(int maxMappedLogs) {
+        this.setProperty(ENTRY_LOG_MAX_MAPPED_LOGS, maxMappedLogs);
+        return this;
+    }
+
     /**
      * Get Garbage collection wait time. Default value is 10 minutes.
      * The guideline is not to set a too low value for this, if using zookeeper based
@@ -924,6 +1046,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getInt(JOURNAL_QUEUE_SIZE, 10_000);
     }
 
+    /**
+     * Set the number of rings the journal queue is striped into.
+     *
+     * @param journalQueueStripes
+     *            the number of rings of the journal queue, 1 for a single queue
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalQueueStripes(int journalQueueStripes) {
+        this.setProperty(JOURNAL_QUEUE_STRIPES, journalQueueStripes);
+        return this;
+    }
+
+    /**
+     * Get the number of rings the journal queue is striped into. When more than 1, each thread adding entries
+     * to the journal queues them to one of the rings, which the journal thread drains in batches, and the
+     * journal queue size is split between the rings. Default is 1, a single queue shared by all the threads.
+     *
+     * @return the number of rings of the journal queue.
+     */
+    public int getJournalQueueStripes() {
+        return this.getInt(JOURNAL_QUEUE_STRIPES, 1);
+    }
+
     /**
      * Set the max amount of memory that can be used by the journal.
      *
@@ -1030,6 +1175,28 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of bytes of entry data returned in a single range read response.
+     * The actual limit is the minimum of this value and the one requested by the client.
+     *
+     * @return max size of a range read response.
+     */
+    public int getMaxRangeReadSize() {
+        return this.getInt(MAX_RANGE_READ_SIZE, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Set the max number of bytes of entry data returned in a single range read response.
+     *
+     * @param value
+     *          max size of a range read response.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxRangeReadSize(int value) {
+        this.setProperty(MAX_RANGE_READ_SIZE, value);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -2128,6 +2295,101 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(NUM_JOURNAL_CALLBACK_THREADS, 1);
     }
 
+    /**
+     * Set the number of threads that add the replayed journal entries to the ledger storage on startup.
+     *
+     * @param numThreads
+     *          number of threads replaying the journal entries, 1 replays the journals one after another.
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReplayThreads(int numThreads) {
+        setProperty(JOURNAL_REPLAY_THREADS, numThreads);
+        return this;
+    }
+
+    /**
+     * Get the number of threads that add the replayed journal entries to the ledger storage on startup.
+     * When more than 1, the journal directories are scanned concurrently and their entries are added
+     * by a pool of threads, in order for each ledger. Default is 1.
+     *
+     * @return the number of threads replaying the journal entries.
+     */
+    public int getJournalReplayThreads() {
+        return getInt(JOURNAL_REPLAY_THREADS, 1);
+    }
+
+    /**
+     * Enable or disable syncing together the journals stored on the same device.
+     *
+     * @param enabled
+     *            whether to coalesce the force writes of the journals of a device
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalForceWriteCoalescingEnabled(boolean enabled) {
+        setProperty(JOURNAL_FORCE_WRITE_COALESCING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the journals stored on the same device are synced together. When enabled, the force writes of
+     * the journal directories sharing a filesystem are issued by a single thread, which syncs each journal
+     * file once per round and acknowledges all the waiting entries together. Default is false, each journal
+     * syncs its file from its own force write thread.
+     *
+     * @return true if the force writes of the journals of a device are coalesced.
+     */
+    public boolean isJournalForceWriteCoalescingEnabled() {
+        return getBoolean(JOURNAL_FORCE_WRITE_COALESCING_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the load aware assignment of the ledgers to the journals.
+     *
+     * @param enabled
+     *            whether to assign the ledgers to the least loaded journals
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalLoadAwareSelectionEnabled(boolean enabled) {
+        setProperty(JOURNAL_LOAD_AWARE_SELECTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the ledgers are assigned to the least loaded journals, when the bookie has multiple journal
+     * directories. A ledger keeps its journal while it is written, new ledgers and ledgers idle for
+     * {@link #getJournalSelectorIdleTimeoutMs()} are assigned to the journal with the smallest queue depth
+     * weighted by its sync latency. When disabled, the ledgers are assigned to the journals by hash.
+     * Default is false.
+     *
+     * @return true if the ledgers are assigned to the least loaded journals.
+     */
+    public boolean isJournalLoadAwareSelectionEnabled() {
+        return getBoolean(JOURNAL_LOAD_AWARE_SELECTION_ENABLED, false);
+    }
+
+    /**
+     * Set the time after which a ledger which is not written can be moved to another journal.
+     *
+     * @param idleTimeoutMs
+     *            the idle timeout in milliseconds
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalSelectorIdleTimeoutMs(long idleTimeoutMs) {
+        setProperty(JOURNAL_SELECTOR_IDLE_TIMEOUT_MS, idleTimeoutMs);
+        return this;
+    }
+
+    /**
+     * Get the time after which a ledger which is not written can be moved to another journal, when the load
+     * aware journal selection is enabled. It should be larger than the journal flush and sync delays, so that
+     * the previous entries of a moved ledger are persisted. Default is 60000.
+     *
+     * @return the idle timeout in milliseconds.
+     */
+    public long getJournalSelectorIdleTimeoutMs() {
+        return getLong(JOURNAL_SELECTOR_IDLE_TIMEOUT_MS, 60000L);
+    }
+
     /**
      * Set sorted-ledger storage enabled or not.
      *
@@ -2217,6 +2479,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the memtable of the sorted ledger storage keeps the entries off-heap. When enabled, the
+     * entries are copied into direct memory chunks of {@link #getSkipListArenaChunkSize()} bytes and indexed
+     * by sorted arrays of entry ids per ledger, instead of a skip list of entry objects. The memtable and its
+     * snapshot may use up to twice {@link #getSkipListSizeLimit()} of direct memory. Default is false.
+     *
+     * @return true if the memtable keeps the entries off-heap
+     */
+    public boolean isMemtableOffHeapEnabled() {
+        return getBoolean(MEMTABLE_OFF_HEAP_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable keeping the entries of the memtable off-heap.
+     *
+     * @param enabled whether the memtable keeps the entries off-heap
+     * @return server configuration object.
+     */
+    public ServerConfiguration setMemtableOffHeapEnabled(boolean enabled) {
+        setProperty(MEMTABLE_OFF_HEAP_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Should the data be fsynced on journal before acknowledgment.
      *
@@ -24,13 +24,16 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import org.apache.bookkeeper.client.BookieLatencyTracker;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
@@ -84,6 +87,16 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the tracker of the latencies of the reads sent to the bookie at {@code address}.
+     *
+     * @param address the address of the bookie
+     * @return the latency tracker of the bookie, null if there is none
+     */
+    default BookieLatencyTracker getReadLatencyTracker(BookieId address) {
+        return null;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -143,6 +156,27 @@ public interface BookieClient {
                   long entryId, ByteBufList toSend, WriteCallback cb, Object ctx,
                   int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags);
 
+    /**
+     * Add a batch of consecutive entries for ledger {@code ledgerId} on the bookie at
+     * address {@code address}, acknowledged by a single response.
+     * Batched adds are only supported by the v3 wire protocol.
+     *
+     * @param address the address of the bookie
+     * @param ledgerId the ledger to which we wish to add the entries
+     * @param masterKey the master key of the ledger
+     * @param firstEntryId the id of the first entry of the batch
+     * @param toSend the buffers containing the entries and their digests, one per entry
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param allowFastFail fail the add immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     * @param writeFlags a set of write flags
+     *                   {@link org.apache.bookkeeper.client.api.WriteFlag}
+     */
+    void addEntries(BookieId address, long ledgerId, byte[] masterKey,
+                    long firstEntryId, List<ByteBufList> toSend, WriteEntriesCallback cb, Object ctx,
+                    boolean allowFastFail, EnumSet<WriteFlag> writeFlags);
+
     /**
      * Read entry with a null masterkey, disallowing failfast.
      * @see #readEntry(BookieId,long,long,ReadEntryCallback,Object,int,byte[],boolean)
@@ -180,6 +214,26 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a range of entries from bookie at address {@code address} in a single request.
+     *
+     * <p>The bookie returns the longest prefix of the range it is able to read within
+     * {@code maxSize} bytes, so the callback may receive fewer entries than requested.
+     * Range reads are only supported by the v3 wire protocol.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param firstEntryId id of the first entry of the range
+     * @param lastEntryId id of the last entry of the range
+     * @param maxSize max number of bytes of entry data to return
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     */
+    void readEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                     long maxSize, ReadEntriesCallback cb, Object ctx, int flags);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -51,6 +51,7 @@ import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.ClientAuthProvider;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.BookieLatencyTracker;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.SafeRunnable;
@@ -61,9 +62,11 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -89,6 +92,9 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final ByteBufAllocator allocator;
     final ConcurrentHashMap<BookieId, PerChannelBookieClientPool> channels =
             new ConcurrentHashMap<BookieId, PerChannelBookieClientPool>();
+    // shared by all the channels to a bookie, and kept when the channels are closed
+    private final ConcurrentHashMap<BookieId, BookieLatencyTracker> readLatencyTrackers =
+            new ConcurrentHashMap<BookieId, BookieLatencyTracker>();
 
     private final ClientAuthProvider.Factory authProviderFactory;
     private final ExtensionRegistry registry;
@@ -184,6 +190,11 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public BookieLatencyTracker getReadLatencyTracker(BookieId address) {
+        return readLatencyTrackers.get(address);
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -197,7 +208,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
         return new PerChannelBookieClient(clientConfiguration, executor, eventLoopGroup, allocator, address,
                                    statsLoggerForPCBC, authProviderFactory, registry, pcbcPool,
-                                   shFactory, bookieAddressResolver);
+                                   shFactory, bookieAddressResolver,
+                                   readLatencyTrackers.computeIfAbsent(address, k -> new BookieLatencyTracker()));
     }
 
     public PerChannelBookieClientPool lookupClient(BookieId addr) {
@@ -332,6 +344,63 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                       ledgerId);
     }
 
+    private void completeAddEntries(final int rc,
+                                    final long ledgerId,
+                                    final long firstEntryId,
+                                    final int numEntries,
+                                    final BookieId addr,
+                                    final WriteEntriesCallback cb,
+                                    final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    cb.writeEntriesComplete(rc, ledgerId, firstEntryId, numEntries, addr, ctx);
+                }
+                @Override
+                public String toString() {
+                    return String.format("CompleteWriteEntries(ledgerId=%d, firstEntryId=%d, numEntries=%d, addr=%s)",
+                                         ledgerId, firstEntryId, numEntries, addr);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cb.writeEntriesComplete(getRc(BKException.Code.InterruptedException), ledgerId, firstEntryId,
+                                    numEntries, addr, ctx);
+        }
+    }
+
+    @Override
+    public void addEntries(final BookieId addr,
+                           final long ledgerId,
+                           final byte[] masterKey,
+                           final long firstEntryId,
+                           final List<ByteBufList> toSend,
+                           final WriteEntriesCallback cb,
+                           final Object ctx,
+                           final boolean allowFastFail,
+                           final EnumSet<WriteFlag> writeFlags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            completeAddEntries(getRc(BKException.Code.BookieHandleNotAvailableException),
+                               ledgerId, firstEntryId, toSend.size(), addr, cb, ctx);
+            return;
+        }
+
+        // Retain the buffers, since the connection could be obtained after
+        // the pending adds might have already failed
+        toSend.forEach(ByteBufList::retain);
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeAddEntries(rc, ledgerId, firstEntryId, toSend.size(), addr, cb, ctx);
+            } else {
+                pcbc.addEntries(ledgerId, masterKey, firstEntryId, toSend, cb, ctx, allowFastFail, writeFlags);
+            }
+
+            toSend.forEach(ByteBufList::release);
+        }, ledgerId);
+    }
+
     @Override
     public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
             long ledgerId) {
@@ -378,6 +447,24 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeReadEntries(final int rc,
+                                     final long ledgerId,
+                                     final long firstEntryId,
+                                     final ReadEntriesCallback cb,
+                                     final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    cb.readEntriesComplete(rc, ledgerId, firstEntryId, null, ctx);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, firstEntryId, null, ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -516,6 +603,26 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     }
 
 
+    @Override
+    public void readEntries(final BookieId addr, final long ledgerId, final long firstEntryId,
+                            final long lastEntryId, final long maxSize, final ReadEntriesCallback cb,
+                            final Object ctx, int flags) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            completeReadEntries(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                ledgerId, firstEntryId, cb, ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeReadEntries(rc, ledgerId, firstEntryId, cb, ctx);
+            } else {
+                pcbc.readEntries(ledgerId, firstEntryId, lastEntryId, maxSize, cb, ctx, flags);
+            }
+        }, ledgerId);
+    }
+
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
                                           final long ledgerId,
@@ -277,6 +277,10 @@ public interface BookieProtocol {
             return ByteBufList.clone(data);
         }
 
+        int getDataLength() {
+            return data.readableBytes();
+        }
+
         boolean isRecoveryAdd() {
             return (flags & FLAG_RECOVERY_ADD) == FLAG_RECOVERY_ADD;
         }
@@ -119,6 +119,7 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final RequestStats requestStats;
 
+    final int maxAddsInProgress;
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
 
@@ -198,6 +199,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.requestStats = new RequestStats(statsLogger);
 
         int maxAdds = serverCfg.getMaxAddsInProgressLimit();
+        maxAddsInProgress = maxAdds;
         addsSemaphore = maxAdds > 0 ? new Semaphore(maxAdds, true) : null;
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
@@ -205,26 +207,44 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     protected void onAddRequestStart(Channel channel) {
+        onAddRequestStart(channel, 1);
+    }
+
+    /**
+     * Track the start of a request adding several entries, each entry counts as one add in progress.
+     *
+     * @return the number of adds in progress accounted to the request, to pass to
+     *         {@link #onAddRequestFinish(int)}
+     */
+    protected int onAddRequestStart(Channel channel, int numEntries) {
+        // A request larger than the limit would never get its permits, it takes all of them instead
+        final int permits = addsSemaphore != null ? Math.min(Math.max(numEntries, 1), maxAddsInProgress)
+                : Math.max(numEntries, 1);
         if (addsSemaphore != null) {
-            if (!addsSemaphore.tryAcquire()) {
+            if (!addsSemaphore.tryAcquire(permits)) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
                 LOG.info("Too many add requests in progress, disabling autoread on channel {}", channel);
                 requestStats.blockAddRequest();
-                addsSemaphore.acquireUninterruptibly();
+                addsSemaphore.acquireUninterruptibly(permits);
                 channel.config().setAutoRead(true);
                 final long delayNanos = MathUtils.elapsedNanos(throttlingStartTimeNanos);
                 LOG.info("Re-enabled autoread on channel {} after AddRequest delay of {} nanos", channel, delayNanos);
                 requestStats.unblockAddRequest(delayNanos);
             }
         }
-        requestStats.trackAddRequest();
+        requestStats.trackAddRequest(permits);
+        return permits;
     }
 
     protected void onAddRequestFinish() {
-        requestStats.untrackAddRequest();
+        onAddRequestFinish(1);
+    }
+
+    protected void onAddRequestFinish(int permits) {
+        requestStats.untrackAddRequest(permits);
         if (addsSemaphore != null) {
-            addsSemaphore.release();
+            addsSemaphore.release(permits);
         }
     }
 
@@ -315,9 +335,15 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case ADD_ENTRY:
                         processAddRequestV3(r, c);
                         break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, c);
+                        break;
                     case READ_ENTRY:
                         processReadRequestV3(r, c);
                         break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, c);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, c);
                         break;
@@ -459,6 +485,38 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        RangeAddEntryProcessorV3 write = new RangeAddEntryProcessorV3(r, c, this);
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeAddRequest().getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add {} entries at {}:{}. Too many pending requests",
+                              r.getRangeAddRequest().getBodyCount(), r.getRangeAddRequest().getLedgerId(),
+                              r.getRangeAddRequest().getFirstEntryId());
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeAddResponse.Builder rangeAddResponse =
+                    BookkeeperProtocol.RangeAddResponse.newBuilder()
+                        .setLedgerId(r.getRangeAddRequest().getLedgerId())
+                        .setFirstEntryId(r.getRangeAddRequest().getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                write.sendResponse(rangeAddResponse.build());
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, c, this);
 
@@ -547,6 +605,32 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        final RangeReadEntryProcessorV3 read = new RangeReadEntryProcessorV3(r, c, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to read entries at {}:{}-{}. Too many pending requests",
+                              r.getRangeReadRequest().getLedgerId(), r.getRangeReadRequest().getFirstEntryId(),
+                              r.getRangeReadRequest().getLastEntryId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeReadResponse.Builder rangeReadResponse =
+                    BookkeeperProtocol.RangeReadResponse.newBuilder()
+                        .setLedgerId(r.getRangeReadRequest().getLedgerId())
+                        .setFirstEntryId(r.getRangeReadRequest().getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                read.sendResponse(rangeReadResponse.build());
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
         BookkeeperProtocol.BKPacketHeader.Builder header = BookkeeperProtocol.BKPacketHeader.newBuilder();
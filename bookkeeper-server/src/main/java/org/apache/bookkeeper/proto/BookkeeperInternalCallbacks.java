@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -80,6 +81,15 @@ public class BookkeeperInternalCallbacks {
         void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx);
     }
 
+    /**
+     * A writer callback interface for batched adds of the consecutive entries
+     * starting at <i>firstEntryId</i>.
+     */
+    public interface WriteEntriesCallback {
+        void writeEntriesComplete(int rc, long ledgerId, long firstEntryId, int numEntries,
+                                  BookieId addr, Object ctx);
+    }
+
     /**
      * A last-add-confirmed (LAC) reader callback interface.
      */
@@ -223,6 +233,15 @@ public class BookkeeperInternalCallbacks {
         void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for range reads from BookieClient objects.
+     * The <i>entries</i> hold the consecutive entries starting at <i>firstEntryId</i>,
+     * which may be fewer than the requested ones.
+     */
+    public interface ReadEntriesCallback {
+        void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
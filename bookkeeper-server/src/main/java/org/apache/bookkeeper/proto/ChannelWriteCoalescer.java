@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Handler of the channel to a bookie coalescing the flushes of the requests written to it.
+ *
+ * <p>The requests written and flushed by the client threads are handed to the event loop of
+ * the channel as separate tasks. Instead of flushing each of them, the first flush schedules a
+ * flush task at the end of the tasks already queued in the event loop, so that all the requests
+ * queued within the tick are flushed together, as a single gathering write on the socket. The
+ * requests are flushed right away once their size reaches {@code maxUnflushedBytes}.
+ *
+ * <p>It must be added to the pipeline after the encoders, so that it sees the requests as written
+ * by the client. It is only accessed from the event loop of the channel.
+ */
+class ChannelWriteCoalescer extends ChannelDuplexHandler {
+
+    private final int maxUnflushedBytes;
+    private final OpStatsLogger writeBatchSizeLogger;
+    private final Counter writeFlushCounter;
+
+    private int unflushedRequests = 0;
+    private long unflushedBytes = 0;
+    private boolean flushScheduled = false;
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = () -> {
+        flushScheduled = false;
+        flushRequests();
+    };
+
+    ChannelWriteCoalescer(int maxUnflushedBytes, OpStatsLogger writeBatchSizeLogger, Counter writeFlushCounter) {
+        this.maxUnflushedBytes = maxUnflushedBytes;
+        this.writeBatchSizeLogger = writeBatchSizeLogger;
+        this.writeFlushCounter = writeFlushCounter;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushRequests();
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        unflushedRequests++;
+        unflushedBytes += requestSize(msg);
+        ctx.write(msg, promise);
+        if (unflushedBytes >= maxUnflushedBytes) {
+            flushRequests();
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (unflushedRequests == 0) {
+            ctx.flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            ctx.executor().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushRequests();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushRequests();
+        ctx.disconnect(promise);
+    }
+
+    private void flushRequests() {
+        if (unflushedRequests == 0) {
+            return;
+        }
+        writeBatchSizeLogger.registerSuccessfulValue(unflushedRequests);
+        writeFlushCounter.inc();
+        unflushedRequests = 0;
+        unflushedBytes = 0;
+        ctx.flush();
+    }
+
+    private static long requestSize(Object msg) {
+        if (msg instanceof BookieProtocol.AddRequest) {
+            return ((BookieProtocol.AddRequest) msg).getDataLength();
+        } else if (msg instanceof MessageLite) {
+            // the size is memoized, the encoder doesn't compute it again
+            return ((MessageLite) msg).getSerializedSize();
+        } else if (msg instanceof ByteBufList) {
+            return ((ByteBufList) msg).readableBytes();
+        } else if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        return 0;
+    }
+}
@@ -89,6 +89,7 @@ import org.apache.bookkeeper.auth.ClientAuthProvider;
 import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.BookKeeperClientStats;
 import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.BookieLatencyTracker;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.common.util.MdcUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
@@ -99,11 +100,13 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetListOfEntriesOfLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StartTLSCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteEntriesCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
@@ -116,6 +119,10 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -199,6 +206,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_READ_OP,
+        help = "channel stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ,
+        help = "timeout stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
@@ -224,6 +241,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of add entries requests"
     )
     private final OpStatsLogger addTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_ADD_OP,
+        help = "channel stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD,
+        help = "timeout stats of range add entries requests"
+    )
+    private final OpStatsLogger rangeAddTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC,
         help = "timeout stats of write_lac requests"
@@ -287,6 +314,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "channel stats for all operations flowing through netty pipeline"
     )
     private final OpStatsLogger nettyOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_WRITE_BATCH_SIZE,
+        help = "the number of requests flushed together to the channel, when write coalescing is enabled"
+    )
+    private final OpStatsLogger writeBatchSizeLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_WRITE_FLUSHES,
+        help = "the number of flushes of the channel, when write coalescing is enabled"
+    )
+    private final Counter writeFlushCounter;
     @StatsDoc(
         name = BookKeeperClientStats.ACTIVE_NON_TLS_CHANNEL_COUNTER,
         help = "the number of active non-tls channels"
@@ -341,6 +378,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private final ClientAuthProvider.Factory authProviderFactory;
     private final ExtensionRegistry extRegistry;
     private final SecurityHandlerFactory shFactory;
+    private final BookieLatencyTracker readLatencyTracker;
     private volatile boolean isWritable = true;
     private long lastBookieUnavailableLogTimestamp = 0;
 
@@ -379,6 +417,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   PerChannelBookieClientPool pcbcPool,
                                   SecurityHandlerFactory shFactory,
                                   BookieAddressResolver bookieAddressResolver) throws SecurityException {
+        this(conf, executor, eventLoopGroup, allocator, bookieId, parentStatsLogger, authProviderFactory,
+                extRegistry, pcbcPool, shFactory, bookieAddressResolver, null);
+    }
+
+    public PerChannelBookieClient(ClientConfiguration conf, OrderedExecutor executor,
+                                  EventLoopGroup eventLoopGroup,
+                                  ByteBufAllocator allocator,
+                                  BookieId bookieId,
+                                  StatsLogger parentStatsLogger, ClientAuthProvider.Factory authProviderFactory,
+                                  ExtensionRegistry extRegistry,
+                                  PerChannelBookieClientPool pcbcPool,
+                                  SecurityHandlerFactory shFactory,
+                                  BookieAddressResolver bookieAddressResolver,
+                                  BookieLatencyTracker readLatencyTracker) throws SecurityException {
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.bookieId = bookieId;
@@ -401,6 +453,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
         this.shFactory = shFactory;
+        this.readLatencyTracker = readLatencyTracker;
         if (shFactory != null) {
             shFactory.init(NodeType.Client, conf, allocator);
         }
@@ -417,7 +470,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
         readTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ);
+        rangeReadOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_READ_OP);
+        rangeReadTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ);
         addTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_ADD);
+        rangeAddOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_ADD_OP);
+        rangeAddTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_ADD);
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
         readLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ_LAC);
@@ -431,6 +488,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
         readEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.READ_OP_OUTSTANDING);
         nettyOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.NETTY_OPS);
+        writeBatchSizeLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_WRITE_BATCH_SIZE);
+        writeFlushCounter = statsLogger.getCounter(BookKeeperClientStats.CHANNEL_WRITE_FLUSHES);
         activeNonTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_NON_TLS_CHANNEL_COUNTER);
         activeTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_TLS_CHANNEL_COUNTER);
         failedConnectionCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_CONNECTION_COUNTER);
@@ -593,6 +652,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 pipeline.addLast("authHandler", new AuthHandler.ClientSideHandler(authProviderFactory, txnIdGenerator,
                             connectionPeer, useV2WireProtocol));
                 pipeline.addLast("mainhandler", PerChannelBookieClient.this);
+                if (conf.getClientWriteCoalescingEnabled()) {
+                    pipeline.addLast("writeCoalescer", new ChannelWriteCoalescer(
+                            conf.getClientWriteCoalescingMaxBytes(), writeBatchSizeLogger, writeFlushCounter));
+                }
             }
         });
 
@@ -836,6 +899,82 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * Add a batch of consecutive entries with a single range add request.
+     * This method should be called only after connection has been checked for
+     * {@link #connectIfNeededAndDoOp(GenericCallback)}.
+     *
+     * @param ledgerId
+     *          Ledger Id
+     * @param masterKey
+     *          Master Key
+     * @param firstEntryId
+     *          Id of the first entry of the batch
+     * @param toSend
+     *          Buffers to send, one per entry
+     * @param cb
+     *          Write callback
+     * @param ctx
+     *          Write callback context
+     * @param allowFastFail
+     *          allowFastFail flag
+     * @param writeFlags
+     *          WriteFlags
+     */
+    void addEntries(final long ledgerId, byte[] masterKey, final long firstEntryId, List<ByteBufList> toSend,
+                    WriteEntriesCallback cb, Object ctx, boolean allowFastFail,
+                    final EnumSet<WriteFlag> writeFlags) {
+        final int numEntries = toSend.size();
+        if (useV2WireProtocol) {
+            LOG.error("range add is not allowed with v2 protocol");
+            executor.executeOrdered(ledgerId, () -> {
+                cb.writeEntriesComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId, numEntries,
+                                        bookieId, ctx);
+            });
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.RANGE_ADD_ENTRY);
+
+        // Build the request.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_ADD_ENTRY)
+                .setTxnId(txnId);
+
+        RangeAddRequest.Builder rangeAddBuilder = RangeAddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey));
+        for (ByteBufList entry : toSend) {
+            ByteString body = null;
+            if (entry.hasArray()) {
+                body = UnsafeByteOperations.unsafeWrap(entry.array(), entry.arrayOffset(), entry.readableBytes());
+            } else {
+                for (int i = 0; i < entry.size(); i++) {
+                    ByteString piece = UnsafeByteOperations.unsafeWrap(entry.getBuffer(i).nioBuffer());
+                    // use ByteString.concat to avoid byte[] allocation when entry has multiple ByteBufs
+                    body = (body == null) ? piece : body.concat(piece);
+                }
+            }
+            rangeAddBuilder.addBody(body);
+        }
+
+        if (!writeFlags.isEmpty()) {
+            rangeAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+        }
+
+        final Request rangeAddRequest = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeAddRequest(rangeAddBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new RangeAddCompletion(completionKey, cb, ctx, ledgerId, firstEntryId, numEntries));
+        // addEntries times out on backpressure
+        writeAndFlush(channel, completionKey, rangeAddRequest, allowFastFail);
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -991,6 +1130,51 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Range Reads.
+     */
+    public void readEntries(final long ledgerId,
+                            final long firstEntryId,
+                            final long lastEntryId,
+                            final long maxSize,
+                            ReadEntriesCallback cb,
+                            Object ctx,
+                            int flags) {
+        if (useV2WireProtocol) {
+            LOG.error("range read is not allowed with v2 protocol");
+            executor.executeOrdered(ledgerId, () -> {
+                cb.readEntriesComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId, null, ctx);
+            });
+            return;
+        }
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.RANGE_READ_ENTRY);
+
+        // Build the request.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_READ_ENTRY)
+                .setTxnId(txnId);
+        if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        RangeReadRequest.Builder rangeReadBuilder = RangeReadRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId)
+                .setMaxSize(maxSize);
+
+        final Request rangeReadRequest = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeReadRequest(rangeReadBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new RangeReadCompletion(completionKey, cb, ctx, ledgerId, firstEntryId));
+        writeAndFlush(channel, completionKey, rangeReadRequest);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
@@ -1609,6 +1793,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        void recordReadLatency(int rc) {
+            // only the reads answered by the bookie, or timed out, tell how fast it is; the ones failing
+            // before reaching it, or rejected by it, would make it look faster than it is
+            if (readLatencyTracker != null
+                && (rc == BKException.Code.OK
+                    || rc == BKException.Code.NoSuchEntryException
+                    || rc == BKException.Code.NoSuchLedgerExistsException
+                    || rc == BKException.Code.TimeoutException)) {
+                readLatencyTracker.recordLatency(latency());
+            }
+        }
+
         boolean maybeTimeout() {
             if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
                 timeout();
@@ -1859,6 +2055,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        recordReadLatency(rc);
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1944,6 +2141,81 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class RangeReadCompletion extends CompletionValue {
+        final ReadEntriesCallback cb;
+
+        public RangeReadCompletion(final CompletionKey key,
+                                   final ReadEntriesCallback originalCallback,
+                                   final Object originalCtx,
+                                   long ledgerId, final long firstEntryId) {
+            super("RangeRead", originalCtx, ledgerId, firstEntryId,
+                  rangeReadOpLogger, rangeReadTimeoutOpLogger);
+
+            this.cb = new ReadEntriesCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId,
+                                                    long firstEntryId, List<ByteBuf> entries,
+                                                    Object ctx) {
+                        logOpResult(rc);
+                        recordReadLatency(rc);
+                        originalCallback.readEntriesComplete(rc,
+                                                             ledgerId, firstEntryId,
+                                                             entries, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId,
+                                                 entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            RangeReadResponse rangeReadResponse = response.getRangeReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeReadResponse.getStatus() : response.getStatus();
+
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId,
+                            "entries", rangeReadResponse.getBodyCount());
+            }
+
+            if (rangeReadResponse.hasMaxLAC() && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(rangeReadResponse.getMaxLAC());
+            }
+            List<ByteBuf> entries = null;
+            if (rc == BKException.Code.OK) {
+                entries = new ArrayList<>(rangeReadResponse.getBodyCount());
+                for (ByteString body : rangeReadResponse.getBodyList()) {
+                    entries.add(Unpooled.wrappedBuffer(body.asReadOnlyByteBuffer()));
+                }
+            }
+            cb.readEntriesComplete(rc, rangeReadResponse.getLedgerId(), rangeReadResponse.getFirstEntryId(),
+                                   entries, ctx);
+            if (entries != null) {
+                // meaningless using unpooled, but client may expect to hold the last reference
+                entries.forEach(ByteBuf::release);
+            }
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
@@ -2217,6 +2489,73 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class RangeAddCompletion extends CompletionValue {
+        final WriteEntriesCallback cb;
+        final int numEntries;
+
+        public RangeAddCompletion(final CompletionKey key,
+                                  final WriteEntriesCallback originalCallback,
+                                  final Object originalCtx,
+                                  long ledgerId, final long firstEntryId,
+                                  final int numEntries) {
+            super("RangeAdd", originalCtx, ledgerId, firstEntryId,
+                  rangeAddOpLogger, rangeAddTimeoutOpLogger);
+            this.numEntries = numEntries;
+            this.cb = new WriteEntriesCallback() {
+                    @Override
+                    public void writeEntriesComplete(int rc, long ledgerId, long firstEntryId,
+                                                     int numEntries, BookieId addr, Object ctx) {
+                        logOpResult(rc);
+                        originalCallback.writeEntriesComplete(rc, ledgerId, firstEntryId, numEntries,
+                                                              addr, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.writeEntriesComplete(rc, ledgerId, entryId, numEntries, bookieId, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            addEntryOutstanding.dec();
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeAddResponse.getStatus() : response.getStatus();
+
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId, "entries", numEntries);
+            }
+
+            int rc = convertStatus(status, BKException.Code.WriteException);
+            cb.writeEntriesComplete(rc, ledgerId, entryId, numEntries, bookieId, ctx);
+        }
+    }
+
     // visable for testing
     CompletionKey newCompletionKey(long txnId, OperationType operationType) {
         return new V3CompletionKey(txnId, operationType);
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor handling a range add request: adds a batch of consecutive entries of a ledger
+ * and acknowledges all of them with a single response.
+ *
+ * <p>The response is sent once every entry of the batch has been acknowledged by the journal.
+ * The batch succeeds only if all of its entries were added successfully.
+ */
+class RangeAddEntryProcessorV3 extends PacketProcessorBaseV3 {
+    private static final Logger logger = LoggerFactory.getLogger(RangeAddEntryProcessorV3.class);
+
+    // Number of adds in progress accounted to this request, one per entry of the batch
+    private final int addsInProgress;
+
+    public RangeAddEntryProcessorV3(Request request, Channel channel,
+                                    BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        addsInProgress = requestProcessor.onAddRequestStart(channel, request.getRangeAddRequest().getBodyCount());
+    }
+
+    // Returns null if the entries were handed to the bookie, the response is then sent by the callback
+    private RangeAddResponse getRangeAddResponse() {
+        final long startTimeNanos = MathUtils.nowInNano();
+        RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+        final long ledgerId = rangeAddRequest.getLedgerId();
+        final long firstEntryId = rangeAddRequest.getFirstEntryId();
+        final int numEntries = rangeAddRequest.getBodyCount();
+
+        final RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        if (!isVersionCompatible()) {
+            rangeAddResponse.setStatus(StatusCode.EBADVERSION);
+            return rangeAddResponse.build();
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            rangeAddResponse.setStatus(StatusCode.EREADONLY);
+            return rangeAddResponse.build();
+        }
+
+        List<ByteBuf> entriesToAdd = new ArrayList<>(numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            ByteString body = rangeAddRequest.getBody(i);
+            ByteBuf entryToAdd = Unpooled.wrappedBuffer(body.asReadOnlyByteBuffer());
+            // each body carries its own ledger and entry id, they must match the range of the request
+            if (entryToAdd.readableBytes() < 16
+                    || entryToAdd.getLong(entryToAdd.readerIndex()) != ledgerId
+                    || entryToAdd.getLong(entryToAdd.readerIndex() + 8) != firstEntryId + i) {
+                logger.error("Invalid entry at position {} of range add request for {}@{}",
+                        i, firstEntryId, ledgerId);
+                entriesToAdd.forEach(ByteBuf::release);
+                entryToAdd.release();
+                rangeAddResponse.setStatus(StatusCode.EBADREQ);
+                return rangeAddResponse.build();
+            }
+            entriesToAdd.add(entryToAdd);
+        }
+        if (entriesToAdd.isEmpty()) {
+            logger.error("Empty range add request for {}@{}", firstEntryId, ledgerId);
+            rangeAddResponse.setStatus(StatusCode.EBADREQ);
+            return rangeAddResponse.build();
+        }
+
+        final AtomicInteger pendingEntries = new AtomicInteger(numEntries);
+        final AtomicInteger firstError = new AtomicInteger(BookieProtocol.EOK);
+        BookkeeperInternalCallbacks.WriteCallback wcb = new BookkeeperInternalCallbacks.WriteCallback() {
+            @Override
+            public void writeComplete(int rc, long ledgerId, long entryId,
+                                      BookieId addr, Object ctx) {
+                if (BookieProtocol.EOK != rc) {
+                    firstError.compareAndSet(BookieProtocol.EOK, rc);
+                }
+                if (pendingEntries.decrementAndGet() > 0) {
+                    return;
+                }
+
+                int batchRc = firstError.get();
+                if (BookieProtocol.EOK == batchRc) {
+                    requestProcessor.getRequestStats().getRangeAddEntryStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                } else {
+                    requestProcessor.getRequestStats().getRangeAddEntryStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                }
+
+                StatusCode status;
+                switch (batchRc) {
+                    case BookieProtocol.EOK:
+                        status = StatusCode.EOK;
+                        break;
+                    case BookieProtocol.EIO:
+                        status = StatusCode.EIO;
+                        break;
+                    default:
+                        status = StatusCode.EUA;
+                        break;
+                }
+                rangeAddResponse.setStatus(status);
+                sendResponse(rangeAddResponse.build());
+            }
+        };
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        StatusCode status = null;
+        byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+        try {
+            requestProcessor.getBookie().addEntries(entriesToAdd, ackBeforeSync, wcb, channel, masterKey);
+            status = StatusCode.EOK;
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Operation rejected while writing {}", request, e);
+            }
+            status = StatusCode.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            logger.error("Error writing entries:{}-{} to ledger:{}",
+                    firstEntryId, firstEntryId + numEntries - 1, ledgerId, e);
+            status = StatusCode.EIO;
+        } catch (BookieException.LedgerFencedException e) {
+            logger.error("Ledger fenced while writing entries:{}-{} to ledger:{}",
+                    firstEntryId, firstEntryId + numEntries - 1, ledgerId, e);
+            status = StatusCode.EFENCED;
+        } catch (BookieException e) {
+            logger.error("Unauthorized access to ledger:{} while writing entries:{}-{}",
+                    ledgerId, firstEntryId, firstEntryId + numEntries - 1, e);
+            status = StatusCode.EUA;
+        } catch (Throwable t) {
+            logger.error("Unexpected exception while writing {}-{}@{} : ",
+                    firstEntryId, firstEntryId + numEntries - 1, ledgerId, t);
+            // some bad request which cause unexpected exception
+            status = StatusCode.EBADREQ;
+        }
+
+        // If everything is okay, we return null so that the calling function
+        // doesn't return a response back to the caller.
+        if (!status.equals(StatusCode.EOK)) {
+            requestProcessor.getRequestStats().getRangeAddEntryStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            rangeAddResponse.setStatus(status);
+            return rangeAddResponse.build();
+        }
+        return null;
+    }
+
+    @Override
+    public void safeRun() {
+        RangeAddResponse rangeAddResponse = getRangeAddResponse();
+        if (null != rangeAddResponse) {
+            // This means there was an error and we should send this back.
+            sendResponse(rangeAddResponse);
+        }
+    }
+
+    protected void sendResponse(RangeAddResponse rangeAddResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeAddResponse.getStatus())
+                .setRangeAddResponse(rangeAddResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getRangeAddRequestStats());
+        requestProcessor.onAddRequestFinish(addsInProgress);
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor handling a range read request: reads a contiguous range of entries of a ledger
+ * and returns them in a single response.
+ *
+ * <p>The response holds the longest prefix of the requested range that fits in the max size
+ * of the response. At least one entry is returned on success. Reading stops at the first entry
+ * that cannot be read, so the client is expected to read the remaining entries with new requests.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    protected final RangeReadRequest rangeReadRequest;
+    protected final long ledgerId;
+    protected final long firstEntryId;
+    protected final long lastEntryId;
+    protected final long maxSize;
+
+    // entry bodies wrapped without copy by the range read response, released once the response is written
+    private CompositeByteBuf responseEntryBodies = null;
+
+    public RangeReadEntryProcessorV3(Request request,
+                                     Channel channel,
+                                     BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        requestProcessor.onReadRequestStart(channel);
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.firstEntryId = rangeReadRequest.getFirstEntryId();
+        this.lastEntryId = rangeReadRequest.getLastEntryId();
+
+        long maxSize = requestProcessor.getServerCfg().getMaxRangeReadSize();
+        if (rangeReadRequest.hasMaxSize() && rangeReadRequest.getMaxSize() > 0) {
+            maxSize = Math.min(maxSize, rangeReadRequest.getMaxSize());
+        }
+        this.maxSize = maxSize;
+    }
+
+    private StatusCode readEntries(RangeReadResponse.Builder rangeReadResponse) {
+        long size = 0;
+        long entryId = firstEntryId;
+        try {
+            while (entryId <= lastEntryId) {
+                ByteBuf entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+                int entrySize = entryBody.readableBytes();
+                if (entryId > firstEntryId && size + entrySize > maxSize) {
+                    ReferenceCountUtil.release(entryBody);
+                    break;
+                }
+                if (responseEntryBodies == null) {
+                    responseEntryBodies = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+                }
+                // the composite buffer takes the ownership of the entry body
+                responseEntryBodies.addComponent(entryBody);
+                rangeReadResponse.addBody(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
+                size += entrySize;
+                entryId++;
+            }
+            rangeReadResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+            return StatusCode.EOK;
+        } catch (Bookie.NoLedgerException e) {
+            if (rangeReadResponse.getBodyCount() > 0) {
+                return StatusCode.EOK;
+            }
+            LOG.info("No ledger found while reading entries: {}-{} from ledger: {}",
+                    firstEntryId, lastEntryId, ledgerId);
+            return StatusCode.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (rangeReadResponse.getBodyCount() > 0) {
+                // the client reads the missing entry from the other replicas
+                return StatusCode.EOK;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while reading entry: {} from ledger: {}", entryId, ledgerId);
+            }
+            return StatusCode.ENOENTRY;
+        } catch (IOException e) {
+            if (rangeReadResponse.getBodyCount() > 0) {
+                return StatusCode.EOK;
+            }
+            LOG.error("IOException while reading entry: {} from ledger {} ", entryId, ledgerId, e);
+            return StatusCode.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryId, ledgerId);
+            }
+            return StatusCode.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while reading entry:{} in request from address: {}",
+                    ledgerId, entryId, channel.remoteAddress());
+            return StatusCode.EUA;
+        }
+    }
+
+    private RangeReadResponse getRangeReadResponse() {
+        long startTimeNanos = MathUtils.nowInNano();
+
+        RangeReadResponse.Builder rangeReadResponse = RangeReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        StatusCode status;
+        if (!isVersionCompatible()) {
+            status = StatusCode.EBADVERSION;
+        } else if (firstEntryId < 0 || lastEntryId < firstEntryId) {
+            LOG.error("Invalid range {}-{} requested for ledger {}", firstEntryId, lastEntryId, ledgerId);
+            status = StatusCode.EBADREQ;
+        } else {
+            status = readEntries(rangeReadResponse);
+        }
+
+        if (status == StatusCode.EOK) {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            rangeReadResponse.clearBody();
+            ReferenceCountUtil.release(responseEntryBodies);
+            responseEntryBodies = null;
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        // Finally set the status and return
+        rangeReadResponse.setStatus(status);
+        return rangeReadResponse.build();
+    }
+
+    @Override
+    public void safeRun() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+            MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        sendResponse(getRangeReadResponse());
+    }
+
+    protected void sendResponse(RangeReadResponse rangeReadResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeReadResponse.getStatus())
+                .setRangeReadResponse(rangeReadResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getRangeReadRequestStats(),
+                     responseEntryBodies);
+        responseEntryBodies = null;
+        requestProcessor.onReadRequestFinish();
+    }
+
+    /**
+     * this toString method filters out masterKey from the output. masterKey
+     * contains the password of the ledger.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.bookkeeper.proto;
 
 import com.google.common.base.Stopwatch;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.util.ReferenceCountUtil;
@@ -48,6 +49,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     private CompletableFuture<Boolean> fenceResult = null;
 
+    // entry body wrapped without copy by the read response, released once the response is written
+    private ByteBuf responseEntryBody = null;
+
     protected final ReadRequest readRequest;
     protected final long ledgerId;
     protected final long entryId;
@@ -175,20 +179,17 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             handleReadResultForFenceRead(entryBody, readResponseBuilder, entryId, startTimeSw);
             return null;
         } else {
-            try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
-                if (readLACPiggyBack) {
-                    readResponseBuilder.setEntryId(entryId);
-                } else {
-                    long knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
-                    readResponseBuilder.setMaxLAC(knownLAC);
-                }
-                registerSuccessfulEvent(readStats, startTimeSw);
-                readResponseBuilder.setStatus(StatusCode.EOK);
-                return readResponseBuilder.build();
-            } finally {
-                ReferenceCountUtil.release(entryBody);
+            responseEntryBody = entryBody;
+            readResponseBuilder.setBody(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
+            if (readLACPiggyBack) {
+                readResponseBuilder.setEntryId(entryId);
+            } else {
+                long knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+                readResponseBuilder.setMaxLAC(knownLAC);
             }
+            registerSuccessfulEvent(readStats, startTimeSw);
+            readResponseBuilder.setStatus(StatusCode.EOK);
+            return readResponseBuilder.build();
         }
     }
 
@@ -318,7 +319,9 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setReadResponse(readResponse);
         sendResponse(response.getStatus(),
                      response.build(),
-                     reqStats);
+                     reqStats,
+                     responseEntryBody);
+        responseEntryBody = null;
         requestProcessor.onReadRequestFinish();
     }
 
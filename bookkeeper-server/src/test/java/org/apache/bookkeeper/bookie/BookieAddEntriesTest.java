@@ -0,0 +1,223 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batched adds of {@link BookieImpl#addEntries}.
+ */
+public class BookieAddEntriesTest extends BookKeeperClusterTestCase {
+
+    private static final int NUM_ENTRIES = 10;
+    private static final byte[] MASTER_KEY = "masterKey".getBytes(StandardCharsets.UTF_8);
+
+    private static volatile long failEntryId = -1L;
+
+    /**
+     * Ledger storage failing to add the entry with the id {@link #failEntryId}.
+     */
+    public static class FailingLedgerStorage extends SortedLedgerStorage {
+        @Override
+        public long addEntry(ByteBuf entry) throws IOException {
+            if (entry.getLong(entry.readerIndex() + 8) == failEntryId) {
+                throw new IOException("Failing entry " + failEntryId);
+            }
+            return super.addEntry(entry);
+        }
+    }
+
+    /**
+     * Callback recording the result of each entry.
+     */
+    private static class Results implements WriteCallback {
+        final Map<Long, Integer> rcs = new ConcurrentHashMap<>();
+        final CountDownLatch latch;
+
+        Results(int numEntries) {
+            latch = new CountDownLatch(numEntries);
+        }
+
+        @Override
+        public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+            rcs.put(entryId, rc);
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private Bookie bookie;
+
+    public BookieAddEntriesTest() {
+        super(1);
+        baseConf.setLedgerStorageClass(FailingLedgerStorage.class.getName());
+    }
+
+    @Before
+    public void setUpBookie() throws Exception {
+        failEntryId = -1L;
+        bookie = serverByIndex(0).getBookie();
+        getStatsProvider(0).clear();
+    }
+
+    private static List<ByteBuf> entries(long ledgerId, int numEntries) {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            ByteBuf entry = Unpooled.buffer(1024);
+            entry.writeLong(ledgerId);
+            entry.writeLong(entryId);
+            entry.writerIndex(entry.capacity());
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static void assertReleased(List<ByteBuf> entries) {
+        for (ByteBuf entry : entries) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    private void assertAddEntryStats(long successful, long failed) throws Exception {
+        AtomicReference<TestOpStatsLogger> addEntryStats = new AtomicReference<>();
+        getStatsProvider(0).forEachOpStatLogger((name, stats) -> {
+            if (name.endsWith("." + BookKeeperServerStats.BOOKIE_ADD_ENTRY)) {
+                addEntryStats.set(stats);
+            }
+        });
+        assertEquals(successful, addEntryStats.get().getSuccessCount());
+        assertEquals(failed, addEntryStats.get().getFailureCount());
+    }
+
+    private void assertReadable(long ledgerId, long numEntries) throws Exception {
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            ByteBuf entry = bookie.readEntry(ledgerId, entryId);
+            assertEquals(ledgerId, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+            entry.release();
+        }
+    }
+
+    private void testAddEntries(boolean ackBeforeSync) throws Exception {
+        List<ByteBuf> entries = entries(1L, NUM_ENTRIES);
+        entries.forEach(ByteBuf::retain);
+        Results results = new Results(NUM_ENTRIES);
+        bookie.addEntries(entries, ackBeforeSync, results, null, MASTER_KEY);
+        results.await();
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(BookieProtocol.EOK, (int) results.rcs.get(entryId));
+        }
+        assertReadable(1L, NUM_ENTRIES);
+        assertAddEntryStats(NUM_ENTRIES, 0);
+        entries.forEach(ByteBuf::release);
+        assertReleased(entries);
+    }
+
+    @Test
+    public void testAddEntries() throws Exception {
+        testAddEntries(false);
+    }
+
+    @Test
+    public void testAddEntriesAckBeforeSync() throws Exception {
+        testAddEntries(true);
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        failEntryId = 5L;
+        List<ByteBuf> entries = entries(1L, NUM_ENTRIES);
+        Results results = new Results(NUM_ENTRIES);
+        bookie.addEntries(entries, false, results, null, MASTER_KEY);
+        results.await();
+
+        // the entries before the failed one are kept, the following ones are all failed
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            int expectedRc = entryId < failEntryId ? BookieProtocol.EOK : BookieProtocol.EIO;
+            assertEquals(expectedRc, (int) results.rcs.get(entryId));
+        }
+        assertReadable(1L, failEntryId);
+        assertAddEntryStats(failEntryId, NUM_ENTRIES - failEntryId);
+        assertReleased(entries);
+    }
+
+    @Test
+    public void testFirstEntryFailure() throws Exception {
+        failEntryId = 0L;
+        List<ByteBuf> entries = entries(1L, NUM_ENTRIES);
+        Results results = new Results(NUM_ENTRIES);
+        try {
+            bookie.addEntries(entries, false, results, null, MASTER_KEY);
+            fail("The batch should fail when its first entry cannot be added");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(results.rcs.isEmpty());
+        assertAddEntryStats(0, NUM_ENTRIES);
+        assertReleased(entries);
+    }
+
+    @Test
+    public void testFencedLedger() throws Exception {
+        List<ByteBuf> firstEntries = entries(1L, 1);
+        Results firstResults = new Results(1);
+        bookie.addEntries(firstEntries, false, firstResults, null, MASTER_KEY);
+        firstResults.await();
+        assertTrue(bookie.fenceLedger(1L, MASTER_KEY).get(10, TimeUnit.SECONDS));
+
+        List<ByteBuf> entries = entries(1L, NUM_ENTRIES);
+        Results results = new Results(NUM_ENTRIES);
+        try {
+            bookie.addEntries(entries, false, results, null, MASTER_KEY);
+            fail("The batch should be rejected on a fenced ledger");
+        } catch (BookieException.LedgerFencedException e) {
+            // expected
+        }
+        assertTrue(results.rcs.isEmpty());
+        assertAddEntryStats(1, NUM_ENTRIES);
+        assertReleased(entries);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Enumeration;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.client.LedgerEntry;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.util.BookKeeperConstants;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Test that a bookie replays the compressed groups of a V7 journal on restart.
+ */
+public class JournalCompressedGroupReplayTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWD = "passwd".getBytes();
+
+    public JournalCompressedGroupReplayTest() {
+        super(1);
+        baseConf.setJournalFormatVersionToWrite(JournalChannel.V7);
+    }
+
+    @Test
+    public void restartReplaysCompressedJournal() throws Exception {
+        int numEntries = 100;
+        byte[] payload = new byte[1024];
+        LedgerHandle lh = bkc.createLedger(1, 1, DigestType.CRC32, PASSWD);
+        for (int i = 0; i < numEntries; i++) {
+            lh.addEntry(payload);
+        }
+
+        // drop the ledger storage and the last mark, so that the entries only come back through the journal
+        ServerConfiguration conf = killBookie(0);
+        int dropped = 0;
+        for (File ledgerDir : conf.getLedgerDirs()) {
+            File[] files = BookieImpl.getCurrentDirectory(ledgerDir).listFiles();
+            for (File file : files) {
+                // the journal may share the directory
+                if (!file.getName().equals(BookKeeperConstants.VERSION_FILENAME)
+                        && !file.getName().endsWith(".txn")) {
+                    FileUtils.forceDelete(file);
+                    dropped++;
+                }
+            }
+        }
+        assertTrue(dropped > 0);
+        startAndAddBookie(conf);
+
+        Enumeration<LedgerEntry> entries = lh.readEntries(0, numEntries - 1);
+        int read = 0;
+        while (entries.hasMoreElements()) {
+            LedgerEntry entry = entries.nextElement();
+            assertEquals(read++, entry.getEntryId());
+            assertArrayEquals(payload, entry.getEntry());
+        }
+        assertEquals(numEntries, read);
+        lh.close();
+    }
+}
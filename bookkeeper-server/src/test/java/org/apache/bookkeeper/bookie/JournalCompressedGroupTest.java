@@ -0,0 +1,289 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the compressed group writes of the V7 journal format.
+ */
+public class JournalCompressedGroupTest {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final Random random = new Random(0);
+    private ServerConfiguration conf;
+    private File journalDir;
+    private LedgerDirsManager ledgerDirsManager;
+    private TestStatsProvider statsProvider;
+    private Journal journal;
+
+    /**
+     * A record of the journal, with the offset it was scanned at.
+     */
+    private static class Record {
+        final long offset;
+        final long ledgerId;
+        final long entryId;
+        final byte[] payload;
+
+        Record(long offset, ByteBuffer entry) {
+            this.offset = offset;
+            this.ledgerId = entry.getLong();
+            this.entryId = entry.getLong();
+            this.payload = new byte[entry.remaining()];
+            entry.get(payload);
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = BookieImpl.getCurrentDirectory(tmpDirs.createNew("journal", "test"));
+        BookieImpl.checkDirectoryStructure(journalDir);
+        File ledgerDir = tmpDirs.createNew("ledger", "test");
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirName(journalDir.getParent());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalFormatVersionToWrite(JournalChannel.V7);
+        // group the entries logged together
+        conf.setJournalFlushWhenQueueEmpty(false);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        statsProvider = new TestStatsProvider();
+        journal = new Journal(0, journalDir, conf, ledgerDirsManager, statsProvider.getStatsLogger("journal"),
+                UnpooledByteBufAllocator.DEFAULT);
+        journal.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        journal.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    private ByteBuf entry(long entryId, boolean compressible) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(1L);
+        entry.writeLong(entryId);
+        byte[] payload = new byte[ENTRY_SIZE - entry.writerIndex()];
+        if (!compressible) {
+            random.nextBytes(payload);
+        }
+        entry.writeBytes(payload);
+        return entry;
+    }
+
+    /**
+     * Log the entries and wait for all of them to be acknowledged, which flushes their group. The incompressible
+     * entries are each written in their own group, as the ids of several entries would still compress a little.
+     */
+    private List<ByteBuf> logEntries(long firstEntryId, int numEntries, boolean compressible) throws Exception {
+        if (!compressible) {
+            List<ByteBuf> entries = new ArrayList<>();
+            for (long entryId = firstEntryId; entryId < firstEntryId + numEntries; entryId++) {
+                entries.addAll(logGroup(entryId, 1, false));
+            }
+            return entries;
+        }
+        return logGroup(firstEntryId, numEntries, true);
+    }
+
+    private List<ByteBuf> logGroup(long firstEntryId, int numEntries, boolean compressible) throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(numEntries);
+        AtomicInteger failed = new AtomicInteger();
+        for (long entryId = firstEntryId; entryId < firstEntryId + numEntries; entryId++) {
+            ByteBuf entry = entry(entryId, compressible);
+            entries.add(entry);
+            journal.logAddEntry(entry.retainedDuplicate(), false, (rc, ledgerId, eId, addr, ctx) -> {
+                if (rc != BKException.Code.OK) {
+                    failed.incrementAndGet();
+                }
+                latch.countDown();
+            }, null);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(0, failed.get());
+        return entries;
+    }
+
+    private List<Record> scan() throws Exception {
+        List<Record> records = new ArrayList<>();
+        for (long journalId : Journal.listJournalIds(journalDir, null)) {
+            journal.scanJournal(journalId, 0L, (journalVersion, offset, entry) -> {
+                assertEquals(JournalChannel.V7, journalVersion);
+                records.add(new Record(offset, entry));
+            });
+        }
+        return records;
+    }
+
+    private static void assertRecords(List<ByteBuf> entries, List<Record> records) {
+        assertEquals(entries.size(), records.size());
+        for (int i = 0; i < entries.size(); i++) {
+            ByteBuf entry = entries.get(i);
+            Record record = records.get(i);
+            assertEquals(entry.getLong(0), record.ledgerId);
+            assertEquals(entry.getLong(8), record.entryId);
+            assertEquals(entry.slice(16, entry.readableBytes() - 16), Unpooled.wrappedBuffer(record.payload));
+        }
+    }
+
+    private static long distinctOffsets(List<Record> records) {
+        return records.stream().mapToLong(record -> record.offset).distinct().count();
+    }
+
+    private long journalWriteBytes() {
+        return statsProvider.getCounter("journal.journalIndex_0." + BookKeeperServerStats.JOURNAL_WRITE_BYTES).get();
+    }
+
+    private long journalCompressedWriteBytes() {
+        return statsProvider.getCounter("journal.journalIndex_0."
+                + BookKeeperServerStats.JOURNAL_COMPRESSED_WRITE_BYTES).get();
+    }
+
+    @Test
+    public void compressibleGroupIsCompressed() throws Exception {
+        List<ByteBuf> entries = logEntries(0, 100, true);
+        journal.shutdown();
+
+        assertTrue(journalCompressedWriteBytes() < journalWriteBytes() / 10);
+        List<Record> records = scan();
+        assertRecords(entries, records);
+        // the records of a compressed group are all located at the offset of the group
+        assertTrue(distinctOffsets(records) < records.size());
+    }
+
+    @Test
+    public void incompressibleGroupIsWrittenRaw() throws Exception {
+        List<ByteBuf> entries = logEntries(0, 20, false);
+        journal.shutdown();
+
+        // the records are written as they are, each one with its length
+        assertEquals(journalWriteBytes() + 4 * entries.size(), journalCompressedWriteBytes());
+        List<Record> records = scan();
+        assertRecords(entries, records);
+        assertEquals(records.size(), distinctOffsets(records));
+    }
+
+    @Test
+    public void compressedGroupsMixedWithPlainRecords() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            entries.addAll(logEntries(entries.size(), 20, i % 2 == 0));
+        }
+        journal.shutdown();
+
+        List<Record> records = scan();
+        assertRecords(entries, records);
+        // the incompressible groups are plain records, each at its own offset
+        long plainRecords = 3 * 20;
+        assertTrue(distinctOffsets(records) > plainRecords);
+        assertTrue(distinctOffsets(records) < records.size());
+    }
+
+    /**
+     * Tear the last group of the journal with the given function, which receives the journal file, the offset of
+     * the group and its compressed size, and check that the scan ends before it.
+     */
+    private void checkTornLastGroup(TornGroupWriter writer) throws Exception {
+        List<ByteBuf> entries = logEntries(0, 20, true);
+        entries.addAll(logEntries(20, 20, true));
+        journal.shutdown();
+
+        List<Record> records = scan();
+        assertRecords(entries, records);
+        long lastGroupOffset = records.get(records.size() - 1).offset;
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        File journalFile = new File(journalDir, Long.toHexString(journalIds.get(journalIds.size() - 1)) + ".txn");
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.seek(lastGroupOffset);
+            assertEquals(Journal.COMPRESSED_GROUP_MASK, file.readInt());
+            assertEquals(Journal.COMPRESSION_CODEC_LZ4, file.readInt());
+            file.readInt();
+            int compressedSize = file.readInt();
+            writer.tear(file, lastGroupOffset, compressedSize);
+        }
+
+        List<Record> replayed = scan();
+        List<ByteBuf> expected = new ArrayList<>();
+        for (int i = 0; i < records.size() && records.get(i).offset < lastGroupOffset; i++) {
+            expected.add(entries.get(i));
+        }
+        assertTrue(expected.size() >= 20);
+        assertRecords(expected, replayed);
+    }
+
+    private interface TornGroupWriter {
+        void tear(RandomAccessFile file, long groupOffset, int compressedSize) throws Exception;
+    }
+
+    private static void zero(RandomAccessFile file, long from, long to) throws Exception {
+        file.seek(from);
+        file.write(new byte[(int) (to - from)]);
+    }
+
+    @Test
+    public void truncatedCompressedGroupEndsJournal() throws Exception {
+        checkTornLastGroup((file, groupOffset, compressedSize) ->
+                file.setLength(groupOffset + Journal.COMPRESSED_GROUP_HEADER_SIZE + compressedSize / 2));
+    }
+
+    @Test
+    public void tornCompressedGroupBodyEndsJournal() throws Exception {
+        // the end of the group did not reach the preallocated file
+        checkTornLastGroup((file, groupOffset, compressedSize) -> {
+            long bodyOffset = groupOffset + Journal.COMPRESSED_GROUP_HEADER_SIZE;
+            zero(file, bodyOffset + compressedSize / 2, bodyOffset + compressedSize);
+        });
+    }
+
+    @Test
+    public void tornCompressedGroupHeaderEndsJournal() throws Exception {
+        // only the mask of the group reached the preallocated file
+        checkTornLastGroup((file, groupOffset, compressedSize) ->
+                zero(file, groupOffset + 4, groupOffset + Journal.COMPRESSED_GROUP_HEADER_SIZE + compressedSize));
+    }
+}
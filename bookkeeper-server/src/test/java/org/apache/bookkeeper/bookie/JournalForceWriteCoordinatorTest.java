@@ -0,0 +1,168 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Lists;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the shutdown of the journals stored on the same device while their {@link JournalForceWriteCoordinator}
+ * has force writes pending.
+ */
+public class JournalForceWriteCoordinatorTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private List<Journal> journals;
+
+    /**
+     * Coordinator whose sync rounds wait for the test, or for the coordinator to be shut down, and which records
+     * the uncaught exceptions instead of exiting.
+     */
+    private static class BlockingCoordinator extends JournalForceWriteCoordinator {
+        final CountDownLatch syncStarted = new CountDownLatch(1);
+        final CountDownLatch syncReleased = new CountDownLatch(1);
+        volatile Throwable uncaughtException;
+
+        BlockingCoordinator(List<Journal> journals, ServerConfiguration conf) {
+            super("test", journals, conf);
+        }
+
+        @Override
+        void syncFile(JournalChannel logFile, Journal journal) throws IOException {
+            super.syncFile(logFile, journal);
+            syncStarted.countDown();
+            try {
+                syncReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected void handleException(Thread t, Throwable e) {
+            uncaughtException = e;
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        File journalDir0 = tmpDirs.createNew("journal", "test");
+        File journalDir1 = tmpDirs.createNew("journal", "test");
+        File ledgerDir = tmpDirs.createNew("ledger", "test");
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setJournalDirsName(new String[] { journalDir0.getPath(), journalDir1.getPath() });
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setJournalSyncData(true);
+        conf.setJournalForceWriteCoalescingEnabled(true);
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journals = Lists.newArrayList();
+        for (File journalDir : conf.getJournalDirs()) {
+            File currentDir = BookieImpl.getCurrentDirectory(journalDir);
+            BookieImpl.checkDirectoryStructure(currentDir);
+            journals.add(new Journal(journals.size(), currentDir, conf, ledgerDirsManager));
+        }
+    }
+
+    @After
+    public void teardown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(entry.capacity());
+        return entry;
+    }
+
+    @Test(timeout = 60000)
+    public void shutdownWithPendingForceWrites() throws Exception {
+        BlockingCoordinator coordinator = new BlockingCoordinator(journals, conf);
+        coordinator.start();
+        for (Journal journal : journals) {
+            journal.start();
+        }
+
+        AtomicInteger failed = new AtomicInteger();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            for (int i = 0; i < journals.size(); i++) {
+                journals.get(i).logAddEntry(entry(i, entryId), false, (rc, ledgerId, eId, addr, ctx) -> {
+                    if (rc != BKException.Code.OK) {
+                        failed.incrementAndGet();
+                    }
+                }, null);
+            }
+        }
+
+        // A sync round is in progress, its entries are waiting to be acknowledged when the bookie shuts down
+        assertTrue(coordinator.syncStarted.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(() -> {
+            try {
+                BookieImpl.shutdownJournals(journals, Collections.singletonList(coordinator));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        });
+
+        // The round completes once the shutdown is done, or once the journals and their callback executors are
+        // shut down if the coordinator were still running then
+        while (!shutdown.isDone() && journals.stream().anyMatch(Journal::isAlive)) {
+            Thread.sleep(1);
+        }
+        coordinator.syncReleased.countDown();
+        shutdown.get(30, TimeUnit.SECONDS);
+
+        // The coordinator never acknowledged entries through a callback executor which was shut down
+        assertNull(coordinator.uncaughtException);
+        assertFalse(coordinator.isAlive());
+        for (Journal journal : journals) {
+            assertFalse(journal.isAlive());
+        }
+        assertEquals(0, failed.get());
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link JournalSelector}.
+ */
+public class JournalSelectorTest {
+
+    private static final long IDLE_TIMEOUT_MS = 100;
+
+    private Journal[] journals;
+    private JournalStats[] journalStats;
+    private final List<Journal> assigned = new ArrayList<>();
+    private final JournalSelector.AssignmentListener listener = assigned::add;
+
+    @Before
+    public void setUp() {
+        journals = new Journal[3];
+        journalStats = new JournalStats[journals.length];
+        for (int i = 0; i < journals.length; i++) {
+            journals[i] = mock(Journal.class);
+            journalStats[i] = mock(JournalStats.class);
+            when(journals[i].getJournalStats()).thenReturn(journalStats[i]);
+            setLoad(i, 0, 0);
+        }
+    }
+
+    private void setLoad(int journal, int queueLength, long syncLatencyNanos) {
+        when(journals[journal].getJournalQueueLength()).thenReturn(queueLength);
+        when(journalStats[journal].getJournalSyncLatencyAvgNanos()).thenReturn(syncLatencyNanos);
+    }
+
+    private JournalSelector newSelector() {
+        return new JournalSelector(Arrays.asList(journals), IDLE_TIMEOUT_MS);
+    }
+
+    private static void waitIdleTimeout() throws InterruptedException {
+        Thread.sleep(2 * IDLE_TIMEOUT_MS);
+    }
+
+    @Test
+    public void testAssignToLeastLoadedJournal() throws Exception {
+        setLoad(0, 30, 0);
+        setLoad(1, 0, TimeUnit.MILLISECONDS.toNanos(10));
+        // the deepest queue with the fastest syncs is the least loaded
+        setLoad(2, 20, TimeUnit.MICROSECONDS.toNanos(100));
+        JournalSelector selector = newSelector();
+
+        assertSame(journals[2], selector.select(1, listener));
+        assertEquals(Arrays.asList(journals[2]), assigned);
+    }
+
+    @Test
+    public void testEquallyLoadedJournalsInTurn() throws Exception {
+        JournalSelector selector = newSelector();
+        for (long ledgerId = 0; ledgerId < 2 * journals.length; ledgerId++) {
+            selector.select(ledgerId, listener);
+        }
+        assertEquals(Arrays.asList(journals[0], journals[1], journals[2], journals[0], journals[1], journals[2]),
+                assigned);
+        assertEquals(2 * journals.length, selector.getNumAssignments());
+    }
+
+    @Test
+    public void testLedgerSticksToJournal() throws Exception {
+        JournalSelector selector = newSelector();
+        assertSame(journals[0], selector.select(1, listener));
+
+        // the ledger stays on its journal while written, even if another one is less loaded
+        setLoad(0, 100, 0);
+        for (int i = 0; i < 10; i++) {
+            assertSame(journals[0], selector.select(1, listener));
+            assertSame(journals[0], selector.current(1, listener));
+        }
+        assertEquals(Arrays.asList(journals[0]), assigned);
+    }
+
+    @Test
+    public void testIdleLedgerMigrates() throws Exception {
+        JournalSelector selector = newSelector();
+        assertSame(journals[0], selector.select(1, listener));
+
+        setLoad(0, 100, 0);
+        setLoad(1, 100, 0);
+        waitIdleTimeout();
+        // the listener is notified of the new journal
+        assertSame(journals[2], selector.select(1, listener));
+        assertEquals(Arrays.asList(journals[0], journals[2]), assigned);
+        assertSame(journals[2], selector.select(1, listener));
+        assertEquals(2, assigned.size());
+    }
+
+    @Test
+    public void testCurrentDoesNotMigrate() throws Exception {
+        JournalSelector selector = newSelector();
+        // a new ledger is assigned
+        assertSame(journals[0], selector.current(1, listener));
+        assertEquals(Arrays.asList(journals[0]), assigned);
+
+        setLoad(0, 100, 0);
+        waitIdleTimeout();
+        assertSame(journals[0], selector.current(1, listener));
+        assertEquals(1, assigned.size());
+    }
+
+    @Test
+    public void testListenerFailure() throws Exception {
+        JournalSelector selector = newSelector();
+        try {
+            selector.select(1, journal -> {
+                throw new InterruptedException("test");
+            });
+            fail("The failure of the listener should be thrown");
+        } catch (InterruptedException e) {
+            // expected
+        }
+
+        // the ledger is still not assigned, the listener is notified again
+        assertSame(journals[1], selector.current(1, listener));
+        assertEquals(Arrays.asList(journals[1]), assigned);
+    }
+
+    @Test
+    public void testSweepIdleAssignments() throws Exception {
+        JournalSelector selector = newSelector();
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            selector.select(ledgerId, listener);
+        }
+        assertEquals(10, selector.getNumAssignments());
+
+        waitIdleTimeout();
+        // the idle ledgers are removed when a new ledger is assigned, except those written in the meantime
+        Journal journal = selector.select(0, listener);
+        selector.select(10, listener);
+        assertEquals(2, selector.getNumAssignments());
+
+        assigned.clear();
+        assertSame(journal, selector.select(0, listener));
+        assertTrue(assigned.isEmpty());
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the reads of the entry logs through their memory mappings.
+ */
+public class MappedEntryLogsTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int ENTRIES_PER_LOG = 10;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private DefaultEntryLogger entryLogger;
+    private MappedEntryLogs mappedEntryLogs;
+    private long nextEntryId = 0;
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.createNew("ledger", "test");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getPath() });
+        conf.setEntryLogMmapReadEnabled(true);
+        conf.setEntryLogMaxMappedLogs(2);
+        entryLogger = new DefaultEntryLogger(conf);
+        mappedEntryLogs = entryLogger.getMappedEntryLogs();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Write the entries of a log, and seal it unless asked to keep writing to it.
+     *
+     * @return the locations of the entries
+     */
+    private List<Long> writeLog(boolean seal) throws IOException {
+        List<Long> locations = new ArrayList<>();
+        for (int i = 0; i < ENTRIES_PER_LOG; i++) {
+            locations.add(entryLogger.addEntry(LEDGER_ID, entry(nextEntryId++)));
+        }
+        if (seal) {
+            ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(LEDGER_ID);
+            entryLogger.flush();
+        }
+        return locations;
+    }
+
+    private ByteBuf readEntry(long location) throws Exception {
+        long entryId = entryIdOf(location);
+        ByteBuf entry = entryLogger.readEntry(LEDGER_ID, entryId, location);
+        assertEquals(entry(entryId), entry);
+        return entry;
+    }
+
+    private long entryIdOf(long location) throws Exception {
+        ByteBuf entry = entryLogger.readEntry(location);
+        try {
+            return entry.getLong(8);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private static long logIdOf(List<Long> locations) {
+        return DefaultEntryLogger.logIdForOffset(locations.get(0));
+    }
+
+    @Test
+    public void readSealedLogThroughMapping() throws Exception {
+        List<Long> locations = writeLog(true);
+        for (long location : locations) {
+            readEntry(location).release();
+        }
+        assertTrue(mappedEntryLogs.isMapped(logIdOf(locations)));
+        assertEquals(1, mappedEntryLogs.size());
+
+        List<Long> entryIds = new ArrayList<>();
+        // the entries are followed by the ledgers map of the log
+        entryLogger.readEntries(locations.get(2), Long.MAX_VALUE, entry -> {
+            if (entry.getLong(0) != LEDGER_ID) {
+                return false;
+            }
+            entryIds.add(entry.getLong(8));
+            return true;
+        });
+        assertEquals(ENTRIES_PER_LOG - 2, entryIds.size());
+        assertEquals(Long.valueOf(2), entryIds.get(0));
+    }
+
+    @Test
+    public void currentLogIsReadThroughItsChannel() throws Exception {
+        List<Long> locations = writeLog(false);
+        for (long location : locations) {
+            readEntry(location).release();
+        }
+        assertFalse(mappedEntryLogs.isMapped(logIdOf(locations)));
+
+        // mapped once sealed
+        ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(LEDGER_ID);
+        entryLogger.flush();
+        readEntry(locations.get(0)).release();
+        assertTrue(mappedEntryLogs.isMapped(logIdOf(locations)));
+    }
+
+    @Test
+    public void dropLeastRecentlyReadLog() throws Exception {
+        List<Long> log0 = writeLog(true);
+        List<Long> log1 = writeLog(true);
+        List<Long> log2 = writeLog(true);
+
+        readEntry(log0.get(0)).release();
+        ByteBuf entryOfLog1 = readEntry(log1.get(0));
+        readEntry(log0.get(1)).release();
+        assertEquals(2, mappedEntryLogs.size());
+
+        // log1 is the least recently read
+        readEntry(log2.get(0)).release();
+        assertEquals(2, mappedEntryLogs.size());
+        assertTrue(mappedEntryLogs.isMapped(logIdOf(log0)));
+        assertFalse(mappedEntryLogs.isMapped(logIdOf(log1)));
+        assertTrue(mappedEntryLogs.isMapped(logIdOf(log2)));
+
+        // the entry read from the dropped log stays valid until released
+        assertEquals(entry(entryOfLog1.getLong(8)), entryOfLog1);
+        entryOfLog1.release();
+
+        // and the log is mapped again on its next read
+        readEntry(log1.get(1)).release();
+        assertTrue(mappedEntryLogs.isMapped(logIdOf(log1)));
+        assertEquals(2, mappedEntryLogs.size());
+    }
+
+    @Test
+    public void readLogRemovedByCompaction() throws Exception {
+        List<Long> locations = writeLog(true);
+        ByteBuf entry = readEntry(locations.get(0));
+        long logId = logIdOf(locations);
+        assertTrue(mappedEntryLogs.isMapped(logId));
+
+        assertTrue(entryLogger.removeEntryLog(logId));
+        assertFalse(mappedEntryLogs.isMapped(logId));
+        assertEquals(entry(0), entry);
+        entry.release();
+
+        try {
+            entryLogger.readEntry(LEDGER_ID, 1, locations.get(1));
+            fail("The entry log was removed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(mappedEntryLogs.isMapped(logId));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonPositiveMaxMappedLogs() {
+        new MappedEntryLogs(ByteBufAllocator.DEFAULT, 0);
+    }
+}
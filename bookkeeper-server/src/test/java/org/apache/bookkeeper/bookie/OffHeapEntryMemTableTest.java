@@ -0,0 +1,334 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.Bookie.NoLedgerException;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.EntryMemTable.EntrySkipList;
+import org.apache.bookkeeper.bookie.OffHeapEntryMemTable.OffHeapArena;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link OffHeapEntryMemTable}.
+ */
+public class OffHeapEntryMemTableTest {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int MAX_ALLOC = 256;
+
+    /**
+     * Allocator keeping the direct buffers it allocates, to check when they are released.
+     */
+    private static class RecordingAllocator extends AbstractByteBufAllocator {
+        final List<ByteBuf> buffers = new ArrayList<>();
+
+        RecordingAllocator() {
+            super(true);
+        }
+
+        @Override
+        protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+            return UnpooledByteBufAllocator.DEFAULT.heapBuffer(initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+            ByteBuf buffer = UnpooledByteBufAllocator.DEFAULT.directBuffer(initialCapacity, maxCapacity);
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public boolean isDirectBufferPooled() {
+            return false;
+        }
+
+        int released() {
+            int released = 0;
+            for (ByteBuf buffer : buffers) {
+                if (buffer.refCnt() == 0) {
+                    released++;
+                }
+            }
+            return released;
+        }
+    }
+
+    /**
+     * Checkpoint source handing out increasing checkpoints.
+     */
+    private static class TestCheckpointSource implements CheckpointSource {
+        private final AtomicLong next = new AtomicLong();
+
+        @Override
+        public Checkpoint newCheckpoint() {
+            return new TestCheckpoint(next.incrementAndGet());
+        }
+
+        @Override
+        public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+        }
+    }
+
+    private static class TestCheckpoint implements Checkpoint {
+        final long id;
+
+        TestCheckpoint(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            } else if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(id, ((TestCheckpoint) o).id);
+        }
+    }
+
+    private final RecordingAllocator allocator = new RecordingAllocator();
+    private OffHeapEntryMemTable memTable;
+
+    @Before
+    public void setup() {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setSkipListArenaChunkSize(CHUNK_SIZE);
+        conf.setSkipListArenaMaxAllocSize(MAX_ALLOC);
+        memTable = new OffHeapEntryMemTable(conf, new TestCheckpointSource(), NullStatsLogger.INSTANCE, allocator);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        memTable.close();
+    }
+
+    private static byte[] data(long ledgerId, long entryId, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (ledgerId * 31 + entryId + i);
+        }
+        return data;
+    }
+
+    private long addEntry(long ledgerId, long entryId) throws Exception {
+        return memTable.addEntry(ledgerId, entryId, ByteBuffer.wrap(data(ledgerId, entryId, 100)), cp -> { });
+    }
+
+    private static void checkEntry(long ledgerId, long entryId, EntryKeyValue kv) {
+        assertNotNull(kv);
+        assertEquals(ledgerId, kv.getLedgerId());
+        assertEquals(entryId, kv.getEntryId());
+        byte[] bytes = new byte[kv.getLength()];
+        System.arraycopy(kv.getBuffer(), kv.getOffset(), bytes, 0, kv.getLength());
+        assertArrayEquals(data(ledgerId, entryId, 100), bytes);
+    }
+
+    private static long[] toArray(PrimitiveIterator.OfLong iterator) {
+        List<Long> list = new ArrayList<>();
+        iterator.forEachRemaining((long l) -> list.add(l));
+        return list.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static byte[] toBytes(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.getBytes(buf.readerIndex(), bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testArenaAddsChunkWhenFull() {
+        OffHeapArena arena = new OffHeapArena(allocator, CHUNK_SIZE, MAX_ALLOC);
+        // each entry takes its length and 100 bytes, 9 of them fit in a chunk
+        List<Long> locations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            locations.add(arena.add(ByteBuffer.wrap(data(1, i, 100))));
+        }
+        assertEquals(2, allocator.buffers.size());
+        assertEquals(0, locations.get(8) >>> 32);
+        assertEquals(1, locations.get(9) >>> 32);
+        assertEquals(0, (int) (long) locations.get(9));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(100, arena.length(locations.get(i)));
+            assertArrayEquals(data(1, i, 100), arena.copy(locations.get(i)));
+            assertArrayEquals(data(1, i, 100), toBytes(arena.slice(locations.get(i))));
+        }
+        arena.release();
+    }
+
+    @Test
+    public void testArenaLargeEntryGetsItsOwnChunk() {
+        OffHeapArena arena = new OffHeapArena(allocator, CHUNK_SIZE, MAX_ALLOC);
+        long small = arena.add(ByteBuffer.wrap(data(1, 0, 100)));
+        long large = arena.add(ByteBuffer.wrap(data(1, 1, 2 * CHUNK_SIZE)));
+        long next = arena.add(ByteBuffer.wrap(data(1, 2, 100)));
+
+        assertEquals(2, allocator.buffers.size());
+        assertEquals(4 + 2 * CHUNK_SIZE, allocator.buffers.get(1).capacity());
+        // the current chunk is not wasted by the large entry
+        assertEquals(small >>> 32, next >>> 32);
+        assertEquals(104, (int) next);
+        assertArrayEquals(data(1, 1, 2 * CHUNK_SIZE), arena.copy(large));
+        assertArrayEquals(data(1, 2, 100), arena.copy(next));
+        arena.release();
+    }
+
+    @Test
+    public void testArenaManyChunks() {
+        OffHeapArena arena = new OffHeapArena(allocator, 128, 128);
+        // a chunk per entry, more chunks than the initial chunk array holds
+        List<Long> locations = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            locations.add(arena.add(ByteBuffer.wrap(data(1, i, 100))));
+        }
+        assertEquals(40, allocator.buffers.size());
+        for (int i = 0; i < 40; i++) {
+            assertArrayEquals(data(1, i, 100), arena.copy(locations.get(i)));
+        }
+        arena.release();
+        assertEquals(40, allocator.released());
+    }
+
+    @Test
+    public void testArenaReuseAfterRelease() {
+        OffHeapArena arena = new OffHeapArena(allocator, CHUNK_SIZE, MAX_ALLOC);
+        for (int i = 0; i < 20; i++) {
+            arena.add(ByteBuffer.wrap(data(1, i, 100)));
+        }
+        assertEquals(3, allocator.buffers.size());
+        arena.release();
+        assertEquals(3, allocator.released());
+
+        // the arena starts over from a new chunk
+        long location = arena.add(ByteBuffer.wrap(data(2, 0, 100)));
+        assertEquals(0, location);
+        assertEquals(4, allocator.buffers.size());
+        assertArrayEquals(data(2, 0, 100), arena.copy(location));
+        arena.release();
+        assertEquals(4, allocator.released());
+    }
+
+    @Test
+    public void testNoSkipListAllocated() {
+        assertSame(EntrySkipList.EMPTY_VALUE, memTable.kvmap);
+        assertSame(EntrySkipList.EMPTY_VALUE, memTable.snapshot);
+        assertNull(memTable.allocator);
+    }
+
+    @Test
+    public void testAddAndGetEntries() throws Exception {
+        assertTrue(memTable.isEmpty());
+        assertEquals(100, addEntry(1, 0));
+        assertEquals(100, addEntry(1, 2));
+        assertEquals(100, addEntry(1, 1));
+        // an entry already present is not added again
+        assertEquals(0, addEntry(1, 1));
+
+        checkEntry(1, 0, memTable.getEntry(1, 0));
+        checkEntry(1, 1, memTable.getEntry(1, 1));
+        checkEntry(1, 2, memTable.getEntry(1, 2));
+        assertNull(memTable.getEntry(1, 3));
+        assertNull(memTable.getEntry(2, 0));
+        assertArrayEquals(new long[] { 0, 1, 2 }, toArray(memTable.getListOfEntriesOfLedger(1)));
+    }
+
+    @Test
+    public void testFindLastEntry() throws Exception {
+        assertNull(memTable.getLastEntry(1));
+        addEntry(1, 5);
+        addEntry(1, 3);
+        addEntry(1, 7);
+        addEntry(1, 6);
+        addEntry(0, 10);
+        addEntry(2, 1);
+        checkEntry(1, 7, memTable.getLastEntry(1));
+        checkEntry(0, 10, memTable.getLastEntry(0));
+        checkEntry(2, 1, memTable.getLastEntry(2));
+        assertNull(memTable.getLastEntry(3));
+
+        // in the snapshot
+        assertNotNull(memTable.snapshot());
+        checkEntry(1, 7, memTable.getLastEntry(1));
+
+        // the entries added since the snapshot come first
+        addEntry(1, 8);
+        checkEntry(1, 8, memTable.getLastEntry(1));
+        checkEntry(2, 1, memTable.getLastEntry(2));
+        assertArrayEquals(new long[] { 3, 5, 6, 7, 8 }, toArray(memTable.getListOfEntriesOfLedger(1)));
+
+        memTable.flush((ledgerId, entryId, entry) -> { });
+        checkEntry(1, 8, memTable.getLastEntry(1));
+        assertNull(memTable.getLastEntry(2));
+    }
+
+    @Test
+    public void testFlushInOrderAndReleaseTheArena() throws Exception {
+        addEntry(2, 1);
+        addEntry(1, 1);
+        addEntry(2, 0);
+        addEntry(3, 0);
+        addEntry(1, 0);
+        int chunks = allocator.buffers.size();
+        assertEquals(0, allocator.released());
+
+        List<String> flushed = new ArrayList<>();
+        long size = memTable.flush((ledgerId, entryId, entry) -> {
+            if (ledgerId == 2) {
+                throw new NoLedgerException(ledgerId);
+            }
+            assertArrayEquals(data(ledgerId, entryId, 100), toBytes(entry));
+            flushed.add(ledgerId + ":" + entryId);
+        }, Checkpoint.MAX);
+
+        // the entries of the deleted ledger are skipped, but their size is released
+        assertEquals(500, size);
+        assertEquals(Arrays.asList("1:0", "1:1", "3:0"), flushed);
+        assertTrue(memTable.isEmpty());
+        assertEquals(chunks, allocator.released());
+
+        // and the memtable is used again
+        addEntry(1, 2);
+        checkEntry(1, 2, memTable.getEntry(1, 2));
+        assertNull(memTable.getEntry(1, 0));
+    }
+}
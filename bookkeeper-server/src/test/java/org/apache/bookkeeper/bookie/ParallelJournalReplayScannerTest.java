@@ -0,0 +1,294 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieImpl.JournalRecordReplayer;
+import org.apache.bookkeeper.bookie.BookieImpl.ParallelJournalReplayScanner;
+import org.apache.bookkeeper.bookie.stats.BookieStats;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the parallel journal replay in {@link BookieImpl}.
+ */
+public class ParallelJournalReplayScannerTest {
+
+    private static final int NUM_LEDGERS = 8;
+    private static final int NUM_ENTRIES = 200;
+
+    private final BookieStats bookieStats = new BookieStats(NullStatsLogger.INSTANCE, 1, 1);
+    private OrderedExecutor replayExecutor;
+    private ExecutorService scanExecutor;
+
+    @Before
+    public void setUp() {
+        replayExecutor = OrderedExecutor.newBuilder().numThreads(4).name("JournalReplayTest").build();
+        scanExecutor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        scanExecutor.shutdownNow();
+        replayExecutor.shutdownNow();
+    }
+
+    private static ByteBuffer record(long ledgerId, long entryId, int size) {
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putLong(ledgerId);
+        record.putLong(entryId);
+        record.rewind();
+        return record;
+    }
+
+    /**
+     * Replayer recording the entry ids replayed for each ledger, and failing if the records of a ledger are
+     * replayed concurrently.
+     */
+    private static class RecordingReplayer implements JournalRecordReplayer {
+        final Map<Long, List<Long>> replayed = new ConcurrentHashMap<>();
+        final Map<Long, AtomicInteger> replaying = new ConcurrentHashMap<>();
+        volatile boolean concurrentReplay = false;
+
+        @Override
+        public void replay(int journalVersion, ByteBuffer recBuff) {
+            long ledgerId = recBuff.getLong();
+            long entryId = recBuff.getLong();
+            AtomicInteger active = replaying.computeIfAbsent(ledgerId, l -> new AtomicInteger());
+            if (active.incrementAndGet() > 1) {
+                concurrentReplay = true;
+            }
+            replayed.computeIfAbsent(ledgerId, l -> Collections.synchronizedList(new ArrayList<>())).add(entryId);
+            Thread.yield();
+            active.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testRecordsOfLedgerReplayedInJournalOrder() throws Exception {
+        RecordingReplayer replayer = new RecordingReplayer();
+        ParallelJournalReplayScanner scanner =
+                new ParallelJournalReplayScanner(replayer, bookieStats, replayExecutor);
+        for (int e = 0; e < NUM_ENTRIES; e++) {
+            for (int l = 0; l < NUM_LEDGERS; l++) {
+                scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(l, e, 64));
+            }
+        }
+        scanner.awaitReplayed();
+
+        assertFalse(replayer.concurrentReplay);
+        assertEquals(NUM_ENTRIES * NUM_LEDGERS, scanner.replayedEntries);
+        assertEquals(NUM_ENTRIES * NUM_LEDGERS * 64L, scanner.replayedBytes);
+        assertEquals(NUM_LEDGERS, replayer.replayed.size());
+        for (List<Long> entries : replayer.replayed.values()) {
+            assertEquals(NUM_ENTRIES, entries.size());
+            for (int e = 0; e < NUM_ENTRIES; e++) {
+                assertEquals(e, (long) entries.get(e));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordsOfLedgerNeverReplayedConcurrentlyAcrossJournals() throws Exception {
+        RecordingReplayer replayer = new RecordingReplayer();
+        List<Future<?>> scans = new ArrayList<>();
+        // each journal holds the entries of every ledger, the even entries in one and the odd entries in the other
+        for (int j = 0; j < 2; j++) {
+            int journal = j;
+            ParallelJournalReplayScanner scanner =
+                    new ParallelJournalReplayScanner(replayer, bookieStats, replayExecutor);
+            scans.add(scanExecutor.submit(() -> {
+                for (int e = journal; e < NUM_ENTRIES; e += 2) {
+                    for (int l = 0; l < NUM_LEDGERS; l++) {
+                        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(l, e, 64));
+                    }
+                }
+                scanner.awaitReplayed();
+                return null;
+            }));
+        }
+        for (Future<?> scan : scans) {
+            scan.get(30, TimeUnit.SECONDS);
+        }
+
+        assertFalse(replayer.concurrentReplay);
+        for (List<Long> entries : replayer.replayed.values()) {
+            assertEquals(NUM_ENTRIES, entries.size());
+            // the records of a journal keep their order, whatever the interleaving of the journals
+            long lastEven = -1;
+            long lastOdd = -1;
+            for (long entryId : entries) {
+                if (entryId % 2 == 0) {
+                    assertTrue(entryId > lastEven);
+                    lastEven = entryId;
+                } else {
+                    assertTrue(entryId > lastOdd);
+                    lastOdd = entryId;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPendingBytesBlockScanning() throws Exception {
+        int recordSize = 40;
+        CountDownLatch replayBlocked = new CountDownLatch(1);
+        AtomicInteger replayedRecords = new AtomicInteger();
+        ParallelJournalReplayScanner scanner = new ParallelJournalReplayScanner((version, recBuff) -> {
+            try {
+                replayBlocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            replayedRecords.incrementAndGet();
+        }, bookieStats, replayExecutor, 2 * recordSize + recordSize / 2);
+
+        // two records fit in the pending bytes
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, recordSize));
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(2, 0, recordSize));
+
+        // the third one waits for a record to be replayed
+        Future<?> scan = scanExecutor.submit(() -> {
+            scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(3, 0, recordSize));
+            return null;
+        });
+        try {
+            scan.get(200, TimeUnit.MILLISECONDS);
+            fail("Should block until a record is replayed");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertEquals(0, replayedRecords.get());
+
+        replayBlocked.countDown();
+        scan.get(10, TimeUnit.SECONDS);
+        scanner.awaitReplayed();
+        assertEquals(3, replayedRecords.get());
+    }
+
+    @Test
+    public void testRecordLargerThanPendingBytes() throws Exception {
+        AtomicInteger replayedRecords = new AtomicInteger();
+        ParallelJournalReplayScanner scanner = new ParallelJournalReplayScanner(
+                (version, recBuff) -> replayedRecords.incrementAndGet(), bookieStats, replayExecutor, 32);
+
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, 1024));
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 1, 1024));
+        scanner.awaitReplayed();
+        assertEquals(2, replayedRecords.get());
+    }
+
+    @Test
+    public void testReplayFailureReportedByAwaitReplayed() throws Exception {
+        IOException failure = new IOException("test failure");
+        AtomicInteger replayedRecords = new AtomicInteger();
+        ParallelJournalReplayScanner scanner = new ParallelJournalReplayScanner((version, recBuff) -> {
+            if (recBuff.getLong(8) == 5) {
+                throw failure;
+            }
+            replayedRecords.incrementAndGet();
+        }, bookieStats, replayExecutor);
+
+        for (int e = 0; e < 10; e++) {
+            scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, e, 64));
+        }
+        try {
+            scanner.awaitReplayed();
+            fail("Should report the replay failure");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+        // the records queued after the failure are dropped
+        assertEquals(5, replayedRecords.get());
+
+        // and the scanner stops at the next record
+        try {
+            scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 10, 64));
+            fail("Should fail the scan after a replay failure");
+        } catch (IOException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    @Test
+    public void testRuntimeExceptionReportedAsIOException() throws Exception {
+        ParallelJournalReplayScanner scanner = new ParallelJournalReplayScanner((version, recBuff) -> {
+            throw new IllegalStateException("test failure");
+        }, bookieStats, replayExecutor);
+
+        scanner.process(JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION, 0, record(1, 0, 64));
+        try {
+            scanner.awaitReplayed();
+            fail("Should report the replay failure");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static ByteBuf explicitLac(long ledgerId, long lac) {
+        ByteBuf buf = Unpooled.buffer(32);
+        buf.writeLong(ledgerId);
+        buf.writeLong(lac);
+        buf.writeLong(0);
+        buf.writeLong(0);
+        return buf;
+    }
+
+    @Test
+    public void testExplicitLacReplayKeepsHighest() {
+        assertFalse(BookieImpl.isStaleExplicitLac(null, explicitLac(1, 5)));
+        assertFalse(BookieImpl.isStaleExplicitLac(explicitLac(1, 5), explicitLac(1, 6)));
+        assertFalse(BookieImpl.isStaleExplicitLac(explicitLac(1, 5), explicitLac(1, 5)));
+        assertTrue(BookieImpl.isStaleExplicitLac(explicitLac(1, 6), explicitLac(1, 5)));
+
+        ByteBuf moved = Unpooled.buffer(40);
+        moved.writeLong(0);
+        moved.writeBytes(explicitLac(1, 7));
+        moved.readLong();
+        // the LAC is read relative to the reader index
+        assertFalse(BookieImpl.isStaleExplicitLac(explicitLac(1, 6), moved));
+    }
+}
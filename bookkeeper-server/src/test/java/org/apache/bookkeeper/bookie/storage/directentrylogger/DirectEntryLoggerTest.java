@@ -0,0 +1,285 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DirectEntryLogger}, on top of a {@link MockNativeIO}.
+ */
+public class DirectEntryLoggerTest {
+    private static final int ENTRY_SIZE = 1000;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final MockNativeIO nativeIO = new MockNativeIO();
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private DirectEntryLogger entryLogger;
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.createNew("directentrylogger", "dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getCanonicalPath() });
+        conf.setDirectIOEntryLoggerWriteBufferSize(2 * Buffer.ALIGNMENT);
+        conf.setDirectIOEntryLoggerReadBufferSize(2 * Buffer.ALIGNMENT);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = newEntryLogger();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private DirectEntryLogger newEntryLogger() throws Exception {
+        return new DirectEntryLogger(conf, ledgerDirsManager, nativeIO, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static void checkEntry(long ledgerId, long entryId, ByteBuf read) {
+        try {
+            assertEquals(entry(ledgerId, entryId), read);
+        } finally {
+            read.release();
+        }
+    }
+
+    private static long logId(long location) {
+        return location >> 32L;
+    }
+
+    @Test
+    public void testEntriesReadableOnceFlushed() throws Exception {
+        long location = entryLogger.addEntry(1, entry(1, 0));
+        // the first log id is 0, as with the DefaultEntryLogger
+        assertEquals(0, logId(location));
+        assertEquals(DirectEntryLogger.LOGFILE_HEADER_SIZE + Integer.BYTES, location & 0xffffffffL);
+
+        // nothing is written out yet
+        try {
+            entryLogger.readEntry(1, 0, location).release();
+            fail("Should not read an entry not written out");
+        } catch (NoEntryException e) {
+            // expected
+        }
+
+        entryLogger.flush();
+        checkEntry(1, 0, entryLogger.readEntry(1, 0, location));
+        checkEntry(1, 0, entryLogger.readEntry(location));
+
+        // the entry written out with the next one is readable as well, from the same read buffer
+        long location2 = entryLogger.addEntry(2, entry(2, 0));
+        entryLogger.flush();
+        checkEntry(2, 0, entryLogger.readEntry(2, 0, location2));
+        checkEntry(1, 0, entryLogger.readEntry(1, 0, location));
+
+        try {
+            entryLogger.readEntry(2, 1, location2).release();
+            fail("Should validate the entry read");
+        } catch (NoEntryException e) {
+            fail("Should not report a missing entry");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRotationFinalizesTheLog() throws Exception {
+        conf.setEntryLogSizeLimit(DirectEntryLogger.LOGFILE_HEADER_SIZE + 3 * (Integer.BYTES + ENTRY_SIZE));
+        entryLogger.close();
+        entryLogger = newEntryLogger();
+
+        List<Long> locations = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            locations.add(entryLogger.addEntry(1 + i % 2, entry(1 + i % 2, i)));
+        }
+        assertEquals(0, logId(locations.get(2)));
+        assertEquals(1, logId(locations.get(3)));
+
+        // only the finalized log is flushed
+        assertEquals(Collections.singletonList(0L), new ArrayList<>(entryLogger.getFlushedLogIds()));
+        for (int i = 0; i < 3; i++) {
+            checkEntry(1 + i % 2, i, entryLogger.readEntry(1 + i % 2, i, locations.get(i)));
+        }
+
+        // the metadata comes from the ledgers map of the finalized log
+        EntryLogMetadata meta = entryLogger.getEntryLogMetadata(0, null);
+        assertEquals(2, meta.getLedgersMap().size());
+        assertEquals(2 * (Integer.BYTES + ENTRY_SIZE), meta.getLedgersMap().get(1));
+        assertEquals(Integer.BYTES + ENTRY_SIZE, meta.getLedgersMap().get(2));
+    }
+
+    @Test
+    public void testScanFlushedLogNotFinalized() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            entryLogger.addEntry(1 + i % 2, entry(1 + i % 2, i));
+        }
+        entryLogger.flush();
+
+        List<Long> scanned = new ArrayList<>();
+        entryLogger.scanEntryLog(0, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 1;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) {
+                assertEquals(ledgerId, entry.getLong(0));
+                scanned.add(entry.getLong(8));
+            }
+        });
+        // the scan stops at the padding after the last entry
+        assertEquals(Arrays.asList(0L, 2L, 4L), scanned);
+
+        // without ledgers map, the metadata comes from a scan of the log
+        EntryLogMetadata meta = entryLogger.getEntryLogMetadata(0, null);
+        assertEquals(3 * (Integer.BYTES + ENTRY_SIZE), meta.getLedgersMap().get(1));
+        assertEquals(2 * (Integer.BYTES + ENTRY_SIZE), meta.getLedgersMap().get(2));
+    }
+
+    @Test
+    public void testLogsReadableByDefaultEntryLogger() throws Exception {
+        List<Long> locations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            locations.add(entryLogger.addEntry(1 + i % 3, entry(1 + i % 3, i)));
+        }
+        entryLogger.close();
+        entryLogger = null;
+        assertEquals(0, nativeIO.openFiles());
+
+        DefaultEntryLogger defaultEntryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+        try {
+            for (int i = 0; i < 20; i++) {
+                checkEntry(1 + i % 3, i, defaultEntryLogger.readEntry(1 + i % 3, i, locations.get(i)));
+            }
+            EntryLogMetadata meta = defaultEntryLogger.getEntryLogMetadata(0, null);
+            assertEquals(3, meta.getLedgersMap().size());
+            assertEquals(7 * (Integer.BYTES + ENTRY_SIZE), meta.getLedgersMap().get(1));
+            assertEquals(6 * (Integer.BYTES + ENTRY_SIZE), meta.getLedgersMap().get(3));
+        } finally {
+            defaultEntryLogger.close();
+        }
+    }
+
+    @Test
+    public void testLogIdsContinueAfterRestart() throws Exception {
+        entryLogger.addEntry(1, entry(1, 0));
+        entryLogger.close();
+
+        entryLogger = newEntryLogger();
+        long location = entryLogger.addEntry(1, entry(1, 1));
+        assertEquals(1, logId(location));
+        assertTrue(entryLogger.logExists(0));
+        assertTrue(entryLogger.logExists(1));
+
+        assertTrue(entryLogger.removeEntryLog(0));
+        assertFalse(entryLogger.logExists(0));
+        assertFalse(entryLogger.removeEntryLog(0));
+    }
+
+    @Test
+    public void testCompactionLog() throws Exception {
+        long location = entryLogger.addEntry(1, entry(1, 0));
+        entryLogger.close();
+        entryLogger = newEntryLogger();
+
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(logId(location));
+        assertEquals(1, compactionLog.getDstLogId());
+        assertEquals(0, compactionLog.getSrcLogId());
+        long compactedLocation = compactionLog.addEntry(1, entry(1, 0));
+        compactionLog.flush();
+        compactionLog.markCompacted();
+
+        // a restart in between recovers the compaction
+        entryLogger.close();
+        entryLogger = newEntryLogger();
+        Collection<CompactionEntryLog> incomplete = entryLogger.incompleteCompactionLogs();
+        assertEquals(1, incomplete.size());
+        CompactionEntryLog recovered = incomplete.iterator().next();
+        assertEquals(1, recovered.getDstLogId());
+        assertEquals(0, recovered.getSrcLogId());
+        recovered.makeAvailable();
+        recovered.finalizeAndCleanup();
+        assertTrue(entryLogger.incompleteCompactionLogs().isEmpty());
+
+        checkEntry(1, 0, entryLogger.readEntry(1, 0, compactedLocation));
+        assertEquals(Integer.BYTES + ENTRY_SIZE, entryLogger.getEntryLogMetadata(1, null).getLedgersMap().get(1));
+    }
+
+    @Test
+    public void testAbortedCompactionLog() throws Exception {
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(0);
+        compactionLog.addEntry(1, entry(1, 0));
+        compactionLog.abort();
+        assertTrue(entryLogger.incompleteCompactionLogs().isEmpty());
+        assertFalse(entryLogger.logExists(compactionLog.getDstLogId()));
+        try {
+            compactionLog.addEntry(1, entry(1, 1));
+            fail("Should not add entries to an aborted compaction log");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link DirectWriter}.
+ */
+public class DirectWriterTest {
+    private static final int BUFFER_SIZE = 2 * Buffer.ALIGNMENT;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final MockNativeIO nativeIO = new MockNativeIO();
+    private final ByteBuf header = Unpooled.buffer(DirectEntryLogger.LOGFILE_HEADER_SIZE);
+    private BufferPool bufferPool;
+    private File file;
+
+    @Before
+    public void setup() throws Exception {
+        bufferPool = new BufferPool(nativeIO, BUFFER_SIZE, 1);
+        file = new File(tmpDirs.createNew("directwriter", "dir"), "1.log");
+        header.writerIndex(DirectEntryLogger.LOGFILE_HEADER_SIZE);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        bufferPool.close();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(size);
+        return entry;
+    }
+
+    @Test
+    public void testFlushWritesOutAndSyncsInOneSubmission() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        try {
+            long pos = writer.addEntry(1, entry(1, 0, 100));
+            assertEquals(DirectEntryLogger.LOGFILE_HEADER_SIZE + Integer.BYTES, pos);
+            assertEquals(0, writer.readablePosition());
+            assertTrue(nativeIO.ops.isEmpty());
+
+            // the partial block is padded and written out along with the sync of the file
+            writer.flush();
+            assertEquals(Arrays.asList("pwrite 0 4096", "fsync"), nativeIO.ops);
+            assertEquals(1, nativeIO.submissions.get());
+            assertEquals(pos + 100, writer.readablePosition());
+
+            // nothing more to flush
+            writer.flush();
+            assertEquals(1, nativeIO.submissions.get());
+
+            // the partial block is rewritten with the next entries
+            nativeIO.ops.clear();
+            writer.addEntry(1, entry(1, 1, 100));
+            writer.flush();
+            assertEquals(Arrays.asList("pwrite 0 4096", "fsync"), nativeIO.ops);
+            assertEquals(2, nativeIO.submissions.get());
+        } finally {
+            writer.close();
+        }
+        assertEquals(0, nativeIO.openFiles());
+    }
+
+    @Test
+    public void testFullBufferWrittenOutWithoutSync() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        try {
+            writer.addEntry(1, entry(1, 0, BUFFER_SIZE));
+            assertEquals(Collections.singletonList("pwrite 0 " + BUFFER_SIZE), nativeIO.ops);
+            assertEquals(BUFFER_SIZE, writer.readablePosition());
+
+            nativeIO.ops.clear();
+            writer.flush();
+            assertEquals(Arrays.asList("pwrite " + BUFFER_SIZE + " 4096", "fsync"), nativeIO.ops);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        try {
+            writer.addEntry(1, entry(1, 0, 100));
+            nativeIO.writeErrno = 28;
+            try {
+                writer.flush();
+                fail("Should fail the flush");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Failed write"));
+            }
+            assertEquals(0, writer.readablePosition());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testShortWrite() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        try {
+            writer.addEntry(1, entry(1, 0, 100));
+            nativeIO.maxWriteBytes = 512;
+            try {
+                writer.flush();
+                fail("Should fail the flush");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Short write"));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testFailedSync() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        try {
+            writer.addEntry(1, entry(1, 0, 100));
+            nativeIO.syncErrno = 5;
+            try {
+                writer.flush();
+                fail("Should fail the flush");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Failed to sync"));
+            }
+            assertEquals(Arrays.asList("pwrite 0 4096", "fsync"), nativeIO.ops);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void testFinalizeAndClose() throws Exception {
+        DirectWriter writer = new DirectWriter(1, file, nativeIO, bufferPool, header);
+        writer.addEntry(1, entry(1, 0, 100));
+        writer.addEntry(2, entry(2, 0, 200));
+        writer.addEntry(1, entry(1, 1, 300));
+        long ledgersMapOffset = writer.position();
+        writer.finalizeAndClose();
+        assertEquals(0, nativeIO.openFiles());
+
+        // the header points to the ledgers map, and the padding is truncated
+        ByteBuf log = Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath()));
+        assertEquals(ledgersMapOffset + DirectEntryLogger.LEDGERS_MAP_HEADER_SIZE
+                + 2 * DirectEntryLogger.LEDGERS_MAP_ENTRY_SIZE, log.readableBytes());
+        assertEquals(ledgersMapOffset, log.getLong(DirectEntryLogger.LEDGERS_MAP_OFFSET_POSITION));
+        assertEquals(2, log.getInt(DirectEntryLogger.LEDGERS_MAP_OFFSET_POSITION + Long.BYTES));
+
+        // the entries follow the header, prefixed by their size
+        int pos = DirectEntryLogger.LOGFILE_HEADER_SIZE;
+        long[][] entries = { { 1, 0, 100 }, { 2, 0, 200 }, { 1, 1, 300 } };
+        for (long[] entry : entries) {
+            assertEquals(entry[2], log.getInt(pos));
+            assertEquals(entry[0], log.getLong(pos + Integer.BYTES));
+            assertEquals(entry[1], log.getLong(pos + Integer.BYTES + Long.BYTES));
+            pos += Integer.BYTES + (int) entry[2];
+        }
+
+        // followed by the ledgers map, with the size of the entries of each ledger
+        assertEquals(ledgersMapOffset, pos);
+        assertEquals(DirectEntryLogger.INVALID_LID, log.getLong(pos + Integer.BYTES));
+        assertEquals(DirectEntryLogger.LEDGERS_MAP_ENTRY_ID, log.getLong(pos + Integer.BYTES + Long.BYTES));
+        assertEquals(2, log.getInt(pos + Integer.BYTES + 2 * Long.BYTES));
+        pos += DirectEntryLogger.LEDGERS_MAP_HEADER_SIZE;
+        long[] sizes = new long[3];
+        for (int i = 0; i < 2; i++) {
+            sizes[(int) log.getLong(pos)] = log.getLong(pos + Long.BYTES);
+            pos += DirectEntryLogger.LEDGERS_MAP_ENTRY_SIZE;
+        }
+        assertEquals(2 * Integer.BYTES + 400, sizes[1]);
+        assertEquals(Integer.BYTES + 200, sizes[2]);
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.bookkeeper.common.util.nativeio.IoRing;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test the I/O rings of native-io: the ring running the operations synchronously, used when io_uring is not
+ * available, and the io_uring backed ring when the native library and the kernel support it.
+ */
+public class IoRingTest {
+    private static final int ENOSPC = 28;
+    private static final int EIO = 5;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final ByteBuf data = Unpooled.directBuffer(4096);
+
+    @After
+    public void cleanup() throws Exception {
+        data.release();
+        tmpDirs.cleanup();
+    }
+
+    private File newFile() throws Exception {
+        return new File(tmpDirs.createNew("ioring", "dir"), "file");
+    }
+
+    private void fillData() {
+        data.clear();
+        for (int i = 0; i < data.capacity(); i++) {
+            data.writeByte(i);
+        }
+    }
+
+    private static Map<Long, Long> complete(IoRing ring, int minComplete) throws NativeIOException {
+        Map<Long, Long> results = new HashMap<>();
+        ring.complete(minComplete, results::put);
+        return results;
+    }
+
+    private void writeAndSyncRoundTrip(NativeIO nativeIO, IoRing ring) throws Exception {
+        File file = newFile();
+        fillData();
+        int fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 00644);
+        try {
+            ring.prepareWrite(fd, data.memoryAddress(), 1024, 0, 1L);
+            ring.prepareWrite(fd, data.memoryAddress() + 1024, 3072, 1024, 2L);
+            ring.prepareFsync(fd, true, 3L);
+            assertEquals(3, ring.submit(3));
+
+            Map<Long, Long> results = complete(ring, 3);
+            assertEquals(3, results.size());
+            assertEquals(1024L, (long) results.get(1L));
+            assertEquals(3072L, (long) results.get(2L));
+            assertEquals(0L, (long) results.get(3L));
+        } finally {
+            nativeIO.close(fd);
+        }
+
+        byte[] expected = new byte[data.capacity()];
+        data.getBytes(0, expected);
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+
+        // and read it back through the ring
+        ByteBuf read = Unpooled.directBuffer(data.capacity());
+        fd = nativeIO.open(file.getPath(), NativeIO.O_RDONLY, 0);
+        try {
+            ring.prepareRead(fd, read.memoryAddress(), 4096, 0, 4L);
+            assertEquals(1, ring.submit(1));
+            assertEquals(4096L, (long) complete(ring, 1).get(4L));
+            byte[] bytes = new byte[data.capacity()];
+            read.getBytes(0, bytes);
+            assertArrayEquals(expected, bytes);
+        } finally {
+            nativeIO.close(fd);
+            read.release();
+        }
+    }
+
+    @Test
+    public void testBlockingRingWriteAndSync() throws Exception {
+        MockNativeIO nativeIO = new MockNativeIO();
+        try (IoRing ring = nativeIO.ioRing(4)) {
+            assertFalse(ring.isAsync());
+            assertEquals(4, ring.capacity());
+            writeAndSyncRoundTrip(nativeIO, ring);
+        }
+        // the operations ran in order, the sync after the writes
+        assertEquals(Arrays.asList("pwrite 0 1024", "pwrite 1024 3072", "fsync"), nativeIO.ops);
+    }
+
+    @Test
+    public void testBlockingRingFailedOperationsCompleteWithErrno() throws Exception {
+        MockNativeIO nativeIO = new MockNativeIO();
+        fillData();
+        int fd = nativeIO.open(newFile().getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 00644);
+        try (IoRing ring = nativeIO.ioRing(2)) {
+            nativeIO.writeErrno = ENOSPC;
+            // a failure without errno completes with EIO
+            nativeIO.syncErrno = -1;
+            ring.prepareWrite(fd, data.memoryAddress(), 1024, 0, 1L);
+            ring.prepareFsync(fd, true, 2L);
+            assertEquals(2, ring.submit(2));
+
+            Map<Long, Long> results = complete(ring, 2);
+            assertEquals(-ENOSPC, (long) results.get(1L));
+            assertEquals(-EIO, (long) results.get(2L));
+        } finally {
+            nativeIO.close(fd);
+        }
+    }
+
+    @Test
+    public void testBlockingRingCapacity() throws Exception {
+        MockNativeIO nativeIO = new MockNativeIO();
+        fillData();
+        int fd = nativeIO.open(newFile().getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY, 00644);
+        try (IoRing ring = nativeIO.ioRing(2)) {
+            ring.prepareWrite(fd, data.memoryAddress(), 512, 0, 1L);
+            ring.prepareWrite(fd, data.memoryAddress(), 512, 512, 2L);
+            try {
+                ring.prepareFsync(fd, true, 3L);
+                fail("Should not prepare more operations than the ring capacity");
+            } catch (NativeIOException e) {
+                // expected
+            }
+
+            // the ring is empty again once submitted
+            assertEquals(2, ring.submit(2));
+            ring.prepareFsync(fd, true, 3L);
+            assertEquals(1, ring.submit(1));
+            assertEquals(3, complete(ring, 3).size());
+
+            // nothing left to submit or complete
+            assertEquals(0, ring.submit(0));
+            assertEquals(0, complete(ring, 0).size());
+        } finally {
+            nativeIO.close(fd);
+        }
+    }
+
+    @Test
+    public void testNativeRingWriteAndSync() throws Exception {
+        NativeIO nativeIO = new NativeIOImpl();
+        IoRing ring = null;
+        try {
+            ring = nativeIO.ioRing(4);
+        } catch (Throwable t) {
+            assumeNoException("Native library not available", t);
+        }
+        try {
+            // not on io_uring, the ring falls back to run the operations synchronously
+            assumeTrue("io_uring not available", ring.isAsync());
+            writeAndSyncRoundTrip(nativeIO, ring);
+        } finally {
+            ring.close();
+        }
+    }
+}
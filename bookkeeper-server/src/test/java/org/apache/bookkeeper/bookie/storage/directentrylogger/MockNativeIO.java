@@ -0,0 +1,246 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.util.internal.PlatformDependent;
+// CHECKSTYLE.ON: IllegalImport
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.common.util.nativeio.IoRing;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * NativeIO doing the I/O through FileChannel, so that the direct I/O code runs without the native library, and
+ * recording the writes and syncs of the files. Its rings execute the operations synchronously.
+ */
+class MockNativeIO implements NativeIO {
+    static final int ENOENT = 2;
+    static final int EBADF = 9;
+
+    private final Map<Integer, FileChannel> files = new ConcurrentHashMap<>();
+    private final AtomicInteger nextFd = new AtomicInteger(100);
+
+    // The writes and the syncs done, in order
+    final List<String> ops = Collections.synchronizedList(new ArrayList<>());
+    // Number of submissions to the rings
+    final AtomicInteger submissions = new AtomicInteger();
+
+    // Errno the next writes and syncs fail with, if not 0, negative to fail without errno
+    volatile int writeErrno = 0;
+    volatile int syncErrno = 0;
+    // Number of bytes the next writes write at most, if not negative
+    volatile int maxWriteBytes = -1;
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        Set<StandardOpenOption> options = EnumSet.noneOf(StandardOpenOption.class);
+        if ((flags & O_WRONLY) != 0) {
+            options.add(StandardOpenOption.WRITE);
+        } else {
+            options.add(StandardOpenOption.READ);
+        }
+        if ((flags & O_CREAT) != 0) {
+            options.add(StandardOpenOption.CREATE);
+        }
+        if ((flags & O_TRUNC) != 0) {
+            options.add(StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        try {
+            int fd = nextFd.getAndIncrement();
+            files.put(fd, FileChannel.open(Paths.get(pathname), options));
+            return fd;
+        } catch (NoSuchFileException e) {
+            throw new NativeIOException("No such file " + pathname, ENOENT);
+        } catch (IOException e) {
+            throw new NativeIOException("Failed to open " + pathname + ": " + e.getMessage());
+        }
+    }
+
+    private FileChannel file(int fd) throws NativeIOException {
+        FileChannel file = files.get(fd);
+        if (file == null) {
+            throw new NativeIOException("Bad file descriptor " + fd, EBADF);
+        }
+        return file;
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        FileChannel file = file(fd);
+        ops.add("fsync");
+        if (syncErrno != 0) {
+            throw syncErrno > 0 ? new NativeIOException("Injected sync failure", syncErrno)
+                    : new NativeIOException("Injected sync failure");
+        }
+        try {
+            file.force(false);
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return 0;
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) {
+        return 0;
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        FileChannel file = file(fd);
+        ops.add("pwrite " + offset + " " + count);
+        if (writeErrno != 0) {
+            throw writeErrno > 0 ? new NativeIOException("Injected write failure", writeErrno)
+                    : new NativeIOException("Injected write failure");
+        }
+        int length = maxWriteBytes >= 0 ? Math.min(maxWriteBytes, count) : count;
+        byte[] bytes = new byte[length];
+        PlatformDependent.copyMemory(pointer, bytes, 0, length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                file.write(buffer, offset + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return length;
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) {
+        return PlatformDependent.allocateMemory(size);
+    }
+
+    @Override
+    public void free(long pointer) {
+        PlatformDependent.freeMemory(pointer);
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        try {
+            return whence == SEEK_END ? file(fd).size() + offset : offset;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        try {
+            FileChannel file = file(fd);
+            while (buffer.hasRemaining() && file.read(buffer, offset + buffer.position()) > 0) {
+                // read up to the end of the file
+            }
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        PlatformDependent.copyMemory(buffer.array(), 0, pointer, buffer.position());
+        return buffer.position();
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        FileChannel file = files.remove(fd);
+        if (file == null) {
+            throw new NativeIOException("Bad file descriptor " + fd, EBADF);
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * @return the number of files open
+     */
+    int openFiles() {
+        return files.size();
+    }
+
+    @Override
+    public IoRing ioRing(int capacity) throws NativeIOException {
+        IoRing ring = NativeIO.super.ioRing(capacity);
+        return new IoRing() {
+            @Override
+            public boolean isAsync() {
+                return ring.isAsync();
+            }
+
+            @Override
+            public int capacity() {
+                return ring.capacity();
+            }
+
+            @Override
+            public void prepareWrite(int fd, long pointer, int count, long offset, long userData)
+                    throws NativeIOException {
+                ring.prepareWrite(fd, pointer, count, offset, userData);
+            }
+
+            @Override
+            public void prepareRead(int fd, long pointer, int count, long offset, long userData)
+                    throws NativeIOException {
+                ring.prepareRead(fd, pointer, count, offset, userData);
+            }
+
+            @Override
+            public void prepareFsync(int fd, boolean dataOnly, long userData) throws NativeIOException {
+                ring.prepareFsync(fd, dataOnly, userData);
+            }
+
+            @Override
+            public int submit(int minComplete) throws NativeIOException {
+                submissions.incrementAndGet();
+                return ring.submit(minComplete);
+            }
+
+            @Override
+            public int complete(int minComplete, CompletionHandler handler) throws NativeIOException {
+                return ring.complete(minComplete, handler);
+            }
+
+            @Override
+            public void close() throws NativeIOException {
+                ring.close();
+            }
+        };
+    }
+}
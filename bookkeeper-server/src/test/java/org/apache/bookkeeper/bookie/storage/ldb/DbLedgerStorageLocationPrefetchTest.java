@@ -0,0 +1,168 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.util.Collections;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the prefetch of the entry locations of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class DbLedgerStorageLocationPrefetchTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int LOCATION_PREFETCH_SIZE = 10;
+    private static final int NUM_ENTRIES = 50;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private DbLedgerStorage storage;
+    private SingleDirectoryDbLedgerStorage singleDirStorage;
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.createNew("bkTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getCanonicalPath() });
+        conf.setProperty(DbLedgerStorage.LOCATION_PREFETCH_SIZE, LOCATION_PREFETCH_SIZE);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, LOCATION_PREFETCH_SIZE);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setCheckpointer(Checkpointer.NULL);
+        storage.setMasterKey(1, "key".getBytes());
+        storage.setMasterKey(2, "key".getBytes());
+        singleDirStorage = storage.getLedgerStorageList().get(0);
+
+        // Interleave the entries of 2 ledgers in the entry log, so that the read-ahead of the entry log stops at
+        // each entry and the next entries are read from their prefetched locations. The write cache is flushed
+        // sorted by ledger, it is flushed after each pair of entries.
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            storage.addEntry(entry(1, entryId));
+            storage.addEntry(entry(2, entryId));
+            storage.flush();
+        }
+    }
+
+    @After
+    public void teardown() throws Exception {
+        storage.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private void checkEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(1, entryId);
+        assertEquals(1, entry.getLong(0));
+        assertEquals(entryId, entry.getLong(8));
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        entry.release();
+    }
+
+    private long indexLocation(long entryId) throws Exception {
+        return singleDirStorage.getEntryLocationIndex().getLocation(1, entryId);
+    }
+
+    @Test
+    public void sequentialReadsPrefetchTheLocations() throws Exception {
+        checkEntry(0);
+        TransientLedgerInfo ledgerInfo = singleDirStorage.getLedgerInfo(1);
+        // The first read of the ledger is not known to be sequential yet
+        assertEquals(0, ledgerInfo.getLocationFromWindow(1));
+        assertFalse(singleDirStorage.getReadCache().hasEntry(1, 1));
+
+        checkEntry(1);
+        for (long entryId = 1; entryId < 1 + LOCATION_PREFETCH_SIZE; entryId++) {
+            assertEquals(indexLocation(entryId), ledgerInfo.getLocationFromWindow(entryId));
+        }
+        assertEquals(0, ledgerInfo.getLocationFromWindow(1 + LOCATION_PREFETCH_SIZE));
+
+        // The read-ahead continued past the entries of the other ledger with the prefetched locations
+        for (long entryId = 2; entryId < 1 + LOCATION_PREFETCH_SIZE; entryId++) {
+            assertTrue(singleDirStorage.getReadCache().hasEntry(1, entryId));
+            checkEntry(entryId);
+        }
+        assertFalse(singleDirStorage.getReadCache().hasEntry(1, 1 + LOCATION_PREFETCH_SIZE));
+    }
+
+    @Test
+    public void updateEntriesLocationsInvalidatesTheWindow() throws Exception {
+        checkEntry(0);
+        checkEntry(1);
+        TransientLedgerInfo ledgerInfo = singleDirStorage.getLedgerInfo(1);
+        assertNotEquals(0, ledgerInfo.getLocationFromWindow(5));
+
+        // Move an entry of the next window, like the compaction does
+        long movedEntryId = 1 + LOCATION_PREFETCH_SIZE + 4;
+        EntryLogger entryLogger = singleDirStorage.getEntryLogger();
+        long newLocation = entryLogger.addEntry(1, entry(1, movedEntryId));
+        entryLogger.flush();
+        assertNotEquals(indexLocation(movedEntryId), newLocation);
+        singleDirStorage.updateEntriesLocations(
+                Collections.singletonList(new EntryLocation(1, movedEntryId, newLocation)));
+
+        for (long entryId = 1; entryId < 1 + LOCATION_PREFETCH_SIZE; entryId++) {
+            assertEquals(0, ledgerInfo.getLocationFromWindow(entryId));
+        }
+
+        // The next window is prefetched with the new location
+        checkEntry(1 + LOCATION_PREFETCH_SIZE);
+        assertEquals(newLocation, ledgerInfo.getLocationFromWindow(movedEntryId));
+        checkEntry(movedEntryId);
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the background read-ahead of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class DbLedgerStorageReadAheadTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int READ_AHEAD_BATCH_SIZE = 10;
+    private static final int NUM_ENTRIES = 100;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final CountDownLatch readAheadLatch = new CountDownLatch(1);
+    private final Semaphore readAheadStarted = new Semaphore(0);
+    private final Semaphore readAheadCompleted = new Semaphore(0);
+    private final AtomicInteger readAheadCount = new AtomicInteger();
+    private DbLedgerStorage storage;
+    private boolean shutdown = false;
+
+    /**
+     * Db ledger storage whose background read-aheads wait for the test to release them.
+     */
+    private class MockedDbLedgerStorage extends DbLedgerStorage {
+
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize,
+                long readCacheSize, int readAheadCacheBatchSize) throws IOException {
+            return new MockedSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                    indexDirsManager, statsLogger, UnpooledByteBufAllocator.DEFAULT, gcExecutor, writeCacheSize,
+                    readCacheSize, readAheadCacheBatchSize);
+        }
+
+        private class MockedSingleDirectoryDbLedgerStorage extends SingleDirectoryDbLedgerStorage {
+            MockedSingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+                    LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                    StatsLogger statsLogger, ByteBufAllocator allocator, ScheduledExecutorService gcExecutor,
+                    long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize) throws IOException {
+                super(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator,
+                        gcExecutor, writeCacheSize, readCacheSize, readAheadCacheBatchSize);
+            }
+
+            @Override
+            void fillReadAheadCache(TransientLedgerInfo ledgerInfo, long orginalLedgerId, long firstEntryId,
+                                    long firstEntryLocation, int maxEntries, long readAheadSize) {
+                readAheadCount.incrementAndGet();
+                readAheadStarted.release();
+                try {
+                    readAheadLatch.await();
+                    super.fillReadAheadCache(ledgerInfo, orginalLedgerId, firstEntryId, firstEntryLocation,
+                            maxEntries, readAheadSize);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    readAheadCompleted.release();
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.createNew("bkTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getCanonicalPath() });
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_THREADS, 1);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, READ_AHEAD_BATCH_SIZE);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new MockedDbLedgerStorage();
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                statsProvider.getStatsLogger(""), UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setCheckpointer(Checkpointer.NULL);
+        storage.setMasterKey(1, "key".getBytes());
+
+        // Write the entries in the entry log, so that they are read from it
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            storage.addEntry(entry(1, entryId));
+        }
+        storage.flush();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        readAheadLatch.countDown();
+        if (!shutdown) {
+            storage.shutdown();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private ReadCache readCache() {
+        return storage.getLedgerStorageList().get(0).getReadCache();
+    }
+
+    private void checkEntry(long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(1, entryId);
+        assertEquals(1, entry.getLong(0));
+        assertEquals(entryId, entry.getLong(8));
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        entry.release();
+    }
+
+    private void awaitReadAhead(Semaphore semaphore) throws Exception {
+        assertTrue(semaphore.tryAcquire(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void readMissDoesNotAddLedgerInfo() throws Exception {
+        SingleDirectoryDbLedgerStorage singleDirStorage = storage.getLedgerStorageList().get(0);
+        assertNull(singleDirStorage.getLedgerInfo(1));
+
+        try {
+            storage.getEntry(1, NUM_ENTRIES);
+            fail("Should not find the entry");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+        assertNull(singleDirStorage.getLedgerInfo(1));
+
+        // the ledger info tracks the reads once an entry is read
+        checkEntry(0);
+        assertNotNull(singleDirStorage.getLedgerInfo(1));
+    }
+
+    @Test
+    public void missReturnsBeforeTheReadAhead() throws Exception {
+        // The missed entry is returned while the read-ahead is still blocked
+        checkEntry(0);
+        awaitReadAhead(readAheadStarted);
+        assertFalse(readCache().hasEntry(1, 1));
+
+        readAheadLatch.countDown();
+        awaitReadAhead(readAheadCompleted);
+        for (long entryId = 1; entryId <= READ_AHEAD_BATCH_SIZE; entryId++) {
+            assertTrue(readCache().hasEntry(1, entryId));
+        }
+        assertFalse(readCache().hasEntry(1, READ_AHEAD_BATCH_SIZE + 1));
+    }
+
+    @Test
+    public void missesOnEntriesBeingReadAheadDoNotReadAheadAgain() throws Exception {
+        checkEntry(0);
+        awaitReadAhead(readAheadStarted);
+
+        // The following entries are read on the read thread meanwhile, without another read-ahead
+        checkEntry(1);
+        checkEntry(2);
+        assertEquals(1, readAheadCount.get());
+
+        readAheadLatch.countDown();
+        awaitReadAhead(readAheadCompleted);
+        for (long entryId = 1; entryId <= READ_AHEAD_BATCH_SIZE; entryId++) {
+            checkEntry(entryId);
+        }
+        assertEquals(1, readAheadCount.get());
+
+        // The next miss follows the read-ahead, the window doubles and the entries are read ahead in order
+        checkEntry(READ_AHEAD_BATCH_SIZE + 1);
+        awaitReadAhead(readAheadCompleted);
+        assertEquals(2, readAheadCount.get());
+        for (long entryId = READ_AHEAD_BATCH_SIZE + 2; entryId <= 3 * READ_AHEAD_BATCH_SIZE + 1; entryId++) {
+            assertTrue(readCache().hasEntry(1, entryId));
+        }
+        assertFalse(readCache().hasEntry(1, 3 * READ_AHEAD_BATCH_SIZE + 2));
+    }
+
+    @Test
+    public void deleteLedgerCancelsTheReadAhead() throws Exception {
+        checkEntry(0);
+        awaitReadAhead(readAheadStarted);
+
+        storage.deleteLedger(1);
+        readAheadLatch.countDown();
+        awaitReadAhead(readAheadCompleted);
+
+        for (long entryId = 1; entryId <= READ_AHEAD_BATCH_SIZE; entryId++) {
+            assertFalse(readCache().hasEntry(1, entryId));
+        }
+    }
+
+    @Test
+    public void shutdownWhileReadAheadInFlight() throws Exception {
+        checkEntry(0);
+        awaitReadAhead(readAheadStarted);
+
+        // The shutdown does not wait more than a second for the blocked read-ahead
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread shutdownThread = new Thread(() -> {
+            try {
+                storage.shutdown();
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        shutdownThread.start();
+        shutdownThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(shutdownThread.isAlive());
+        assertEquals(null, error.get());
+        shutdown = true;
+
+        // Once released, the read-ahead stops without reading from the closed entry log and read cache
+        readAheadLatch.countDown();
+        awaitReadAhead(readAheadCompleted);
+        AtomicReference<TestOpStatsLogger> batchCount = new AtomicReference<>();
+        statsProvider.forEachOpStatLogger((name, stats) -> {
+            if (name.endsWith("readahead-batch-count")) {
+                batchCount.set(stats);
+            }
+        });
+        assertEquals(1, batchCount.get().getSuccessCount());
+        assertEquals(0, batchCount.get().getSuccessAverage(), 0);
+    }
+}
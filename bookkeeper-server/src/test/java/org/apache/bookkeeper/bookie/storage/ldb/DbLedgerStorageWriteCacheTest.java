@@ -0,0 +1,232 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the rotation of the write caches of {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class DbLedgerStorageWriteCacheTest {
+
+    private static final int ENTRY_SIZE = 10 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final CountDownLatch flushLatch = new CountDownLatch(1);
+    private DbLedgerStorage storage;
+
+    /**
+     * Db ledger storage whose background flushes wait for the test to release them.
+     */
+    private class MockedDbLedgerStorage extends DbLedgerStorage {
+
+        @Override
+        protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
+                LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                StatsLogger statsLogger, ScheduledExecutorService gcExecutor, long writeCacheSize,
+                long readCacheSize, int readAheadCacheBatchSize) throws IOException {
+            return new MockedSingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager,
+                    indexDirsManager, statsLogger, UnpooledByteBufAllocator.DEFAULT, gcExecutor, writeCacheSize,
+                    readCacheSize, readAheadCacheBatchSize);
+        }
+
+        private class MockedSingleDirectoryDbLedgerStorage extends SingleDirectoryDbLedgerStorage {
+            MockedSingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+                    LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
+                    StatsLogger statsLogger, ByteBufAllocator allocator, ScheduledExecutorService gcExecutor,
+                    long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize) throws IOException {
+                super(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator,
+                        gcExecutor, writeCacheSize, readCacheSize, readAheadCacheBatchSize);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    flushLatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                super.flush();
+            }
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.createNew("bkTest", ".dir");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getCanonicalPath() });
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 1);
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_COUNT, 3);
+        conf.setProperty(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS, 1000);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        storage = new MockedDbLedgerStorage();
+        storage.initialize(conf, mock(LedgerManager.class), ledgerDirsManager, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setCheckpointer(Checkpointer.NULL);
+        storage.setMasterKey(1, "key".getBytes());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        flushLatch.countDown();
+        storage.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1);
+        entry.writerIndex(ENTRY_SIZE);
+        return entry;
+    }
+
+    private void checkEntries(long numEntries) throws Exception {
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            ByteBuf entry = storage.getEntry(1, entryId);
+            assertEquals(1, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            entry.release();
+        }
+    }
+
+    @Test
+    public void rejectWritesWhenAllWriteCachesAreFull() throws Exception {
+        long entriesPerCache = 1024 * 1024 / 3 / ENTRY_SIZE;
+
+        // The background flush is blocked, the full write caches are rotated until there is no free write cache
+        long entryId = 0;
+        try {
+            while (true) {
+                storage.addEntry(entry(1, entryId));
+                entryId++;
+            }
+        } catch (OperationRejectedException e) {
+            // Expected
+        }
+        assertTrue(entryId > 2 * entriesPerCache);
+        assertTrue(entryId <= 3 * entriesPerCache);
+
+        // All the entries are still readable from the write caches waiting to be flushed
+        checkEntries(entryId);
+        assertTrue(storage.getLedgerStorageList().get(0).isFlushRequired());
+
+        // Once the flush completes, the write caches are free again
+        flushLatch.countDown();
+        for (int i = 0; i < entriesPerCache; i++) {
+            storage.addEntry(entry(1, entryId));
+            entryId++;
+        }
+        checkEntries(entryId);
+    }
+
+    @Test
+    public void checkpointFlushesAllFullWriteCaches() throws Exception {
+        long entriesPerCache = 1024 * 1024 / 3 / ENTRY_SIZE;
+        long numEntries = 5 * entriesPerCache / 2;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            storage.addEntry(entry(1, entryId));
+        }
+
+        SingleDirectoryDbLedgerStorage singleDirStorage = storage.getLedgerStorageList().get(0);
+        assertTrue(singleDirStorage.isFlushRequired());
+
+        // The background flush is still blocked, the checkpoint flushes the full write caches and the current one
+        singleDirStorage.checkpoint(CheckpointSource.DEFAULT.newCheckpoint());
+        assertFalse(singleDirStorage.isFlushRequired());
+
+        // The entries are read back from the entry logs
+        checkEntries(numEntries);
+
+        // All the write caches were released
+        for (long entryId = numEntries; entryId < numEntries + 3 * entriesPerCache - 1; entryId++) {
+            try {
+                storage.addEntry(entry(1, entryId));
+            } catch (OperationRejectedException e) {
+                fail("Write cache " + entryId / entriesPerCache + " was not released by the checkpoint");
+            }
+        }
+    }
+
+    @Test
+    public void deleteLedgerFromAllWriteCaches() throws Exception {
+        storage.setMasterKey(2, "key".getBytes());
+        long entriesPerCache = 1024 * 1024 / 3 / ENTRY_SIZE;
+        // The entries of both ledgers are spread over the two full write caches and the current one
+        long numEntries = 5 * entriesPerCache / 4;
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            storage.addEntry(entry(1, entryId));
+            storage.addEntry(entry(2, entryId));
+        }
+
+        storage.deleteLedger(1);
+        SingleDirectoryDbLedgerStorage singleDirStorage = storage.getLedgerStorageList().get(0);
+        singleDirStorage.checkpoint(CheckpointSource.DEFAULT.newCheckpoint());
+
+        // None of the entries of the deleted ledger were flushed to the entry logs and the index
+        EntryLocationIndex entryLocationIndex = singleDirStorage.getEntryLocationIndex();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            assertEquals("Entry " + entryId + " of the deleted ledger was flushed",
+                    0L, entryLocationIndex.getLocation(1, entryId));
+            ByteBuf entry = storage.getEntry(2, entryId);
+            assertEquals(2, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+            entry.release();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Unit test of the range lookups of {@link EntryLocationIndex}, with each storage of the index.
+ */
+@RunWith(Parameterized.class)
+public class EntryLocationIndexTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private String basePath;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][] { { "rocksdb" }, { "btree" } });
+    }
+
+    public EntryLocationIndexTest(String storage) {
+        conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, storage);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        basePath = tmpDirs.createNew("bkTest", ".dir").getAbsolutePath();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    private EntryLocationIndex open() throws Exception {
+        return new EntryLocationIndex(conf, EntryLocationIndex.getStorageFactory(conf), basePath,
+                NullStatsLogger.INSTANCE);
+    }
+
+    private static byte[] key(long k1, long k2) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, k1);
+        ArrayUtil.setLong(key, 8, k2);
+        return key;
+    }
+
+    private static byte[] value(long v) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, v);
+        return value;
+    }
+
+    private static List<Long> scan(KeyValueStorage db, byte[] firstKey, byte[] lastKey) throws Exception {
+        List<Long> values = new ArrayList<>();
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = db.iterator(firstKey, lastKey)) {
+            while (iterator.hasNext()) {
+                values.add(ArrayUtil.getLong(iterator.next().getValue(), 0));
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void iteratorBounds() throws Exception {
+        KeyValueStorage db = EntryLocationIndex.getStorageFactory(conf).newKeyValueStorage(basePath, "test",
+                DbConfigType.Default, conf);
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                db.put(key(ledgerId, entryId), value(ledgerId * 100 + entryId));
+            }
+        }
+
+        // The first key is included and the last key is not
+        assertEquals(Arrays.asList(202L, 203L, 204L), scan(db, key(2, 2), key(2, 5)));
+        // The range spans the keys of the other ledgers
+        assertEquals(Arrays.asList(108L, 109L, 200L, 201L), scan(db, key(1, 8), key(2, 2)));
+        // The bounds need not be keys of the storage
+        assertEquals(Arrays.asList(300L, 301L), scan(db, key(2, 10), key(3, 2)));
+        assertEquals(Arrays.asList(308L, 309L), scan(db, key(3, 8), key(4, 0)));
+        // Empty ranges
+        assertEquals(Arrays.asList(), scan(db, key(2, 2), key(2, 2)));
+        assertEquals(Arrays.asList(), scan(db, key(0, 0), key(1, 0)));
+        assertEquals(Arrays.asList(), scan(db, key(4, 0), key(5, 0)));
+        db.close();
+    }
+
+    @Test
+    public void getLocations() throws Exception {
+        EntryLocationIndex index = open();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            index.addLocation(1, entryId, 100 + entryId);
+            index.addLocation(2, entryId, 200 + entryId);
+        }
+        // Entry 5 of ledger 3 is missing
+        for (long entryId = 0; entryId < 10; entryId++) {
+            if (entryId != 5) {
+                index.addLocation(3, entryId, 300 + entryId);
+            }
+        }
+
+        // The number of entries looked up is the length of the array
+        long[] locations = new long[4];
+        assertEquals(4, index.getLocations(1, 3, locations));
+        assertEquals(Arrays.asList(103L, 104L, 105L, 106L), toList(locations, 4));
+
+        // The lookup stops at the last entry of the ledger, without reading the next ledger
+        locations = new long[8];
+        assertEquals(3, index.getLocations(1, 7, locations));
+        assertEquals(Arrays.asList(107L, 108L, 109L), toList(locations, 3));
+        assertEquals(0, locations[3]);
+
+        // The lookup stops at the first missing entry
+        assertEquals(2, index.getLocations(3, 3, locations));
+        assertEquals(Arrays.asList(303L, 304L), toList(locations, 2));
+
+        // Nothing is found when the first entry is missing
+        assertEquals(0, index.getLocations(3, 5, new long[4]));
+        assertEquals(0, index.getLocations(2, 10, new long[4]));
+        assertEquals(0, index.getLocations(4, 0, new long[4]));
+        index.close();
+    }
+
+    @Test
+    public void getLocationsAfterUpdate() throws Exception {
+        EntryLocationIndex index = open();
+        for (long entryId = 0; entryId < 10; entryId++) {
+            index.addLocation(1, entryId, 100 + entryId);
+        }
+        index.updateLocations(Arrays.asList(new EntryLocation(1, 4, 1004)));
+
+        long[] locations = new long[3];
+        assertEquals(3, index.getLocations(1, 3, locations));
+        assertEquals(Arrays.asList(103L, 1004L, 105L), toList(locations, 3));
+        assertEquals(10, index.getLocations(1, 0, new long[10]));
+        index.close();
+    }
+
+    private static List<Long> toList(long[] array, int size) {
+        List<Long> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(array[i]);
+        }
+        return list;
+    }
+}
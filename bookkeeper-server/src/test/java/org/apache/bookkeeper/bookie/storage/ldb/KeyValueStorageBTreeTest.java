@@ -0,0 +1,321 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the commits of {@link KeyValueStorageBTree}.
+ */
+public class KeyValueStorageBTreeTest {
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private String basePath;
+
+    /**
+     * B+tree whose commits can be failed or paused while the modified pages are made durable.
+     */
+    private class TestBTree extends KeyValueStorageBTree {
+        // Number of successful forces before the next one fails, -1 to never fail
+        volatile int failAfterForces = -1;
+        volatile CountDownLatch forceStarted;
+        volatile CountDownLatch forceReleased;
+
+        TestBTree() throws IOException {
+            super(basePath, "test", DbConfigType.Default, conf);
+        }
+
+        @Override
+        void force() throws IOException {
+            if (failAfterForces == 0) {
+                failAfterForces = -1;
+                throw new IOException("Injected failure");
+            } else if (failAfterForces > 0) {
+                failAfterForces--;
+            }
+
+            CountDownLatch released = forceReleased;
+            if (released != null) {
+                forceReleased = null;
+                forceStarted.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            super.force();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        basePath = tmpDirs.createNew("bkTest", ".dir").getAbsolutePath();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    private KeyValueStorageBTree open() throws IOException {
+        return new KeyValueStorageBTree(basePath, "test", DbConfigType.Default, conf);
+    }
+
+    private static byte[] key(long k1, long k2) {
+        byte[] key = new byte[KeyValueStorageBTree.KEY_SIZE];
+        ArrayUtil.setLong(key, 0, k1);
+        ArrayUtil.setLong(key, 8, k2);
+        return key;
+    }
+
+    private static byte[] value(long v) {
+        byte[] value = new byte[KeyValueStorageBTree.VALUE_SIZE];
+        ArrayUtil.setLong(value, 0, v);
+        return value;
+    }
+
+    private static void put(KeyValueStorage db, long first, long last, long offset) throws IOException {
+        for (long i = first; i < last; i++) {
+            db.put(key(1, i), value(i + offset));
+        }
+    }
+
+    private static void check(KeyValueStorage db, long first, long last, long offset) throws IOException {
+        for (long i = first; i < last; i++) {
+            byte[] value = db.get(key(1, i));
+            assertTrue("Missing key " + i, value != null);
+            assertEquals(i + offset, ArrayUtil.getLong(value, 0));
+        }
+    }
+
+    private static void checkMissing(KeyValueStorage db, long first, long last) throws IOException {
+        for (long i = first; i < last; i++) {
+            assertNull(db.get(key(1, i)));
+        }
+    }
+
+    @Test
+    public void recoverLastCommitAfterCrash() throws Exception {
+        KeyValueStorageBTree db = open();
+        put(db, 0, 10000, 0);
+        db.sync();
+
+        // Modify the committed pages without committing them before the crash
+        put(db, 0, 5000, 1);
+        for (long i = 5000; i < 6000; i++) {
+            db.delete(key(1, i));
+        }
+        put(db, 10000, 15000, 0);
+
+        KeyValueStorageBTree recovered = open();
+        assertEquals(10000, recovered.count());
+        check(recovered, 0, 10000, 0);
+        checkMissing(recovered, 10000, 15000);
+        recovered.close();
+
+        // The modifications are committed when the storage is closed
+        db.close();
+        db = open();
+        assertEquals(14000, db.count());
+        check(db, 0, 5000, 1);
+        checkMissing(db, 5000, 6000);
+        check(db, 6000, 15000, 0);
+        db.close();
+    }
+
+    @Test
+    public void recoverPreviousCommitWithCorruptedMeta() throws Exception {
+        KeyValueStorageBTree db = open();
+        put(db, 0, 1000, 0);
+        db.sync();
+        put(db, 0, 2000, 1);
+        db.sync();
+        db.close();
+
+        // Corrupt the root of the second commit, whose meta page is the first one
+        try (RandomAccessFile file = new RandomAccessFile(new File(basePath + "/test",
+                KeyValueStorageBTree.FILE_NAME), "rw")) {
+            file.seek(24);
+            file.writeLong(Long.MAX_VALUE);
+        }
+
+        db = open();
+        assertEquals(1000, db.count());
+        check(db, 0, 1000, 0);
+        checkMissing(db, 1000, 2000);
+
+        // New commits are made on top of the recovered tree
+        put(db, 1000, 3000, 0);
+        db.close();
+        db = open();
+        assertEquals(3000, db.count());
+        check(db, 0, 3000, 0);
+        db.close();
+    }
+
+    @Test
+    public void retryFailedCommit() throws Exception {
+        TestBTree db = new TestBTree();
+        put(db, 0, 1000, 0);
+        db.sync();
+
+        for (int failAfterForces = 0; failAfterForces < 2; failAfterForces++) {
+            // Fail either when the pages or when the meta page are made durable
+            put(db, 0, 500, failAfterForces + 1);
+            put(db, 1000, 2000, 0);
+            db.failAfterForces = failAfterForces;
+            try {
+                db.sync();
+                fail("The commit should have failed");
+            } catch (IOException e) {
+                // Expected
+            }
+
+            KeyValueStorageBTree reader = open();
+            if (failAfterForces == 0) {
+                // The failed commit didn't overwrite the pages of the last commit
+                assertEquals(1000, reader.count());
+                check(reader, 0, 1000, 0);
+            } else {
+                // The meta page was written, only its durability failed
+                assertEquals(2000, reader.count());
+                check(reader, 0, 500, 2);
+                check(reader, 500, 2000, 0);
+            }
+            reader.close();
+            check(db, 0, 500, failAfterForces + 1);
+            check(db, 500, 2000, 0);
+        }
+
+        // Modify the tree before retrying the commit, the pages released by the failed commits are not reused
+        for (long i = 1500; i < 1600; i++) {
+            db.delete(key(1, i));
+        }
+        put(db, 2000, 3000, 0);
+        db.sync();
+        db.close();
+
+        KeyValueStorageBTree reader = open();
+        assertEquals(2900, reader.count());
+        check(reader, 0, 500, 2);
+        check(reader, 500, 1500, 0);
+        checkMissing(reader, 1500, 1600);
+        check(reader, 1600, 3000, 0);
+        reader.close();
+    }
+
+    @Test
+    public void reuseReleasedPages() throws Exception {
+        KeyValueStorageBTree db = open();
+        put(db, 0, 20000, 0);
+        db.sync();
+
+        // The released pages are free once the deletion is committed
+        Batch batch = db.newBatch();
+        batch.deleteRange(key(1, 0), key(2, 0));
+        batch.flush();
+        batch.close();
+        assertEquals(0, db.count());
+        long pageCount = db.getPageCount();
+
+        for (long i = 0; i < 20000; i++) {
+            db.put(key(2, i), value(i));
+        }
+        db.sync();
+        assertEquals(pageCount, db.getPageCount());
+        db.close();
+
+        // The free pages are found again when the storage is opened
+        db = open();
+        assertEquals(20000, db.count());
+        checkMissing(db, 0, 20000);
+        for (long i = 0; i < 20000; i++) {
+            assertEquals(i, ArrayUtil.getLong(db.get(key(2, i)), 0));
+            db.delete(key(2, i));
+        }
+        db.sync();
+        pageCount = db.getPageCount();
+        put(db, 0, 20000, 0);
+        db.sync();
+        assertEquals(pageCount, db.getPageCount());
+        db.close();
+    }
+
+    @Test(timeout = 60000)
+    public void modifyTreeDuringCommit() throws Exception {
+        TestBTree db = new TestBTree();
+        put(db, 0, 1000, 0);
+        db.forceStarted = new CountDownLatch(1);
+        db.forceReleased = new CountDownLatch(1);
+        CountDownLatch forceReleased = db.forceReleased;
+        CompletableFuture<Void> commit = CompletableFuture.runAsync(() -> {
+            try {
+                db.sync();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        db.forceStarted.await();
+
+        // The tree is read and modified while the commit writes its pages
+        check(db, 0, 1000, 0);
+        put(db, 0, 100, 1);
+        put(db, 1000, 2000, 0);
+        check(db, 0, 100, 1);
+        check(db, 100, 2000, 0);
+
+        forceReleased.countDown();
+        commit.get();
+
+        // The modifications made during the commit are part of the next one
+        KeyValueStorageBTree reader = open();
+        assertEquals(1000, reader.count());
+        check(reader, 0, 1000, 0);
+        reader.close();
+
+        db.sync();
+        reader = open();
+        assertEquals(2000, reader.count());
+        check(reader, 0, 100, 1);
+        check(reader, 100, 2000, 0);
+        reader.close();
+        db.close();
+    }
+}
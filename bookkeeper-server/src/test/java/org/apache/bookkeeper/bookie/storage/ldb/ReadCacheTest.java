@@ -0,0 +1,195 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int SEGMENTS = 4;
+    private static final int ENTRY_SIZE = 64;
+    private static final int ENTRIES_PER_SEGMENT = SEGMENT_SIZE / ENTRY_SIZE;
+
+    private ReadCache cache;
+
+    @Before
+    public void setup() {
+        cache = new ReadCache(UnpooledByteBufAllocator.DEFAULT, SEGMENTS * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    private void put(long firstEntryId, long lastEntryId) {
+        for (long entryId = firstEntryId; entryId <= lastEntryId; entryId++) {
+            assertTrue(cache.put(1, entryId, entry(entryId), false));
+        }
+    }
+
+    private void checkEntry(long entryId) {
+        ByteBuf entry = cache.get(1, entryId);
+        assertEquals(entry(entryId), entry);
+        entry.release();
+    }
+
+    @Test
+    public void putAndGet() {
+        assertNull(cache.get(1, 0));
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+
+        put(0, 9);
+        for (long entryId = 0; entryId < 10; entryId++) {
+            assertTrue(cache.hasEntry(1, entryId));
+            checkEntry(entryId);
+        }
+        assertFalse(cache.hasEntry(1, 10));
+        assertFalse(cache.hasEntry(2, 0));
+        assertEquals(10, cache.count());
+        assertEquals(10 * ENTRY_SIZE, cache.size());
+    }
+
+    @Test
+    public void putExistingEntryCountsOnce() {
+        put(0, 9);
+        put(0, 9);
+        assertEquals(10, cache.count());
+        assertEquals(10, cache.indexSize());
+        for (long entryId = 0; entryId < 10; entryId++) {
+            checkEntry(entryId);
+        }
+    }
+
+    @Test
+    public void rotateOldestSegment() {
+        // fill all the segments
+        put(0, SEGMENTS * ENTRIES_PER_SEGMENT - 1);
+        assertEquals(SEGMENTS * ENTRIES_PER_SEGMENT, cache.count());
+        assertEquals(SEGMENTS * SEGMENT_SIZE, cache.size());
+
+        // the next entry overwrites the first segment
+        put(SEGMENTS * ENTRIES_PER_SEGMENT, SEGMENTS * ENTRIES_PER_SEGMENT);
+        assertEquals((SEGMENTS - 1) * ENTRIES_PER_SEGMENT + 1, cache.count());
+        for (long entryId = 0; entryId < ENTRIES_PER_SEGMENT; entryId++) {
+            assertFalse(cache.hasEntry(1, entryId));
+            assertNull(cache.get(1, entryId));
+        }
+        for (long entryId = ENTRIES_PER_SEGMENT; entryId <= SEGMENTS * ENTRIES_PER_SEGMENT; entryId++) {
+            checkEntry(entryId);
+        }
+    }
+
+    @Test
+    public void staleEntryIsReplaced() {
+        put(0, SEGMENTS * ENTRIES_PER_SEGMENT);
+        // the entry 0 is stale, caching it again makes it live
+        put(0, 0);
+        checkEntry(0);
+        assertEquals((SEGMENTS - 1) * ENTRIES_PER_SEGMENT + 2, cache.count());
+    }
+
+    @Test
+    public void sweepStaleEntries() {
+        // entries which are never looked up again
+        int rotations = 20;
+        put(0, (SEGMENTS + rotations) * ENTRIES_PER_SEGMENT - 1);
+        long liveEntries = cache.count();
+        assertEquals(SEGMENTS * ENTRIES_PER_SEGMENT, liveEntries);
+        // the stale entries are swept once they outnumber the live ones
+        assertTrue("Index of " + cache.indexSize() + " entries", cache.indexSize() <= 3 * liveEntries + 1);
+
+        for (long entryId = rotations * ENTRIES_PER_SEGMENT;
+             entryId < (SEGMENTS + rotations) * ENTRIES_PER_SEGMENT; entryId++) {
+            checkEntry(entryId);
+        }
+    }
+
+    @Test
+    public void referencedSegmentIsReplaced() {
+        put(0, SEGMENTS * ENTRIES_PER_SEGMENT - 1);
+        ByteBuf held = cache.get(1, 0);
+
+        // the first segment is rotated while the entry is held
+        put(SEGMENTS * ENTRIES_PER_SEGMENT, (SEGMENTS + 1) * ENTRIES_PER_SEGMENT - 1);
+        assertFalse(cache.hasEntry(1, 0));
+        assertEquals(entry(0), held);
+        held.release();
+
+        for (long entryId = SEGMENTS * ENTRIES_PER_SEGMENT; entryId < (SEGMENTS + 1) * ENTRIES_PER_SEGMENT;
+             entryId++) {
+            checkEntry(entryId);
+        }
+    }
+
+    @Test
+    public void copyEntriesWhenTooManySegmentsAreReferenced() {
+        put(0, SEGMENTS * ENTRIES_PER_SEGMENT - 1);
+        List<ByteBuf> held = new ArrayList<>();
+        held.add(cache.get(1, 0));
+        held.add(cache.get(1, ENTRIES_PER_SEGMENT));
+
+        // a single segment can be replaced, the second held one is skipped
+        put(SEGMENTS * ENTRIES_PER_SEGMENT, (SEGMENTS + 2) * ENTRIES_PER_SEGMENT - 1);
+        assertTrue(cache.hasEntry(1, ENTRIES_PER_SEGMENT));
+        assertFalse(cache.hasEntry(1, 2 * ENTRIES_PER_SEGMENT));
+
+        // the entries are copied rather than retaining their segment
+        ByteBuf copy = cache.get(1, ENTRIES_PER_SEGMENT + 1);
+        assertEquals(entry(ENTRIES_PER_SEGMENT + 1), copy);
+        assertFalse(copy.isReadOnly());
+        copy.release();
+
+        assertEquals(entry(0), held.get(0));
+        held.forEach(ByteBuf::release);
+    }
+
+    @Test
+    public void rejectEntryLargerThanSegment() {
+        assertFalse(cache.put(1, 0, Unpooled.buffer(SEGMENT_SIZE + 1).writerIndex(SEGMENT_SIZE + 1), false));
+        assertEquals(0, cache.count());
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit test of the location window of {@link TransientLedgerInfo}.
+ */
+public class TransientLedgerInfoTest {
+
+    private static long[] locations(long first, int count) {
+        long[] locations = new long[count];
+        for (int i = 0; i < count; i++) {
+            locations[i] = first + i;
+        }
+        return locations;
+    }
+
+    @Test
+    public void windowBounds() {
+        TransientLedgerInfo ledgerInfo = new TransientLedgerInfo(1, null);
+        assertEquals(0, ledgerInfo.getLocationFromWindow(0));
+
+        // Only the first entries of the array were found in the index
+        ledgerInfo.setLocationWindow(ledgerInfo.getLocationWindowVersion(), 10, locations(100, 8), 5);
+        assertEquals(0, ledgerInfo.getLocationFromWindow(9));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(100 + i, ledgerInfo.getLocationFromWindow(10 + i));
+        }
+        assertEquals(0, ledgerInfo.getLocationFromWindow(15));
+        assertEquals(0, ledgerInfo.getLocationFromWindow(Long.MAX_VALUE));
+
+        // The window is replaced by the next one
+        ledgerInfo.setLocationWindow(ledgerInfo.getLocationWindowVersion(), 15, locations(200, 5), 5);
+        assertEquals(0, ledgerInfo.getLocationFromWindow(14));
+        assertEquals(200, ledgerInfo.getLocationFromWindow(15));
+    }
+
+    @Test
+    public void invalidateDiscardsTheWindow() {
+        TransientLedgerInfo ledgerInfo = new TransientLedgerInfo(1, null);
+        ledgerInfo.setLocationWindow(ledgerInfo.getLocationWindowVersion(), 0, locations(100, 5), 5);
+        assertEquals(100, ledgerInfo.getLocationFromWindow(0));
+
+        ledgerInfo.invalidateLocationWindow();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, ledgerInfo.getLocationFromWindow(i));
+        }
+    }
+
+    @Test
+    public void locationsLookedUpBeforeTheInvalidationAreDiscarded() {
+        TransientLedgerInfo ledgerInfo = new TransientLedgerInfo(1, null);
+        long version = ledgerInfo.getLocationWindowVersion();
+
+        // The locations are updated while they are looked up in the index
+        ledgerInfo.invalidateLocationWindow();
+        ledgerInfo.setLocationWindow(version, 0, locations(100, 5), 5);
+        assertEquals(0, ledgerInfo.getLocationFromWindow(0));
+
+        ledgerInfo.setLocationWindow(ledgerInfo.getLocationWindowVersion(), 0, locations(200, 5), 5);
+        assertEquals(200, ledgerInfo.getLocationFromWindow(0));
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.storage.ldb.WriteCache.EntryConsumer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of the striped iteration of {@link WriteCache}, used to flush the write cache in parallel.
+ */
+public class WriteCacheTest {
+
+    private static final ByteBufAllocator allocator = UnpooledByteBufAllocator.DEFAULT;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(size);
+        return entry;
+    }
+
+    /**
+     * Consumer recording the entries of a stripe.
+     */
+    private static class StripeConsumer implements EntryConsumer {
+        final List<long[]> entries = new ArrayList<>();
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) {
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            entries.add(new long[] {ledgerId, entryId});
+        }
+    }
+
+    @Test
+    public void stripesKeepEachLedgerInOneStripe() {
+        WriteCache cache = new WriteCache(allocator, 1024 * 1024);
+        int numLedgers = 20;
+        int totalEntries = 0;
+        // Ledgers of very different sizes, so that the stripe bounds fall in the middle of ledgers
+        for (long ledgerId = numLedgers - 1; ledgerId >= 0; ledgerId--) {
+            int numEntries = ledgerId % 3 == 0 ? 50 : 5;
+            for (long entryId = numEntries - 1; entryId >= 0; entryId--) {
+                assertTrue(cache.put(ledgerId, entryId, entry(ledgerId, entryId, 256 + (int) ledgerId * 16)));
+            }
+            totalEntries += numEntries;
+        }
+
+        StripeConsumer[] stripes = new StripeConsumer[4];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StripeConsumer();
+        }
+        cache.forEach(stripes, executor);
+
+        Set<Long> seenLedgers = new HashSet<>();
+        long lastLedgerId = -1;
+        int nonEmptyStripes = 0;
+        int count = 0;
+        for (StripeConsumer stripe : stripes) {
+            if (!stripe.entries.isEmpty()) {
+                nonEmptyStripes++;
+            }
+            Set<Long> stripeLedgers = new HashSet<>();
+            long[] previous = null;
+            for (long[] e : stripe.entries) {
+                // Every stripe is iterated in (ledgerId, entryId) order, after the ledgers of the previous stripes
+                assertTrue(e[0] > lastLedgerId);
+                if (previous != null) {
+                    assertTrue(e[0] > previous[0] || (e[0] == previous[0] && e[1] == previous[1] + 1));
+                }
+                previous = e;
+                stripeLedgers.add(e[0]);
+                count++;
+            }
+            for (long ledgerId : stripeLedgers) {
+                // A ledger is never split across stripes
+                assertTrue(seenLedgers.add(ledgerId));
+                lastLedgerId = Math.max(lastLedgerId, ledgerId);
+            }
+        }
+        assertEquals(totalEntries, count);
+        assertEquals(numLedgers, seenLedgers.size());
+        assertTrue(nonEmptyStripes > 1);
+        cache.close();
+    }
+
+    @Test
+    public void singleLedgerUsesOneStripe() {
+        WriteCache cache = new WriteCache(allocator, 1024 * 1024);
+        for (long entryId = 0; entryId < 100; entryId++) {
+            cache.put(7, entryId, entry(7, entryId, 1024));
+        }
+
+        StripeConsumer[] stripes = new StripeConsumer[3];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StripeConsumer();
+        }
+        cache.forEach(stripes, executor);
+
+        assertEquals(100, stripes[0].entries.size());
+        assertTrue(stripes[1].entries.isEmpty());
+        assertTrue(stripes[2].entries.isEmpty());
+        cache.close();
+    }
+
+    @Test
+    public void deletedLedgersAreSkipped() {
+        WriteCache cache = new WriteCache(allocator, 1024 * 1024);
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                cache.put(ledgerId, entryId, entry(ledgerId, entryId, 128));
+            }
+        }
+        cache.deleteLedger(3);
+        cache.deleteLedger(8);
+
+        StripeConsumer[] stripes = new StripeConsumer[4];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StripeConsumer();
+        }
+        cache.forEach(stripes, executor);
+
+        int count = 0;
+        for (StripeConsumer stripe : stripes) {
+            for (long[] e : stripe.entries) {
+                assertTrue(e[0] != 3 && e[0] != 8);
+                count++;
+            }
+        }
+        assertEquals(80, count);
+        cache.close();
+    }
+
+    private WriteCache cacheWithLedgers(int numLedgers) {
+        WriteCache cache = new WriteCache(allocator, 1024 * 1024);
+        for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+            for (long entryId = 0; entryId < 10; entryId++) {
+                cache.put(ledgerId, entryId, entry(ledgerId, entryId, 128));
+            }
+        }
+        return cache;
+    }
+
+    @Test
+    public void errorOfAsyncStripeIsRethrown() {
+        WriteCache cache = cacheWithLedgers(8);
+        RuntimeException error = new RuntimeException("stripe 2");
+        AtomicInteger consumed = new AtomicInteger();
+        EntryConsumer[] stripes = new EntryConsumer[4];
+        for (int i = 0; i < stripes.length; i++) {
+            int stripe = i;
+            stripes[i] = (ledgerId, entryId, entry) -> {
+                if (stripe == 2) {
+                    throw error;
+                }
+                consumed.incrementAndGet();
+            };
+        }
+
+        try {
+            cache.forEach(stripes, executor);
+            fail("The error of the stripe should have been rethrown");
+        } catch (RuntimeException e) {
+            assertSame(error, e);
+        }
+        // The other stripes were consumed before the error was rethrown
+        assertEquals(60, consumed.get());
+        cache.close();
+    }
+
+    @Test
+    public void firstStripeErrorIsRethrown() {
+        WriteCache cache = cacheWithLedgers(8);
+        RuntimeException[] errors = new RuntimeException[4];
+        EntryConsumer[] stripes = new EntryConsumer[4];
+        for (int i = 0; i < stripes.length; i++) {
+            RuntimeException error = new RuntimeException("stripe " + i);
+            errors[i] = error;
+            stripes[i] = (ledgerId, entryId, entry) -> {
+                throw error;
+            };
+        }
+
+        try {
+            cache.forEach(stripes, executor);
+            fail("The error of the stripes should have been rethrown");
+        } catch (RuntimeException e) {
+            assertSame(errors[0], e);
+        }
+
+        // Only the asynchronous stripes fail
+        stripes[0] = (ledgerId, entryId, entry) -> { };
+        try {
+            cache.forEach(stripes, executor);
+            fail("The error of the stripes should have been rethrown");
+        } catch (RuntimeException e) {
+            assertSame(errors[1], e);
+        }
+        cache.close();
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookieLatencyTracker.DECAY_NANOS;
+import static org.apache.bookkeeper.client.BookieLatencyTracker.PERCENTILE_REFRESH_NANOS;
+import static org.apache.bookkeeper.client.BookieLatencyTracker.WINDOW_NANOS;
+import static org.apache.bookkeeper.client.BookieLatencyTracker.bucket;
+import static org.apache.bookkeeper.client.BookieLatencyTracker.bucketUpperBound;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link BookieLatencyTracker}.
+ */
+public class BookieLatencyTrackerTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    @Test
+    public void testEwmaUnknownLatency() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        assertEquals(0, tracker.getLatencyEwmaNanos(0));
+        assertEquals(0, tracker.getLatencyEwmaNanos(DECAY_NANOS));
+    }
+
+    @Test
+    public void testEwmaJumpsToPeak() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        tracker.recordLatency(MILLIS, 0);
+        assertEquals(MILLIS, tracker.getLatencyEwmaNanos(0));
+
+        // a slower response replaces the average at once
+        tracker.recordLatency(5 * MILLIS, 1000);
+        assertEquals(5 * MILLIS, tracker.getLatencyEwmaNanos(1000));
+    }
+
+    @Test
+    public void testEwmaDecay() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        tracker.recordLatency(MILLIS, 0);
+
+        double decayed = MILLIS * Math.exp(-1);
+        assertEquals(decayed, tracker.getLatencyEwmaNanos(DECAY_NANOS), 1);
+        assertEquals(MILLIS * Math.exp(-2), tracker.getLatencyEwmaNanos(2 * DECAY_NANOS), 1);
+        // the average does not move before the last update
+        assertEquals(MILLIS, tracker.getLatencyEwmaNanos(-DECAY_NANOS));
+
+        // a faster response is blended in the decayed average
+        tracker.recordLatency(100 * MICROS, DECAY_NANOS);
+        double expected = decayed + 100 * MICROS * (1 - Math.exp(-1));
+        assertEquals(expected, tracker.getLatencyEwmaNanos(DECAY_NANOS), 1);
+    }
+
+    @Test
+    public void testBucketBoundaries() {
+        for (long micros = 0; micros < 4; micros++) {
+            assertEquals(micros, bucket(micros));
+            assertEquals(micros, bucketUpperBound(bucket(micros)));
+        }
+        assertEquals(8, bucket(8));
+        assertEquals(9, bucketUpperBound(8));
+        assertEquals(8, bucket(9));
+        assertEquals(9, bucket(10));
+        assertEquals(11, bucketUpperBound(9));
+
+        int previous = bucket(0);
+        for (long micros = 1; micros < (1 << 20); micros++) {
+            int b = bucket(micros);
+            long upperBound = bucketUpperBound(b);
+            assertTrue("upper bound of " + micros, upperBound >= micros);
+            assertTrue("error on " + micros, upperBound <= micros + micros / 4);
+            if (b != previous) {
+                // the buckets are contiguous
+                assertEquals(previous + 1, b);
+                assertEquals(bucketUpperBound(previous) + 1, micros);
+                previous = b;
+            }
+        }
+        // the largest latencies fall in the last bucket
+        assertTrue(bucket(Long.MAX_VALUE) < 256);
+        assertTrue(bucketUpperBound(bucket(Long.MAX_VALUE)) >= Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    public void testPercentiles() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        assertEquals(-1, tracker.getLatencyPercentileNanos(50, 0));
+
+        tracker = new BookieLatencyTracker(0);
+        for (long micros = 1; micros <= 1000; micros++) {
+            tracker.recordLatency(micros * MICROS, 0);
+        }
+        assertPercentile(500 * MICROS, tracker.getLatencyPercentileNanos(50, 0));
+        assertPercentile(990 * MICROS, tracker.getLatencyPercentileNanos(99, 0));
+        assertPercentile(1000 * MICROS, tracker.getLatencyPercentileNanos(100, 0));
+        assertEquals(MICROS, tracker.getLatencyPercentileNanos(0, 0));
+    }
+
+    private static void assertPercentile(long expectedNanos, long actualNanos) {
+        assertTrue("percentile " + actualNanos + " below " + expectedNanos, actualNanos >= expectedNanos);
+        assertTrue("percentile " + actualNanos + " above " + expectedNanos,
+                actualNanos <= expectedNanos + expectedNanos / 4);
+    }
+
+    @Test
+    public void testPercentileCached() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        tracker.recordLatency(100 * MICROS, 0);
+        assertPercentile(100 * MICROS, tracker.getLatencyPercentileNanos(50, 0));
+
+        for (int i = 0; i < 10; i++) {
+            tracker.recordLatency(10 * MILLIS, 0);
+        }
+        assertPercentile(100 * MICROS, tracker.getLatencyPercentileNanos(50, PERCENTILE_REFRESH_NANOS - 1));
+        assertPercentile(10 * MILLIS, tracker.getLatencyPercentileNanos(50, PERCENTILE_REFRESH_NANOS));
+        // another percentile is not served from the cache
+        assertPercentile(100 * MICROS, tracker.getLatencyPercentileNanos(1, PERCENTILE_REFRESH_NANOS));
+    }
+
+    @Test
+    public void testWindowRotation() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        tracker.recordLatency(MILLIS, 0);
+        assertPercentile(MILLIS, tracker.getLatencyPercentileNanos(50, 0));
+
+        // the previous window still counts
+        long now = WINDOW_NANOS + 1;
+        tracker.recordLatency(2 * MILLIS, now);
+        assertPercentile(MILLIS, tracker.getLatencyPercentileNanos(50, now));
+        assertPercentile(2 * MILLIS, tracker.getLatencyPercentileNanos(100, now));
+
+        // the latencies are dropped after two windows
+        now += WINDOW_NANOS;
+        assertPercentile(2 * MILLIS, tracker.getLatencyPercentileNanos(50, now));
+        now += WINDOW_NANOS;
+        assertEquals(-1, tracker.getLatencyPercentileNanos(50, now));
+    }
+
+    @Test
+    public void testIdleTrackerDropsBothWindows() {
+        BookieLatencyTracker tracker = new BookieLatencyTracker(0);
+        tracker.recordLatency(MILLIS, 0);
+        assertEquals(-1, tracker.getLatencyPercentileNanos(50, 2 * WINDOW_NANOS));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.apache.bookkeeper.bookie.BookKeeperServerStats;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.junit.Test;
+
+/**
+ * Test the adds batched by {@link PendingAddBatcher} into range add requests.
+ */
+public class LedgerHandleBatchedAddTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "password".getBytes();
+    private static final int NUM_ENTRIES = 10;
+
+    public LedgerHandleBatchedAddTest() {
+        super(3);
+        baseClientConf.setAddEntryBatchingEnabled(true);
+    }
+
+    private static byte[] data(long entryId) {
+        return ("data-" + entryId).getBytes();
+    }
+
+    /**
+     * Submit the adds while the ordered executor of the ledger is blocked, so that they are all initiated
+     * together and sent in a single range add request to each bookie.
+     */
+    private List<CompletableFuture<Long>> addBlocked(long ledgerId, Supplier<CompletableFuture<Long>> add)
+            throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bkc.getMainWorkerPool().executeOrdered(ledgerId, () -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            results.add(add.get());
+        }
+        release.countDown();
+        return results;
+    }
+
+    private List<CompletableFuture<Long>> addBlocked(LedgerHandle lh) throws Exception {
+        AtomicLong entryId = new AtomicLong();
+        return addBlocked(lh.getId(), () -> {
+            CompletableFuture<Long> result = new CompletableFuture<>();
+            lh.asyncAddEntry(data(entryId.getAndIncrement()), (rc, handle, addedEntryId, ctx) -> {
+                if (rc == BKException.Code.OK) {
+                    result.complete(addedEntryId);
+                } else {
+                    result.completeExceptionally(BKException.create(rc));
+                }
+            }, null);
+            return result;
+        });
+    }
+
+    private long rangeAddCount(int bookieIndex) throws Exception {
+        AtomicLong count = new AtomicLong();
+        getStatsProvider(bookieIndex).forEachOpStatLogger((name, stats) -> {
+            if (name.endsWith("." + BookKeeperServerStats.RANGE_ADD_ENTRY)) {
+                count.addAndGet(stats.getSuccessCount());
+            }
+        });
+        return count.get();
+    }
+
+    // the ledgers are written with Qa = Qw, so that every bookie has responded once the adds complete
+    private void assertOneRangeAddPerBookie() throws Exception {
+        for (int i = 0; i < bookieCount(); i++) {
+            assertEquals(1, rangeAddCount(i));
+        }
+    }
+
+    @Test
+    public void testBatchedAdds() throws Exception {
+        LedgerHandle lh = bkc.createLedger(3, 3, 3, DigestType.CRC32, PASSWORD);
+        List<CompletableFuture<Long>> results = addBlocked(lh);
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            assertEquals(i, (long) results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertOneRangeAddPerBookie();
+        assertEquals(NUM_ENTRIES - 1, lh.getLastAddConfirmed());
+        lh.close();
+
+        LedgerHandle readLh = bkc.openLedger(lh.getId(), DigestType.CRC32, PASSWORD);
+        Enumeration<LedgerEntry> entries = readLh.readEntries(0, NUM_ENTRIES - 1);
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(new String(data(entryId)), new String(entries.nextElement().getEntry()));
+        }
+        readLh.close();
+    }
+
+    @Test
+    public void testFencedLedger() throws Exception {
+        LedgerHandle lh = bkc.createLedger(3, 3, 3, DigestType.CRC32, PASSWORD);
+        lh.addEntry(data(0));
+
+        // recovering the ledger fences it on the bookies
+        LedgerHandle recoveredLh = bkc.openLedger(lh.getId(), DigestType.CRC32, PASSWORD);
+        assertEquals(0, recoveredLh.getLastAddConfirmed());
+
+        List<CompletableFuture<Long>> results = addBlocked(lh);
+        for (CompletableFuture<Long> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                throw new AssertionError("The adds to a fenced ledger should fail");
+            } catch (ExecutionException e) {
+                assertEquals(BKException.Code.LedgerFencedException, ((BKException) e.getCause()).getCode());
+            }
+        }
+        recoveredLh.close();
+    }
+
+    @Test
+    public void testDeferredSync() throws Exception {
+        WriteHandle wh = bkc.newCreateLedgerOp()
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(3)
+                .withDigestType(org.apache.bookkeeper.client.api.DigestType.CRC32)
+                .withPassword(PASSWORD)
+                .withWriteFlags(WriteFlag.DEFERRED_SYNC)
+                .execute()
+                .get();
+        AtomicLong entryId = new AtomicLong();
+        List<CompletableFuture<Long>> results = addBlocked(wh.getId(),
+                () -> wh.appendAsync(data(entryId.getAndIncrement())));
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            assertEquals(i, (long) results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertOneRangeAddPerBookie();
+
+        // the entries were acknowledged before the journal sync, the LAC only advances once they are synced
+        assertEquals(NUM_ENTRIES - 1, wh.getLastAddPushed());
+        assertEquals(-1, wh.getLastAddConfirmed());
+        wh.force().get();
+        assertEquals(NUM_ENTRIES - 1, wh.getLastAddConfirmed());
+        wh.close();
+    }
+}
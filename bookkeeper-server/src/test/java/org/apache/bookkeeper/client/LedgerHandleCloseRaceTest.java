@@ -0,0 +1,128 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.junit.Test;
+
+/**
+ * Test closing a ledger handle while entries are being added to it concurrently.
+ */
+public class LedgerHandleCloseRaceTest extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWORD = "password".getBytes();
+    private static final byte[] DATA = "data".getBytes();
+
+    public LedgerHandleCloseRaceTest() {
+        super(3);
+    }
+
+    @Test
+    public void closeWhileAddingEntries() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            LedgerHandle lh = bkc.createLedger(3, 2, 2, DigestType.CRC32, PASSWORD);
+
+            AtomicBoolean closed = new AtomicBoolean(false);
+            AtomicInteger submitted = new AtomicInteger();
+            AtomicInteger completed = new AtomicInteger();
+            ConcurrentMap<Integer, Integer> results = new ConcurrentHashMap<>();
+            AtomicInteger duplicateCallbacks = new AtomicInteger();
+            NavigableSet<Long> addedEntries = new ConcurrentSkipListSet<>();
+            AddCallback cb = (rc, handle, entryId, ctx) -> {
+                if (results.putIfAbsent((Integer) ctx, rc) != null) {
+                    duplicateCallbacks.incrementAndGet();
+                }
+                if (rc == BKException.Code.OK) {
+                    addedEntries.add(entryId);
+                }
+                completed.incrementAndGet();
+            };
+
+            // Each thread keeps adding entries until the ledger is closed, plus one add after it is closed
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Thread thread = new Thread(() -> {
+                    boolean lastAdd = false;
+                    while (!lastAdd) {
+                        lastAdd = closed.get();
+                        lh.asyncAddEntry(DATA, cb, submitted.getAndIncrement());
+                    }
+                }, "adder-" + i);
+                threads.add(thread);
+                thread.start();
+            }
+
+            while (addedEntries.size() < 100) {
+                Thread.sleep(1);
+            }
+            lh.close();
+            closed.set(true);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            while (completed.get() < submitted.get()) {
+                Thread.sleep(1);
+            }
+
+            // Every add completed once, the successful ones are exactly the entries of the closed ledger
+            assertEquals(0, duplicateCallbacks.get());
+            assertEquals(submitted.get(), results.size());
+            long lastAddConfirmed = lh.getLastAddConfirmed();
+            assertEquals(lastAddConfirmed, lh.getLedgerMetadata().getLastEntryId());
+            assertEquals(lastAddConfirmed + 1, addedEntries.size());
+            assertEquals(lastAddConfirmed, (long) addedEntries.last());
+            assertTrue(results.values().stream().anyMatch(rc -> rc != BKException.Code.OK));
+            for (int rc : results.values()) {
+                assertTrue(rc == BKException.Code.OK || rc == BKException.Code.LedgerClosedException);
+            }
+
+            try (LedgerHandle reader = bkc.openLedger(lh.getId(), DigestType.CRC32, PASSWORD)) {
+                assertEquals(lastAddConfirmed, reader.getLastAddConfirmed());
+                assertEquals(lh.getLength(), reader.getLength());
+                if (lastAddConfirmed >= 0) {
+                    Enumeration<LedgerEntry> entries = reader.readEntries(0, lastAddConfirmed);
+                    long entryId = 0;
+                    while (entries.hasMoreElements()) {
+                        LedgerEntry entry = entries.nextElement();
+                        assertEquals(entryId++, entry.getEntryId());
+                        assertNotEquals(0, entry.getLength());
+                    }
+                    assertEquals(lastAddConfirmed + 1, entryId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link PendingAddRing}.
+ */
+public class PendingAddRingTest {
+
+    private static PendingAddOp op(long entryId) {
+        PendingAddOp op = mock(PendingAddOp.class);
+        when(op.getEntryId()).thenReturn(entryId);
+        return op;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new PendingAddRing(6, 0);
+    }
+
+    @Test
+    public void consumeInOrderAcrossWrapAround() {
+        PendingAddRing ring = new PendingAddRing(4, 2);
+        long nextToOffer = 2;
+        long nextToPoll = 2;
+        // Go around the ring several times, with up to 3 pending adds at a time
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(ring.offer(op(nextToOffer++)));
+            }
+            assertEquals(3, ring.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(nextToPoll, ring.peek().getEntryId());
+                assertEquals(nextToPoll, ring.poll().getEntryId());
+                nextToPoll++;
+            }
+            assertNull(ring.peek());
+            assertNull(ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void overflowWhenSlotIsTaken() {
+        PendingAddRing ring = new PendingAddRing(4, 0);
+        List<PendingAddOp> ops = new ArrayList<>();
+        // The entries 4 to 9 find their slot taken by an entry one or two laps behind
+        for (long entryId = 0; entryId < 10; entryId++) {
+            PendingAddOp op = op(entryId);
+            ops.add(op);
+            ring.offer(op);
+        }
+        assertEquals(10, ring.size());
+
+        Iterator<PendingAddOp> iterator = ring.iterator();
+        for (PendingAddOp op : ops) {
+            assertSame(op, iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+
+        for (PendingAddOp op : ops) {
+            assertSame(op, ring.peek());
+            assertSame(op, ring.poll());
+        }
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+
+        // The slots freed by the overflowing entries are used again
+        for (long entryId = 10; entryId < 14; entryId++) {
+            ring.offer(op(entryId));
+        }
+        for (long entryId = 10; entryId < 14; entryId++) {
+            assertEquals(entryId, ring.poll().getEntryId());
+        }
+    }
+
+    @Test
+    public void unpublishedEntryHoldsBackTheNextOnes() {
+        PendingAddRing ring = new PendingAddRing(4, 0);
+        ring.offer(op(1));
+        ring.offer(op(2));
+        assertNull(ring.peek());
+        assertNull(ring.poll());
+        assertEquals(2, ring.size());
+
+        ring.offer(op(0));
+        for (long entryId = 0; entryId < 3; entryId++) {
+            assertEquals(entryId, ring.poll().getEntryId());
+        }
+    }
+
+    @Test
+    public void iteratorSkipsConsumedEntries() {
+        PendingAddRing ring = new PendingAddRing(4, 0);
+        for (long entryId = 0; entryId < 6; entryId++) {
+            ring.offer(op(entryId));
+        }
+        ring.poll();
+        ring.poll();
+
+        Iterator<PendingAddOp> iterator = ring.iterator();
+        for (long entryId = 2; entryId < 6; entryId++) {
+            assertEquals(entryId, iterator.next().getEntryId());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void resetHead() {
+        PendingAddRing ring = new PendingAddRing(4, 0);
+        ring.reset(10);
+        ring.offer(op(10));
+        assertEquals(10, ring.poll().getEntryId());
+    }
+
+    @Test(timeout = 60000)
+    public void awaitPublishedWaitsForAllEntries() throws Exception {
+        PendingAddRing ring = new PendingAddRing(4, 0);
+        List<PendingAddOp> ops = new ArrayList<>();
+        for (long entryId = 0; entryId < 20; entryId++) {
+            ops.add(op(entryId));
+        }
+
+        // The entries are published in reverse order, the last one being the first entry
+        CompletableFuture<Void> publisher = CompletableFuture.runAsync(() -> {
+            for (int i = ops.size() - 1; i >= 0; i--) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                ring.offer(ops.get(i));
+            }
+        });
+
+        ring.awaitPublished(19);
+        assertEquals(20, ring.size());
+        for (long entryId = 0; entryId < 20; entryId++) {
+            assertEquals(entryId, ring.poll().getEntryId());
+        }
+        publisher.get();
+
+        // Nothing to wait for once the entries are consumed
+        ring.awaitPublished(19);
+    }
+}
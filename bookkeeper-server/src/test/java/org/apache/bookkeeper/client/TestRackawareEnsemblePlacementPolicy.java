@@ -0,0 +1,180 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the read reordering of {@link RackawareEnsemblePlacementPolicy} by predicted latency.
+ */
+public class TestRackawareEnsemblePlacementPolicy {
+
+    private static final int ENSEMBLE_SIZE = 4;
+
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicy policy;
+    private List<BookieId> ensemble;
+    private DistributionSchedule schedule;
+    private TestBookiesHealthInfo healthInfo;
+
+    @Before
+    public void setUp() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReorderByPredictedLatencyEnabled(true);
+        timer = new HashedWheelTimer();
+        policy = new RackawareEnsemblePlacementPolicy();
+        policy.initialize(conf, Optional.empty(), timer, SettableFeatureProvider.DISABLE_ALL,
+                NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+
+        ensemble = new ArrayList<>();
+        for (int i = 0; i < ENSEMBLE_SIZE; i++) {
+            ensemble.add(BookieId.parse("127.0.0." + (i + 1) + ":3181"));
+        }
+        policy.onClusterChanged(new HashSet<>(ensemble), Collections.emptySet());
+        schedule = new RoundRobinDistributionSchedule(ENSEMBLE_SIZE, ENSEMBLE_SIZE, ENSEMBLE_SIZE);
+        healthInfo = new TestBookiesHealthInfo();
+    }
+
+    @After
+    public void tearDown() {
+        policy.uninitalize();
+        timer.stop();
+    }
+
+    /**
+     * Health of the bookies, with the latency and pending requests set by the test.
+     */
+    static class TestBookiesHealthInfo implements BookiesHealthInfo {
+        final Map<BookieId, Long> latencyEwmaNanos = new HashMap<>();
+        final Map<BookieId, Long> pendingRequests = new HashMap<>();
+
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return pendingRequests.getOrDefault(bookieSocketAddress, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyEwma(BookieId bookieSocketAddress) {
+            return latencyEwmaNanos.getOrDefault(bookieSocketAddress, 0L);
+        }
+    }
+
+    static List<Integer> toList(DistributionSchedule.WriteSet writeSet) {
+        List<Integer> list = new ArrayList<>(writeSet.size());
+        for (int i = 0; i < writeSet.size(); i++) {
+            list.add(writeSet.get(i));
+        }
+        writeSet.recycle();
+        return list;
+    }
+
+    private List<Integer> reorder() {
+        return toList(policy.reorderReadSequence(ensemble, healthInfo, schedule.getWriteSet(0)));
+    }
+
+    private void setLatency(int bookieIdx, long latencyNanos) {
+        healthInfo.latencyEwmaNanos.put(ensemble.get(bookieIdx), latencyNanos);
+    }
+
+    private void setPendingRequests(int bookieIdx, long pendingRequests) {
+        healthInfo.pendingRequests.put(ensemble.get(bookieIdx), pendingRequests);
+    }
+
+    @Test
+    public void testReorderByLatency() {
+        setLatency(0, 4000);
+        setLatency(1, 1000);
+        setLatency(2, 3000);
+        setLatency(3, 2000);
+        assertEquals(Arrays.asList(1, 3, 2, 0), reorder());
+    }
+
+    @Test
+    public void testReorderByLatencyAndPendingRequests() {
+        setLatency(0, 1000);
+        setLatency(1, 1000);
+        setLatency(2, 3000);
+        setLatency(3, 3000);
+        // 1000 * (4 + 1) is slower than 3000 * (0 + 1)
+        setPendingRequests(0, 4);
+        setPendingRequests(1, 1);
+        assertEquals(Arrays.asList(1, 2, 3, 0), reorder());
+    }
+
+    @Test
+    public void testUnknownLatencyFirst() {
+        setLatency(0, 2000);
+        setLatency(1, 1000);
+        setLatency(3, 3000);
+        setPendingRequests(2, 10);
+        assertEquals(Arrays.asList(2, 1, 0, 3), reorder());
+    }
+
+    @Test
+    public void testNotWritableLast() {
+        setLatency(0, 1000);
+        setLatency(1, 2000);
+        setLatency(2, 3000);
+        setLatency(3, 4000);
+        setPendingRequests(0, BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        assertEquals(Arrays.asList(1, 2, 3, 0), reorder());
+    }
+
+    @Test
+    public void testStableOrder() {
+        // without any latency known, the order is kept
+        assertEquals(Arrays.asList(0, 1, 2, 3), reorder());
+
+        setLatency(0, 2000);
+        setLatency(1, 1000);
+        setLatency(2, 2000);
+        setLatency(3, 1000);
+        assertEquals(Arrays.asList(1, 3, 0, 2), reorder());
+
+        setPendingRequests(0, BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        setPendingRequests(1, BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        assertEquals(Arrays.asList(3, 2, 0, 1), reorder());
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.TestRackawareEnsemblePlacementPolicy.toList;
+import static org.junit.Assert.assertEquals;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.apache.bookkeeper.client.TestRackawareEnsemblePlacementPolicy.TestBookiesHealthInfo;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the read reordering of {@link RegionAwareEnsemblePlacementPolicy} by predicted latency.
+ */
+public class TestRegionAwareEnsemblePlacementPolicy {
+
+    private static final int ENSEMBLE_SIZE = 4;
+
+    private HashedWheelTimer timer;
+    private RegionAwareEnsemblePlacementPolicy policy;
+    private List<BookieId> ensemble;
+    private DistributionSchedule schedule;
+    private TestBookiesHealthInfo healthInfo;
+
+    /**
+     * Resolve the bookies of the test to their region, and any other host, the client, to the local region.
+     */
+    static class TestDNSResolver implements DNSToSwitchMapping {
+        final Map<String, String> locations = new HashMap<>();
+
+        @Override
+        public List<String> resolve(List<String> names) {
+            List<String> resolved = new ArrayList<>(names.size());
+            for (String name : names) {
+                resolved.add(locations.getOrDefault(name, "/region1/rack1"));
+            }
+            return resolved;
+        }
+
+        @Override
+        public void reloadCachedMappings() {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        timer = new HashedWheelTimer();
+        ensemble = new ArrayList<>();
+        TestDNSResolver dnsResolver = new TestDNSResolver();
+        for (int i = 0; i < ENSEMBLE_SIZE; i++) {
+            String host = "192.0.2." + (i + 1);
+            ensemble.add(BookieId.parse(host + ":3181"));
+            // the first half of the ensemble is local
+            dnsResolver.locations.put(host, i < ENSEMBLE_SIZE / 2 ? "/region1/rack1" : "/region2/rack1");
+        }
+        schedule = new RoundRobinDistributionSchedule(ENSEMBLE_SIZE, ENSEMBLE_SIZE, ENSEMBLE_SIZE);
+        healthInfo = new TestBookiesHealthInfo();
+        policy = createPolicy(Optional.of(dnsResolver));
+    }
+
+    private RegionAwareEnsemblePlacementPolicy createPolicy(Optional<DNSToSwitchMapping> dnsResolver) {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReorderByPredictedLatencyEnabled(true);
+        RegionAwareEnsemblePlacementPolicy policy = new RegionAwareEnsemblePlacementPolicy();
+        policy.initialize(conf, dnsResolver, timer, SettableFeatureProvider.DISABLE_ALL,
+                NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        policy.onClusterChanged(new HashSet<>(ensemble), Collections.emptySet());
+        return policy;
+    }
+
+    @After
+    public void tearDown() {
+        policy.uninitalize();
+        timer.stop();
+    }
+
+    private List<Integer> reorder() {
+        return toList(policy.reorderReadSequence(ensemble, healthInfo, schedule.getWriteSet(0)));
+    }
+
+    private void setLatency(int bookieIdx, long latencyNanos) {
+        healthInfo.latencyEwmaNanos.put(ensemble.get(bookieIdx), latencyNanos);
+    }
+
+    @Test
+    public void testLocalRegionFirstThenByLatency() {
+        setLatency(0, 3000);
+        setLatency(1, 1000);
+        setLatency(2, 2000);
+        setLatency(3, 500);
+        // the remote bookies are faster, but the local ones are read first
+        assertEquals(Arrays.asList(1, 0, 3, 2), reorder());
+
+        setLatency(0, 500);
+        setLatency(3, 3000);
+        assertEquals(Arrays.asList(0, 1, 2, 3), reorder());
+    }
+
+    @Test
+    public void testUnknownLatencyFirstInRegion() {
+        setLatency(0, 1000);
+        setLatency(2, 2000);
+        setLatency(3, 1000);
+        assertEquals(Arrays.asList(1, 0, 3, 2), reorder());
+    }
+
+    @Test
+    public void testUnknownLocalRegion() {
+        policy.uninitalize();
+        // without a resolver, the region of the client is unknown and the bookies are ordered by latency only
+        policy = createPolicy(Optional.empty());
+        setLatency(0, 3000);
+        setLatency(1, 1000);
+        setLatency(2, 2000);
+        setLatency(3, 500);
+        assertEquals(Arrays.asList(3, 1, 2, 0), reorder());
+    }
+}
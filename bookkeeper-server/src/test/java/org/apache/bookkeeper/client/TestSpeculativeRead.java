@@ -0,0 +1,283 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.CLIENT_SCOPE;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.SPECULATIVE_READ_BUDGET_EXHAUSTED;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.SPECULATIVE_READ_COUNT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.SPECULATIVE_READ_HITS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BookKeeper.DigestType;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.Test;
+
+/**
+ * Test the speculative reads, with the {@link AdaptiveSpeculativeRequestExecutionPolicy}.
+ */
+public class TestSpeculativeRead extends BookKeeperClusterTestCase {
+
+    private static final byte[] PASSWD = "specPW".getBytes();
+
+    public TestSpeculativeRead() {
+        super(3);
+    }
+
+    /**
+     * Speculative request executor returning the given latency percentile and issuing the requests on demand.
+     */
+    static class TestRequestExecutor implements SpeculativeRequestExecutor {
+        long latencyPercentileNanos = -1;
+        ListenableFuture<Boolean> result = Futures.immediateFuture(true);
+        int issued = 0;
+
+        @Override
+        public ListenableFuture<Boolean> issueSpeculativeRequest() {
+            issued++;
+            return result;
+        }
+
+        @Override
+        public long getLatencyPercentileNanos(double percentile) {
+            return latencyPercentileNanos;
+        }
+    }
+
+    /**
+     * Scheduler keeping the scheduled tasks, for the test to run them.
+     */
+    static class TestScheduler {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        final List<Long> delays = new ArrayList<>();
+        final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+        TestScheduler() {
+            when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+                tasks.add(invocation.getArgument(0));
+                delays.add(invocation.getArgument(1));
+                return null;
+            });
+        }
+
+        // run the tasks, including those they schedule
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static AdaptiveSpeculativeRequestExecutionPolicy newPolicy(double budgetRatio,
+                                                                       TestStatsProvider statsProvider) {
+        return new AdaptiveSpeculativeRequestExecutionPolicy(99, 10, 100, 2, budgetRatio,
+                statsProvider.getStatsLogger(""));
+    }
+
+    @Test
+    public void testFirstSpeculativeRequestTimeout() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0.1, new TestStatsProvider());
+        TestRequestExecutor executor = new TestRequestExecutor();
+
+        // unknown latencies
+        assertEquals(10, policy.firstSpeculativeRequestTimeout(executor));
+
+        executor.latencyPercentileNanos = TimeUnit.MICROSECONDS.toNanos(2300);
+        assertEquals(3, policy.firstSpeculativeRequestTimeout(executor));
+        executor.latencyPercentileNanos = TimeUnit.MILLISECONDS.toNanos(42);
+        assertEquals(42, policy.firstSpeculativeRequestTimeout(executor));
+
+        // clamped between 1ms and maxSpeculativeRequestTimeout
+        executor.latencyPercentileNanos = 0;
+        assertEquals(1, policy.firstSpeculativeRequestTimeout(executor));
+        executor.latencyPercentileNanos = TimeUnit.SECONDS.toNanos(10);
+        assertEquals(100, policy.firstSpeculativeRequestTimeout(executor));
+    }
+
+    @Test
+    public void testBackoff() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0.1, new TestStatsProvider());
+        TestRequestExecutor executor = new TestRequestExecutor();
+        executor.latencyPercentileNanos = TimeUnit.MILLISECONDS.toNanos(15);
+        TestScheduler scheduler = new TestScheduler();
+
+        policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+        for (int i = 0; i < 4; i++) {
+            scheduler.tasks.poll().run();
+        }
+        assertEquals(4, executor.issued);
+        assertEquals(Arrays.asList(15L, 30L, 60L, 100L, 100L), scheduler.delays);
+    }
+
+    @Test
+    public void testBudget() {
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0.5, statsProvider);
+        TestRequestExecutor executor = new TestRequestExecutor();
+        TestScheduler scheduler = new TestScheduler();
+
+        // the budget starts full, the deposit of the request is lost
+        policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+        scheduler.runAll();
+        assertEquals(AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET, executor.issued);
+        assertEquals(1L, statsProvider.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED).get().longValue());
+
+        // each request earns half a speculative request
+        policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+        scheduler.runAll();
+        assertEquals(AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET, executor.issued);
+        assertEquals(2L, statsProvider.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED).get().longValue());
+
+        policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+        scheduler.runAll();
+        assertEquals(AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET + 1, executor.issued);
+        assertEquals(3L, statsProvider.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED).get().longValue());
+    }
+
+    @Test
+    public void testBudgetRefunded() {
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0, statsProvider);
+        TestRequestExecutor executor = new TestRequestExecutor();
+        TestScheduler scheduler = new TestScheduler();
+
+        // no speculative request sent, or failed to send it
+        executor.result = Futures.immediateFuture(false);
+        for (int i = 0; i < 2 * AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET; i++) {
+            policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+            scheduler.runAll();
+        }
+        executor.result = Futures.immediateFailedFuture(new Exception("test"));
+        for (int i = 0; i < 2 * AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET; i++) {
+            policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+            scheduler.runAll();
+        }
+        assertEquals(4 * AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET, executor.issued);
+        assertEquals(0L, statsProvider.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED).get().longValue());
+
+        // the whole budget is still available
+        executor.issued = 0;
+        executor.result = Futures.immediateFuture(true);
+        policy.initiateSpeculativeRequest(scheduler.scheduler, executor);
+        scheduler.runAll();
+        assertEquals(AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET, executor.issued);
+        assertEquals(1L, statsProvider.getCounter(SPECULATIVE_READ_BUDGET_EXHAUSTED).get().longValue());
+    }
+
+    private BookKeeperTestClient createClient(double budget) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration(baseClientConf)
+            .setSpeculativeReadTimeoutPercentile(99)
+            .setSpeculativeReadBudget(budget)
+            .setFirstSpeculativeReadTimeout(20)
+            .setMaxSpeculativeReadTimeout(100)
+            .setReadEntryTimeout(30);
+        return new BookKeeperTestClient(conf, new TestStatsProvider());
+    }
+
+    private static long counter(BookKeeperTestClient bkc, String name) {
+        TestStatsProvider.TestCounter counter = bkc.getTestStatsProvider().getCounter(CLIENT_SCOPE + "." + name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    @Test
+    public void testSpeculativeReadHits() throws Exception {
+        try (BookKeeperTestClient bkspec = createClient(0.1)) {
+            LedgerHandle lh = bkspec.createLedger(3, 3, 3, DigestType.CRC32, PASSWD);
+            lh.addEntry("entry".getBytes());
+            // read the entry from the first bookie of the ensemble first
+            BookieId firstBookie = lh.getLedgerMetadata().getAllEnsembles().get(0L).get(0);
+
+            CountDownLatch sleepLatch = new CountDownLatch(1);
+            sleepBookie(firstBookie, sleepLatch);
+            try {
+                for (int i = 0; i < 5; i++) {
+                    try (LedgerEntries entries = lh.readAsync(0, 0).get(10, TimeUnit.SECONDS)) {
+                        assertEquals("entry", new String(entries.getEntry(0).getEntryBytes()));
+                    }
+                }
+            } finally {
+                sleepLatch.countDown();
+            }
+            assertEquals(5, counter(bkspec, SPECULATIVE_READ_COUNT));
+            assertEquals(5, counter(bkspec, SPECULATIVE_READ_HITS));
+            assertEquals(0, counter(bkspec, SPECULATIVE_READ_BUDGET_EXHAUSTED));
+            lh.close();
+        }
+    }
+
+    @Test
+    public void testSpeculativeReadBudgetExhausted() throws Exception {
+        try (BookKeeperTestClient bkspec = createClient(0)) {
+            LedgerHandle lh = bkspec.createLedger(3, 3, 3, DigestType.CRC32, PASSWD);
+            lh.addEntry("entry".getBytes());
+            BookieId firstBookie = lh.getLedgerMetadata().getAllEnsembles().get(0L).get(0);
+
+            int numReads = (int) AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET + 10;
+            List<CompletableFuture<LedgerEntries>> reads = new ArrayList<>();
+            CountDownLatch sleepLatch = new CountDownLatch(1);
+            sleepBookie(firstBookie, sleepLatch);
+            try {
+                for (int i = 0; i < numReads; i++) {
+                    reads.add(lh.readAsync(0, 0));
+                }
+                // wait for each read to send a speculative read or to run out of budget
+                while (counter(bkspec, SPECULATIVE_READ_COUNT)
+                       + counter(bkspec, SPECULATIVE_READ_BUDGET_EXHAUSTED) < numReads) {
+                    Thread.sleep(10);
+                }
+                long speculativeReads = counter(bkspec, SPECULATIVE_READ_COUNT);
+                assertTrue(speculativeReads <= AdaptiveSpeculativeRequestExecutionPolicy.MAX_BUDGET);
+                // the reads without budget wait for the first bookie
+                assertTrue(counter(bkspec, SPECULATIVE_READ_BUDGET_EXHAUSTED) >= numReads - speculativeReads);
+                assertTrue(reads.stream().filter(read -> !read.isDone()).count() >= numReads - speculativeReads);
+            } finally {
+                sleepLatch.countDown();
+            }
+            for (CompletableFuture<LedgerEntries> read : reads) {
+                read.get(10, TimeUnit.SECONDS).close();
+            }
+            long hits = counter(bkspec, SPECULATIVE_READ_HITS);
+            assertTrue(hits > 0);
+            assertTrue(hits <= counter(bkspec, SPECULATIVE_READ_COUNT));
+            lh.close();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKLedgerClosedException;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.BatchedReadHandle;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerRecord;
+import org.apache.bookkeeper.client.api.LedgerRecords;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test the {@link BatchingWriteHandleImpl} over a write handle keeping its entries in memory.
+ */
+public class BatchingWriteHandleImplTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private WriteHandle handle;
+    // guarded by entries
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final List<CompletableFuture<Long>> writes = new ArrayList<>();
+    private volatile boolean completeWrites = true;
+    private CompletableFuture<Void> handleClosed;
+
+    @Before
+    public void setup() {
+        handle = mock(WriteHandle.class);
+        when(handle.getId()).thenReturn(LEDGER_ID);
+        when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            ByteBuf entry = invocation.getArgument(0);
+            CompletableFuture<Long> write = new CompletableFuture<>();
+            long entryId;
+            synchronized (entries) {
+                entryId = entries.size();
+                entries.add(Unpooled.copiedBuffer(entry));
+                writes.add(write);
+            }
+            entry.release();
+            if (completeWrites) {
+                write.complete(entryId);
+            }
+            return write;
+        });
+        when(handle.readAsync(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long firstEntry = invocation.getArgument(0);
+            long lastEntry = invocation.getArgument(1);
+            List<LedgerEntry> read = new ArrayList<>();
+            synchronized (entries) {
+                for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+                    ByteBuf entry = entries.get((int) entryId).retainedDuplicate();
+                    read.add(LedgerEntryImpl.create(LEDGER_ID, entryId, entry.readableBytes(), entry));
+                }
+            }
+            return FutureUtils.value(LedgerEntriesImpl.create(read));
+        });
+        handleClosed = new CompletableFuture<>();
+        when(handle.closeAsync()).thenAnswer(invocation -> {
+            handleClosed.complete(null);
+            return FutureUtils.value(null);
+        });
+    }
+
+    private BatchingWriteHandle batchingHandle(long maxBatchDelayMs, ScheduledExecutorService scheduler) {
+        return BatchingWriteHandle.of(handle, MAX_BATCH_SIZE, maxBatchDelayMs, scheduler,
+                UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    private static ByteBuf record(int length, int value) {
+        ByteBuf record = Unpooled.buffer(length);
+        while (record.isWritable()) {
+            record.writeByte(value);
+        }
+        return record;
+    }
+
+    private int numEntries() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Test
+    public void writeBatchWhenFull() throws Exception {
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        // 1 byte of header, and 10 records of 9 bytes and their length
+        List<CompletableFuture<RecordPosition>> positions = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            positions.add(writer.appendRecordAsync(record(9, i)));
+        }
+        assertEquals(0, numEntries());
+        assertFalse(positions.get(0).isDone());
+
+        // the batch reaches its max size
+        positions.add(writer.appendRecordAsync(record(8, 9)));
+        assertEquals(1, numEntries());
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(new RecordPosition(0, i), positions.get(i).get());
+        }
+        synchronized (entries) {
+            assertEquals(MAX_BATCH_SIZE, entries.get(0).readableBytes());
+        }
+
+        // a record which does not fit in the current batch is written in the next one
+        writer.appendRecordAsync(record(50, 0));
+        CompletableFuture<RecordPosition> position = writer.appendRecordAsync(record(50, 1));
+        assertEquals(2, numEntries());
+        assertFalse(position.isDone());
+        writer.flushAsync().get();
+        assertEquals(new RecordPosition(2, 0), position.get());
+    }
+
+    @Test
+    public void writeRecordLargerThanBatch() throws Exception {
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        writer.appendRecordAsync(record(10, 0));
+        CompletableFuture<RecordPosition> large = writer.appendRecordAsync(record(MAX_BATCH_SIZE * 3, 1));
+        assertEquals(new RecordPosition(1, 0), large.get());
+        assertEquals(2, numEntries());
+        synchronized (entries) {
+            assertEquals(RecordBatchFormat.HEADER_SIZE + RecordBatchFormat.recordSize(MAX_BATCH_SIZE * 3),
+                    entries.get(1).readableBytes());
+        }
+    }
+
+    @Test
+    public void writeBatchAfterDelay() throws Exception {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> delayedWrite = mock(ScheduledFuture.class);
+        doReturn(delayedWrite).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        BatchingWriteHandle writer = batchingHandle(5, scheduler);
+
+        CompletableFuture<RecordPosition> first = writer.appendRecordAsync(record(10, 0));
+        CompletableFuture<RecordPosition> second = writer.appendRecordAsync(record(10, 1));
+        ArgumentCaptor<Runnable> write = ArgumentCaptor.forClass(Runnable.class);
+        // a single delayed write per batch
+        verify(scheduler).schedule(write.capture(), eq(5L), eq(TimeUnit.MILLISECONDS));
+        assertEquals(0, numEntries());
+
+        write.getValue().run();
+        assertEquals(1, numEntries());
+        assertEquals(new RecordPosition(0, 0), first.get());
+        assertEquals(new RecordPosition(0, 1), second.get());
+        // the write of a batch which was already written does nothing
+        write.getValue().run();
+        assertEquals(1, numEntries());
+    }
+
+    @Test
+    public void cancelDelayedWriteOfFullBatch() throws Exception {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> delayedWrite = mock(ScheduledFuture.class);
+        doReturn(delayedWrite).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        BatchingWriteHandle writer = batchingHandle(5, scheduler);
+
+        writer.appendRecordAsync(record(MAX_BATCH_SIZE, 0)).get();
+        verify(delayedWrite).cancel(false);
+    }
+
+    @Test
+    public void flush() throws Exception {
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        // nothing to flush
+        writer.flushAsync().get();
+        assertEquals(0, numEntries());
+
+        CompletableFuture<RecordPosition> position = writer.appendRecordAsync(record(10, 0));
+        writer.flushAsync().get();
+        assertEquals(1, numEntries());
+        assertEquals(new RecordPosition(0, 0), position.get());
+        writer.flushAsync().get();
+        assertEquals(1, numEntries());
+
+        when(handle.force()).thenReturn(FutureUtils.value(null));
+        position = writer.appendRecordAsync(record(10, 0));
+        writer.force().get();
+        assertEquals(new RecordPosition(1, 0), position.get());
+        verify(handle).force();
+    }
+
+    @Test
+    public void closeWaitsForLastBatch() throws Exception {
+        completeWrites = false;
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        CompletableFuture<RecordPosition> position = writer.appendRecordAsync(record(10, 0));
+        CompletableFuture<Void> closed = writer.closeAsync();
+        assertEquals(1, numEntries());
+        assertFalse(closed.isDone());
+        assertFalse(handleClosed.isDone());
+
+        synchronized (entries) {
+            writes.get(0).complete(0L);
+        }
+        closed.get();
+        assertTrue(handleClosed.isDone());
+        assertEquals(new RecordPosition(0, 0), position.get());
+    }
+
+    @Test
+    public void closeAfterFailedBatch() throws Exception {
+        completeWrites = false;
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        CompletableFuture<RecordPosition> position = writer.appendRecordAsync(record(10, 0));
+        CompletableFuture<Void> closed = writer.closeAsync();
+        synchronized (entries) {
+            writes.get(0).completeExceptionally(new BKException(BKException.Code.NotEnoughBookiesException) {});
+        }
+        closed.get();
+        try {
+            position.get();
+            fail("The batch failed");
+        } catch (ExecutionException e) {
+            assertEquals(BKException.Code.NotEnoughBookiesException, ((BKException) e.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void appendAfterClose() throws Exception {
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        writer.closeAsync().get();
+        ByteBuf record = record(10, 0);
+        try {
+            writer.appendRecordAsync(record).get();
+            fail("The handle is closed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKLedgerClosedException);
+        }
+        assertEquals(0, record.refCnt());
+        assertEquals(0, numEntries());
+    }
+
+    @Test
+    public void batchesAreAllocatedWithTheGivenAllocator() throws Exception {
+        ByteBufAllocator allocator = mock(ByteBufAllocator.class);
+        when(allocator.buffer(anyInt())).thenAnswer(invocation -> Unpooled.buffer(invocation.getArgument(0)));
+        BatchingWriteHandle writer = BatchingWriteHandle.of(handle, MAX_BATCH_SIZE, 0, null, allocator);
+        writer.appendRecordAsync(record(10, 0));
+        writer.flushAsync().get();
+        verify(allocator, atLeastOnce()).buffer(anyInt());
+    }
+
+    @Test
+    public void readRecordsAtTheirPositions() throws Exception {
+        BatchingWriteHandle writer = batchingHandle(0, null);
+        List<CompletableFuture<RecordPosition>> positions = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            positions.add(writer.appendRecordAsync(record(i % 20, i)));
+        }
+        writer.flushAsync().get();
+        int numEntries = numEntries();
+        assertTrue(numEntries > 1);
+
+        BatchedReadHandle reader = BatchedReadHandle.of(handle);
+        try (LedgerRecords records = reader.readRecordsAsync(0, numEntries - 1).get()) {
+            int i = 0;
+            for (LedgerRecord record : records) {
+                assertEquals(positions.get(i).get(), record.getPosition());
+                assertEquals(record(i % 20, i), record.getRecordBuffer());
+                i++;
+            }
+            assertEquals(positions.size(), i);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerRecord;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.junit.Test;
+
+/**
+ * Test the framing of the records batched into an entry.
+ */
+public class RecordBatchFormatTest {
+
+    private static ByteBuf record(int length) {
+        ByteBuf record = Unpooled.buffer(length);
+        for (int i = 0; i < length; i++) {
+            record.writeByte(i);
+        }
+        return record;
+    }
+
+    private static List<LedgerRecord> roundTrip(int... lengths) throws IOException {
+        ByteBuf batch = Unpooled.buffer();
+        RecordBatchFormat.writeHeader(batch);
+        int size = RecordBatchFormat.HEADER_SIZE;
+        for (int length : lengths) {
+            RecordBatchFormat.writeRecord(batch, record(length));
+            size += RecordBatchFormat.recordSize(length);
+        }
+        assertEquals(size, batch.readableBytes());
+
+        List<LedgerRecord> records = new ArrayList<>();
+        RecordBatchFormat.readRecords(7L, batch, records);
+        assertEquals(lengths.length, records.size());
+        for (int i = 0; i < lengths.length; i++) {
+            LedgerRecord record = records.get(i);
+            assertEquals(new RecordPosition(7L, i), record.getPosition());
+            assertEquals(lengths[i], record.getLength());
+            assertEquals(record(lengths[i]), record.getRecordBuffer());
+        }
+        return records;
+    }
+
+    @Test
+    public void recordSizes() {
+        assertEquals(1, RecordBatchFormat.recordSize(0));
+        assertEquals(1 + 127, RecordBatchFormat.recordSize(127));
+        assertEquals(2 + 128, RecordBatchFormat.recordSize(128));
+        assertEquals(2 + 16383, RecordBatchFormat.recordSize(16383));
+        assertEquals(3 + 16384, RecordBatchFormat.recordSize(16384));
+        assertEquals(5 + (1 << 28), RecordBatchFormat.recordSize(1 << 28));
+    }
+
+    @Test
+    public void emptyRecords() throws Exception {
+        roundTrip(0);
+        roundTrip(0, 0, 0);
+    }
+
+    @Test
+    public void lengthsAroundVarIntBoundaries() throws Exception {
+        roundTrip(1, 127, 128, 129, 16383, 16384, 3, 0);
+    }
+
+    @Test
+    public void largeRecord() throws Exception {
+        // a 4 bytes length
+        roundTrip(1 << 21, 5);
+    }
+
+    @Test
+    public void batchWithoutRecords() throws Exception {
+        roundTrip();
+    }
+
+    private static void assertMalformed(ByteBuf entry) {
+        try {
+            RecordBatchFormat.readRecords(0L, entry, new ArrayList<>());
+            fail("The entry is not a well formed batch");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rejectEntriesWhichAreNotBatches() {
+        assertMalformed(Unpooled.EMPTY_BUFFER);
+        assertMalformed(Unpooled.wrappedBuffer(new byte[] { 2, 0 }));
+        assertMalformed(Unpooled.wrappedBuffer("hello".getBytes()));
+    }
+
+    @Test
+    public void rejectTruncatedRecord() throws Exception {
+        ByteBuf batch = Unpooled.buffer();
+        RecordBatchFormat.writeHeader(batch);
+        RecordBatchFormat.writeRecord(batch, record(10));
+        RecordBatchFormat.writeRecord(batch, record(200));
+        assertMalformed(batch.slice(0, batch.readableBytes() - 1));
+        // the second length is cut in the middle of its varint
+        assertMalformed(batch.slice(0, RecordBatchFormat.HEADER_SIZE + RecordBatchFormat.recordSize(10) + 1));
+    }
+
+    @Test
+    public void rejectMalformedLength() {
+        // a varint longer than 5 bytes
+        assertMalformed(Unpooled.wrappedBuffer(new byte[] {
+                RecordBatchFormat.VERSION, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 1 }));
+        // a negative length
+        assertMalformed(Unpooled.wrappedBuffer(new byte[] {
+                RecordBatchFormat.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F }));
+    }
+
+    @Test
+    public void readFromReaderIndex() throws Exception {
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(42L);
+        RecordBatchFormat.writeHeader(entry);
+        RecordBatchFormat.writeRecord(entry, record(3));
+        entry.skipBytes(8);
+        List<LedgerRecord> records = new ArrayList<>();
+        RecordBatchFormat.readRecords(0L, entry, records);
+        assertEquals(1, records.size());
+        assertEquals(record(3), records.get(0).getRecordBuffer());
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Test of the range reads of {@link BookieClientImpl#readEntries}.
+ */
+@RunWith(value = Parameterized.class)
+public class BookieClientImplReadEntriesTest extends BookKeeperClusterTestCase {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 10;
+    private static final int ENTRY_SIZE = 1024;
+    private static final byte[] MASTER_KEY = "masterKey".getBytes(StandardCharsets.UTF_8);
+
+    private BookieClientImpl bookieClientImpl;
+    private BookieId bookieId;
+
+    //Test:   readEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+    //                    long maxSize, ReadEntriesCallback cb, Object ctx, int flags)
+    private final long ledgerId;
+    private final long firstEntryId;
+    private final long lastEntryId;
+    private final long maxSize;
+    private final int expectedRc;
+    private final int expectedEntries;
+
+    public BookieClientImplReadEntriesTest(long ledgerId, long firstEntryId, long lastEntryId, long maxSize,
+                                           int expectedRc, int expectedEntries) {
+        super(1);
+        this.ledgerId = ledgerId;
+        this.firstEntryId = firstEntryId;
+        this.lastEntryId = lastEntryId;
+        this.maxSize = maxSize;
+        this.expectedRc = expectedRc;
+        this.expectedEntries = expectedEntries;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> getParameters() {
+        return Arrays.asList(new Object[][]{
+                // Ledger_id, First_entry, Last_entry, Max_size, Expected RC, Expected entries
+                { LEDGER_ID, 0L, 9L, 0L, BKException.Code.OK, 10 },
+                { LEDGER_ID, 3L, 5L, 0L, BKException.Code.OK, 3 },
+                { LEDGER_ID, 7L, 7L, 0L, BKException.Code.OK, 1 },
+                // the entries after the last one are missing, the response holds the entries up to it
+                { LEDGER_ID, 8L, 12L, 0L, BKException.Code.OK, 2 },
+                { LEDGER_ID, 10L, 12L, 0L, BKException.Code.NoSuchEntryException, 0 },
+                { 2L, 0L, 9L, 0L, BKException.Code.NoSuchLedgerExistsException, 0 },
+                // the entries are cut off at the max size of the response, but at least one is returned
+                { LEDGER_ID, 0L, 9L, 3L * ENTRY_SIZE, BKException.Code.OK, 3 },
+                { LEDGER_ID, 0L, 9L, 3L * ENTRY_SIZE - 1, BKException.Code.OK, 2 },
+                { LEDGER_ID, 2L, 9L, 1L, BKException.Code.OK, 1 },
+                { LEDGER_ID, 5L, 2L, 0L, BKException.Code.ReadException, 0 },
+        });
+    }
+
+    @Before
+    public void setUpEntries() throws Exception {
+        bookieId = serverByIndex(0).getBookieId();
+        bookieClientImpl = (BookieClientImpl) bkc.getBookieClient();
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf toSend = Unpooled.buffer(ENTRY_SIZE);
+            toSend.writeLong(LEDGER_ID);
+            toSend.writeLong(entryId);
+            toSend.writeBytes("Entry content".getBytes(StandardCharsets.UTF_8));
+            toSend.writerIndex(toSend.capacity());
+
+            CompletableFuture<Integer> added = new CompletableFuture<>();
+            bookieClientImpl.addEntry(bookieId, LEDGER_ID, MASTER_KEY, entryId, ByteBufList.get(toSend),
+                    (rc, ledger, entry, addr, ctx) -> added.complete(rc), null, BookieProtocol.ADDENTRY, false,
+                    EnumSet.noneOf(WriteFlag.class));
+            assertEquals(BKException.Code.OK, (int) added.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testReadEntries() throws Exception {
+        CompletableFuture<Integer> read = new CompletableFuture<>();
+        List<ByteBuf> readEntries = new ArrayList<>();
+        bookieClientImpl.readEntries(bookieId, ledgerId, firstEntryId, lastEntryId, maxSize,
+                (rc, ledger, firstEntry, entries, ctx) -> {
+                    if (entries != null) {
+                        // copy the entries, they are released once the callback returns
+                        entries.forEach(entry -> readEntries.add(Unpooled.copiedBuffer(entry)));
+                    }
+                    read.complete(rc);
+                }, null, BookieProtocol.FLAG_NONE);
+
+        assertEquals(expectedRc, (int) read.get(10, TimeUnit.SECONDS));
+        assertEquals(expectedEntries, readEntries.size());
+        for (int i = 0; i < readEntries.size(); i++) {
+            ByteBuf entry = readEntries.get(i);
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            assertEquals(ledgerId, entry.getLong(0));
+            assertEquals(firstEntryId + i, entry.getLong(8));
+            entry.release();
+        }
+    }
+}
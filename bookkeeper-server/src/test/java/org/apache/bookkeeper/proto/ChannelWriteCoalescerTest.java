@@ -0,0 +1,206 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.client.BookKeeperClientStats;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestCounter;
+import org.apache.bookkeeper.test.TestStatsProvider.TestOpStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link ChannelWriteCoalescer}.
+ */
+public class ChannelWriteCoalescerTest {
+
+    private static final int MAX_UNFLUSHED_BYTES = 1024;
+
+    /**
+     * Handler recording the requests flushed by the coalescer. The embedded channel runs the pending tasks
+     * of the event loop on each write, so the requests are kept here instead of reaching the channel.
+     */
+    static class FlushRecorder extends ChannelOutboundHandlerAdapter {
+        final List<Object> unflushed = new ArrayList<>();
+        final List<Integer> flushedBatches = new ArrayList<>();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            unflushed.add(msg);
+            promise.setSuccess();
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushedBatches.add(unflushed.size());
+            release();
+        }
+
+        void release() {
+            unflushed.forEach(ReferenceCountUtil::release);
+            unflushed.clear();
+        }
+    }
+
+    private TestOpStatsLogger writeBatchSizeLogger;
+    private TestCounter writeFlushCounter;
+    private FlushRecorder recorder;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        TestStatsProvider statsProvider = new TestStatsProvider();
+        writeBatchSizeLogger = (TestOpStatsLogger) statsProvider.getStatsLogger("")
+                .getOpStatsLogger(BookKeeperClientStats.CHANNEL_WRITE_BATCH_SIZE);
+        writeFlushCounter = (TestCounter) statsProvider.getStatsLogger("")
+                .getCounter(BookKeeperClientStats.CHANNEL_WRITE_FLUSHES);
+        recorder = new FlushRecorder();
+        // with disconnect, so that a disconnect is not turned into a close
+        channel = new EmbeddedChannel(true, recorder,
+                new ChannelWriteCoalescer(MAX_UNFLUSHED_BYTES, writeBatchSizeLogger, writeFlushCounter));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        recorder.release();
+    }
+
+    private static ByteBuf request(int size) {
+        return Unpooled.wrappedBuffer(new byte[size]);
+    }
+
+    private void assertFlushes(Integer... batches) {
+        assertEquals(Arrays.asList(batches), recorder.flushedBatches);
+    }
+
+    @Test
+    public void testFlushDeferred() {
+        for (int i = 0; i < 3; i++) {
+            channel.writeAndFlush(request(10));
+        }
+        // the flush waits for the tasks queued in the event loop
+        assertFlushes();
+        assertEquals(0L, writeFlushCounter.get().longValue());
+
+        channel.runPendingTasks();
+        assertFlushes(3);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+        assertEquals(1, writeBatchSizeLogger.getSuccessCount());
+        assertEquals(3.0, writeBatchSizeLogger.getSuccessAverage(), 0.0);
+
+        // the requests written later are flushed in another batch
+        channel.writeAndFlush(request(10));
+        channel.runPendingTasks();
+        assertFlushes(3, 1);
+        assertEquals(2L, writeFlushCounter.get().longValue());
+        assertEquals(2, writeBatchSizeLogger.getSuccessCount());
+        assertEquals(2.0, writeBatchSizeLogger.getSuccessAverage(), 0.0);
+    }
+
+    @Test
+    public void testWriteWithoutFlush() {
+        channel.write(request(10));
+        channel.runPendingTasks();
+        assertFlushes();
+
+        channel.flush();
+        channel.runPendingTasks();
+        assertFlushes(1);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+    }
+
+    @Test
+    public void testFlushWithoutRequests() {
+        // passed through, without stats
+        channel.flush();
+        assertFlushes(0);
+        assertEquals(0L, writeFlushCounter.get().longValue());
+        assertEquals(0, writeBatchSizeLogger.getSuccessCount());
+    }
+
+    @Test
+    public void testFlushOnMaxUnflushedBytes() {
+        channel.writeAndFlush(request(MAX_UNFLUSHED_BYTES / 2));
+        assertFlushes();
+
+        // flushed right away once the requests reach the limit
+        channel.write(request(MAX_UNFLUSHED_BYTES / 2));
+        assertFlushes(2);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+        assertEquals(2.0, writeBatchSizeLogger.getSuccessAverage(), 0.0);
+
+        // nothing left for the scheduled flush
+        channel.runPendingTasks();
+        assertFlushes(2);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+
+        channel.write(request(2 * MAX_UNFLUSHED_BYTES));
+        assertFlushes(2, 1);
+        assertEquals(2L, writeFlushCounter.get().longValue());
+        assertEquals(1.5, writeBatchSizeLogger.getSuccessAverage(), 0.0);
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        channel.writeAndFlush(request(10));
+        channel.writeAndFlush(request(10));
+        channel.close();
+        assertFlushes(2);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+        assertEquals(2.0, writeBatchSizeLogger.getSuccessAverage(), 0.0);
+
+        channel.runPendingTasks();
+        assertFlushes(2);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+    }
+
+    @Test
+    public void testFlushOnDisconnect() {
+        channel.write(request(10));
+        channel.disconnect();
+        assertFlushes(1);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+    }
+
+    @Test
+    public void testFlushOnHandlerRemoved() {
+        channel.writeAndFlush(request(10));
+        channel.pipeline().removeLast();
+        assertFlushes(1);
+        assertEquals(1L, writeFlushCounter.get().longValue());
+        assertTrue(channel.isOpen());
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link RangeAddEntryProcessorV3}.
+ */
+public class RangeAddEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int NUM_ENTRIES = 4;
+
+    private Channel channel;
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+
+    /**
+     * Processor recording its responses instead of writing them to the channel.
+     */
+    private static class TestProcessor extends RangeAddEntryProcessorV3 {
+        final List<RangeAddResponse> responses = new ArrayList<>();
+
+        TestProcessor(Request request, Channel channel, BookieRequestProcessor requestProcessor) {
+            super(request, channel, requestProcessor);
+        }
+
+        @Override
+        protected void sendResponse(RangeAddResponse rangeAddResponse) {
+            responses.add(rangeAddResponse);
+        }
+    }
+
+    @Before
+    public void setup() {
+        channel = mock(Channel.class);
+        bookie = mock(Bookie.class);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+    }
+
+    private static Request request(long firstEntryId, EnumSet<WriteFlag> writeFlags) {
+        RangeAddRequest.Builder rangeAddRequest = RangeAddRequest.newBuilder()
+                .setLedgerId(LEDGER_ID)
+                .setFirstEntryId(firstEntryId)
+                .setMasterKey(ByteString.copyFromUtf8("masterKey"))
+                .setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+        for (long entryId = firstEntryId; entryId < firstEntryId + NUM_ENTRIES; entryId++) {
+            ByteBuf entry = Unpooled.buffer(64);
+            entry.writeLong(LEDGER_ID);
+            entry.writeLong(entryId);
+            entry.writerIndex(entry.capacity());
+            rangeAddRequest.addBody(ByteString.copyFrom(entry.nioBuffer()));
+        }
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.RANGE_ADD_ENTRY)
+                        .setTxnId(1L))
+                .setRangeAddRequest(rangeAddRequest)
+                .build();
+    }
+
+    /**
+     * Make the bookie acknowledge the entries of the batch with the given return codes.
+     */
+    private void completeEntries(int... rcs) throws Exception {
+        doAnswer(invocation -> {
+            List<ByteBuf> entries = invocation.getArgument(0);
+            WriteCallback cb = invocation.getArgument(2);
+            for (int i = 0; i < entries.size(); i++) {
+                ByteBuf entry = entries.get(i);
+                cb.writeComplete(rcs[i], LEDGER_ID, entry.getLong(8), null, invocation.getArgument(3));
+            }
+            return null;
+        }).when(bookie).addEntries(anyList(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void testAllEntriesAdded() throws Exception {
+        completeEntries(BookieProtocol.EOK, BookieProtocol.EOK, BookieProtocol.EOK, BookieProtocol.EOK);
+        TestProcessor processor = new TestProcessor(request(0L, WriteFlag.NONE), channel, requestProcessor);
+        processor.safeRun();
+
+        // a single response acknowledges the whole batch
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EOK, processor.responses.get(0).getStatus());
+        assertEquals(LEDGER_ID, processor.responses.get(0).getLedgerId());
+        assertEquals(0L, processor.responses.get(0).getFirstEntryId());
+        verify(bookie).addEntries(anyList(), eq(false), any(), any(), any());
+    }
+
+    @Test
+    public void testResponseSentOnceAllEntriesAcknowledged() throws Exception {
+        List<WriteCallback> callbacks = new ArrayList<>();
+        doAnswer(invocation -> {
+            callbacks.add(invocation.getArgument(2));
+            return null;
+        }).when(bookie).addEntries(anyList(), anyBoolean(), any(), any(), any());
+        TestProcessor processor = new TestProcessor(request(0L, WriteFlag.NONE), channel, requestProcessor);
+        processor.safeRun();
+        assertTrue(processor.responses.isEmpty());
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertTrue(processor.responses.isEmpty());
+            callbacks.get(0).writeComplete(BookieProtocol.EOK, LEDGER_ID, entryId, null, channel);
+        }
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EOK, processor.responses.get(0).getStatus());
+    }
+
+    @Test
+    public void testPartialFailure() throws Exception {
+        completeEntries(BookieProtocol.EOK, BookieProtocol.EOK, BookieProtocol.EIO, BookieProtocol.EIO);
+        TestProcessor processor = new TestProcessor(request(0L, WriteFlag.NONE), channel, requestProcessor);
+        processor.safeRun();
+
+        // the batch fails if any of its entries failed
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EIO, processor.responses.get(0).getStatus());
+    }
+
+    @Test
+    public void testFencedLedger() throws Exception {
+        doThrow(BookieException.create(BookieException.Code.LedgerFencedException))
+                .when(bookie).addEntries(anyList(), anyBoolean(), any(), any(), any());
+        TestProcessor processor = new TestProcessor(request(0L, WriteFlag.NONE), channel, requestProcessor);
+        processor.safeRun();
+
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EFENCED, processor.responses.get(0).getStatus());
+    }
+
+    @Test
+    public void testAckBeforeSync() throws Exception {
+        completeEntries(BookieProtocol.EOK, BookieProtocol.EOK, BookieProtocol.EOK, BookieProtocol.EOK);
+        TestProcessor processor = new TestProcessor(request(0L, EnumSet.of(WriteFlag.DEFERRED_SYNC)), channel,
+                requestProcessor);
+        processor.safeRun();
+
+        // the entries of a deferred sync ledger are acknowledged before the journal sync
+        verify(bookie).addEntries(anyList(), eq(true), any(), any(), any());
+        assertEquals(StatusCode.EOK, processor.responses.get(0).getStatus());
+    }
+
+    @Test
+    public void testEntryOutOfRange() throws Exception {
+        Request request = request(0L, WriteFlag.NONE);
+        Request invalidRequest = request.toBuilder()
+                .setRangeAddRequest(request.getRangeAddRequest().toBuilder().setFirstEntryId(1L))
+                .build();
+        TestProcessor processor = new TestProcessor(invalidRequest, channel, requestProcessor);
+        processor.safeRun();
+
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EBADREQ, processor.responses.get(0).getStatus());
+        verify(bookie, never()).addEntries(anyList(), anyBoolean(), any(), any(), any());
+    }
+
+    @Test
+    public void testReadOnlyBookie() throws Exception {
+        when(bookie.isReadOnly()).thenReturn(true);
+        TestProcessor processor = new TestProcessor(request(0L, WriteFlag.NONE), channel, requestProcessor);
+        processor.safeRun();
+
+        assertEquals(1, processor.responses.size());
+        assertEquals(StatusCode.EREADONLY, processor.responses.get(0).getStatus());
+        verify(bookie, never()).addEntries(anyList(), anyBoolean(), any(), any(), any());
+    }
+}
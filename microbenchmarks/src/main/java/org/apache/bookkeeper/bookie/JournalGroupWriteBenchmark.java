@@ -0,0 +1,124 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the group writes of the journal thread, with the records written as they are (format V6) or
+ * staged and compressed together (format V7).
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class JournalGroupWriteBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"6", "7"})
+        private int journalFormatVersion;
+
+        @Param({"1024", "16384"})
+        private int entrySize;
+
+        @Param({"true", "false"})
+        private boolean compressible;
+
+        private File tmpDir;
+        private Journal journal;
+        private ByteBuf[] entries;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            tmpDir = Files.createTempDirectory("journal-group-write").toFile();
+            File journalDir = BookieImpl.getCurrentDirectory(new File(tmpDir, "journal"));
+            BookieImpl.checkDirectoryStructure(journalDir);
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setJournalDirName(journalDir.getParent());
+            conf.setLedgerDirNames(new String[] { new File(tmpDir, "ledgers").getPath() });
+            conf.setJournalFormatVersionToWrite(journalFormatVersion);
+            // measure the journal thread rather than the disk and the group wait
+            conf.setJournalSyncData(false);
+            conf.setJournalFlushWhenQueueEmpty(true);
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+            journal.start();
+
+            Random random = new Random(0);
+            entries = new ByteBuf[BATCH_SIZE];
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                byte[] payload = new byte[entrySize];
+                if (!compressible) {
+                    random.nextBytes(payload);
+                }
+                entries[i] = Unpooled.buffer(entrySize);
+                entries[i].writeLong(1L);
+                entries[i].writeLong(i);
+                entries[i].writeBytes(payload, 16, entrySize - 16);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            journal.shutdown();
+            FileUtils.deleteDirectory(tmpDir);
+        }
+    }
+
+    @Benchmark
+    public void logAddEntries(TestState s) throws Exception {
+        CountDownLatch latch = new CountDownLatch(BATCH_SIZE);
+        for (ByteBuf entry : s.entries) {
+            s.journal.logAddEntry(entry.retainedDuplicate(), false,
+                    (rc, ledgerId, entryId, addr, ctx) -> latch.countDown(), null);
+        }
+        latch.await();
+    }
+}
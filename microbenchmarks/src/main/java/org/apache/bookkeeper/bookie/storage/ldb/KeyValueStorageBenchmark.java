@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks of the key-value storages of the entry locations index: batches of puts, point lookups and
+ * range scans over keys of (ledger id, entry id).
+ *
+ * <p>Run it from the root of the repository, the RocksDB storage loads its options from the conf directory.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class KeyValueStorageBenchmark {
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"rocksdb", "btree"})
+        private String storage;
+
+        @Param({"10"})
+        private int numLedgers;
+
+        @Param({"100000"})
+        private int entriesPerLedger;
+
+        @Param({"1000"})
+        private int batchSize;
+
+        @Param({"100"})
+        private int scanSize;
+
+        private File dir;
+        private KeyValueStorage db;
+        private KeyValueStorage.Batch batch;
+        // Ledger ids of the entries added by the put benchmark, after the ones of the initial entries
+        private long nextLedgerId;
+        private long nextEntryId;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setProperty(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, storage);
+            dir = Files.createTempDirectory("kv-storage").toFile();
+            db = EntryLocationIndex.getStorageFactory(conf)
+                    .newKeyValueStorage(dir.toString(), "locations", DbConfigType.EntryLocation, conf);
+
+            batch = db.newBatch();
+            for (long entryId = 0; entryId < entriesPerLedger; entryId++) {
+                for (long ledgerId = 0; ledgerId < numLedgers; ledgerId++) {
+                    batch.put(key(ledgerId, entryId), value(entryId));
+                }
+                if ((entryId + 1) % batchSize == 0) {
+                    batch.flush();
+                    batch.clear();
+                }
+            }
+            batch.flush();
+            batch.clear();
+            nextLedgerId = numLedgers;
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            batch.close();
+            db.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static byte[] key(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private static byte[] value(long location) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, location);
+        return value;
+    }
+
+    @Benchmark
+    public void putBatch(TestState s) throws Exception {
+        // Like the flush of the write cache, the entries of several ledgers are added in order
+        for (int i = 0; i < s.batchSize; i++) {
+            long ledgerId = s.nextLedgerId + i % s.numLedgers;
+            s.batch.put(key(ledgerId, s.nextEntryId), value(s.nextEntryId));
+            if (i % s.numLedgers == s.numLedgers - 1) {
+                s.nextEntryId++;
+            }
+        }
+        s.batch.flush();
+        s.batch.clear();
+        if (s.nextEntryId >= s.entriesPerLedger) {
+            s.nextLedgerId += s.numLedgers;
+            s.nextEntryId = 0;
+        }
+    }
+
+    @Benchmark
+    public void get(TestState s, Blackhole bh) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] value = new byte[8];
+        bh.consume(s.db.get(key(random.nextInt(s.numLedgers), random.nextInt(s.entriesPerLedger)), value));
+    }
+
+    @Benchmark
+    public void rangeScan(TestState s, Blackhole bh) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ledgerId = random.nextInt(s.numLedgers);
+        long firstEntryId = random.nextInt(s.entriesPerLedger - s.scanSize);
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = s.db.iterator(key(ledgerId, firstEntryId),
+                key(ledgerId, firstEntryId + s.scanSize))) {
+            while (iterator.hasNext()) {
+                bh.consume(iterator.next());
+            }
+        }
+    }
+}
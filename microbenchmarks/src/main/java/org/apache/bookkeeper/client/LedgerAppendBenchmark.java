@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteEntriesCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of the add path of a ledger handle, with many threads appending to the same ledger.
+ *
+ * <p>The bookie client is a mock which acknowledges the adds right away, so that the benchmark measures
+ * the assignment of the entry ids, the queueing of the pending adds and their completion in order.
+ * The number of outstanding adds is bounded by {@code maxOutstandingAdds}.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LedgerAppendBenchmark {
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"3"})
+        private int ensembleSize;
+
+        @Param({"1024"})
+        private int entrySize;
+
+        @Param({"1000"})
+        private int maxOutstandingAdds;
+
+        private OrderedExecutor executor;
+        private OrderedScheduler scheduler;
+        private LedgerHandle lh;
+        private Semaphore outstandingAdds;
+        private ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            executor = OrderedExecutor.newBuilder().name("append-benchmark-worker").numThreads(1).build();
+            scheduler = OrderedScheduler.newSchedulerBuilder().name("append-benchmark-scheduler").numThreads(1)
+                    .build();
+            // no add rate limit, the number of outstanding adds is bounded instead
+            ClientConfiguration conf = new ClientConfiguration().setThrottleValue(0);
+            ClientContext clientCtx = new MockClientContext(ClientInternalConf.fromConfig(conf), executor, scheduler);
+
+            List<BookieId> ensemble = IntStream.range(0, ensembleSize)
+                    .mapToObj(i -> BookieId.parse("bookie-" + i + ":3181"))
+                    .collect(Collectors.toList());
+            byte[] password = new byte[0];
+            LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                    .withId(1L)
+                    .withEnsembleSize(ensembleSize)
+                    .withWriteQuorumSize(ensembleSize)
+                    .withAckQuorumSize(ensembleSize)
+                    .withPassword(password)
+                    .withDigestType(DigestType.CRC32C)
+                    .newEnsembleEntry(0L, ensemble)
+                    .build();
+            lh = new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                    BookKeeper.DigestType.CRC32C, password, WriteFlag.NONE);
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            entry = Unpooled.wrappedBuffer(new byte[entrySize]);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            outstandingAdds.acquire(maxOutstandingAdds);
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Threads(8)
+    @Benchmark
+    public void appendAsync(TestState s) throws Exception {
+        s.outstandingAdds.acquire();
+        s.lh.appendAsync(s.entry.retainedSlice()).whenComplete((entryId, cause) -> s.outstandingAdds.release());
+    }
+
+    /**
+     * Client context of the ledger handle, which adds the entries to a mock bookie client.
+     */
+    private static class MockClientContext implements ClientContext {
+        private final ClientInternalConf conf;
+        private final OrderedExecutor executor;
+        private final OrderedScheduler scheduler;
+        private final BookieClient bookieClient = new MockBookieClient();
+        private final BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+
+        MockClientContext(ClientInternalConf conf, OrderedExecutor executor, OrderedScheduler scheduler) {
+            this.conf = conf;
+            this.executor = executor;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public ClientInternalConf getConf() {
+            return conf;
+        }
+
+        @Override
+        public LedgerManager getLedgerManager() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieWatcher getBookieWatcher() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EnsemblePlacementPolicy getPlacementPolicy() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BookieClient getBookieClient() {
+            return bookieClient;
+        }
+
+        @Override
+        public ByteBufAllocator getByteBufAllocator() {
+            return PooledByteBufAllocator.DEFAULT;
+        }
+
+        @Override
+        public OrderedExecutor getMainWorkerPool() {
+            return executor;
+        }
+
+        @Override
+        public OrderedScheduler getScheduler() {
+            return scheduler;
+        }
+
+        @Override
+        public BookKeeperClientStats getClientStats() {
+            return clientStats;
+        }
+
+        @Override
+        public boolean isClientClosed() {
+            return false;
+        }
+    }
+
+    /**
+     * Bookie client acknowledging the adds right away, it is called from the ordered thread of the ledger.
+     */
+    private static class MockBookieClient implements BookieClient {
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            cb.forceLedgerComplete(BKException.Code.OK, ledgerId, address, ctx);
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            cb.writeLacComplete(BKException.Code.OK, ledgerId, address, ctx);
+        }
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId, ByteBufList toSend,
+                             WriteCallback cb, Object ctx, int options, boolean allowFastFail,
+                             EnumSet<WriteFlag> writeFlags) {
+            cb.writeComplete(BKException.Code.OK, ledgerId, entryId, address, ctx);
+        }
+
+        @Override
+        public void addEntries(BookieId address, long ledgerId, byte[] masterKey, long firstEntryId,
+                               List<ByteBufList> toSend, WriteEntriesCallback cb, Object ctx,
+                               boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            cb.writeEntriesComplete(BKException.Code.OK, ledgerId, firstEntryId, toSend.size(), address, ctx);
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                                long maxSize, ReadEntriesCallback cb, Object ctx, int flags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry, ReadEntryCallback cb,
+                                              Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                          long ledgerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulates the reads of a ledger replicated on bookies of which one is slow, e.g. stalled by a
+ * compaction, to compare the read reordering modes of the rack-aware placement policy.
+ *
+ * <p>Each invocation sends a simulated read to the first bookie of the reordered read set and
+ * records its latency, drawn from the latency model of the bookie, in the latency tracker of the
+ * bookie. The simulated clock advances by {@code readIntervalMicros} per read, and a bookie has as
+ * many pending requests as simulated reads not completed yet. Besides the cost of the reordering
+ * measured by JMH, the mean simulated read latency and the share of the reads sent to the slow
+ * bookie are logged at the end of each trial.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadReorderBenchmark {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadReorderBenchmark.class);
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Thread)
+    public static class TestState {
+        @Param({"none", "pendingRequests", "predictedLatency"})
+        private String reorderMode;
+
+        @Param({"3"})
+        private int ensembleSize;
+
+        @Param({"1000"})
+        private int bookieLatencyMicros;
+
+        @Param({"50000"})
+        private int slowBookieLatencyMicros;
+
+        @Param({"100"})
+        private int readIntervalMicros;
+
+        private HashedWheelTimer timer;
+        private RackawareEnsemblePlacementPolicy policy;
+        private DistributionSchedule schedule;
+        private List<BookieId> ensemble;
+        private BookieLatencyTracker[] trackers;
+        // completion times of the simulated reads of each bookie
+        private List<ArrayDeque<Long>> pendingReads;
+        private BookiesHealthInfo healthInfo;
+
+        private long nowNanos;
+        private long entryId;
+        private long reads;
+        private long slowReads;
+        private long totalLatencyNanos;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            ClientConfiguration conf = new ClientConfiguration();
+            conf.setReorderReadSequenceEnabled(true);
+            if ("pendingRequests".equals(reorderMode)) {
+                conf.setReorderThresholdPendingRequests(1);
+            } else if ("predictedLatency".equals(reorderMode)) {
+                conf.setReorderByPredictedLatencyEnabled(true);
+            }
+            timer = new HashedWheelTimer();
+            policy = new RackawareEnsemblePlacementPolicy();
+            policy.initialize(conf, Optional.empty(), timer, SettableFeatureProvider.DISABLE_ALL,
+                    NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+
+            ensemble = new ArrayList<>(ensembleSize);
+            trackers = new BookieLatencyTracker[ensembleSize];
+            pendingReads = new ArrayList<>(ensembleSize);
+            for (int i = 0; i < ensembleSize; i++) {
+                ensemble.add(BookieId.parse("127.0.0." + (i + 1) + ":3181"));
+                trackers[i] = new BookieLatencyTracker(nowNanos);
+                pendingReads.add(new ArrayDeque<>());
+            }
+            Set<BookieId> writableBookies = new HashSet<>(ensemble);
+            policy.onClusterChanged(writableBookies, Collections.emptySet());
+            schedule = new RoundRobinDistributionSchedule(ensembleSize, ensembleSize, ensembleSize);
+
+            healthInfo = new BookiesHealthInfo() {
+                @Override
+                public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+                    return -1L;
+                }
+
+                @Override
+                public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+                    return pendingReads(ensemble.indexOf(bookieSocketAddress)).size();
+                }
+
+                @Override
+                public long getBookieReadLatencyEwma(BookieId bookieSocketAddress) {
+                    return trackers[ensemble.indexOf(bookieSocketAddress)].getLatencyEwmaNanos(nowNanos);
+                }
+            };
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            LOG.info("{}: {} reads, mean latency {} ms, {}% of the reads on the slow bookie",
+                    reorderMode, reads, String.format("%.3f", totalLatencyNanos / 1e6 / Math.max(1, reads)),
+                    String.format("%.2f", 100.0 * slowReads / Math.max(1, reads)));
+            policy.uninitalize();
+            timer.stop();
+        }
+
+        ArrayDeque<Long> pendingReads(int bookieIdx) {
+            ArrayDeque<Long> pending = pendingReads.get(bookieIdx);
+            // approximate with jitter, the reads are not necessarily completed in order
+            while (!pending.isEmpty() && pending.peekFirst() <= nowNanos) {
+                pending.pollFirst();
+            }
+            return pending;
+        }
+
+        long readLatencyNanos(int bookieIdx) {
+            // the last bookie of the ensemble is the slow one
+            if (bookieIdx == ensembleSize - 1) {
+                return TimeUnit.MICROSECONDS.toNanos(slowBookieLatencyMicros);
+            }
+            // half of the latency is fixed, the rest follows an exponential distribution
+            double jitter = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * bookieLatencyMicros / 2;
+            return TimeUnit.MICROSECONDS.toNanos(bookieLatencyMicros / 2) + (long) (jitter * 1000);
+        }
+    }
+
+    @Benchmark
+    public int read(TestState s) {
+        s.nowNanos += TimeUnit.MICROSECONDS.toNanos(s.readIntervalMicros);
+        DistributionSchedule.WriteSet writeSet = s.schedule.getWriteSet(s.entryId++);
+        try {
+            if (!"none".equals(s.reorderMode)) {
+                writeSet = s.policy.reorderReadSequence(s.ensemble, s.healthInfo, writeSet);
+            }
+            int bookieIdx = writeSet.get(0);
+            long latencyNanos = s.readLatencyNanos(bookieIdx);
+            s.pendingReads(bookieIdx).addLast(s.nowNanos + latencyNanos);
+            s.trackers[bookieIdx].recordLatency(latencyNanos, s.nowNanos);
+
+            s.reads++;
+            s.totalLatencyNanos += latencyNanos;
+            if (bookieIdx == s.ensembleSize - 1) {
+                s.slowReads++;
+            }
+            return bookieIdx;
+        } finally {
+            writeSet.recycle();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
+import org.apache.bookkeeper.common.collections.StripedBlockingQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks for the journal queues: many write threads adding items taken by a single journal thread.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class JournalQueueBenchmark {
+
+    private static final int QUEUE_SIZE = 10_000;
+    private static final int QUEUE_STRIPES = 16;
+    private static final Object ITEM = new Object();
+
+    private static Map<String, Supplier<BlockingQueue<Object>>> providers = ImmutableMap.of(
+            "ArrayBlockingQueue", () -> new ArrayBlockingQueue<>(QUEUE_SIZE),
+            "BlockingMpscQueue", () -> new BlockingMpscQueue<>(QUEUE_SIZE),
+            "StripedBlockingQueue", () -> new StripedBlockingQueue<>(QUEUE_SIZE, QUEUE_STRIPES, false),
+            "StripedBlockingQueue-BusyWait", () -> new StripedBlockingQueue<>(QUEUE_SIZE, QUEUE_STRIPES, true));
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"ArrayBlockingQueue", "BlockingMpscQueue", "StripedBlockingQueue", "StripedBlockingQueue-BusyWait"})
+        private String queueName;
+
+        private BlockingQueue<Object> queue;
+        private Thread consumer;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            queue = providers.get(queueName).get();
+            consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        queue.take();
+                    }
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }, "journal-queue-consumer");
+            consumer.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws InterruptedException {
+            consumer.interrupt();
+            consumer.join();
+        }
+    }
+
+    @Benchmark
+    public void put(TestState s) throws Exception {
+        s.queue.put(ITEM);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+
+import java.util.Arrays;
+
+/**
+ * Operations prepared in a ring, before they are submitted.
+ *
+ * <p>Each operation is stored as {@link #OP_STRIDE} longs: the opcode and flags, with the file descriptor in the
+ * upper 32 bits, the pointer, the length, the offset in the file and the user data.
+ */
+abstract class AbstractIoRing implements IoRing {
+    static final int OP_READ = 0;
+    static final int OP_WRITE = 1;
+    static final int OP_FSYNC = 2;
+    static final int OP_FDATASYNC = 3;
+
+    // Don't start the operation before the operations submitted before it are completed
+    static final int FLAG_DRAIN = 0x100;
+
+    static final int OP_STRIDE = 5;
+
+    protected final long[] ops;
+    protected int prepared = 0;
+
+    AbstractIoRing(int capacity) {
+        this.ops = new long[capacity * OP_STRIDE];
+    }
+
+    @Override
+    public int capacity() {
+        return ops.length / OP_STRIDE;
+    }
+
+    @Override
+    public void prepareWrite(int fd, long pointer, int count, long offset, long userData) throws NativeIOException {
+        prepare(OP_WRITE, fd, pointer, count, offset, userData);
+    }
+
+    @Override
+    public void prepareRead(int fd, long pointer, int count, long offset, long userData) throws NativeIOException {
+        prepare(OP_READ, fd, pointer, count, offset, userData);
+    }
+
+    @Override
+    public void prepareFsync(int fd, boolean dataOnly, long userData) throws NativeIOException {
+        prepare((dataOnly ? OP_FDATASYNC : OP_FSYNC) | FLAG_DRAIN, fd, 0, 0, 0, userData);
+    }
+
+    private void prepare(int opcode, int fd, long pointer, long length, long offset, long userData)
+            throws NativeIOException {
+        if (prepared == capacity()) {
+            throw new NativeIOException("Too many operations prepared in the ring: " + prepared);
+        }
+        int i = prepared * OP_STRIDE;
+        ops[i] = ((long) fd << 32) | opcode;
+        ops[i + 1] = pointer;
+        ops[i + 2] = length;
+        ops[i + 3] = offset;
+        ops[i + 4] = userData;
+        prepared++;
+    }
+
+    protected void clearPrepared() {
+        Arrays.fill(ops, 0, prepared * OP_STRIDE, 0L);
+        prepared = 0;
+    }
+}
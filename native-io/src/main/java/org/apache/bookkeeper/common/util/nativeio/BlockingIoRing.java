@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Ring executing the operations synchronously, one after the other, when they are submitted. Used when io_uring
+ * is not available.
+ */
+class BlockingIoRing extends AbstractIoRing {
+    private static final int EIO = 5;
+
+    private final NativeIO nativeIO;
+    // Pairs of (user data, result) of the completed operations
+    private final Queue<long[]> completions = new ArrayDeque<>();
+
+    BlockingIoRing(NativeIO nativeIO, int capacity) {
+        super(capacity);
+        this.nativeIO = nativeIO;
+    }
+
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+
+    @Override
+    public int submit(int minComplete) {
+        int count = prepared;
+        for (int i = 0; i < count; i++) {
+            int op = i * OP_STRIDE;
+            completions.add(new long[] { ops[op + 4], execute(ops[op], ops[op + 1], ops[op + 2], ops[op + 3]) });
+        }
+        clearPrepared();
+        return count;
+    }
+
+    private long execute(long opcodeAndFd, long pointer, long length, long offset) {
+        int fd = (int) (opcodeAndFd >>> 32);
+        try {
+            switch ((int) opcodeAndFd & 0xFF) {
+                case OP_READ:
+                    return nativeIO.pread(fd, pointer, length, offset);
+                case OP_WRITE:
+                    return nativeIO.pwrite(fd, pointer, (int) length, offset);
+                case OP_FSYNC:
+                case OP_FDATASYNC:
+                    return nativeIO.fsync(fd);
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + opcodeAndFd);
+            }
+        } catch (NativeIOException e) {
+            return -(e.getErrno() > 0 ? e.getErrno() : EIO);
+        }
+    }
+
+    @Override
+    public int complete(int minComplete, CompletionHandler handler) throws NativeIOException {
+        // All the submitted operations are already completed, there is nothing more to wait for
+        int count = 0;
+        while (!completions.isEmpty()) {
+            long[] completion = completions.poll();
+            handler.onComplete(completion[0], completion[1]);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        completions.clear();
+    }
+}
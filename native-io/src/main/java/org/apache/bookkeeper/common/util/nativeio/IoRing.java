@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+
+/**
+ * Ring of asynchronous I/O operations.
+ *
+ * <p>Operations are first prepared, then submitted in a batch with a single system call. The results of the
+ * operations are collected from the completions of the ring. A ring is not thread safe.
+ *
+ * <p>The ring is backed by io_uring when the kernel supports it. Otherwise the operations are executed one after
+ * the other when they are submitted, and their completions are available as soon as the submission returns.
+ */
+public interface IoRing extends AutoCloseable {
+
+    /**
+     * Handler of the completion of an operation.
+     */
+    interface CompletionHandler {
+        /**
+         * @param userData the user data of the operation
+         * @param result the result of the operation, as returned by the system call, or the negated errno
+         *               if it failed
+         */
+        void onComplete(long userData, long result) throws NativeIOException;
+    }
+
+    /**
+     * @return whether the operations are executed asynchronously by the kernel
+     */
+    boolean isAsync();
+
+    /**
+     * @return the max number of operations prepared and not submitted yet
+     */
+    int capacity();
+
+    /**
+     * Prepare the write of count bytes at pointer to the file at offset.
+     */
+    void prepareWrite(int fd, long pointer, int count, long offset, long userData) throws NativeIOException;
+
+    /**
+     * Prepare the read of count bytes of the file at offset to pointer.
+     */
+    void prepareRead(int fd, long pointer, int count, long offset, long userData) throws NativeIOException;
+
+    /**
+     * Prepare an fsync of the file. The fsync starts once all the operations submitted before it are completed.
+     *
+     * @param dataOnly whether only the data, and the metadata needed to read it back, is synced (fdatasync)
+     */
+    void prepareFsync(int fd, boolean dataOnly, long userData) throws NativeIOException;
+
+    /**
+     * Submit the prepared operations, and wait until at least minComplete operations are completed, with a single
+     * system call.
+     *
+     * @return the number of operations submitted
+     */
+    int submit(int minComplete) throws NativeIOException;
+
+    /**
+     * Pass the completed operations to the handler, waiting until at least minComplete operations are completed.
+     *
+     * @return the number of completed operations passed to the handler
+     */
+    int complete(int minComplete, CompletionHandler handler) throws NativeIOException;
+
+    @Override
+    void close() throws NativeIOException;
+}
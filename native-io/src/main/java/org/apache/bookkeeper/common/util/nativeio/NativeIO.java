@@ -58,4 +58,14 @@ public interface NativeIO {
     long pread(int fd, long pointer, long size, long offset) throws NativeIOException;
 
     int close(int fd) throws NativeIOException;
+
+    /**
+     * Create a ring to submit batches of asynchronous I/O operations.
+     * The default ring executes the operations synchronously with this NativeIO.
+     *
+     * @param capacity the max number of operations prepared in a batch
+     */
+    default IoRing ioRing(int capacity) throws NativeIOException {
+        return new BlockingIoRing(this, capacity);
+    }
 }
@@ -69,4 +69,17 @@ public class NativeIOImpl implements NativeIO {
     public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
         return NativeIOJni.pread(fd, pointer, size, offset);
     }
+
+    /**
+     * Create a ring backed by io_uring, or a blocking ring if the kernel doesn't support io_uring or doesn't
+     * allow its use.
+     */
+    @Override
+    public IoRing ioRing(int capacity) throws NativeIOException {
+        try {
+            return NativeIoRing.create(capacity);
+        } catch (NativeIOException e) {
+            return new BlockingIoRing(this, capacity);
+        }
+    }
 }
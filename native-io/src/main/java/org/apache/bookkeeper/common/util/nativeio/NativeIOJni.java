@@ -46,6 +46,29 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    /**
+     * Setup an io_uring instance with room for the given number of entries.
+     * @return a handle on the ring
+     */
+    static native long ioUringSetup(int entries) throws NativeIOException;
+
+    /**
+     * Queue count operations in the submission queue of the ring, encoded as in {@link AbstractIoRing}, submit
+     * them and wait for minComplete completions, with a single io_uring_enter call.
+     * @return the number of operations submitted
+     */
+    static native int ioUringSubmit(long ring, long[] ops, int count, int minComplete) throws NativeIOException;
+
+    /**
+     * Reap at most max completions of the ring into the completions array, as (user data, result) pairs, after
+     * waiting for minComplete completions.
+     * @return the number of completions reaped
+     */
+    static native int ioUringComplete(long ring, long[] completions, int max, int minComplete)
+            throws NativeIOException;
+
+    static native void ioUringClose(long ring) throws NativeIOException;
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util.nativeio;
+
+
+/**
+ * Ring backed by io_uring.
+ */
+class NativeIoRing extends AbstractIoRing {
+    private final long ring;
+    // Pairs of (user data, result) of the completed operations
+    private final long[] completions;
+    private boolean closed = false;
+
+    private NativeIoRing(long ring, int capacity) {
+        super(capacity);
+        this.ring = ring;
+        this.completions = new long[2 * 2 * capacity];
+    }
+
+    /**
+     * Create a ring of the given capacity.
+     * @throws NativeIOException if io_uring is not available
+     */
+    static NativeIoRing create(int capacity) throws NativeIOException {
+        return new NativeIoRing(NativeIOJni.ioUringSetup(capacity), capacity);
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public int submit(int minComplete) throws NativeIOException {
+        int count = prepared;
+        int submitted = NativeIOJni.ioUringSubmit(ring, ops, count, minComplete);
+        clearPrepared();
+        return submitted;
+    }
+
+    @Override
+    public int complete(int minComplete, CompletionHandler handler) throws NativeIOException {
+        int total = 0;
+        while (true) {
+            int count = NativeIOJni.ioUringComplete(ring, completions, completions.length / 2,
+                                                    Math.max(0, minComplete - total));
+            for (int i = 0; i < count; i++) {
+                handler.onComplete(completions[2 * i], completions[2 * i + 1]);
+            }
+            total += count;
+            if (count < completions.length / 2) {
+                return total;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws NativeIOException {
+        if (!closed) {
+            closed = true;
+            NativeIOJni.ioUringClose(ring);
+        }
+    }
+}
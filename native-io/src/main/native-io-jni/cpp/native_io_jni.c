@@ -26,6 +26,15 @@
 #include <string.h>
 #include <unistd.h>
 
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#define HAVE_IO_URING 1
+#include <linux/io_uring.h>
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 static void throwExceptionWithErrno(JNIEnv* env, const char* message) {
@@ -230,3 +239,278 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+
+#ifdef HAVE_IO_URING
+
+/* Operations encoded by AbstractIoRing */
+#define BK_OP_READ 0
+#define BK_OP_WRITE 1
+#define BK_OP_FSYNC 2
+#define BK_OP_FDATASYNC 3
+#define BK_FLAG_DRAIN 0x100
+#define BK_OP_STRIDE 5
+
+struct bk_io_uring {
+    int fd;
+    unsigned sq_entries;
+    unsigned *sq_head;
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+    struct io_uring_sqe *sqes;
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+    void *sq_ptr;
+    size_t sq_size;
+    void *cq_ptr;
+    size_t cq_size;
+    size_t sqes_size;
+};
+
+static void bk_io_uring_free(struct bk_io_uring *ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_size);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED && ring->cq_ptr != ring->sq_ptr) {
+        munmap(ring->cq_ptr, ring->cq_size);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_size);
+    }
+    if (ring->fd >= 0) {
+        close(ring->fd);
+    }
+    free(ring);
+}
+
+static int bk_io_uring_enter(int fd, unsigned toSubmit, unsigned minComplete) {
+    unsigned flags = minComplete > 0 ? IORING_ENTER_GETEVENTS : 0;
+    int res;
+    do {
+        res = (int) syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags, NULL, 0);
+    } while (res == -1 && errno == EINTR);
+    return res;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringSetup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringSetup
+    (JNIEnv* env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+    int fd = (int) syscall(__NR_io_uring_setup, entries, &p);
+    if (fd == -1) {
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        return 0;
+    }
+
+    struct bk_io_uring *ring = calloc(1, sizeof(struct bk_io_uring));
+    if (ring == NULL) {
+        close(fd);
+        throwException(env, "Failed to allocate io_uring");
+        return 0;
+    }
+    ring->fd = fd;
+
+    /* IORING_OP_READ and IORING_OP_WRITE came with IORING_FEAT_RW_CUR_POS (5.6) */
+    if (!(p.features & IORING_FEAT_RW_CUR_POS)) {
+        bk_io_uring_free(ring);
+        errno = ENOSYS;
+        throwExceptionWithErrno(env, "io_uring doesn't support read and write operations");
+        return 0;
+    }
+
+    ring->sq_size = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    ring->cq_size = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        if (ring->cq_size > ring->sq_size) {
+            ring->sq_size = ring->cq_size;
+        }
+        ring->cq_size = ring->sq_size;
+    }
+
+    ring->sq_ptr = mmap(NULL, ring->sq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        fd, IORING_OFF_SQ_RING);
+    if (ring->sq_ptr == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission queue");
+        bk_io_uring_free(ring);
+        return 0;
+    }
+
+    if (p.features & IORING_FEAT_SINGLE_MMAP) {
+        ring->cq_ptr = ring->sq_ptr;
+    } else {
+        ring->cq_ptr = mmap(NULL, ring->cq_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                            fd, IORING_OFF_CQ_RING);
+        if (ring->cq_ptr == MAP_FAILED) {
+            throwExceptionWithErrno(env, "Failed to map io_uring completion queue");
+            bk_io_uring_free(ring);
+            return 0;
+        }
+    }
+
+    ring->sqes_size = p.sq_entries * sizeof(struct io_uring_sqe);
+    ring->sqes = mmap(NULL, ring->sqes_size, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      fd, IORING_OFF_SQES);
+    if (ring->sqes == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission entries");
+        bk_io_uring_free(ring);
+        return 0;
+    }
+
+    char *sq = (char *) ring->sq_ptr;
+    char *cq = (char *) ring->cq_ptr;
+    ring->sq_entries = p.sq_entries;
+    ring->sq_head = (unsigned *) (sq + p.sq_off.head);
+    ring->sq_tail = (unsigned *) (sq + p.sq_off.tail);
+    ring->sq_mask = (unsigned *) (sq + p.sq_off.ring_mask);
+    ring->sq_array = (unsigned *) (sq + p.sq_off.array);
+    ring->cq_head = (unsigned *) (cq + p.cq_off.head);
+    ring->cq_tail = (unsigned *) (cq + p.cq_off.tail);
+    ring->cq_mask = (unsigned *) (cq + p.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe *) (cq + p.cq_off.cqes);
+
+    return (jlong) ring;
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringSubmit
+ * Signature: (J[JII)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringSubmit
+    (JNIEnv* env, jclass clazz, jlong ringPtr, jlongArray opsArray, jint count, jint minComplete) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+    if (count < 0 || minComplete < 0) {
+        throwException(env, "Invalid number of io_uring operations");
+        return -1;
+    }
+    unsigned tail = *ring->sq_tail;
+    unsigned head = __atomic_load_n(ring->sq_head, __ATOMIC_ACQUIRE);
+    if ((unsigned) count > ring->sq_entries - (tail - head)) {
+        throwException(env, "Too many operations submitted to io_uring");
+        return -1;
+    }
+
+    jlong *ops = (*env)->GetLongArrayElements(env, opsArray, NULL);
+    if (ops == NULL) {
+        throwException(env, "Failed to access io_uring operations");
+        return -1;
+    }
+    for (int i = 0; i < count; i++) {
+        jlong *op = ops + i * BK_OP_STRIDE;
+        unsigned index = tail & *ring->sq_mask;
+        struct io_uring_sqe *sqe = &ring->sqes[index];
+        memset(sqe, 0, sizeof(*sqe));
+
+        int opcode = (int) (op[0] & 0xFF);
+        sqe->fd = (int) (op[0] >> 32);
+        sqe->user_data = (unsigned long long) op[4];
+        if (op[0] & BK_FLAG_DRAIN) {
+            sqe->flags |= IOSQE_IO_DRAIN;
+        }
+        switch (opcode) {
+            case BK_OP_READ:
+                sqe->opcode = IORING_OP_READ;
+                break;
+            case BK_OP_WRITE:
+                sqe->opcode = IORING_OP_WRITE;
+                break;
+            case BK_OP_FDATASYNC:
+                sqe->fsync_flags = IORING_FSYNC_DATASYNC;
+                /* fall through */
+            default:
+                sqe->opcode = IORING_OP_FSYNC;
+                break;
+        }
+        if (opcode == BK_OP_READ || opcode == BK_OP_WRITE) {
+            sqe->addr = (unsigned long long) op[1];
+            sqe->len = (unsigned) op[2];
+            sqe->off = (unsigned long long) op[3];
+        }
+        ring->sq_array[index] = index;
+        tail++;
+    }
+    (*env)->ReleaseLongArrayElements(env, opsArray, ops, JNI_ABORT);
+
+    __atomic_store_n(ring->sq_tail, tail, __ATOMIC_RELEASE);
+
+    int res = bk_io_uring_enter(ring->fd, (unsigned) count, (unsigned) minComplete);
+    if (res == -1) {
+        throwExceptionWithErrno(env, "Failed to submit to io_uring");
+    }
+    return res;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringComplete
+ * Signature: (J[JII)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringComplete
+    (JNIEnv* env, jclass clazz, jlong ringPtr, jlongArray completionsArray, jint max, jint minComplete) {
+#ifdef HAVE_IO_URING
+    struct bk_io_uring *ring = (struct bk_io_uring *) ringPtr;
+    unsigned head = *ring->cq_head;
+    unsigned tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+    if (minComplete > 0 && tail - head < (unsigned) minComplete) {
+        if (bk_io_uring_enter(ring->fd, 0, (unsigned) minComplete) == -1) {
+            throwExceptionWithErrno(env, "Failed to wait for io_uring completions");
+            return -1;
+        }
+        tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+    }
+
+    int count = 0;
+    if (head != tail && max > 0) {
+        jlong *completions = (*env)->GetLongArrayElements(env, completionsArray, NULL);
+        if (completions == NULL) {
+            throwException(env, "Failed to access io_uring completions");
+            return -1;
+        }
+        while (head != tail && count < max) {
+            struct io_uring_cqe *cqe = &ring->cqes[head & *ring->cq_mask];
+            completions[2 * count] = (jlong) cqe->user_data;
+            completions[2 * count + 1] = (jlong) cqe->res;
+            head++;
+            count++;
+        }
+        (*env)->ReleaseLongArrayElements(env, completionsArray, completions, 0);
+        __atomic_store_n(ring->cq_head, head, __ATOMIC_RELEASE);
+    }
+    return count;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    ioUringClose
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_ioUringClose
+    (JNIEnv* env, jclass clazz, jlong ringPtr) {
+#ifdef HAVE_IO_URING
+    bk_io_uring_free((struct bk_io_uring *) ringPtr);
+#endif
+}